@@ -47,7 +47,7 @@ CREATE TABLE users (
     created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL,
     updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL
 );
-CREATE INDEX idx_users_customer_id ON users(customer_id);
+CREATE INDEX idx_users_customer_id ON users(customer_id, id);
 CREATE INDEX idx_users_email_address ON users(email_address_hash);
 CREATE INDEX idx_users_verification_token ON users(verification_token);
 
@@ -89,7 +89,7 @@ CREATE TABLE blacklist (
     blacklisted_email_address_encrypted TEXT NOT NULL,
     UNIQUE (user_id, blacklisted_email_address_hash)
 );
-CREATE INDEX idx_blacklist_customer_id ON blacklist(user_id);
+CREATE INDEX idx_blacklist_customer_id ON blacklist(user_id, id);
 
 CREATE TABLE message_categories (
     id BIGSERIAL PRIMARY KEY,
@@ -102,8 +102,12 @@ CREATE TABLE message_categories (
 );
 CREATE INDEX idx_message_categories_customer_id ON message_categories(customer_id);
 
+-- Lets GIN indexes lead with a scalar column, see idx_message_log_subject
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+-- Partitioned by month of received_at, see create_message_log_partition
 CREATE TABLE message_log (
-    id BIGSERIAL PRIMARY KEY,
+    id BIGSERIAL,
     user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
     customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
     replied BOOLEAN NOT NULL,
@@ -111,7 +115,11 @@ CREATE TABLE message_log (
     category VARCHAR(64) NOT NULL,
     language VARCHAR(64),
     from_email_address_encrypted TEXT,
+    -- Blind index of the sender, HmacUtil hash of the lowercase address
+    from_email_address_hash TEXT,
     subject TEXT,
+    -- Subjects are in any language, so they are neither stemmed nor stripped of stop words
+    subject_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('simple', COALESCE(subject, ''))) STORED,
     received_at TIMESTAMP WITH TIME ZONE NOT NULL,
     processed_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL,
     processing_time_in_seconds INTEGER NOT NULL,
@@ -123,32 +131,245 @@ CREATE TABLE message_log (
     input_tokens INTEGER,
     output_tokens INTEGER,
     total_tokens INTEGER,
-    token TEXT UNIQUE NOT NULL,
-    token_expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+    token TEXT,
+    token_expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (id, received_at)
+) PARTITION BY RANGE (received_at);
+-- Catches rows outside the created partitions
+CREATE TABLE message_log_default PARTITION OF message_log DEFAULT;
+-- Keyset pagination scrolls by (received_at, id), newest first
+CREATE INDEX idx_message_log_user_id ON message_log(user_id, received_at DESC, id DESC);
+CREATE INDEX idx_message_log_customer_id ON message_log(customer_id, received_at DESC, id DESC);
+-- Full-text search within a customer's subjects
+CREATE INDEX idx_message_log_subject ON message_log USING GIN (customer_id, subject_tsv);
+-- Sender search, scrolls like the user's message log
+CREATE INDEX idx_message_log_sender ON message_log(user_id, from_email_address_hash, received_at DESC, id DESC) WHERE from_email_address_hash IS NOT NULL;
+-- Only legacy random tokens are stored, signed rating tokens are verified without a lookup.
+-- Unique indexes on a partitioned table must contain received_at, see message_log_tokens.
+CREATE INDEX idx_message_log_token ON message_log(token) WHERE token IS NOT NULL;
+
+-- Creates the partition for the month starting at month_start (UTC), if it does not exist yet
+CREATE FUNCTION create_message_log_partition(month_start DATE) RETURNS VOID AS $$
+DECLARE
+    partition_start TIMESTAMP := DATE_TRUNC('month', month_start::TIMESTAMP);
+BEGIN
+    EXECUTE FORMAT(
+        'CREATE TABLE IF NOT EXISTS %I PARTITION OF message_log FOR VALUES FROM (%L) TO (%L)',
+        'message_log_p' || TO_CHAR(partition_start, 'YYYYMM'),
+        partition_start AT TIME ZONE 'UTC',
+        (partition_start + INTERVAL '1 month') AT TIME ZONE 'UTC');
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT create_message_log_partition(month::DATE)
+FROM GENERATE_SERIES(DATE '2024-01-01', DATE_TRUNC('month', NOW()) + INTERVAL '3 months', INTERVAL '1 month') AS month;
+
+-- Keeps legacy tokens unique across partitions
+CREATE TABLE message_log_tokens (
+    token TEXT PRIMARY KEY,
+    message_log_id BIGINT NOT NULL,
+    message_log_received_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    FOREIGN KEY (message_log_id, message_log_received_at) REFERENCES message_log(id, received_at) ON DELETE CASCADE
 );
-CREATE INDEX idx_message_log_user_id ON message_log(user_id);
-CREATE INDEX idx_message_log_customer_id ON message_log(customer_id);
-CREATE INDEX idx_message_log_category ON message_log(category);
-CREATE INDEX idx_message_log_received_at ON message_log(received_at);
-CREATE INDEX idx_message_log_processed_at ON message_log(processed_at);
-CREATE INDEX idx_message_log_processing_time_in_seconds ON message_log(processing_time_in_seconds);
-CREATE INDEX idx_message_log_token ON message_log(token);
 
+CREATE FUNCTION insert_message_log_token() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO message_log_tokens (token, message_log_id, message_log_received_at)
+    VALUES (NEW.token, NEW.id, NEW.received_at);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER message_log_token_unique
+AFTER INSERT ON message_log
+FOR EACH ROW WHEN (NEW.token IS NOT NULL)
+EXECUTE FUNCTION insert_message_log_token();
+
+-- message_log_received_at completes the foreign key to message_log and is set by
+-- set_response_rating_received_at, so ratings are written by message_log_id alone
 CREATE TABLE response_ratings (
-    message_log_id BIGSERIAL PRIMARY KEY REFERENCES message_log(id) ON DELETE CASCADE,
+    message_log_id BIGINT PRIMARY KEY,
+    message_log_received_at TIMESTAMP WITH TIME ZONE NOT NULL,
     customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
     user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
     satisfied BOOLEAN NOT NULL,
     rating INTEGER CHECK (rating BETWEEN 1 AND 5) NOT NULL,
     feedback TEXT,
-    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    FOREIGN KEY (message_log_id, message_log_received_at) REFERENCES message_log(id, received_at) ON DELETE CASCADE
 );
 CREATE INDEX idx_response_ratings_message_log_id ON response_ratings(message_log_id);
-CREATE INDEX idx_response_ratings_customer_id ON response_ratings(customer_id);
-CREATE INDEX idx_response_ratings_user_id ON response_ratings(user_id);
+-- Ratings of a partition are deleted before it is dropped, see MessageLogPartitionManager
+CREATE INDEX idx_response_ratings_message_log_received_at ON response_ratings(message_log_received_at);
+CREATE INDEX idx_response_ratings_customer_id ON response_ratings(customer_id, message_log_id);
+CREATE INDEX idx_response_ratings_user_id ON response_ratings(user_id, message_log_id);
 CREATE INDEX idx_response_ratings_rating ON response_ratings(rating);
 CREATE INDEX idx_response_ratings_rated_at ON response_ratings(created_at);
 
+CREATE FUNCTION set_response_rating_received_at() RETURNS TRIGGER AS $$
+BEGIN
+    SELECT received_at INTO NEW.message_log_received_at
+    FROM message_log
+    WHERE id = NEW.message_log_id;
+    IF NOT FOUND THEN
+        RAISE foreign_key_violation USING MESSAGE = 'message_log ' || NEW.message_log_id || ' does not exist';
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER response_rating_received_at
+BEFORE INSERT OR UPDATE OF message_log_id ON response_ratings
+FOR EACH ROW EXECUTE FUNCTION set_response_rating_received_at();
+
+-- Hourly aggregates of message_log, maintained on insert and backfilled on startup when empty
+CREATE TABLE message_log_rollups (
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    bucket_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    category TEXT NOT NULL,
+    message_count BIGINT NOT NULL,
+    replied_count BIGINT NOT NULL,
+    processing_time_sum BIGINT NOT NULL,
+    categorisation_input_tokens_sum BIGINT NOT NULL,
+    categorisation_output_tokens_sum BIGINT NOT NULL,
+    categorisation_total_tokens_sum BIGINT NOT NULL,
+    input_tokens_sum BIGINT NOT NULL,
+    output_tokens_sum BIGINT NOT NULL,
+    total_tokens_sum BIGINT NOT NULL,
+    PRIMARY KEY (customer_id, user_id, bucket_start, category)
+);
+CREATE INDEX idx_message_log_rollups_customer_id ON message_log_rollups(customer_id, bucket_start);
+CREATE INDEX idx_message_log_rollups_user_id ON message_log_rollups(user_id, bucket_start);
+
+-- Hourly LLM token usage per model, categorisation and response generation count separately
+CREATE TABLE message_log_token_rollups (
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    bucket_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    model TEXT NOT NULL,
+    request_count BIGINT NOT NULL,
+    input_tokens_sum BIGINT NOT NULL,
+    output_tokens_sum BIGINT NOT NULL,
+    PRIMARY KEY (customer_id, user_id, bucket_start, model)
+);
+CREATE INDEX idx_message_log_token_rollups_customer_id ON message_log_token_rollups(customer_id, bucket_start);
+CREATE INDEX idx_message_log_token_rollups_user_id ON message_log_token_rollups(user_id, bucket_start);
+
+-- Hourly processing time histograms, one row per non-empty bin (see ProcessingTimeHistogram)
+CREATE TABLE message_log_processing_time_rollups (
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    bucket_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    category TEXT NOT NULL,
+    bin INTEGER NOT NULL,
+    message_count BIGINT NOT NULL,
+    PRIMARY KEY (customer_id, user_id, bucket_start, category, bin)
+);
+CREATE INDEX idx_message_log_processing_time_rollups_customer_id ON message_log_processing_time_rollups(customer_id, bucket_start);
+CREATE INDEX idx_message_log_processing_time_rollups_user_id ON message_log_processing_time_rollups(user_id, bucket_start);
+
+-- Per-stage pipeline durations of message log entries in milliseconds (see PipelineStage)
+CREATE TABLE message_log_stage_durations (
+    message_log_id BIGINT PRIMARY KEY,
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    recorded_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    imap_fetch_millis INTEGER,
+    categorisation_millis INTEGER,
+    rag_retrieval_millis INTEGER,
+    generation_millis INTEGER,
+    smtp_send_millis INTEGER
+);
+
+-- Hourly stage duration histograms, one row per non-empty bin (see ProcessingTimeHistogram)
+CREATE TABLE message_log_stage_latency_rollups (
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    bucket_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    stage TEXT NOT NULL,
+    bin INTEGER NOT NULL,
+    message_count BIGINT NOT NULL,
+    PRIMARY KEY (customer_id, user_id, bucket_start, stage, bin)
+);
+CREATE INDEX idx_message_log_stage_latency_rollups_customer_id ON message_log_stage_latency_rollups(customer_id, bucket_start);
+CREATE INDEX idx_message_log_stage_latency_rollups_user_id ON message_log_stage_latency_rollups(user_id, bucket_start);
+
+-- Daily HyperLogLog and top senders sketches per user (see MessageLogSenderSketches)
+CREATE TABLE message_log_sender_sketches (
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    day DATE NOT NULL,
+    hll BYTEA NOT NULL,
+    top_senders BYTEA NOT NULL,
+    PRIMARY KEY (customer_id, user_id, day)
+);
+CREATE INDEX idx_message_log_sender_sketches_customer_id ON message_log_sender_sketches(customer_id, day);
+
+-- Per customer override of mailflow.message-log.archive.default-retention-days
+CREATE TABLE message_log_retention (
+    customer_id BIGINT PRIMARY KEY REFERENCES customers(id) ON DELETE CASCADE,
+    retention_days INTEGER CHECK (retention_days > 0) NOT NULL
+);
+
+-- Segment files of archived message log entries, relative to the archive directory
+CREATE TABLE message_log_archive_segments (
+    id BIGSERIAL PRIMARY KEY,
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    range_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    range_end TIMESTAMP WITH TIME ZONE NOT NULL,
+    file_name TEXT NOT NULL,
+    row_count INTEGER NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+CREATE INDEX idx_message_log_archive_segments_customer_id ON message_log_archive_segments(customer_id, range_start);
+
+-- SHA-256 fingerprints of the Message-IDs of processed messages (see MessageLogFingerprints)
+CREATE TABLE message_log_fingerprints (
+    id BIGSERIAL PRIMARY KEY,
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE NOT NULL,
+    fingerprint TEXT NOT NULL,
+    message_log_id BIGINT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW() NOT NULL,
+    UNIQUE (user_id, fingerprint)
+);
+CREATE INDEX idx_message_log_fingerprints_user_id ON message_log_fingerprints(user_id, created_at);
+
+-- Per customer override of mailflow.token-quota.default-monthly-limit
+CREATE TABLE customer_token_quotas (
+    customer_id BIGINT PRIMARY KEY REFERENCES customers(id) ON DELETE CASCADE,
+    monthly_token_limit BIGINT CHECK (monthly_token_limit > 0) NOT NULL
+);
+
+-- LLM tokens per customer and calendar month, flushed periodically (see TokenQuotas)
+CREATE TABLE customer_token_usage (
+    customer_id BIGINT REFERENCES customers(id) ON DELETE CASCADE NOT NULL,
+    month DATE NOT NULL,
+    tokens BIGINT NOT NULL,
+    PRIMARY KEY (customer_id, month)
+);
+
+-- Change counters behind the ETags of entity collections (see EntityVersions)
+CREATE TABLE entity_versions (
+    collection TEXT NOT NULL,
+    scope_id BIGINT NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (collection, scope_id)
+);
+
+-- Responses of requests with an Idempotency-Key, if mailflow.idempotency.table-enabled is set.
+-- status is NULL while the first request with the key is running (see IdempotencyKeys)
+CREATE TABLE idempotency_keys (
+    key_hash TEXT PRIMARY KEY,
+    request_hash TEXT NOT NULL,
+    status INTEGER,
+    location TEXT,
+    body TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+CREATE INDEX idx_idempotency_keys_created_at ON idempotency_keys(created_at);
+
 INSERT INTO customers (company, street, house_number, postal_code, city, billing_email_address, openai_api_key_encrypted, registration_token, test_version, ionos_username, ionos_password_encrypted, crawl_frequency_in_days, default_imap_host, default_smtp_host, default_imap_port, default_smtp_port)
 VALUES ('FlowSuite', 'Straße', '69', '1337', 'München', 'rechnungen@flow-suite.de', 'SWvI2dniMcOCVvyinJk+gM+gqIhMAeRXZxJYxxGd2ARxD/gOcHUQzXSpb+ubHRQKLaqwaEl4CDb2jEBpIgXpfY+7doKZi1sdhQM3xPpCUwpAwvKADVCa35gL8ik48RFrrj0XWYpMfukp5VkasmUvqOp3dU6OaWTfm73smztqcZuRyWEFCnU1CEGCLrwKfSPRsxbK43sZvr1Isl7lFwLtMLVp9a5ufU1QvvL/vy5EBVat8L/J9G1lubw+RbS8u25I', 'secureToken1', true, 'test@flow-suite.de' , 'nxFNCTbBVAbIrQfJ2vSlDf261/MbLRyM8cclSjqNaz5sPT+kXl7PkheKR2A9Qd7i', 3, 'imap.ionos.de', 'smtp.ionos.de', 993, 465),
        ('Company', 'Street', '69', '1337', 'City', 'billing@example.de', 'SWvI2dniMcOCVvyinJk+gM+gqIhMAeRXZxJYxxGd2ARxD/gOcHUQzXSpb+ubHRQKLaqwaEl4CDb2jEBpIgXpfY+7doKZi1sdhQM3xPpCUwpAwvKADVCa35gL8ik48RFrrj0XWYpMfukp5VkasmUvqOp3dU6OaWTfm73smztqcZuRyWEFCnU1CEGCLrwKfSPRsxbK43sZvr1Isl7lFwLtMLVp9a5ufU1QvvL/vy5EBVat8L/J9G1lubw+RbS8u25I', 'secureToken2', true, 'info@flow-suite.de', 'z5RN8Uv5mdoAbmUn+dgLeEqzEHQsRed8tJaN87VIWj3ph32V0SJ8Vd+32haVU3nv', 3, 'imap.ionos.de', 'smtp.ionos.de', 993, 465);
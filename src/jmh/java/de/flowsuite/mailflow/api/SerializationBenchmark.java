@@ -0,0 +1,112 @@
+package de.flowsuite.mailflow.api;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing and reading a page of 100 message log entries, the typical list payload between
+ * the services. {@code blackbird=false} with {@code format=json} is the configuration before
+ * binary formats and Blackbird were added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    // Length of an AES-encrypted address as stored in the message log
+    private static final String ENCRYPTED_ADDRESS =
+            "c2VuZGVyLSIgKyBpICsgIkBleGFtcGxlLmRlIGVuY3J5cHRlZA==";
+    private static final TypeReference<List<MessageLogEntry>> PAGE_TYPE =
+            new TypeReference<>() {};
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean blackbird;
+
+    private ObjectMapper objectMapper;
+    private List<MessageLogEntry> page;
+    private byte[] encodedPage;
+
+    @Setup
+    public void setup() throws IOException {
+        // Same defaults as the application's mappers
+        Jackson2ObjectMapperBuilder builder =
+                switch (format) {
+                    case "cbor" -> Jackson2ObjectMapperBuilder.cbor();
+                    case "smile" -> Jackson2ObjectMapperBuilder.smile();
+                    default -> Jackson2ObjectMapperBuilder.json();
+                };
+        builder.timeZone("Europe/Berlin");
+        if (blackbird) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        objectMapper = builder.build();
+
+        page = buildPage();
+        encodedPage = objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public List<MessageLogEntry> read() throws IOException {
+        return objectMapper.readValue(encodedPage, PAGE_TYPE);
+    }
+
+    private static List<MessageLogEntry> buildPage() {
+        ZonedDateTime now = ZonedDateTime.now(BERLIN_ZONE);
+        List<MessageLogEntry> entries = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            entries.add(
+                    MessageLogEntry.builder()
+                            .id((long) i)
+                            .userId(1L)
+                            .customerId(1L)
+                            .replied(i % 3 != 0)
+                            .category(i % 2 == 0 ? "Support" : "Sales")
+                            .language("de")
+                            .fromEmailAddress(ENCRYPTED_ADDRESS)
+                            .subject("Anfrage zu Bestellung " + (10_000 + i))
+                            .receivedAt(now.minusMinutes(i))
+                            .processedAt(now.minusMinutes(i).plusSeconds(30))
+                            .processingTimeInSeconds(30)
+                            .categorisationLlmUsed("gpt-4o-mini")
+                            .categorisationInputTokens(1500)
+                            .categorisationOutputTokens(20)
+                            .categorisationTotalTokens(1520)
+                            .llmUsed("gpt-4o")
+                            .inputTokens(2500)
+                            .outputTokens(400)
+                            .totalTokens(2900)
+                            .build());
+        }
+        return entries;
+    }
+}
@@ -3,16 +3,20 @@ package de.flowsuite.mailflow.api;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
-@EntityScan(basePackages = "de.flowsuite.mailflow.common.entity")
+@EntityScan(basePackages = {"de.flowsuite.mailflow.common.entity", "de.flowsuite.mailflow.api"})
 @ComponentScan(basePackages = {"de.flowsuite.mailflow.api", "de.flowsuite.mailflow.common"})
+@EnableScheduling
+@ConfigurationPropertiesScan
 public class MailflowApiApplication {
 
     @Bean
@@ -2,6 +2,9 @@ package de.flowsuite.mailflow.api.blacklist;
 
 import de.flowsuite.mailflow.common.entity.BlacklistEntry;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -12,5 +15,8 @@ interface BlacklistRepository extends CrudRepository<BlacklistEntry, Long> {
 
     List<BlacklistEntry> findByUserId(long userId);
 
+    Window<BlacklistEntry> findByUserIdOrderByIdAsc(
+            long userId, ScrollPosition position, Limit limit);
+
     boolean existsByUserIdAndBlacklistedEmailAddressHash(long userId, String emailAddressHash);
 }
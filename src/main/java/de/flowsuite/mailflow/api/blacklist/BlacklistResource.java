@@ -1,5 +1,6 @@
 package de.flowsuite.mailflow.api.blacklist;
 
+import de.flowsuite.mailflow.api.util.PaginationUtil;
 import de.flowsuite.mailflow.common.entity.BlacklistEntry;
 
 import jakarta.validation.Valid;
@@ -12,6 +13,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
@@ -61,16 +63,37 @@ class BlacklistResource {
             @PathVariable long customerId,
             @PathVariable long userId,
             @PathVariable long id,
-            @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(blacklistService.getBlacklistEntry(customerId, userId, id, jwt));
+            @AuthenticationPrincipal Jwt jwt,
+            WebRequest request) {
+        String eTag = blacklistService.getBlacklistETag(customerId, userId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(blacklistService.getBlacklistEntry(customerId, userId, id, jwt));
     }
 
     @GetMapping("/{customerId}/users/{userId}/blacklist")
     ResponseEntity<List<BlacklistEntry>> listBlacklistEntries(
             @PathVariable long customerId,
             @PathVariable long userId,
-            @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(blacklistService.listBlacklistEntries(customerId, userId, jwt));
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt,
+            WebRequest request) {
+        String eTag = blacklistService.getBlacklistETag(customerId, userId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return PaginationUtil.toResponse(
+                blacklistService.listBlacklistEntries(
+                        customerId,
+                        userId,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt),
+                eTag);
     }
 
     @DeleteMapping("/{customerId}/users/{userId}/blacklist/{id}")
@@ -88,7 +111,7 @@ class BlacklistResource {
         LOG.debug("Notifying mailbox service of blacklist change");
 
         List<BlacklistEntry> blacklistEntries =
-                blacklistService.listBlacklistEntries(customerId, userId, jwt);
+                blacklistService.listAllBlacklistEntries(customerId, userId, jwt);
 
         mailboxServiceRestClient
                 .put()
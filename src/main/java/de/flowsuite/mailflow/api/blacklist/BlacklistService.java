@@ -1,5 +1,6 @@
 package de.flowsuite.mailflow.api.blacklist;
 
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.BlacklistEntry;
 import de.flowsuite.mailflow.common.exception.EntityAlreadyExistsException;
 import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
@@ -10,6 +11,9 @@ import de.flowsuite.mailflow.common.util.AuthorisationUtil;
 import de.flowsuite.mailflow.common.util.HmacUtil;
 import de.flowsuite.mailflow.common.util.Util;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 
@@ -19,9 +23,11 @@ import java.util.List;
 class BlacklistService {
 
     private final BlacklistRepository blacklistRepository;
+    private final EntityVersions entityVersions;
 
-    BlacklistService(BlacklistRepository blacklistRepository) {
+    BlacklistService(BlacklistRepository blacklistRepository, EntityVersions entityVersions) {
         this.blacklistRepository = blacklistRepository;
+        this.entityVersions = entityVersions;
     }
 
     BlacklistEntry createBlacklistEntry(
@@ -46,7 +52,9 @@ class BlacklistService {
         blacklistEntry.setBlacklistedEmailAddressHash(emailAddressHash);
         blacklistEntry.setBlacklistedEmailAddress(AesUtil.encrypt(emailAddress));
 
-        return blacklistRepository.save(blacklistEntry);
+        BlacklistEntry createdBlacklistEntry = blacklistRepository.save(blacklistEntry);
+        entityVersions.increment(EntityVersions.BLACKLIST, userId);
+        return createdBlacklistEntry;
     }
 
     BlacklistEntry getBlacklistEntry(long customerId, long userId, long id, Jwt jwt) {
@@ -71,20 +79,39 @@ class BlacklistService {
         return blacklistEntry;
     }
 
-    List<BlacklistEntry> listBlacklistEntries(long customerId, long userId, Jwt jwt) {
+    /** Returns the ETag shared by the blacklist entries of a user and the pages of them. */
+    String getBlacklistETag(long customerId, long userId, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+        return entityVersions.getETag(EntityVersions.BLACKLIST, userId);
+    }
+
+    Window<BlacklistEntry> listBlacklistEntries(
+            long customerId, long userId, ScrollPosition position, Limit limit, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+
+        return blacklistRepository
+                .findByUserIdOrderByIdAsc(userId, position, limit)
+                .map(BlacklistService::decryptBlacklistedEmailAddress);
+    }
+
+    /** Lists the complete blacklist of a user, which the mailbox service needs as a whole. */
+    List<BlacklistEntry> listAllBlacklistEntries(long customerId, long userId, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
         AuthorisationUtil.validateAccessToUser(userId, jwt);
 
         return blacklistRepository.findByUserId(userId).stream()
-                .map(
-                        blacklistEntry -> {
-                            blacklistEntry.setBlacklistedEmailAddress(
-                                    AesUtil.decrypt(blacklistEntry.getBlacklistedEmailAddress()));
-                            return blacklistEntry;
-                        })
+                .map(BlacklistService::decryptBlacklistedEmailAddress)
                 .toList();
     }
 
+    private static BlacklistEntry decryptBlacklistedEmailAddress(BlacklistEntry blacklistEntry) {
+        blacklistEntry.setBlacklistedEmailAddress(
+                AesUtil.decrypt(blacklistEntry.getBlacklistedEmailAddress()));
+        return blacklistEntry;
+    }
+
     void deleteBlacklistEntry(long customerId, long userId, long id, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
         AuthorisationUtil.validateAccessToUser(userId, jwt);
@@ -102,5 +129,6 @@ class BlacklistService {
         }
 
         blacklistRepository.delete(blacklistEntry);
+        entityVersions.increment(EntityVersions.BLACKLIST, userId);
     }
 }
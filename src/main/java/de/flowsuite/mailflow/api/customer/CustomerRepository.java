@@ -2,6 +2,9 @@ package de.flowsuite.mailflow.api.customer;
 
 import de.flowsuite.mailflow.common.entity.Customer;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -17,4 +20,6 @@ interface CustomerRepository extends CrudRepository<Customer, Long> {
     Optional<Customer> findByRegistrationToken(String registrationToken);
 
     boolean existsByIdAndTestVersionTrue(long id);
+
+    Window<Customer> findByOrderByIdAsc(ScrollPosition position, Limit limit);
 }
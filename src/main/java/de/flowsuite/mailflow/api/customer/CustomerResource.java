@@ -2,6 +2,7 @@ package de.flowsuite.mailflow.api.customer;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import de.flowsuite.mailflow.api.util.PaginationUtil;
 import de.flowsuite.mailflow.common.dto.UpdateCustomerCrawlStatusRequest;
 import de.flowsuite.mailflow.common.entity.Customer;
 
@@ -9,6 +10,8 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +21,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
@@ -56,19 +60,40 @@ class CustomerResource {
     }
 
     @GetMapping("/{id}")
-    ResponseEntity<Customer> getCustomer(@PathVariable long id, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(customerService.getCustomer(id, jwt));
+    ResponseEntity<Customer> getCustomer(
+            @PathVariable long id, @AuthenticationPrincipal Jwt jwt, WebRequest request) {
+        String eTag = customerService.getCustomerETag(id, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(customerService.getCustomer(id, jwt));
     }
 
     @GetMapping("/{id}/test-version")
     ResponseEntity<Boolean> getCustomerTestVersion(
-            @PathVariable long id, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(customerService.getCustomerTestVersion(id, jwt));
+            @PathVariable long id, @AuthenticationPrincipal Jwt jwt, WebRequest request) {
+        String eTag = customerService.getCustomerETag(id, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(customerService.getCustomerTestVersion(id, jwt));
     }
 
     @GetMapping()
-    ResponseEntity<List<Customer>> listCustomers() {
-        return ResponseEntity.ok(customerService.listCustomers());
+    ResponseEntity<List<Customer>> listCustomers(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            WebRequest request) {
+        String eTag = customerService.getCustomersETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return PaginationUtil.toResponse(
+                customerService.listCustomers(
+                        PaginationUtil.decodeCursor(cursor), PaginationUtil.limit(limit)),
+                eTag);
     }
 
     @PutMapping("/{id}")
@@ -97,6 +122,21 @@ class CustomerResource {
         return ResponseEntity.ok(customerService.updateCustomerCrawlStatus(id, request, jwt));
     }
 
+    @GetMapping("/{id}/token-quota")
+    ResponseEntity<TokenQuotaResponse> checkTokenQuota(
+            @PathVariable long id,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long tokens,
+            @AuthenticationPrincipal Jwt jwt) {
+        return ResponseEntity.ok(customerService.checkTokenQuota(id, tokens, jwt));
+    }
+
+    @PutMapping("/{id}/token-quota")
+    ResponseEntity<Void> updateTokenQuota(
+            @PathVariable long id, @RequestBody @Valid UpdateTokenQuotaRequest request) {
+        customerService.updateTokenQuota(id, request);
+        return ResponseEntity.noContent().build();
+    }
+
     private void notifyLlmService(Customer customer) {
         LOG.debug("Notifying llm service of customer change");
 
@@ -144,4 +184,11 @@ class CustomerResource {
             boolean testVersion,
             @Email String ionosUsername,
             String ionosPassword) {}
+
+    /** {@code monthlyTokenLimit} {@code null} falls back to the default limit. */
+    record UpdateTokenQuotaRequest(@Positive Long monthlyTokenLimit) {}
+
+    /** {@code monthlyTokenLimit} and {@code remainingTokens} are {@code null} if unlimited. */
+    record TokenQuotaResponse(
+            boolean allowed, long usedTokens, Long monthlyTokenLimit, Long remainingTokens) {}
 }
@@ -1,6 +1,7 @@
 package de.flowsuite.mailflow.api.customer;
 
 import de.flowsuite.mailflow.api.messagecategory.MessageCategoryService;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.dto.UpdateCustomerCrawlStatusRequest;
 import de.flowsuite.mailflow.common.entity.Customer;
 import de.flowsuite.mailflow.common.exception.*;
@@ -8,10 +9,12 @@ import de.flowsuite.mailflow.common.util.AesUtil;
 import de.flowsuite.mailflow.common.util.AuthorisationUtil;
 import de.flowsuite.mailflow.common.util.Util;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -25,11 +28,18 @@ public class CustomerService {
 
     private final CustomerRepository customerRepository;
     private final MessageCategoryService messageCategoryService;
+    private final EntityVersions entityVersions;
+    private final TokenQuotas tokenQuotas;
 
     CustomerService(
-            CustomerRepository customerRepository, MessageCategoryService messageCategoryService) {
+            CustomerRepository customerRepository,
+            MessageCategoryService messageCategoryService,
+            EntityVersions entityVersions,
+            TokenQuotas tokenQuotas) {
         this.customerRepository = customerRepository;
         this.messageCategoryService = messageCategoryService;
+        this.entityVersions = entityVersions;
+        this.tokenQuotas = tokenQuotas;
     }
 
     public Optional<Customer> getByRegistrationToken(String registrationToken) {
@@ -108,15 +118,32 @@ public class CustomerService {
             customer.setIonosPassword(AesUtil.encrypt(request.ionosPassword()));
         }
 
-        Customer createdCustomer = customerRepository.save(customer);
+        Customer createdCustomer = save(customer);
 
         messageCategoryService.createDefaultMessageCategories(createdCustomer.getId());
 
         return createdCustomer;
     }
 
-    List<Customer> listCustomers() {
-        return (List<Customer>) customerRepository.findAll();
+    /** Saves the customer and increments the versions of both the customer and the list. */
+    private Customer save(Customer customer) {
+        Customer savedCustomer = customerRepository.save(customer);
+        entityVersions.increment(EntityVersions.CUSTOMERS, savedCustomer.getId());
+        entityVersions.increment(EntityVersions.CUSTOMERS, EntityVersions.GLOBAL_SCOPE);
+        return savedCustomer;
+    }
+
+    String getCustomersETag() {
+        return entityVersions.getETag(EntityVersions.CUSTOMERS, EntityVersions.GLOBAL_SCOPE);
+    }
+
+    Window<Customer> listCustomers(ScrollPosition position, Limit limit) {
+        return customerRepository.findByOrderByIdAsc(position, limit);
+    }
+
+    String getCustomerETag(long id, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(id, jwt);
+        return entityVersions.getETag(EntityVersions.CUSTOMERS, id);
     }
 
     public Customer getCustomer(long id, Jwt jwt) {
@@ -196,7 +223,7 @@ public class CustomerService {
             }
         }
 
-        return customerRepository.save(updatedCustomer);
+        return save(updatedCustomer);
     }
 
     Customer updateCustomerTestVersion(
@@ -227,7 +254,7 @@ public class CustomerService {
             customer.setIonosPassword(null);
         }
 
-        return customerRepository.save(customer);
+        return save(customer);
     }
 
     Customer updateCustomerCrawlStatus(long id, UpdateCustomerCrawlStatusRequest request, Jwt jwt) {
@@ -255,6 +282,28 @@ public class CustomerService {
         customer.setLastCrawlAt(request.lastCrawlAt());
         customer.setNextCrawlAt(request.nextCrawlAt());
 
-        return customerRepository.save(customer);
+        return save(customer);
+    }
+
+    /** Tells whether the customer may spend {@code tokens} more LLM tokens this month. */
+    CustomerResource.TokenQuotaResponse checkTokenQuota(long id, long tokens, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(id, jwt);
+
+        long usedTokens = tokenQuotas.getUsedTokens(id);
+        Long monthlyTokenLimit = tokenQuotas.getMonthlyLimit(id);
+        if (monthlyTokenLimit == null) {
+            return new CustomerResource.TokenQuotaResponse(true, usedTokens, null, null);
+        }
+
+        long remainingTokens = Math.max(0, monthlyTokenLimit - usedTokens);
+        return new CustomerResource.TokenQuotaResponse(
+                tokens <= remainingTokens, usedTokens, monthlyTokenLimit, remainingTokens);
+    }
+
+    void updateTokenQuota(long id, CustomerResource.UpdateTokenQuotaRequest request) {
+        if (!customerRepository.existsById(id)) {
+            throw new EntityNotFoundException(Customer.class.getSimpleName());
+        }
+        tokenQuotas.setMonthlyLimit(id, request.monthlyTokenLimit());
     }
 }
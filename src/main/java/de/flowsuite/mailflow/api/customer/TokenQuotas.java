@@ -0,0 +1,226 @@
+package de.flowsuite.mailflow.api.customer;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.api.messagelog.MessageLogEntriesCreatedEvent;
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Meters the LLM tokens of every customer per calendar month and answers quota checks in
+ * constant time. Committed message log entries add their tokens to a {@link LongAdder} per
+ * customer and month, which stripes concurrent increments across cells. The accumulated tokens
+ * are added to {@code customer_token_usage} every {@code flushInterval}; customers without new
+ * tokens are only read, which picks up the tokens metered by other instances. A quota check
+ * reads the last persisted total plus the tokens not yet flushed, so nothing is summed over the
+ * message log.
+ *
+ * <p>The monthly limit defaults to {@code defaultMonthlyLimit}, {@code 0} meaning unlimited, and
+ * can be overridden per customer in {@code customer_token_quotas}. Limits are cached until the
+ * next flush, so a limit changed through another instance applies within {@code flushInterval}.
+ */
+@Component
+class TokenQuotas {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenQuotas.class);
+
+    private static final String ADD_USAGE_SQL =
+            """
+            INSERT INTO customer_token_usage (customer_id, month, tokens)
+            VALUES (?, ?, ?)
+            ON CONFLICT (customer_id, month) DO UPDATE SET
+                tokens = customer_token_usage.tokens + EXCLUDED.tokens
+            RETURNING tokens
+            """;
+
+    private static final String UPSERT_LIMIT_SQL =
+            """
+            INSERT INTO customer_token_quotas (customer_id, monthly_token_limit)
+            VALUES (?, ?)
+            ON CONFLICT (customer_id) DO UPDATE SET
+                monthly_token_limit = EXCLUDED.monthly_token_limit
+            """;
+
+    private final long defaultMonthlyLimit;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Usage.Key, Usage> usages = new ConcurrentHashMap<>();
+    private final Map<Long, Optional<Long>> limits = new ConcurrentHashMap<>();
+
+    TokenQuotas(
+            @Value("${mailflow.token-quota.default-monthly-limit}") long defaultMonthlyLimit,
+            JdbcTemplate jdbcTemplate) {
+        this.defaultMonthlyLimit = defaultMonthlyLimit;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Covers single, batch and write-behind inserts, once they are committed
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        // The tokens count against the month they are reported in, which is when they are billed
+        YearMonth currentMonth = YearMonth.now(BERLIN_ZONE);
+        for (MessageLogEntry messageLogEntry : event.messageLogEntries()) {
+            long tokens =
+                    tokensOf(messageLogEntry.getCategorisationTotalTokens())
+                            + tokensOf(messageLogEntry.getTotalTokens());
+            if (tokens > 0) {
+                usageOf(messageLogEntry.getCustomerId(), currentMonth).pending().add(tokens);
+            }
+        }
+    }
+
+    /** Returns the tokens the customer has used in the current month. */
+    long getUsedTokens(long customerId) {
+        Usage usage = usageOf(customerId, YearMonth.now(BERLIN_ZONE));
+        return usage.persisted() + usage.pending().sum();
+    }
+
+    /** Returns the customer's monthly limit, or {@code null} if it is unlimited. */
+    Long getMonthlyLimit(long customerId) {
+        return limits.computeIfAbsent(
+                        customerId,
+                        id -> {
+                            List<Long> overrides =
+                                    jdbcTemplate.queryForList(
+                                            "SELECT monthly_token_limit FROM customer_token_quotas"
+                                                    + " WHERE customer_id = ?",
+                                            Long.class,
+                                            id);
+                            long limit =
+                                    overrides.isEmpty() ? defaultMonthlyLimit : overrides.get(0);
+                            return limit > 0 ? Optional.of(limit) : Optional.empty();
+                        })
+                .orElse(null);
+    }
+
+    /**
+     * @param monthlyLimit the customer's limit, or {@code null} to fall back to the default
+     */
+    void setMonthlyLimit(long customerId, Long monthlyLimit) {
+        if (monthlyLimit == null) {
+            jdbcTemplate.update(
+                    "DELETE FROM customer_token_quotas WHERE customer_id = ?", customerId);
+        } else {
+            jdbcTemplate.update(UPSERT_LIMIT_SQL, customerId, monthlyLimit);
+        }
+        limits.remove(customerId);
+    }
+
+    @Scheduled(fixedDelayString = "${mailflow.token-quota.flush-interval}")
+    void flush() {
+        YearMonth currentMonth = YearMonth.now(BERLIN_ZONE);
+        usages.forEach(
+                (key, usage) -> {
+                    long tokens = usage.pending().sum();
+                    boolean pastMonth = key.month().isBefore(currentMonth);
+                    if (tokens == 0 && pastMonth) {
+                        usages.remove(key);
+                        return;
+                    }
+
+                    try {
+                        if (tokens == 0) {
+                            // Nothing to add, only picks up the tokens of other instances
+                            usage.setPersisted(loadTokens(key.customerId(), key.month()));
+                        } else {
+                            Long persisted =
+                                    jdbcTemplate.queryForObject(
+                                            ADD_USAGE_SQL,
+                                            Long.class,
+                                            key.customerId(),
+                                            Date.valueOf(key.month().atDay(1)),
+                                            tokens);
+                            // Counted twice until the adder is decremented, never undercounted
+                            usage.setPersisted(persisted == null ? 0 : persisted);
+                            usage.pending().add(-tokens);
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.error(
+                                "Failed to persist token usage of customer {}",
+                                key.customerId(),
+                                e);
+                        return;
+                    }
+
+                    if (pastMonth && usage.pending().sum() == 0) {
+                        usages.remove(key);
+                    }
+                });
+        limits.clear();
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private Usage usageOf(long customerId, YearMonth month) {
+        Usage.Key key = new Usage.Key(customerId, month);
+        Usage usage = usages.get(key);
+        if (usage != null) {
+            return usage;
+        }
+
+        // Loaded outside the map, computeIfAbsent would hold one of its locks during the query. If
+        // another thread got there first, its usage wins, along with any tokens added to it.
+        Usage loadedUsage = new Usage(loadTokens(customerId, month));
+        Usage existingUsage = usages.putIfAbsent(key, loadedUsage);
+        return existingUsage != null ? existingUsage : loadedUsage;
+    }
+
+    private long loadTokens(long customerId, YearMonth month) {
+        List<Long> tokens =
+                jdbcTemplate.queryForList(
+                        "SELECT tokens FROM customer_token_usage"
+                                + " WHERE customer_id = ? AND month = ?",
+                        Long.class,
+                        customerId,
+                        Date.valueOf(month.atDay(1)));
+        return tokens.isEmpty() ? 0 : tokens.get(0);
+    }
+
+    private static long tokensOf(Integer tokens) {
+        return tokens == null ? 0 : tokens;
+    }
+
+    private static final class Usage {
+
+        private final LongAdder pending = new LongAdder();
+        private volatile long persisted;
+
+        private Usage(long persisted) {
+            this.persisted = persisted;
+        }
+
+        LongAdder pending() {
+            return pending;
+        }
+
+        long persisted() {
+            return persisted;
+        }
+
+        void setPersisted(long persisted) {
+            this.persisted = persisted;
+        }
+
+        private record Key(long customerId, YearMonth month) {}
+    }
+}
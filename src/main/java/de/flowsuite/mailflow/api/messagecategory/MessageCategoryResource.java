@@ -12,6 +12,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
@@ -63,14 +64,27 @@ class MessageCategoryResource {
     ResponseEntity<MessageCategory> getMessageCategory(
             @PathVariable long customerId,
             @PathVariable long id,
-            @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(messageCategoryService.getMessageCategory(customerId, id, jwt));
+            @AuthenticationPrincipal Jwt jwt,
+            WebRequest request) {
+        String eTag = messageCategoryService.getMessageCategoriesETag(customerId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(messageCategoryService.getMessageCategory(customerId, id, jwt));
     }
 
     @GetMapping("/{customerId}/message-categories")
     ResponseEntity<List<MessageCategory>> listMessageCategories(
-            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(messageCategoryService.listMessageCategories(customerId, jwt));
+            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt, WebRequest request) {
+        String eTag = messageCategoryService.getMessageCategoriesETag(customerId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(messageCategoryService.listMessageCategories(customerId, jwt));
     }
 
     @PutMapping("/{customerId}/message-categories/{id}")
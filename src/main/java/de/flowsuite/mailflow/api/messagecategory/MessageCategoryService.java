@@ -1,5 +1,6 @@
 package de.flowsuite.mailflow.api.messagecategory;
 
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.MessageCategory;
 import de.flowsuite.mailflow.common.exception.*;
 import de.flowsuite.mailflow.common.util.AuthorisationUtil;
@@ -18,9 +19,12 @@ public class MessageCategoryService {
     private static final int MIN_DESCRIPTION_LENGTH = 100;
 
     private final MessageCategoryRepository messageCategoryRepository;
+    private final EntityVersions entityVersions;
 
-    MessageCategoryService(MessageCategoryRepository messageCategoryRepository) {
+    MessageCategoryService(
+            MessageCategoryRepository messageCategoryRepository, EntityVersions entityVersions) {
         this.messageCategoryRepository = messageCategoryRepository;
+        this.entityVersions = entityVersions;
     }
 
     MessageCategory createMessageCategory(
@@ -50,7 +54,9 @@ public class MessageCategoryService {
             throw new MessageCategoryDescriptionException(MIN_DESCRIPTION_LENGTH);
         }
 
-        return messageCategoryRepository.save(messageCategory);
+        MessageCategory createdMessageCategory = messageCategoryRepository.save(messageCategory);
+        entityVersions.increment(EntityVersions.MESSAGE_CATEGORIES, customerId);
+        return createdMessageCategory;
     }
 
     public void createDefaultMessageCategories(long customerId) {
@@ -87,6 +93,7 @@ public class MessageCategoryService {
 
         messageCategoryRepository.save(defaultMessageCategory);
         messageCategoryRepository.save(noReplyMessageCategory);
+        entityVersions.increment(EntityVersions.MESSAGE_CATEGORIES, customerId);
     }
 
     MessageCategory getMessageCategory(long customerId, long id, Jwt jwt) {
@@ -107,6 +114,12 @@ public class MessageCategoryService {
         return messageCategory;
     }
 
+    /** Returns the ETag shared by the message categories of a customer and the list of them. */
+    String getMessageCategoriesETag(long customerId, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        return entityVersions.getETag(EntityVersions.MESSAGE_CATEGORIES, customerId);
+    }
+
     List<MessageCategory> listMessageCategories(long customerId, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
 
@@ -138,7 +151,10 @@ public class MessageCategoryService {
             throw new MessageCategoryDescriptionException(MIN_DESCRIPTION_LENGTH);
         }
 
-        return messageCategoryRepository.save(updatedMessageCategory);
+        MessageCategory savedMessageCategory =
+                messageCategoryRepository.save(updatedMessageCategory);
+        entityVersions.increment(EntityVersions.MESSAGE_CATEGORIES, customerId);
+        return savedMessageCategory;
     }
 
     void deleteMessageCategory(long customerId, long id, Jwt jwt) {
@@ -165,5 +181,6 @@ public class MessageCategoryService {
         }
 
         messageCategoryRepository.delete(messageCategory);
+        entityVersions.increment(EntityVersions.MESSAGE_CATEGORIES, customerId);
     }
 }
@@ -0,0 +1,35 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+/**
+ * What a message log analytics query groups by (see {@link MessageLogQueryEngine}). {@code ?}
+ * stands for the truncation unit of {@link #PERIOD}, whose periods start at midnight Berlin time
+ * whatever the time zone of the session.
+ */
+enum AnalyticsDimension {
+    CATEGORY("m.category", "r.category"),
+    LANGUAGE("m.language", null),
+    LLM_USED("m.llm_used", null),
+    REPLIED("m.replied", null),
+    USER("m.user_id", "r.user_id"),
+    PERIOD(
+            "DATE_TRUNC(?, m.received_at AT TIME ZONE 'Europe/Berlin')",
+            "DATE_TRUNC(?, r.bucket_start AT TIME ZONE 'Europe/Berlin')");
+
+    private final String messageLogExpression;
+    private final String rollupExpression;
+
+    AnalyticsDimension(String messageLogExpression, String rollupExpression) {
+        this.messageLogExpression = messageLogExpression;
+        this.rollupExpression = rollupExpression;
+    }
+
+    /** Expression over {@code message_log m}. */
+    String getMessageLogExpression() {
+        return messageLogExpression;
+    }
+
+    /** Expression over {@code message_log_rollups r}, or {@code null} if they lack the column. */
+    String getRollupExpression() {
+        return rollupExpression;
+    }
+}
@@ -0,0 +1,43 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+/** What a message log analytics query computes per group (see {@link MessageLogQueryEngine}). */
+enum AnalyticsMeasure {
+    COUNT("COUNT(*)", "SUM(r.message_count)"),
+    TOTAL_TOKENS(
+            "SUM(COALESCE(m.categorisation_total_tokens, 0) + COALESCE(m.total_tokens, 0))",
+            "SUM(r.categorisation_total_tokens_sum + r.total_tokens_sum)"),
+    AVG_PROCESSING_TIME(
+            "AVG(m.processing_time_in_seconds)::float8",
+            "SUM(r.processing_time_sum)::float8 / SUM(r.message_count)"),
+    P50_PROCESSING_TIME(
+            "PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY m.processing_time_in_seconds)", null),
+    P95_PROCESSING_TIME(
+            "PERCENTILE_CONT(0.95) WITHIN GROUP (ORDER BY m.processing_time_in_seconds)", null),
+    REPLY_RATE(
+            "AVG(CASE WHEN m.replied THEN 1 ELSE 0 END)::float8",
+            "SUM(r.replied_count)::float8 / SUM(r.message_count)"),
+    // Entries without a rating do not count, the average is null if none is rated
+    AVG_RATING("AVG(rr.rating)::float8", null);
+
+    private final String messageLogExpression;
+    private final String rollupExpression;
+
+    AnalyticsMeasure(String messageLogExpression, String rollupExpression) {
+        this.messageLogExpression = messageLogExpression;
+        this.rollupExpression = rollupExpression;
+    }
+
+    /** Aggregate over {@code message_log m}, joined with {@code response_ratings rr}. */
+    String getMessageLogExpression() {
+        return messageLogExpression;
+    }
+
+    /** Aggregate over {@code message_log_rollups r}, or {@code null} if they cannot answer it. */
+    String getRollupExpression() {
+        return rollupExpression;
+    }
+
+    boolean needsRatings() {
+        return this == AVG_RATING;
+    }
+}
@@ -0,0 +1,11 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+/** Where {@link MessageLogQueryEngine} answered a query from. */
+enum AnalyticsQuerySource {
+    /** The recent message log held in memory by {@link MessageLogColumnStore}. */
+    COLUMN_STORE,
+    /** The hourly {@code message_log_rollups}. */
+    ROLLUPS,
+    /** The {@code message_log} table. */
+    MESSAGE_LOG
+}
@@ -0,0 +1,57 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over values that already are uniformly distributed hashes, such as SHA-256
+ * fingerprints. Callers pass 128 bits of a value as two 64-bit hashes, from which the bit
+ * positions are derived by double hashing. Bits are set atomically, so lookups need no lock while
+ * values are added.
+ */
+final class BloomFilter {
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+
+    /**
+     * @param capacity the number of values up to which the false positive rate holds
+     */
+    BloomFilter(int capacity, double falsePositiveRate) {
+        long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED);
+        this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+        this.bitCount = words.length() * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.capacity = capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void add(long hash1, long hash2) {
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = words.get(word)) & mask) == 0
+                    && !words.compareAndSet(word, current, current | mask)) {
+                // Another bit of the word was set concurrently, retry with the new value
+            }
+        }
+    }
+
+    boolean mightContain(long hash1, long hash2) {
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+/**
+ * HyperLogLog distinct counter with 2^{@value #PRECISION} one-byte registers, about 3% standard
+ * error in a fixed kilobyte. Sketches merge by taking the maximum of each register, so a count over
+ * several days or users is estimated from the merged sketches of those days or users.
+ */
+final class HyperLogLog {
+
+    static final int PRECISION = 10;
+    private static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+
+    private final byte[] registers;
+
+    HyperLogLog() {
+        this(new byte[REGISTER_COUNT]);
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != REGISTER_COUNT) {
+            return new HyperLogLog();
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    byte[] toBytes() {
+        return registers.clone();
+    }
+
+    /** Adds an item by its uniformly distributed 64-bit hash. */
+    void add(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        long remaining = hash << PRECISION;
+        int rank = Math.min(Long.numberOfLeadingZeros(remaining), Long.SIZE - PRECISION) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeroRegisters++;
+            }
+        }
+
+        double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / sum;
+        // Linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * REGISTER_COUNT && zeroRegisters > 0) {
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+}
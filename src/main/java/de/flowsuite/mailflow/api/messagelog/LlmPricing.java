@@ -0,0 +1,20 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Prices of the LLMs recorded in the message log, per million tokens and keyed by the model name
+ * as stored in {@code llm_used} and {@code categorisation_llm_used}.
+ */
+@ConfigurationProperties(prefix = "mailflow.llm-pricing")
+record LlmPricing(String currency, Map<String, ModelPrice> models) {
+
+    LlmPricing {
+        models = models == null ? Map.of() : Map.copyOf(models);
+    }
+
+    record ModelPrice(BigDecimal inputPerMillionTokens, BigDecimal outputPerMillionTokens) {}
+}
@@ -0,0 +1,446 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import jakarta.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Moves message log entries older than their customer's retention period out of {@code
+ * message_log} into {@link MessageLogSegment} files, one per customer and month. Rollups are not
+ * touched, so analytics still cover archived entries; response ratings are deleted with their
+ * entries. The retention period defaults to {@code defaultRetentionDays} and can be overridden
+ * per customer in {@code message_log_retention}.
+ */
+@Component
+class MessageLogArchive {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogArchive.class);
+    private static final DateTimeFormatter SEGMENT_MONTH =
+            DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final Comparator<MessageLogEntry> ORDER =
+            Comparator.comparing(MessageLogEntry::getReceivedAt)
+                    .thenComparing(MessageLogEntry::getId);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int defaultRetentionDays;
+    private final MessageLogRepository messageLogRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // As of the last run, which is what the entries still in message_log were archived by
+    private final Map<Long, Integer> retentionDaysByCustomer = new ConcurrentHashMap<>();
+
+    MessageLogArchive(
+            @Value("${mailflow.message-log.archive.enabled}") boolean enabled,
+            @Value("${mailflow.message-log.archive.directory}") Path directory,
+            @Value("${mailflow.message-log.archive.default-retention-days}")
+                    int defaultRetentionDays,
+            MessageLogRepository messageLogRepository,
+            EntityManager entityManager,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.defaultRetentionDays = defaultRetentionDays;
+        this.messageLogRepository = messageLogRepository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${mailflow.message-log.archive.cron}", zone = "UTC")
+    void archive() {
+        if (!enabled) {
+            return;
+        }
+
+        recoverPendingSegments();
+
+        List<Map<String, Object>> retentions =
+                jdbcTemplate.queryForList(
+                        """
+                        SELECT c.id AS customer_id,
+                            COALESCE(r.retention_days, ?) AS retention_days
+                        FROM customers c
+                        LEFT JOIN message_log_retention r ON r.customer_id = c.id
+                        """,
+                        defaultRetentionDays);
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        for (Map<String, Object> retention : retentions) {
+            long customerId = ((Number) retention.get("customer_id")).longValue();
+            int retentionDays = ((Number) retention.get("retention_days")).intValue();
+            retentionDaysByCustomer.put(customerId, retentionDays);
+            try {
+                archiveCustomer(customerId, now.minusDays(retentionDays));
+            } catch (RuntimeException e) {
+                LOG.error("Failed to archive message log of customer {}", customerId, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the time from which the customer's entries are still in {@code message_log}, or
+     * {@code null} if none are archived.
+     */
+    ZonedDateTime retainedFrom(long customerId) {
+        if (!enabled) {
+            return null;
+        }
+
+        Integer retentionDays = retentionDaysByCustomer.get(customerId);
+        if (retentionDays == null) {
+            retentionDays =
+                    jdbcTemplate.queryForObject(
+                            """
+                            SELECT COALESCE(
+                                (SELECT retention_days FROM message_log_retention
+                                 WHERE customer_id = ?), ?)
+                            """,
+                            Integer.class,
+                            customerId,
+                            defaultRetentionDays);
+            retentionDaysByCustomer.putIfAbsent(customerId, retentionDays);
+        }
+        return ZonedDateTime.now(ZoneOffset.UTC).minusDays(retentionDays);
+    }
+
+    private void archiveCustomer(long customerId, ZonedDateTime cutoff) {
+        List<Timestamp> months =
+                jdbcTemplate.queryForList(
+                        """
+                        SELECT DISTINCT DATE_TRUNC('month', received_at AT TIME ZONE 'UTC')
+                        FROM message_log
+                        WHERE customer_id = ? AND received_at < ?
+                        """,
+                        Timestamp.class,
+                        customerId,
+                        cutoff.toOffsetDateTime());
+
+        for (Timestamp month : months) {
+            ZonedDateTime monthStart = month.toLocalDateTime().atZone(ZoneOffset.UTC);
+            ZonedDateTime monthEnd = monthStart.plusMonths(1);
+            archiveRange(customerId, monthStart, monthEnd.isBefore(cutoff) ? monthEnd : cutoff);
+        }
+    }
+
+    /**
+     * Writes the entries received between {@code from} and {@code to} to a new segment and deletes
+     * exactly those entries in the same transaction as the segment is registered. The segment is
+     * written under a pending name and only renamed once the transaction has committed, so a
+     * rolled back run leaves no segment behind. A customer is archived by one run at a time, a
+     * run that finds another one at work skips the customer.
+     */
+    private void archiveRange(long customerId, ZonedDateTime from, ZonedDateTime to) {
+        Long segmentId =
+                jdbcTemplate.queryForObject(
+                        "SELECT nextval('message_log_archive_segments_id_seq')", Long.class);
+        Path path = segmentPath(customerId, from, segmentId);
+        Path pendingPath = pendingPath(path);
+
+        Integer rowCount;
+        try {
+            rowCount =
+                    transactionTemplate.execute(
+                            status -> writeSegment(customerId, from, to, segmentId, path));
+        } catch (RuntimeException e) {
+            deletePendingSegment(pendingPath);
+            throw e;
+        }
+        if (rowCount == null || rowCount == 0) {
+            return;
+        }
+
+        try {
+            Files.move(pendingPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The segment is registered, the next run or read recovers it
+            LOG.error("Failed to rename message log segment {}", pendingPath, e);
+            return;
+        }
+
+        LOG.info(
+                "Archived {} message log entries of customer {} to {}",
+                rowCount,
+                customerId,
+                path);
+    }
+
+    private int writeSegment(
+            long customerId, ZonedDateTime from, ZonedDateTime to, long segmentId, Path path) {
+        // Overlapping runs, e.g. on two instances, would archive the same entries twice. The lock
+        // is released when the transaction ends.
+        Boolean locked =
+                jdbcTemplate.queryForObject(
+                        "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, customerId);
+        if (!Boolean.TRUE.equals(locked)) {
+            LOG.info("Message log of customer {} is being archived by another run", customerId);
+            return 0;
+        }
+
+        Path pendingPath = pendingPath(path);
+        List<Long> archivedIds = new ArrayList<>();
+        int rowCount;
+        try (Stream<MessageLogEntry> messageLogEntries =
+                messageLogRepository.streamForExport(customerId, from, to, null)) {
+            Files.createDirectories(path.getParent());
+            Iterator<MessageLogEntry> iterator =
+                    messageLogEntries
+                            .peek(
+                                    messageLogEntry -> {
+                                        entityManager.detach(messageLogEntry);
+                                        archivedIds.add(messageLogEntry.getId());
+                                    })
+                            .iterator();
+            rowCount = MessageLogSegment.write(pendingPath, customerId, iterator);
+            if (rowCount == 0) {
+                Files.delete(pendingPath);
+                return 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        jdbcTemplate.update(
+                """
+                INSERT INTO message_log_archive_segments (
+                    id, customer_id, range_start, range_end, file_name, row_count)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """,
+                segmentId,
+                customerId,
+                from.toOffsetDateTime(),
+                to.toOffsetDateTime(),
+                directory.relativize(path).toString(),
+                rowCount);
+
+        // Entries written meanwhile into the archived range stay for the next run
+        int deletedCount =
+                jdbcTemplate.update(
+                        """
+                        DELETE FROM message_log
+                        WHERE customer_id = ?
+                          AND received_at >= ?
+                          AND received_at < ?
+                          AND id = ANY (?)
+                        """,
+                        ps -> {
+                            ps.setLong(1, customerId);
+                            ps.setObject(2, from.toOffsetDateTime());
+                            ps.setObject(3, to.toOffsetDateTime());
+                            ps.setArray(
+                                    4,
+                                    ps.getConnection()
+                                            .createArrayOf("bigint", archivedIds.toArray()));
+                        });
+        if (deletedCount != archivedIds.size()) {
+            // Some of them were deleted by another run meanwhile, so this segment must not count
+            throw new IllegalStateException(
+                    String.format(
+                            "Deleted %d of %d archived message log entries of customer %d",
+                            deletedCount, archivedIds.size(), customerId));
+        }
+
+        return rowCount;
+    }
+
+    /**
+     * Renames pending segments whose transaction committed before the rename, and deletes those
+     * whose transaction did not.
+     */
+    private void recoverPendingSegments() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        List<Path> pendingPaths;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            pendingPaths =
+                    paths.filter(path -> path.toString().endsWith(PENDING_SUFFIX)).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (Path pendingPath : pendingPaths) {
+            String fileName = pendingPath.getFileName().toString();
+            Path path =
+                    pendingPath.resolveSibling(
+                            fileName.substring(0, fileName.length() - PENDING_SUFFIX.length()));
+            Integer registered =
+                    jdbcTemplate.queryForObject(
+                            "SELECT COUNT(*) FROM message_log_archive_segments WHERE file_name = ?",
+                            Integer.class,
+                            directory.relativize(path).toString());
+            try {
+                if (registered != null && registered > 0) {
+                    Files.move(pendingPath, path, StandardCopyOption.ATOMIC_MOVE);
+                    LOG.info("Recovered message log segment {}", path);
+                } else {
+                    Files.delete(pendingPath);
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to recover message log segment {}", pendingPath, e);
+            }
+        }
+    }
+
+    private static void deletePendingSegment(Path pendingPath) {
+        try {
+            Files.deleteIfExists(pendingPath);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete message log segment {}", pendingPath, e);
+        }
+    }
+
+    /**
+     * Reads a page of the archived entries of a customer that were received between {@code from}
+     * (inclusive) and {@code to} (exclusive), oldest first. Segments of a month may overlap, so
+     * they are read in order of their start until no later segment can contribute to the page.
+     *
+     * @param after the keyset of the last entry of the previous page, or {@code null} for the
+     *     first page
+     */
+    Window<MessageLogEntry> read(
+            long customerId, ZonedDateTime from, ZonedDateTime to, Keyset after, Limit limit) {
+        ZonedDateTime lowerBound =
+                after != null && after.receivedAt().isAfter(from) ? after.receivedAt() : from;
+        List<Segment> segments =
+                jdbcTemplate.query(
+                        """
+                        SELECT file_name, range_start
+                        FROM message_log_archive_segments
+                        WHERE customer_id = ?
+                          AND range_start < ?
+                          AND range_end > ?
+                        ORDER BY range_start, id
+                        """,
+                        (rs, rowNum) ->
+                                new Segment(
+                                        rs.getString("file_name"),
+                                        rs.getObject("range_start", OffsetDateTime.class)
+                                                .toZonedDateTime()),
+                        customerId,
+                        to.toOffsetDateTime(),
+                        lowerBound.toOffsetDateTime());
+
+        // The limit + 1 oldest matches so far, newest on top; one more tells whether there is a
+        // next page
+        int capacity = limit.max() + 1;
+        PriorityQueue<MessageLogEntry> page = new PriorityQueue<>(capacity, ORDER.reversed());
+        for (Segment segment : segments) {
+            if (page.size() == capacity
+                    && segment.rangeStart().isAfter(page.peek().getReceivedAt())) {
+                break;
+            }
+
+            for (MessageLogEntry messageLogEntry : readSegment(segment.fileName())) {
+                ZonedDateTime receivedAt = messageLogEntry.getReceivedAt();
+                if (receivedAt.isBefore(from)
+                        || !receivedAt.isBefore(to)
+                        || (after != null && !after.isBefore(messageLogEntry))) {
+                    continue;
+                }
+                if (page.size() < capacity) {
+                    page.add(messageLogEntry);
+                } else if (ORDER.compare(messageLogEntry, page.peek()) < 0) {
+                    page.poll();
+                    page.add(messageLogEntry);
+                }
+            }
+        }
+
+        List<MessageLogEntry> matches = new ArrayList<>(page);
+        matches.sort(ORDER);
+        boolean hasNext = matches.size() > limit.max();
+        List<MessageLogEntry> content = hasNext ? matches.subList(0, limit.max()) : matches;
+        return Window.from(
+                content, index -> Keyset.of(content.get(index)).toScrollPosition(), hasNext);
+    }
+
+    private List<MessageLogEntry> readSegment(String fileName) {
+        Path path = directory.resolve(fileName);
+        Path pendingPath = pendingPath(path);
+        try {
+            // Registered segments are only pending if the rename after the commit failed
+            return MessageLogSegment.read(
+                    Files.notExists(path) && Files.exists(pendingPath) ? pendingPath : path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path pendingPath(Path path) {
+        return path.resolveSibling(path.getFileName() + PENDING_SUFFIX);
+    }
+
+    private Path segmentPath(long customerId, ZonedDateTime from, long segmentId) {
+        return directory
+                .resolve(String.valueOf(customerId))
+                .resolve(SEGMENT_MONTH.format(from) + "-" + segmentId + ".seg");
+    }
+
+    private record Segment(String fileName, ZonedDateTime rangeStart) {}
+
+    /** Sort keys of an archived entry, encoded in the cursor of the next page. */
+    record Keyset(ZonedDateTime receivedAt, long id) {
+
+        static Keyset of(MessageLogEntry messageLogEntry) {
+            return new Keyset(messageLogEntry.getReceivedAt(), messageLogEntry.getId());
+        }
+
+        ScrollPosition toScrollPosition() {
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("receivedAt", receivedAt);
+            keys.put("id", id);
+            return ScrollPosition.forward(keys);
+        }
+
+        /** Returns the keyset of a cursor, or {@code null} if it has different keys. */
+        static Keyset of(Map<String, Object> keys) {
+            if (keys.get("receivedAt") instanceof ZonedDateTime receivedAt
+                    && keys.get("id") instanceof Long id) {
+                return new Keyset(receivedAt, id);
+            }
+            return null;
+        }
+
+        boolean isBefore(MessageLogEntry messageLogEntry) {
+            int compared = receivedAt.compareTo(messageLogEntry.getReceivedAt());
+            return compared < 0 || (compared == 0 && id < messageLogEntry.getId());
+        }
+    }
+}
@@ -0,0 +1,780 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the message log of the last {@code window} in memory, column by column, for the customers
+ * whose analytics were queried most recently, so that {@link MessageLogQueryEngine} can answer
+ * most dashboard queries without a database round trip.
+ *
+ * <p>Every column is a primitive array indexed by row: receive times as epoch milliseconds,
+ * categories, languages, models and users as codes into a per-customer dictionary, processing
+ * times, tokens and a replied bit. A query is a single pass over the arrays that adds each row in
+ * range to the sums of its group, which are dense arrays indexed by the group's dimension codes.
+ *
+ * <p>A customer's columns are loaded on their first query and appended to from the ingest path
+ * once entries are committed. Entries committed while the columns are loaded are buffered and
+ * merged by id, so none is counted twice. Entries written by other instances are seen once the
+ * columns are reloaded, {@code refreshInterval} after they were loaded. Rows that fall out of the
+ * window are dropped every {@code compactionInterval}. Customers with more than {@code
+ * maxRowsPerCustomer} rows in the window, and queries the columns cannot answer, are left to the
+ * database.
+ *
+ * <p>At most {@code maxRows} rows are kept in all, about 50 bytes each. Beyond that the columns of
+ * the customers queried least recently are dropped.
+ */
+@Component
+class MessageLogColumnStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogColumnStore.class);
+    // Upper bound of the group arrays, e.g. 30 categories x 2 replied x 744 hours in a month
+    private static final int MAX_CELLS = 1 << 16;
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final String LOAD_SQL =
+            """
+            SELECT id, received_at, user_id, category, language, llm_used, replied,
+                processing_time_in_seconds, categorisation_total_tokens, total_tokens
+            FROM message_log
+            WHERE customer_id = ? AND received_at >= ?
+            LIMIT ?
+            """;
+
+    private static final Set<AnalyticsMeasure> SUPPORTED_MEASURES =
+            Collections.unmodifiableSet(
+                    EnumSet.complementOf(EnumSet.of(AnalyticsMeasure.AVG_RATING)));
+
+    private final boolean enabled;
+    private final Duration window;
+    private final long maxRows;
+    private final int maxRowsPerCustomer;
+    private final Duration refreshInterval;
+    // Looked up without a lock, so that ingestion neither waits for queries nor counts as one
+    private final Map<Long, Columns> columnsByCustomer = new ConcurrentHashMap<>();
+    // The same columns, least recently queried first; guarded by itself, as are changes to both
+    private final Map<Long, Columns> columnsByRecency;
+    // Rows held by the columns of all customers
+    private final AtomicLong rowCount = new AtomicLong();
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogColumnStore(
+            @Value("${mailflow.message-log.column-store.enabled}") boolean enabled,
+            @Value("${mailflow.message-log.column-store.window}") Duration window,
+            @Value("${mailflow.message-log.column-store.max-customers}") int maxCustomers,
+            @Value("${mailflow.message-log.column-store.max-rows}") long maxRows,
+            @Value("${mailflow.message-log.column-store.max-rows-per-customer}")
+                    int maxRowsPerCustomer,
+            @Value("${mailflow.message-log.column-store.refresh-interval}")
+                    Duration refreshInterval,
+            JdbcTemplate jdbcTemplate) {
+        this.enabled = enabled;
+        this.window = window;
+        this.maxRows = maxRows;
+        this.maxRowsPerCustomer = maxRowsPerCustomer;
+        this.refreshInterval = refreshInterval;
+        this.jdbcTemplate = jdbcTemplate;
+        this.columnsByRecency =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, Columns> eldest) {
+                        if (size() <= maxCustomers) {
+                            return false;
+                        }
+                        release(eldest.getValue());
+                        columnsByCustomer.remove(eldest.getKey());
+                        return true;
+                    }
+                };
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        long added = 0;
+        for (MessageLogEntry messageLogEntry : event.messageLogEntries()) {
+            Columns columns = columnsByCustomer.get(messageLogEntry.getCustomerId());
+            if (columns != null) {
+                added += columns.append(messageLogEntry);
+            }
+        }
+        addRows(added);
+    }
+
+    /** Drops the rows that have fallen out of the window. */
+    @Scheduled(fixedDelayString = "${mailflow.message-log.column-store.compaction-interval}")
+    void compact() {
+        long windowStart = windowStart();
+        addRows(columnsByCustomer.values().stream().mapToLong(c -> c.compact(windowStart)).sum());
+    }
+
+    /**
+     * Answers the query from memory.
+     *
+     * @return the groups in no particular order, or {@code null} if the query needs the database
+     */
+    List<MessageLogResource.AnalyticsQueryRow> query(
+            long customerId,
+            Long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String truncUnit) {
+        if (!enabled
+                || !SUPPORTED_MEASURES.containsAll(measures)
+                || from.toInstant().toEpochMilli() < windowStart()) {
+            return null;
+        }
+
+        long[] periodStarts = null;
+        if (dimensions.contains(AnalyticsDimension.PERIOD)) {
+            periodStarts = periodStarts(from, to, truncUnit);
+            if (periodStarts == null) {
+                return null;
+            }
+        }
+
+        Columns columns = columnsOf(customerId);
+        if (columns == null) {
+            return null;
+        }
+        return columns.query(
+                userId,
+                dimensions,
+                measures,
+                from.toInstant().toEpochMilli(),
+                to.toInstant().toEpochMilli(),
+                periodStarts);
+    }
+
+    private Columns columnsOf(long customerId) {
+        Columns columns;
+        boolean created = false;
+        synchronized (columnsByRecency) {
+            columns = columnsByRecency.get(customerId);
+            if (columns == null
+                    || columns.loadedAt < Instant.now().minus(refreshInterval).toEpochMilli()) {
+                if (columns != null) {
+                    release(columns);
+                }
+                columns = new Columns(windowStart(), maxRowsPerCustomer);
+                columnsByRecency.put(customerId, columns);
+                columnsByCustomer.put(customerId, columns);
+                created = true;
+            }
+        }
+
+        // Customers that failed to load are left to the database until the next refresh
+        if (created) {
+            load(customerId, columns);
+        }
+        return columns.awaitLoaded() ? columns : null;
+    }
+
+    private void load(long customerId, Columns columns) {
+        // Loaded apart from the shared columns, so that ingestion is not blocked meanwhile
+        Columns loaded = new Columns(columns.windowStart, maxRowsPerCustomer);
+        try {
+            jdbcTemplate.query(
+                    LOAD_SQL,
+                    rs -> {
+                        loaded.add(
+                                rs.getLong("id"),
+                                rs.getTimestamp("received_at").getTime(),
+                                rs.getLong("user_id"),
+                                rs.getString("category"),
+                                rs.getString("language"),
+                                rs.getString("llm_used"),
+                                rs.getBoolean("replied"),
+                                rs.getInt("processing_time_in_seconds"),
+                                rs.getLong("categorisation_total_tokens")
+                                        + rs.getLong("total_tokens"));
+                    },
+                    customerId,
+                    Instant.ofEpochMilli(columns.windowStart).atOffset(ZoneOffset.UTC),
+                    maxRowsPerCustomer + 1);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to load the message log columns of customer {}", customerId, e);
+            columns.finishLoading(null);
+            return;
+        }
+
+        if (loaded.size > maxRowsPerCustomer) {
+            LOG.info("Message log of customer {} is too large to keep in memory", customerId);
+            columns.finishLoading(null);
+            return;
+        }
+        addRows(columns.finishLoading(loaded));
+    }
+
+    /**
+     * Counts the rows added, or dropped if negative, and drops the columns of the customers
+     * queried least recently while more than {@code maxRows} are kept.
+     */
+    private void addRows(long delta) {
+        if (rowCount.addAndGet(delta) <= maxRows) {
+            return;
+        }
+        synchronized (columnsByRecency) {
+            Iterator<Map.Entry<Long, Columns>> iterator = columnsByRecency.entrySet().iterator();
+            while (rowCount.get() > maxRows && iterator.hasNext()) {
+                Map.Entry<Long, Columns> eldest = iterator.next();
+                release(eldest.getValue());
+                columnsByCustomer.remove(eldest.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void release(Columns columns) {
+        rowCount.addAndGet(-columns.release());
+    }
+
+    private long windowStart() {
+        return Instant.now().minus(window).toEpochMilli();
+    }
+
+    /**
+     * Returns the instant each period from {@code from} to {@code to} starts at, oldest first.
+     * Periods are truncated in Berlin time like {@link AnalyticsDimension#PERIOD}, so the hour
+     * repeated when daylight saving time ends is a single period and the skipped hour is none.
+     */
+    private static long[] periodStarts(ZonedDateTime from, ZonedDateTime to, String truncUnit) {
+        LocalDateTime start = from.withZoneSameInstant(BERLIN_ZONE).toLocalDateTime();
+        ChronoUnit step;
+        switch (truncUnit) {
+            case "hour" -> {
+                start = start.truncatedTo(ChronoUnit.HOURS);
+                step = ChronoUnit.HOURS;
+            }
+            case "day" -> {
+                start = start.truncatedTo(ChronoUnit.DAYS);
+                step = ChronoUnit.DAYS;
+            }
+            case "week" -> {
+                start =
+                        start.truncatedTo(ChronoUnit.DAYS)
+                                .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                step = ChronoUnit.WEEKS;
+            }
+            case "month" -> {
+                start = start.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+                step = ChronoUnit.MONTHS;
+            }
+            case "year" -> {
+                start = start.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+                step = ChronoUnit.YEARS;
+            }
+            default -> {
+                return null;
+            }
+        }
+
+        long toMillis = to.toInstant().toEpochMilli();
+        List<Long> starts = new ArrayList<>();
+        for (LocalDateTime period = start; ; period = period.plus(1, step)) {
+            // Local times in the skipped hour move past it, onto the start of the next period
+            long periodStart = period.atZone(BERLIN_ZONE).toInstant().toEpochMilli();
+            if (periodStart > toMillis) {
+                break;
+            }
+            if (starts.isEmpty() || periodStart > starts.get(starts.size() - 1)) {
+                starts.add(periodStart);
+            }
+        }
+        return starts.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /** Maps the values of a column to dense codes, code 0 is {@code null}. */
+    private static final class Dictionary<T> {
+
+        private final List<T> values = new ArrayList<>();
+        private final Map<T, Integer> codes = new HashMap<>();
+
+        private Dictionary() {
+            values.add(null);
+        }
+
+        int encode(T value) {
+            if (value == null) {
+                return 0;
+            }
+            return codes.computeIfAbsent(
+                    value,
+                    v -> {
+                        values.add(v);
+                        return values.size() - 1;
+                    });
+        }
+
+        T decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    private static final class Columns {
+
+        private final long loadedAt = System.currentTimeMillis();
+        private final long windowStart;
+        private final int maxRows;
+        private Dictionary<Long> users = new Dictionary<>();
+        private Dictionary<String> categories = new Dictionary<>();
+        private Dictionary<String> languages = new Dictionary<>();
+        private Dictionary<String> models = new Dictionary<>();
+
+        private int size;
+        private long[] ids = new long[0];
+        private long[] receivedAt = new long[0];
+        private int[] userCodes = new int[0];
+        private int[] categoryCodes = new int[0];
+        private int[] languageCodes = new int[0];
+        private int[] modelCodes = new int[0];
+        private int[] processingTimes = new int[0];
+        private long[] tokens = new long[0];
+        private BitSet replied = new BitSet();
+
+        // Entries committed while loading, merged once the load is done
+        private List<MessageLogEntry> pending = new ArrayList<>();
+        private boolean loaded;
+        private boolean failed;
+
+        private Columns(long windowStart, int maxRows) {
+            this.windowStart = windowStart;
+            this.maxRows = maxRows;
+        }
+
+        /**
+         * Appends the entry, or drops all rows once there would be more than {@code maxRows}, so
+         * that the customer is left to the database until it is reloaded.
+         *
+         * @return the change in the number of rows kept
+         */
+        synchronized long append(MessageLogEntry messageLogEntry) {
+            if (failed) {
+                return 0;
+            }
+            if (!loaded) {
+                pending.add(messageLogEntry);
+                return pending.size() > maxRows ? -release() : 0;
+            }
+
+            long receivedAtMillis = messageLogEntry.getReceivedAt().toInstant().toEpochMilli();
+            if (receivedAtMillis < windowStart) {
+                return 0;
+            }
+            if (size == maxRows) {
+                return -release();
+            }
+            add(
+                    messageLogEntry.getId(),
+                    receivedAtMillis,
+                    messageLogEntry.getUserId(),
+                    messageLogEntry.getCategory(),
+                    messageLogEntry.getLanguage(),
+                    messageLogEntry.getLlmUsed(),
+                    messageLogEntry.isReplied(),
+                    messageLogEntry.getProcessingTimeInSeconds(),
+                    valueOf(messageLogEntry.getCategorisationTotalTokens())
+                            + valueOf(messageLogEntry.getTotalTokens()));
+            return 1;
+        }
+
+        /**
+         * @param loaded the columns loaded from the database, or {@code null} if loading failed
+         * @return the number of rows kept
+         */
+        synchronized long finishLoading(Columns loaded) {
+            if (failed) {
+                // Released while loading
+                return 0;
+            }
+            if (loaded == null) {
+                release();
+                return 0;
+            }
+
+            users = loaded.users;
+            categories = loaded.categories;
+            languages = loaded.languages;
+            models = loaded.models;
+            size = loaded.size;
+            ids = loaded.ids;
+            receivedAt = loaded.receivedAt;
+            userCodes = loaded.userCodes;
+            categoryCodes = loaded.categoryCodes;
+            languageCodes = loaded.languageCodes;
+            modelCodes = loaded.modelCodes;
+            processingTimes = loaded.processingTimes;
+            tokens = loaded.tokens;
+            replied = loaded.replied;
+
+            long[] loadedIds = Arrays.copyOf(ids, size);
+            Arrays.sort(loadedIds);
+            List<MessageLogEntry> committed = pending;
+            pending = null;
+            this.loaded = true;
+            long rows = size;
+            for (MessageLogEntry messageLogEntry : committed) {
+                if (Arrays.binarySearch(loadedIds, messageLogEntry.getId()) < 0) {
+                    rows += append(messageLogEntry);
+                }
+            }
+            notifyAll();
+            return rows;
+        }
+
+        /**
+         * Drops all rows, leaving the customer to the database.
+         *
+         * @return the number of rows dropped
+         */
+        synchronized long release() {
+            long dropped = size;
+            failed = true;
+            loaded = false;
+            pending = null;
+            size = 0;
+            ids = null;
+            receivedAt = null;
+            userCodes = null;
+            categoryCodes = null;
+            languageCodes = null;
+            modelCodes = null;
+            processingTimes = null;
+            tokens = null;
+            replied = null;
+            notifyAll();
+            return dropped;
+        }
+
+        synchronized boolean awaitLoaded() {
+            while (!loaded && !failed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return loaded;
+        }
+
+        /**
+         * @return the change in the number of rows kept
+         */
+        synchronized long compact(long newWindowStart) {
+            if (!loaded) {
+                return 0;
+            }
+
+            int kept = 0;
+            for (int row = 0; row < size; row++) {
+                if (receivedAt[row] >= newWindowStart) {
+                    ids[kept] = ids[row];
+                    receivedAt[kept] = receivedAt[row];
+                    userCodes[kept] = userCodes[row];
+                    categoryCodes[kept] = categoryCodes[row];
+                    languageCodes[kept] = languageCodes[row];
+                    modelCodes[kept] = modelCodes[row];
+                    processingTimes[kept] = processingTimes[row];
+                    tokens[kept] = tokens[row];
+                    replied.set(kept, replied.get(row));
+                    kept++;
+                }
+            }
+            replied.clear(kept, size);
+            long dropped = size - kept;
+            size = kept;
+            // Gives back the memory of a customer whose message log shrank
+            if (size < ids.length / 4 && ids.length > MIN_CAPACITY) {
+                resize(Math.max(MIN_CAPACITY, size * 2));
+            }
+            return -dropped;
+        }
+
+        /**
+         * @return the groups, or {@code null} if the columns were released or have too many
+         */
+        synchronized List<MessageLogResource.AnalyticsQueryRow> query(
+                Long userId,
+                List<AnalyticsDimension> dimensions,
+                List<AnalyticsMeasure> measures,
+                long from,
+                long to,
+                long[] periodStarts) {
+            if (!loaded) {
+                return null;
+            }
+            int userCode = -1;
+            if (userId != null) {
+                Integer code = users.codes.get(userId);
+                if (code == null) {
+                    return new ArrayList<>();
+                }
+                userCode = code;
+            }
+
+            // Groups are numbered in mixed radix, one digit per dimension
+            int[] radixes = new int[dimensions.size()];
+            long cellCount = 1;
+            for (int i = 0; i < radixes.length; i++) {
+                radixes[i] = radixOf(dimensions.get(i), periodStarts);
+                cellCount *= radixes[i];
+                if (cellCount > MAX_CELLS) {
+                    return null;
+                }
+            }
+
+            // Only the sums of the measures queried are kept
+            long[] counts = new long[(int) cellCount];
+            long[] tokenSums = sumsOf(measures, AnalyticsMeasure.TOTAL_TOKENS, cellCount);
+            long[] processingTimeSums =
+                    sumsOf(measures, AnalyticsMeasure.AVG_PROCESSING_TIME, cellCount);
+            long[] repliedCounts = sumsOf(measures, AnalyticsMeasure.REPLY_RATE, cellCount);
+            for (int row = 0; row < size; row++) {
+                int cell = cellOf(row, userCode, dimensions, radixes, from, to, periodStarts);
+                if (cell < 0) {
+                    continue;
+                }
+                counts[cell]++;
+                if (tokenSums != null) {
+                    tokenSums[cell] += tokens[row];
+                }
+                if (processingTimeSums != null) {
+                    processingTimeSums[cell] += processingTimes[row];
+                }
+                if (repliedCounts != null) {
+                    repliedCounts[cell] += replied.get(row) ? 1 : 0;
+                }
+            }
+
+            int[][] sortedProcessingTimes = null;
+            if (measures.contains(AnalyticsMeasure.P50_PROCESSING_TIME)
+                    || measures.contains(AnalyticsMeasure.P95_PROCESSING_TIME)) {
+                sortedProcessingTimes =
+                        sortedProcessingTimes(
+                                counts, userCode, dimensions, radixes, from, to, periodStarts);
+            }
+
+            List<MessageLogResource.AnalyticsQueryRow> rows = new ArrayList<>();
+            for (int cell = 0; cell < cellCount; cell++) {
+                long count = counts[cell];
+                if (count == 0) {
+                    continue;
+                }
+
+                Map<AnalyticsDimension, Object> dimensionValues =
+                        new EnumMap<>(AnalyticsDimension.class);
+                int remainder = cell;
+                for (int i = radixes.length - 1; i >= 0; i--) {
+                    dimensionValues.put(
+                            dimensions.get(i),
+                            decode(dimensions.get(i), remainder % radixes[i], periodStarts));
+                    remainder /= radixes[i];
+                }
+
+                Map<AnalyticsMeasure, Number> measureValues =
+                        new EnumMap<>(AnalyticsMeasure.class);
+                for (AnalyticsMeasure measure : measures) {
+                    Number value =
+                            switch (measure) {
+                                case COUNT -> count;
+                                case TOTAL_TOKENS -> tokenSums[cell];
+                                case AVG_PROCESSING_TIME ->
+                                        (double) processingTimeSums[cell] / count;
+                                case P50_PROCESSING_TIME ->
+                                        percentile(sortedProcessingTimes[cell], 0.5);
+                                case P95_PROCESSING_TIME ->
+                                        percentile(sortedProcessingTimes[cell], 0.95);
+                                case REPLY_RATE -> (double) repliedCounts[cell] / count;
+                                case AVG_RATING -> null;
+                            };
+                    measureValues.put(
+                            measure, MessageLogQueryEngine.toMeasureValue(measure, value));
+                }
+                rows.add(new MessageLogResource.AnalyticsQueryRow(dimensionValues, measureValues));
+            }
+            return rows;
+        }
+
+        /** Returns the group of the row, or -1 if the query does not cover it. */
+        private int cellOf(
+                int row,
+                int userCode,
+                List<AnalyticsDimension> dimensions,
+                int[] radixes,
+                long from,
+                long to,
+                long[] periodStarts) {
+            if (receivedAt[row] < from
+                    || receivedAt[row] > to
+                    || (userCode >= 0 && userCodes[row] != userCode)) {
+                return -1;
+            }
+            int cell = 0;
+            for (int i = 0; i < radixes.length; i++) {
+                cell = cell * radixes[i] + digitOf(dimensions.get(i), row, periodStarts);
+            }
+            return cell;
+        }
+
+        /**
+         * Sorts the processing times of each group, reusing the counts as slice sizes. The groups
+         * of the rows are worked out again rather than kept from the first pass.
+         */
+        private int[][] sortedProcessingTimes(
+                long[] counts,
+                int userCode,
+                List<AnalyticsDimension> dimensions,
+                int[] radixes,
+                long from,
+                long to,
+                long[] periodStarts) {
+            int[][] values = new int[counts.length][];
+            int[] filled = new int[counts.length];
+            for (int cell = 0; cell < counts.length; cell++) {
+                values[cell] = counts[cell] == 0 ? null : new int[(int) counts[cell]];
+            }
+            for (int row = 0; row < size; row++) {
+                int cell = cellOf(row, userCode, dimensions, radixes, from, to, periodStarts);
+                if (cell >= 0) {
+                    values[cell][filled[cell]++] = processingTimes[row];
+                }
+            }
+            for (int[] cellValues : values) {
+                if (cellValues != null) {
+                    Arrays.sort(cellValues);
+                }
+            }
+            return values;
+        }
+
+        private static long[] sumsOf(
+                List<AnalyticsMeasure> measures, AnalyticsMeasure measure, long cellCount) {
+            return measures.contains(measure) ? new long[(int) cellCount] : null;
+        }
+
+        private int radixOf(AnalyticsDimension dimension, long[] periodStarts) {
+            return switch (dimension) {
+                case CATEGORY -> categories.size();
+                case LANGUAGE -> languages.size();
+                case LLM_USED -> models.size();
+                case REPLIED -> 2;
+                case USER -> users.size();
+                case PERIOD -> periodStarts.length;
+            };
+        }
+
+        private int digitOf(AnalyticsDimension dimension, int row, long[] periodStarts) {
+            return switch (dimension) {
+                case CATEGORY -> categoryCodes[row];
+                case LANGUAGE -> languageCodes[row];
+                case LLM_USED -> modelCodes[row];
+                case REPLIED -> replied.get(row) ? 1 : 0;
+                case USER -> userCodes[row];
+                case PERIOD -> {
+                    int index = Arrays.binarySearch(periodStarts, receivedAt[row]);
+                    yield index >= 0 ? index : -index - 2;
+                }
+            };
+        }
+
+        private Object decode(AnalyticsDimension dimension, int digit, long[] periodStarts) {
+            return switch (dimension) {
+                case CATEGORY -> categories.decode(digit);
+                case LANGUAGE -> languages.decode(digit);
+                case LLM_USED -> models.decode(digit);
+                case REPLIED -> digit == 1;
+                case USER -> users.decode(digit);
+                case PERIOD -> Instant.ofEpochMilli(periodStarts[digit]).atZone(BERLIN_ZONE);
+            };
+        }
+
+        private void add(
+                long id,
+                long receivedAtMillis,
+                long userId,
+                String category,
+                String language,
+                String model,
+                boolean isReplied,
+                int processingTime,
+                long tokenCount) {
+            if (size == ids.length) {
+                resize(Math.max(MIN_CAPACITY, size * 2));
+            }
+
+            ids[size] = id;
+            receivedAt[size] = receivedAtMillis;
+            userCodes[size] = users.encode(userId);
+            categoryCodes[size] = categories.encode(category);
+            languageCodes[size] = languages.encode(language);
+            modelCodes[size] = models.encode(model);
+            processingTimes[size] = processingTime;
+            tokens[size] = tokenCount;
+            replied.set(size, isReplied);
+            size++;
+        }
+
+        private void resize(int capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            receivedAt = Arrays.copyOf(receivedAt, capacity);
+            userCodes = Arrays.copyOf(userCodes, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+            languageCodes = Arrays.copyOf(languageCodes, capacity);
+            modelCodes = Arrays.copyOf(modelCodes, capacity);
+            processingTimes = Arrays.copyOf(processingTimes, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+        }
+
+        // Same interpolation as PERCENTILE_CONT
+        private static double percentile(int[] sortedValues, double fraction) {
+            double position = fraction * (sortedValues.length - 1);
+            int lower = (int) Math.floor(position);
+            int upper = (int) Math.ceil(position);
+            return sortedValues[lower]
+                    + (sortedValues[upper] - sortedValues[lower]) * (position - lower);
+        }
+
+        private static long valueOf(Integer value) {
+            return value == null ? 0 : value;
+        }
+    }
+}
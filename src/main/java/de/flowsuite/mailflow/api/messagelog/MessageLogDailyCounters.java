@@ -0,0 +1,165 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counts the messages received today (Berlin time) per customer and user, so that the "processed
+ * today" figures are read from memory. Committed entries increment a {@link LongAdder} per
+ * customer and user, which stripes concurrent increments across cells instead of contending on
+ * one value. The counters start over on the first access after midnight.
+ *
+ * <p>The counters are rebuilt from the hourly rollups on startup and every {@code
+ * refreshInterval}, which also picks up the entries written by other instances. The rollups are
+ * updated within the inserting transaction, but the counters only after its commit, so entries
+ * counted while the rollups are read may be missing from what was read. They are also counted in
+ * a journal, which is added to the rebuilt counters. An entry committed just before the rollups
+ * are read may then be counted twice, until the next rebuild.
+ */
+@Component
+class MessageLogDailyCounters {
+
+    private final MessageLogRollupRepository messageLogRollupRepository;
+    // Increments share the read lock, the rebuilt counters are swapped in under the write lock
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final Object rebuildLock = new Object();
+    private volatile Counters counters = new Counters(LocalDate.MIN);
+    // Counts the entries of a running rebuild, null otherwise
+    private volatile Counters journal;
+
+    MessageLogDailyCounters(MessageLogRollupRepository messageLogRollupRepository) {
+        this.messageLogRollupRepository = messageLogRollupRepository;
+    }
+
+    // Before the feed, which publishes the counts of the same entries
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        swapLock.readLock().lock();
+        try {
+            Counters today = currentCounters();
+            Counters rebuildJournal = journal;
+            for (MessageLogEntry messageLogEntry : event.messageLogEntries()) {
+                // Entries of earlier days that are reported late do not count
+                if (!messageLogEntry
+                        .getReceivedAt()
+                        .withZoneSameInstant(BERLIN_ZONE)
+                        .toLocalDate()
+                        .equals(today.day())) {
+                    continue;
+                }
+                long customerId = messageLogEntry.getCustomerId();
+                long userId = messageLogEntry.getUserId();
+                today.increment(customerId, userId, 1);
+                if (rebuildJournal != null && rebuildJournal.day().equals(today.day())) {
+                    rebuildJournal.increment(customerId, userId, 1);
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    long getCountForCustomer(long customerId) {
+        return sumOf(currentCounters().byCustomer().get(customerId));
+    }
+
+    long getCountForUser(long userId) {
+        return sumOf(currentCounters().byUser().get(userId));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            fixedDelayString = "${mailflow.message-log.daily-counters.refresh-interval}",
+            initialDelayString = "${mailflow.message-log.daily-counters.refresh-interval}")
+    void rebuild() {
+        synchronized (rebuildLock) {
+            LocalDate day = LocalDate.now(BERLIN_ZONE);
+            Counters rebuilt = new Counters(day);
+            // Set before the rollups are read, so that no entry counted meanwhile is lost
+            journal = new Counters(day);
+            try {
+                // Berlin midnight is on the hour in UTC, so the hourly buckets of today are exact
+                for (Object[] row :
+                        messageLogRollupRepository.sumMessageCountsSince(
+                                day.atStartOfDay(BERLIN_ZONE))) {
+                    rebuilt.increment(
+                            ((Number) row[0]).longValue(),
+                            ((Number) row[1]).longValue(),
+                            ((Number) row[2]).longValue());
+                }
+
+                swapLock.writeLock().lock();
+                try {
+                    rebuilt.addAll(journal);
+                    // A rebuild that started before midnight must not replace the new day
+                    if (!counters.day().isAfter(day)) {
+                        counters = rebuilt;
+                    }
+                } finally {
+                    swapLock.writeLock().unlock();
+                }
+            } finally {
+                journal = null;
+            }
+        }
+    }
+
+    private Counters currentCounters() {
+        Counters current = counters;
+        LocalDate today = LocalDate.now(BERLIN_ZONE);
+        if (current.day().equals(today)) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (!counters.day().equals(today)) {
+                counters = new Counters(today);
+            }
+            return counters;
+        }
+    }
+
+    private static long sumOf(LongAdder counter) {
+        return counter == null ? 0 : counter.sum();
+    }
+
+    private record Counters(
+            LocalDate day, Map<Long, LongAdder> byCustomer, Map<Long, LongAdder> byUser) {
+
+        Counters(LocalDate day) {
+            this(day, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+
+        void increment(long customerId, long userId, long count) {
+            byCustomer.computeIfAbsent(customerId, k -> new LongAdder()).add(count);
+            byUser.computeIfAbsent(userId, k -> new LongAdder()).add(count);
+        }
+
+        void addAll(Counters other) {
+            other.byCustomer.forEach((customerId, count) -> add(byCustomer, customerId, count));
+            other.byUser.forEach((userId, count) -> add(byUser, userId, count));
+        }
+
+        private static void add(Map<Long, LongAdder> counts, long id, LongAdder count) {
+            counts.computeIfAbsent(id, k -> new LongAdder()).add(count.sum());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import java.util.List;
+
+/**
+ * Published by {@link MessageLogWriter} inside the inserting transaction, after the entries have
+ * their ids. Listeners that keep state outside the database should use {@code
+ * TransactionalEventListener} so they only see committed entries.
+ *
+ * @param senderHashes the blind index of each entry's sender, {@code null} where it has none
+ */
+public record MessageLogEntriesCreatedEvent(
+        List<MessageLogEntry> messageLogEntries, List<String> senderHashes) {}
@@ -0,0 +1,26 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+
+enum MessageLogExportFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON, "ndjson"),
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8), "csv");
+
+    private final MediaType mediaType;
+    private final String fileExtension;
+
+    MessageLogExportFormat(MediaType mediaType, String fileExtension) {
+        this.mediaType = mediaType;
+        this.fileExtension = fileExtension;
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    String getFileExtension() {
+        return fileExtension;
+    }
+}
@@ -0,0 +1,177 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+import de.flowsuite.mailflow.common.util.AesUtil;
+
+import jakarta.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes a customer's message log straight to an output stream. Rows are read through a
+ * server-side cursor (see {@link MessageLogRepository#streamForExport}) and detached from the
+ * persistence context once written, so memory use does not grow with the number of rows.
+ */
+@Component
+class MessageLogExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogExporter.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // spotless:off
+    private static final String CSV_HEADER = String.join(",",
+            "id", "user_id", "customer_id", "replied", "function_call", "category", "language",
+            "from_email_address", "subject", "received_at", "processed_at",
+            "processing_time_in_seconds", "categorisation_llm_used", "categorisation_input_tokens",
+            "categorisation_output_tokens", "categorisation_total_tokens", "llm_used",
+            "input_tokens", "output_tokens", "total_tokens");
+    // spotless:on
+
+    private final MessageLogRepository messageLogRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    MessageLogExporter(
+            MessageLogRepository messageLogRepository,
+            EntityManager entityManager,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.messageLogRepository = messageLogRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    void export(
+            long customerId,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String category,
+            MessageLogExportFormat format,
+            boolean decrypt,
+            OutputStream outputStream) {
+        // The cursor only stays open within a transaction
+        transactionTemplate.executeWithoutResult(
+                status -> {
+                    try (Stream<MessageLogEntry> messageLogEntries =
+                            messageLogRepository.streamForExport(customerId, from, to, category)) {
+                        long rows =
+                                write(messageLogEntries.iterator(), format, decrypt, outputStream);
+                        LOG.debug(
+                                "Exported {} message log entries of customer {}",
+                                rows,
+                                customerId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private long write(
+            Iterator<MessageLogEntry> messageLogEntries,
+            MessageLogExportFormat format,
+            boolean decrypt,
+            OutputStream outputStream)
+            throws IOException {
+        BufferedOutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        if (format == MessageLogExportFormat.CSV) {
+            writeLine(out, CSV_HEADER);
+        }
+
+        long rows = 0;
+        while (messageLogEntries.hasNext()) {
+            MessageLogEntry messageLogEntry = messageLogEntries.next();
+            entityManager.detach(messageLogEntry);
+
+            if (decrypt && messageLogEntry.getFromEmailAddress() != null) {
+                messageLogEntry.setFromEmailAddress(
+                        AesUtil.decrypt(messageLogEntry.getFromEmailAddress()));
+            }
+
+            switch (format) {
+                case NDJSON -> {
+                    out.write(objectMapper.writeValueAsBytes(messageLogEntry));
+                    out.write('\n');
+                }
+                case CSV -> writeLine(out, toCsvRow(messageLogEntry));
+            }
+            rows++;
+        }
+
+        out.flush();
+        return rows;
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    private static String toCsvRow(MessageLogEntry messageLogEntry) {
+        return String.join(
+                ",",
+                csv(messageLogEntry.getId()),
+                csv(messageLogEntry.getUserId()),
+                csv(messageLogEntry.getCustomerId()),
+                csv(messageLogEntry.isReplied()),
+                csv(messageLogEntry.isFunctionCall()),
+                csv(messageLogEntry.getCategory()),
+                csv(messageLogEntry.getLanguage()),
+                csv(messageLogEntry.getFromEmailAddress()),
+                csv(messageLogEntry.getSubject()),
+                csv(messageLogEntry.getReceivedAt()),
+                csv(messageLogEntry.getProcessedAt()),
+                csv(messageLogEntry.getProcessingTimeInSeconds()),
+                csv(messageLogEntry.getCategorisationLlmUsed()),
+                csv(messageLogEntry.getCategorisationInputTokens()),
+                csv(messageLogEntry.getCategorisationOutputTokens()),
+                csv(messageLogEntry.getCategorisationTotalTokens()),
+                csv(messageLogEntry.getLlmUsed()),
+                csv(messageLogEntry.getInputTokens()),
+                csv(messageLogEntry.getOutputTokens()),
+                csv(messageLogEntry.getTotalTokens()));
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+
+        String text =
+                value instanceof ZonedDateTime dateTime
+                        ? dateTime.toOffsetDateTime().toString()
+                        : value.toString();
+
+        // Subjects come from external senders, keep spreadsheets from evaluating them
+        if (!text.isEmpty()
+                && "=+-@\t\r".indexOf(text.charAt(0)) >= 0
+                && !(value instanceof Number)) {
+            text = "'" + text;
+        }
+
+        if (text.indexOf(',') >= 0
+                || text.indexOf('"') >= 0
+                || text.indexOf('\n') >= 0
+                || text.indexOf('\r') >= 0) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
@@ -0,0 +1,270 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes committed message log entries and today's message count to dashboard subscribers over
+ * Server-Sent Events.
+ *
+ * <p>The ingesting thread only hands the entries to a single fan-out thread, dropping them if
+ * that thread is {@code bufferSize} batches behind. The fan-out thread reads today's count from
+ * {@link MessageLogDailyCounters} and offers two events per batch to each subscriber's queue of
+ * {@code bufferSize} events. A subscriber whose queue is
+ * full is too slow to keep up and is disconnected. Queues are written to the clients by a small
+ * pool of sender threads, one subscriber at a time.
+ */
+@Component
+class MessageLogFeed implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogFeed.class);
+    private static final String ENTRIES_EVENT = "entries";
+    private static final String COUNTERS_EVENT = "counters";
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Duration timeout;
+    private final ThreadPoolExecutor fanOutExecutor;
+    private final ExecutorService senderExecutor;
+    private final MessageLogDailyCounters messageLogDailyCounters;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+    private volatile boolean running;
+
+    MessageLogFeed(
+            @Value("${mailflow.message-log.feed.buffer-size}") int bufferSize,
+            @Value("${mailflow.message-log.feed.max-subscribers}") int maxSubscribers,
+            @Value("${mailflow.message-log.feed.sender-threads}") int senderThreads,
+            @Value("${mailflow.message-log.feed.timeout}") Duration timeout,
+            MessageLogDailyCounters messageLogDailyCounters) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeout = timeout;
+        this.fanOutExecutor =
+                new ThreadPoolExecutor(
+                        1,
+                        1,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(bufferSize),
+                        namedThreads("message-log-feed"));
+        this.senderExecutor =
+                Executors.newFixedThreadPool(
+                        senderThreads, namedThreads("message-log-feed-sender"));
+        this.messageLogDailyCounters = messageLogDailyCounters;
+    }
+
+    /**
+     * Registers a subscriber for the entries of a customer, or of one user if {@code userId} is
+     * set.
+     *
+     * @return {@code null} if the feed is at {@code maxSubscribers}
+     */
+    SseEmitter subscribe(long customerId, Long userId) {
+        Subscriber subscriber =
+                new Subscriber(
+                        customerId,
+                        userId,
+                        new SseEmitter(timeout.toMillis()),
+                        new ArrayBlockingQueue<>(bufferSize));
+        subscriber.emitter().onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter().onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter().onError(e -> subscribers.remove(subscriber));
+
+        // Removals need no lock, they only make room
+        synchronized (subscribers) {
+            if (!running || subscribers.size() >= maxSubscribers) {
+                return null;
+            }
+            subscribers.add(subscriber);
+        }
+        return subscriber.emitter();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        try {
+            fanOutExecutor.execute(() -> fanOut(event.messageLogEntries()));
+        } catch (RejectedExecutionException e) {
+            LOG.warn(
+                    "Message log feed is behind, dropping {} entries",
+                    event.messageLogEntries().size());
+        }
+    }
+
+    /** Keeps idle connections open through proxies and detects closed ones. */
+    @Scheduled(fixedDelayString = "${mailflow.message-log.feed.heartbeat-interval}")
+    void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            publish(subscriber, SseEmitter.event().comment("heartbeat"));
+        }
+    }
+
+    private void fanOut(List<MessageLogEntry> messageLogEntries) {
+        for (Subscriber subscriber : subscribers) {
+            List<MessageLogResource.MessageLogFeedEntry> visibleEntries =
+                    messageLogEntries.stream()
+                            .filter(subscriber::canSee)
+                            .map(MessageLogFeed::toFeedEntry)
+                            .toList();
+            if (visibleEntries.isEmpty()) {
+                continue;
+            }
+
+            // One event per batch, so a group commit does not fill the subscriber's queue
+            publish(subscriber, SseEmitter.event().name(ENTRIES_EVENT).data(visibleEntries));
+
+            long countToday =
+                    subscriber.userId() == null
+                            ? messageLogDailyCounters.getCountForCustomer(subscriber.customerId())
+                            : messageLogDailyCounters.getCountForUser(subscriber.userId());
+            publish(
+                    subscriber,
+                    SseEmitter.event()
+                            .name(COUNTERS_EVENT)
+                            .data(new MessageLogResource.MessageLogFeedCounters(countToday)));
+        }
+    }
+
+    private void publish(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (!subscriber.queue().offer(event)) {
+            LOG.debug("Disconnecting slow message log feed subscriber");
+            disconnect(subscriber);
+            subscriber.emitter().complete();
+            return;
+        }
+
+        if (subscriber.sending().compareAndSet(false, true)) {
+            senderExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        do {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.queue().poll()) != null) {
+                try {
+                    subscriber.emitter().send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // The client is gone or the emitter completed, e.g. after a timeout
+                    disconnect(subscriber);
+                    return;
+                }
+            }
+            subscriber.sending().set(false);
+            // An event offered after the last poll but before the flag was reset would be stuck
+        } while (!subscriber.queue().isEmpty() && subscriber.sending().compareAndSet(false, true));
+    }
+
+    /** Removes a subscriber and drops its queued events, so they are not held until shutdown. */
+    private void disconnect(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.queue().clear();
+    }
+
+    private static MessageLogResource.MessageLogFeedEntry toFeedEntry(
+            MessageLogEntry messageLogEntry) {
+        return new MessageLogResource.MessageLogFeedEntry(
+                messageLogEntry.getId(),
+                messageLogEntry.getUserId(),
+                messageLogEntry.getCategory(),
+                messageLogEntry.isReplied(),
+                messageLogEntry.getReceivedAt(),
+                messageLogEntry.getProcessingTimeInSeconds());
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Closes all subscriptions before the web server's graceful shutdown, which would otherwise
+     * wait for the open event streams until it times out.
+     */
+    @Override
+    public void stop() {
+        synchronized (subscribers) {
+            running = false;
+        }
+        subscribers.forEach(subscriber -> subscriber.emitter().complete());
+        subscribers.clear();
+        fanOutExecutor.shutdownNow();
+        senderExecutor.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private record Subscriber(
+            long customerId,
+            Long userId,
+            SseEmitter emitter,
+            BlockingQueue<SseEmitter.SseEventBuilder> queue,
+            AtomicBoolean sending) {
+
+        Subscriber(
+                long customerId,
+                Long userId,
+                SseEmitter emitter,
+                BlockingQueue<SseEmitter.SseEventBuilder> queue) {
+            this(customerId, userId, emitter, queue, new AtomicBoolean());
+        }
+
+        boolean canSee(MessageLogEntry messageLogEntry) {
+            return messageLogEntry.getCustomerId() == customerId
+                    && (userId == null || userId.equals(messageLogEntry.getUserId()));
+        }
+
+        // Identity semantics, two subscriptions of the same user are different subscribers
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
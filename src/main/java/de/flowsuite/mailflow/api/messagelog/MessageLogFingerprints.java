@@ -0,0 +1,258 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fingerprints of the messages mailbox-service has processed, so that it can skip them after a
+ * restart instead of paying for the LLM calls again. A fingerprint is the lowercase hex SHA-256 of
+ * a message's {@code Message-ID}. They are stored per user in {@code message_log_fingerprints},
+ * next to the id of the message log entry they belong to. A fingerprint is only recorded once its
+ * entry is committed, so a fingerprint never marks a message whose entry was lost.
+ *
+ * <p>Lookups are answered from a {@link BloomFilter} per user, loaded on first use and kept for
+ * up to {@code maxUsers} users. Most fingerprints of a lookup are new messages, which the filter
+ * rules out without a query; only its positives are confirmed against the table. Fingerprints
+ * recorded by this instance are added to the filter right away. Those of other instances are
+ * picked up once the filter is older than {@code refreshInterval}, by reading the rows created
+ * since shortly before the newest row it has read. The overlap catches rows that were committed
+ * after a newer row had been read already.
+ */
+@Component
+class MessageLogFingerprints {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogFingerprints.class);
+
+    static final String FINGERPRINT_PATTERN = "[0-9a-f]{64}";
+    private static final int MIN_CAPACITY = 1024;
+    // Far longer than an insert takes from its created_at to its commit
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+    // Pending fingerprints of entries that were never committed, e.g. dead-lettered ones
+    private static final int MAX_PENDING = 20_000;
+    private static final Duration PENDING_TIMEOUT = Duration.ofHours(1);
+
+    private static final String INSERT_SQL =
+            """
+            INSERT INTO message_log_fingerprints (customer_id, user_id, fingerprint, message_log_id)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (user_id, fingerprint) DO NOTHING
+            """;
+
+    private static final String SELECT_SINCE_SQL =
+            """
+            SELECT fingerprint, created_at FROM message_log_fingerprints
+            WHERE user_id = ? AND created_at >= ?
+            """;
+
+    private static final String SELECT_EXISTING_SQL =
+            """
+            SELECT fingerprint FROM message_log_fingerprints
+            WHERE user_id = ? AND fingerprint = ANY (?)
+            """;
+
+    private final double falsePositiveRate;
+    private final Duration refreshInterval;
+    private final Map<Long, UserFilter> filters;
+    // By identity, the entries of the create path only get their id when they are inserted
+    private final Map<MessageLogEntry, Pending> pending =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogFingerprints(
+            @Value("${mailflow.message-log.fingerprints.max-users}") int maxUsers,
+            @Value("${mailflow.message-log.fingerprints.false-positive-rate}")
+                    double falsePositiveRate,
+            @Value("${mailflow.message-log.fingerprints.refresh-interval}")
+                    Duration refreshInterval,
+            JdbcTemplate jdbcTemplate) {
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshInterval = refreshInterval;
+        this.jdbcTemplate = jdbcTemplate;
+        this.filters =
+                Collections.synchronizedMap(
+                        new LinkedHashMap<>(16, 0.75f, true) {
+                            @Override
+                            protected boolean removeEldestEntry(
+                                    Map.Entry<Long, UserFilter> eldest) {
+                                return size() > maxUsers;
+                            }
+                        });
+    }
+
+    /** Records the fingerprint once the entry has been committed. */
+    void recordOnCommit(MessageLogEntry messageLogEntry, String fingerprint) {
+        Instant now = Instant.now();
+        synchronized (pending) {
+            if (pending.size() >= MAX_PENDING) {
+                pending.values().removeIf(p -> p.expectedAt().plus(PENDING_TIMEOUT).isBefore(now));
+            }
+            pending.put(messageLogEntry, new Pending(fingerprint, now));
+        }
+    }
+
+    /** Forgets the fingerprint of an entry that will not be inserted. */
+    void discard(MessageLogEntry messageLogEntry) {
+        pending.remove(messageLogEntry);
+    }
+
+    // Covers single and write-behind inserts, once they are committed
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        for (MessageLogEntry messageLogEntry : event.messageLogEntries()) {
+            Pending fingerprint = pending.remove(messageLogEntry);
+            if (fingerprint == null) {
+                continue;
+            }
+            try {
+                record(
+                        messageLogEntry.getCustomerId(),
+                        messageLogEntry.getUserId(),
+                        fingerprint.fingerprint(),
+                        messageLogEntry.getId());
+            } catch (RuntimeException e) {
+                // The entry is committed, losing its fingerprint only costs processing it again
+                LOG.warn(
+                        "Failed to record fingerprint of message log entry {}",
+                        messageLogEntry.getId(),
+                        e);
+            }
+        }
+    }
+
+    private void record(long customerId, long userId, String fingerprint, long messageLogId) {
+        jdbcTemplate.update(INSERT_SQL, customerId, userId, fingerprint, messageLogId);
+
+        UserFilter filter = filters.get(userId);
+        if (filter != null) {
+            filter.add(fingerprint);
+        }
+    }
+
+    /** Returns the given fingerprints that have been recorded for the user. */
+    List<String> findProcessed(long userId, List<String> fingerprints) {
+        UserFilter filter = filters.computeIfAbsent(userId, UserFilter::new);
+        filter.refreshIfOlderThan(refreshInterval);
+
+        String[] candidates =
+                fingerprints.stream()
+                        .distinct()
+                        .filter(filter::mightContain)
+                        .toArray(String[]::new);
+        if (candidates.length == 0) {
+            return List.of();
+        }
+
+        return jdbcTemplate.query(
+                SELECT_EXISTING_SQL,
+                ps -> {
+                    ps.setLong(1, userId);
+                    ps.setArray(2, ps.getConnection().createArrayOf("text", candidates));
+                },
+                (rs, rowNum) -> rs.getString("fingerprint"));
+    }
+
+    private final class UserFilter {
+
+        private final long userId;
+        private volatile BloomFilter bloomFilter;
+        // Rows read again because of the overlap are only counted if they were not in the filter
+        private int size;
+        private Instant readUntil;
+        private Instant refreshedAt = Instant.MIN;
+
+        private UserFilter(long userId) {
+            this.userId = userId;
+        }
+
+        synchronized void add(String fingerprint) {
+            if (bloomFilter != null) {
+                addTo(bloomFilter, fingerprint);
+            }
+        }
+
+        private void addTo(BloomFilter filter, String fingerprint) {
+            long hash1 = hash1(fingerprint);
+            long hash2 = hash2(fingerprint);
+            if (!filter.mightContain(hash1, hash2)) {
+                filter.add(hash1, hash2);
+                size++;
+            }
+        }
+
+        boolean mightContain(String fingerprint) {
+            return bloomFilter.mightContain(hash1(fingerprint), hash2(fingerprint));
+        }
+
+        synchronized void refreshIfOlderThan(Duration maxAge) {
+            Instant now = Instant.now();
+            if (bloomFilter != null && refreshedAt.plus(maxAge).isAfter(now)) {
+                return;
+            }
+
+            // A new filter is only visible once it is filled, so lookups never see a partial one
+            BloomFilter filter = bloomFilter;
+            if (filter == null || size > filter.capacity()) {
+                // Sized for twice the current fingerprints, rebuilt once they have doubled
+                Integer count =
+                        jdbcTemplate.queryForObject(
+                                "SELECT COUNT(*) FROM message_log_fingerprints WHERE user_id = ?",
+                                Integer.class,
+                                userId);
+                filter =
+                        new BloomFilter(
+                                Math.max(MIN_CAPACITY, 2 * (count == null ? 0 : count)),
+                                falsePositiveRate);
+                size = 0;
+                readUntil = null;
+            }
+
+            BloomFilter target = filter;
+            Timestamp from =
+                    readUntil == null
+                            ? new Timestamp(0)
+                            : Timestamp.from(readUntil.minus(REFRESH_OVERLAP));
+            jdbcTemplate.query(
+                    SELECT_SINCE_SQL,
+                    rs -> {
+                        addTo(target, rs.getString("fingerprint"));
+                        // Database time, so that the clocks of the instances do not matter
+                        Instant createdAt = rs.getTimestamp("created_at").toInstant();
+                        if (readUntil == null || createdAt.isAfter(readUntil)) {
+                            readUntil = createdAt;
+                        }
+                    },
+                    userId,
+                    from);
+            bloomFilter = target;
+            refreshedAt = now;
+        }
+    }
+
+    private record Pending(String fingerprint, Instant expectedAt) {}
+
+    // Fingerprints are SHA-256 hashes, their first 128 bits serve as the filter's hashes
+    private static long hash1(String fingerprint) {
+        return HexFormat.fromHexDigitsToLong(fingerprint, 0, 16);
+    }
+
+    private static long hash2(String fingerprint) {
+        return HexFormat.fromHexDigitsToLong(fingerprint, 16, 32);
+    }
+}
@@ -0,0 +1,156 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Maintains the monthly partitions of {@code message_log}. Partitions for the current month and
+ * the next {@code monthsAhead} months are created on startup and daily afterwards, so inserts
+ * never fall back to the default partition. If a retention period is configured, partitions that
+ * lie entirely before it are detached and dropped together with their response ratings; rollups
+ * are kept. While the {@link MessageLogArchive} is enabled, only partitions it has emptied are
+ * dropped, so no entry is lost before it is archived.
+ */
+@Component
+class MessageLogPartitionManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogPartitionManager.class);
+    private static final String PARTITION_PREFIX = "message_log_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean archiveEnabled;
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogPartitionManager(
+            @Value("${mailflow.message-log.partitions.enabled}") boolean enabled,
+            @Value("${mailflow.message-log.partitions.months-ahead}") int monthsAhead,
+            @Value("${mailflow.message-log.partitions.retention-months}") int retentionMonths,
+            @Value("${mailflow.message-log.archive.enabled}") boolean archiveEnabled,
+            JdbcTemplate jdbcTemplate) {
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveEnabled = archiveEnabled;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${mailflow.message-log.partitions.cron}", zone = "UTC")
+    void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        createPartitions(currentMonth);
+        if (retentionMonths > 0) {
+            dropPartitionsBefore(currentMonth.minusMonths(retentionMonths));
+        }
+    }
+
+    /**
+     * Returns the start of the first month whose partition is kept, or {@code null} if no
+     * partitions are dropped.
+     */
+    ZonedDateTime retainedFrom() {
+        if (!enabled || retentionMonths <= 0) {
+            return null;
+        }
+
+        return YearMonth.now(ZoneOffset.UTC)
+                .minusMonths(retentionMonths)
+                .atDay(1)
+                .atStartOfDay(ZoneOffset.UTC);
+    }
+
+    private void createPartitions(YearMonth currentMonth) {
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = currentMonth.plusMonths(i);
+            try {
+                jdbcTemplate.queryForObject(
+                        "SELECT create_message_log_partition(?)",
+                        Object.class,
+                        Date.valueOf(month.atDay(1)));
+            } catch (RuntimeException e) {
+                // Happens if the default partition already holds rows of that month
+                LOG.error("Failed to create message log partition for {}", month, e);
+            }
+        }
+    }
+
+    private void dropPartitionsBefore(YearMonth firstRetainedMonth) {
+        List<String> partitions =
+                jdbcTemplate.queryForList(
+                        """
+                        SELECT c.relname
+                        FROM pg_inherits i
+                        JOIN pg_class c ON c.oid = i.inhrelid
+                        WHERE i.inhparent = 'message_log'::regclass
+                        """,
+                        String.class);
+
+        for (String partition : partitions) {
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+
+            YearMonth month =
+                    YearMonth.parse(
+                            partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (!month.isBefore(firstRetainedMonth)) {
+                continue;
+            }
+
+            if (archiveEnabled && hasEntries(partition)) {
+                LOG.info("Keeping message log partition {} until it is archived", partition);
+                continue;
+            }
+
+            // The foreign keys to message_log would block the detach
+            OffsetDateTime monthStart = month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+            OffsetDateTime monthEnd = monthStart.plusMonths(1);
+            jdbcTemplate.update(
+                    """
+                    DELETE FROM response_ratings
+                    WHERE message_log_received_at >= ? AND message_log_received_at < ?
+                    """,
+                    monthStart,
+                    monthEnd);
+            jdbcTemplate.update(
+                    """
+                    DELETE FROM message_log_tokens
+                    WHERE message_log_received_at >= ? AND message_log_received_at < ?
+                    """,
+                    monthStart,
+                    monthEnd);
+
+            // Detaching first keeps the lock on message_log short
+            jdbcTemplate.execute("ALTER TABLE message_log DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            LOG.info("Dropped message log partition {}", partition);
+        }
+    }
+
+    private boolean hasEntries(String partition) {
+        return Boolean.TRUE.equals(
+                jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class));
+    }
+}
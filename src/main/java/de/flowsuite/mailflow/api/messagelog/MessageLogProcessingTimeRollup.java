@@ -0,0 +1,64 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * One bin of the hourly {@link ProcessingTimeHistogram} per user and category. Maintained by
+ * {@link MessageLogRollupUpdater}.
+ */
+@Entity
+@Immutable
+@IdClass(MessageLogProcessingTimeRollup.Key.class)
+@Table(name = "message_log_processing_time_rollups")
+class MessageLogProcessingTimeRollup {
+
+    @Id private Long customerId;
+    @Id private Long userId;
+    @Id private ZonedDateTime bucketStart;
+    @Id private String category;
+    @Id private Integer bin;
+
+    private long messageCount;
+
+    protected MessageLogProcessingTimeRollup() {}
+
+    static class Key implements Serializable {
+
+        private Long customerId;
+        private Long userId;
+        private ZonedDateTime bucketStart;
+        private String category;
+        private Integer bin;
+
+        protected Key() {}
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(customerId, key.customerId)
+                    && Objects.equals(userId, key.userId)
+                    && Objects.equals(bucketStart, key.bucketStart)
+                    && Objects.equals(category, key.category)
+                    && Objects.equals(bin, key.bin);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(customerId, userId, bucketStart, category, bin);
+        }
+    }
+}
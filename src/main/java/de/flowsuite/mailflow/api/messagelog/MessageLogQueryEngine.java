@@ -0,0 +1,277 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Answers ad hoc analytics questions about a customer's or user's message log, such as counts by
+ * language, reply rate by model or average rating by category. A query names up to {@link
+ * #MAX_DIMENSIONS} {@link AnalyticsDimension dimensions} to group by and the {@link
+ * AnalyticsMeasure measures} to compute.
+ *
+ * <p>Queries over the recent message log are answered from memory by {@link
+ * MessageLogColumnStore} where it can. All others are compiled to a single aggregate statement:
+ * queries whose dimensions and measures all exist in {@code message_log_rollups} are answered from
+ * the hourly rollups, the rest scan the message log of the range, joined with the ratings only if
+ * a rating is measured. Results with more than {@link #MAX_GROUPS} groups are rejected instead of
+ * being returned in part.
+ *
+ * <p>Entries moved out by {@link MessageLogArchive} or dropped with their partition by {@link
+ * MessageLogPartitionManager} are only still counted in the rollups. Ranges reaching back that far
+ * are answered from the rollups if the query allows it. Otherwise they are cut to the retained
+ * entries, which the response states, and rejected if none of the range is retained.
+ */
+@Component
+class MessageLogQueryEngine {
+
+    static final int MAX_DIMENSIONS = 3;
+    static final int MAX_GROUPS = 1000;
+
+    private final MessageLogColumnStore messageLogColumnStore;
+    private final MessageLogArchive messageLogArchive;
+    private final MessageLogPartitionManager messageLogPartitionManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogQueryEngine(
+            MessageLogColumnStore messageLogColumnStore,
+            MessageLogArchive messageLogArchive,
+            MessageLogPartitionManager messageLogPartitionManager,
+            JdbcTemplate jdbcTemplate) {
+        this.messageLogColumnStore = messageLogColumnStore;
+        this.messageLogArchive = messageLogArchive;
+        this.messageLogPartitionManager = messageLogPartitionManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param userId the user to query, or {@code null} for all users of the customer
+     * @param truncUnit the unit {@link AnalyticsDimension#PERIOD} is truncated to
+     * @return the groups ordered by their dimensions, or {@code null} if there are none
+     */
+    MessageLogResource.AnalyticsQueryResponse query(
+            long customerId,
+            Long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String truncUnit) {
+        validate(dimensions, measures);
+
+        boolean fromRollups =
+                dimensions.stream().allMatch(dimension -> dimension.getRollupExpression() != null)
+                        && measures.stream()
+                                .allMatch(measure -> measure.getRollupExpression() != null);
+
+        ZonedDateTime retainedFrom = retainedFrom(customerId);
+        ZonedDateTime cutFrom = null;
+        if (!fromRollups && retainedFrom != null && from.isBefore(retainedFrom)) {
+            if (!to.isAfter(retainedFrom)) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "The range lies before "
+                                + retainedFrom.toLocalDate()
+                                + ", only dimensions and measures of the rollups reach back that"
+                                + " far.");
+            }
+            from = retainedFrom;
+            cutFrom = retainedFrom;
+        }
+
+        // The column store only holds entries still in message_log
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                retainedFrom == null || !from.isBefore(retainedFrom)
+                        ? messageLogColumnStore.query(
+                                customerId, userId, dimensions, measures, from, to, truncUnit)
+                        : null;
+        if (rows != null) {
+            rows.sort(orderOf(dimensions));
+            return toResponse(AnalyticsQuerySource.COLUMN_STORE, rows, cutFrom);
+        }
+
+        String alias = fromRollups ? "r." : "m.";
+
+        List<Object> args = new ArrayList<>();
+        StringJoiner select = new StringJoiner(", ");
+        for (AnalyticsDimension dimension : dimensions) {
+            select.add(
+                    fromRollups
+                            ? dimension.getRollupExpression()
+                            : dimension.getMessageLogExpression());
+            if (dimension == AnalyticsDimension.PERIOD) {
+                args.add(truncUnit);
+            }
+        }
+        for (AnalyticsMeasure measure : measures) {
+            select.add(
+                    fromRollups
+                            ? measure.getRollupExpression()
+                            : measure.getMessageLogExpression());
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(select).append(" FROM ");
+        if (fromRollups) {
+            sql.append("message_log_rollups r");
+        } else {
+            sql.append("message_log m");
+            if (measures.stream().anyMatch(AnalyticsMeasure::needsRatings)) {
+                sql.append(" LEFT JOIN response_ratings rr ON rr.message_log_id = m.id");
+            }
+        }
+
+        sql.append(" WHERE ")
+                .append(alias)
+                .append(userId == null ? "customer_id" : "user_id")
+                .append(" = ? AND ")
+                .append(alias)
+                .append(fromRollups ? "bucket_start" : "received_at")
+                .append(" BETWEEN ? AND ?");
+        args.add(userId == null ? customerId : userId);
+        args.add(from.toOffsetDateTime());
+        args.add(to.toOffsetDateTime());
+
+        // Dimensions are grouped and ordered by position, so PERIOD binds its unit only once
+        StringJoiner positions = new StringJoiner(", ");
+        for (int i = 1; i <= dimensions.size(); i++) {
+            positions.add(String.valueOf(i));
+        }
+        if (!dimensions.isEmpty()) {
+            sql.append(" GROUP BY ").append(positions);
+        }
+        // Without dimensions an empty range would still yield one row
+        sql.append(" HAVING COUNT(*) > 0");
+        if (!dimensions.isEmpty()) {
+            sql.append(" ORDER BY ").append(positions);
+        }
+        // One more than allowed tells whether the result is too large
+        sql.append(" LIMIT ?");
+        args.add(MAX_GROUPS + 1);
+
+        rows =
+                jdbcTemplate.query(
+                        sql.toString(),
+                        (rs, rowNum) -> {
+                            Map<AnalyticsDimension, Object> dimensionValues =
+                                    new EnumMap<>(AnalyticsDimension.class);
+                            int column = 1;
+                            for (AnalyticsDimension dimension : dimensions) {
+                                dimensionValues.put(
+                                        dimension, toDimensionValue(rs.getObject(column++)));
+                            }
+                            Map<AnalyticsMeasure, Number> measureValues =
+                                    new EnumMap<>(AnalyticsMeasure.class);
+                            for (AnalyticsMeasure measure : measures) {
+                                measureValues.put(
+                                        measure,
+                                        toMeasureValue(measure, rs.getObject(column++)));
+                            }
+                            return new MessageLogResource.AnalyticsQueryRow(
+                                    dimensionValues, measureValues);
+                        },
+                        args.toArray());
+
+        return toResponse(
+                fromRollups ? AnalyticsQuerySource.ROLLUPS : AnalyticsQuerySource.MESSAGE_LOG,
+                rows,
+                cutFrom);
+    }
+
+    // The later of the archive's and the partitions' horizon, or null if all entries are kept
+    private ZonedDateTime retainedFrom(long customerId) {
+        ZonedDateTime archivedBefore = messageLogArchive.retainedFrom(customerId);
+        ZonedDateTime droppedBefore = messageLogPartitionManager.retainedFrom();
+        if (archivedBefore == null || droppedBefore == null) {
+            return archivedBefore == null ? droppedBefore : archivedBefore;
+        }
+        return archivedBefore.isAfter(droppedBefore) ? archivedBefore : droppedBefore;
+    }
+
+    private static MessageLogResource.AnalyticsQueryResponse toResponse(
+            AnalyticsQuerySource source,
+            List<MessageLogResource.AnalyticsQueryRow> rows,
+            ZonedDateTime cutFrom) {
+        if (rows.size() > MAX_GROUPS) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "The query has more than "
+                            + MAX_GROUPS
+                            + " groups, use fewer dimensions or a shorter range.");
+        }
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        return new MessageLogResource.AnalyticsQueryResponse(source, rows, cutFrom);
+    }
+
+    // Same order as ORDER BY: by each dimension in turn, ascending with nulls last
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<MessageLogResource.AnalyticsQueryRow> orderOf(
+            List<AnalyticsDimension> dimensions) {
+        return (a, b) -> {
+            for (AnalyticsDimension dimension : dimensions) {
+                Comparable value = (Comparable) a.dimensions().get(dimension);
+                Object other = b.dimensions().get(dimension);
+                int result;
+                if (value == null || other == null) {
+                    result = value == null ? (other == null ? 0 : 1) : -1;
+                } else {
+                    result = value.compareTo(other);
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static void validate(
+            List<AnalyticsDimension> dimensions, List<AnalyticsMeasure> measures) {
+        if (dimensions.size() > MAX_DIMENSIONS) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "A query has at most " + MAX_DIMENSIONS + " dimensions.");
+        }
+        if (measures.isEmpty()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "A query needs at least one measure.");
+        }
+        if (new HashSet<>(dimensions).size() < dimensions.size()
+                || new HashSet<>(measures).size() < measures.size()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Dimensions and measures must not repeat.");
+        }
+    }
+
+    // Periods are truncated in Berlin time and come back as local timestamps
+    private static Object toDimensionValue(Object value) {
+        return value instanceof Timestamp timestamp
+                ? timestamp.toLocalDateTime().atZone(BERLIN_ZONE)
+                : value;
+    }
+
+    static Number toMeasureValue(AnalyticsMeasure measure, Object value) {
+        if (!(value instanceof Number number)) {
+            return null;
+        }
+        if (measure == AnalyticsMeasure.COUNT || measure == AnalyticsMeasure.TOTAL_TOKENS) {
+            return number.longValue();
+        }
+        return (double) Math.round(number.doubleValue() * 100) / 100;
+    }
+}
@@ -2,7 +2,14 @@ package de.flowsuite.mailflow.api.messagelog;
 
 import de.flowsuite.mailflow.common.entity.MessageLogEntry;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -10,92 +17,76 @@ import org.springframework.stereotype.Repository;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 interface MessageLogRepository extends CrudRepository<MessageLogEntry, Long> {
 
-    List<MessageLogEntry> findByCustomerId(long customerId);
+    // message_log is partitioned by received_at. Ordering by it lets Postgres read the partitions
+    // newest first and stop at the limit; the keyset condition of later pages prunes newer ones.
+    Window<MessageLogEntry> findByCustomerIdOrderByReceivedAtDescIdDesc(
+            long customerId, ScrollPosition position, Limit limit);
 
-    List<MessageLogEntry> findByUserId(long userId);
+    Window<MessageLogEntry> findByUserIdOrderByReceivedAtDescIdDesc(
+            long userId, ScrollPosition position, Limit limit);
 
     Optional<MessageLogEntry> findByToken(String token);
 
-    boolean existsByToken(String token);
-
     int countByCustomerId(long customerId);
 
     int countByUserId(long userId);
 
-    int countByCustomerIdAndReceivedAtBetween(
-            long customerId, ZonedDateTime from, ZonedDateTime to);
-
-    int countByUserIdAndReceivedAtBetween(long userId, ZonedDateTime from, ZonedDateTime to);
-
-    @Query(
-            """
-            SELECT
-                DATE_TRUNC(:truncUnit, m.receivedAt) AS period,
-                m.category AS category,
-                COUNT(m) AS count
-            FROM MessageLogEntry m
-            WHERE m.customerId = :customerId
-                AND m.receivedAt BETWEEN :from AND :to
-            GROUP BY period, m.category
-            """)
-    List<Object[]> aggregateCategoryCountsByCustomer(
-            @Param("truncUnit") String truncUnit,
-            @Param("customerId") long customerId,
-            @Param("from") ZonedDateTime from,
-            @Param("to") ZonedDateTime to);
-
+    // The sender hash is not mapped on the entity, it is written by MessageLogWriter. Both queries
+    // are answered from idx_message_log_sender in (received_at, id) order, newest first.
     @Query(
-            """
-            SELECT
-                AVG(m.processingTimeInSeconds) AS avgProcessingTime,
-                CASE
-                    WHEN COUNT(m) = 0 THEN 0
-                    ELSE COUNT(CASE WHEN m.replied THEN 1 END) * 1.0 / COUNT(m)
-                END AS responseRate
-            FROM MessageLogEntry m
-            WHERE m.customerId = :customerId
-              AND m.receivedAt BETWEEN :from AND :to
-            """)
-    List<Object[]> aggregateAvgProcessingTimeAndResponseRateByCustomer(
-            @Param("customerId") long customerId,
-            @Param("from") ZonedDateTime from,
-            @Param("to") ZonedDateTime to);
+            value =
+                    """
+                    SELECT * FROM message_log
+                    WHERE user_id = :userId AND from_email_address_hash = :senderHash
+                    ORDER BY received_at DESC, id DESC
+                    LIMIT :limit
+                    """,
+            nativeQuery = true)
+    List<MessageLogEntry> findFirstBySender(
+            @Param("userId") long userId,
+            @Param("senderHash") String senderHash,
+            @Param("limit") int limit);
 
     @Query(
-            """
-            SELECT
-                DATE_TRUNC(:truncUnit, m.receivedAt) AS period,
-                m.category AS category,
-                COUNT(m) AS count
-            FROM MessageLogEntry m
-            WHERE m.userId = :userId
-                AND m.receivedAt BETWEEN :from AND :to
-            GROUP BY period, m.category
-            """)
-    List<Object[]> aggregateCategoryCountsByUser(
-            @Param("truncUnit") String truncUnit,
+            value =
+                    """
+                    SELECT * FROM message_log
+                    WHERE user_id = :userId AND from_email_address_hash = :senderHash
+                      AND received_at <= :receivedAt
+                      AND (received_at < :receivedAt OR id < :id)
+                    ORDER BY received_at DESC, id DESC
+                    LIMIT :limit
+                    """,
+            nativeQuery = true)
+    List<MessageLogEntry> findNextBySender(
             @Param("userId") long userId,
-            @Param("from") ZonedDateTime from,
-            @Param("to") ZonedDateTime to);
-
+            @Param("senderHash") String senderHash,
+            @Param("receivedAt") ZonedDateTime receivedAt,
+            @Param("id") long id,
+            @Param("limit") int limit);
+
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
     @Query(
             """
-            SELECT
-                AVG(m.processingTimeInSeconds) AS avgProcessingTime,
-                CASE
-                    WHEN COUNT(m) = 0 THEN 0
-                    ELSE COUNT(CASE WHEN m.replied THEN 1 END) * 1.0 / COUNT(m)
-                END AS responseRate
+            SELECT m
             FROM MessageLogEntry m
-            WHERE m.userId = :userId
-              AND m.receivedAt BETWEEN :from AND :to
+            WHERE m.customerId = :customerId
+              AND m.receivedAt >= :from
+              AND m.receivedAt < :to
+              AND (:category IS NULL OR m.category = :category)
+            ORDER BY m.receivedAt, m.id
             """)
-    List<Object[]> aggregateAvgProcessingTimeAndResponseRateByUser(
-            @Param("userId") long userId,
+    Stream<MessageLogEntry> streamForExport(
+            @Param("customerId") long customerId,
             @Param("from") ZonedDateTime from,
-            @Param("to") ZonedDateTime to);
+            @Param("to") ZonedDateTime to,
+            @Param("category") String category);
 }
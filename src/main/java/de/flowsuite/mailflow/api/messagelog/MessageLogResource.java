@@ -1,19 +1,41 @@
 package de.flowsuite.mailflow.api.messagelog;
 
+import static de.flowsuite.mailflow.api.messagelog.MessageLogFingerprints.FINGERPRINT_PATTERN;
+import static de.flowsuite.mailflow.api.messagelog.MessageLogSearch.MAX_QUERY_LENGTH;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import de.flowsuite.mailflow.api.util.IdempotencyKeys;
+import de.flowsuite.mailflow.api.util.PaginationUtil;
 import de.flowsuite.mailflow.common.constant.Timeframe;
 import de.flowsuite.mailflow.common.dto.CreateMessageLogEntryRequest;
 import de.flowsuite.mailflow.common.entity.MessageLogEntry;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.math.BigDecimal;
 import java.net.URI;
+import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -23,9 +45,11 @@ import java.util.Map;
 class MessageLogResource {
 
     private final MessageLogService messageLogService;
+    private final IdempotencyKeys idempotencyKeys;
 
-    MessageLogResource(MessageLogService messageLogService) {
+    MessageLogResource(MessageLogService messageLogService, IdempotencyKeys idempotencyKeys) {
         this.messageLogService = messageLogService;
+        this.idempotencyKeys = idempotencyKeys;
     }
 
     @PostMapping("/{customerId}/users/{userId}/message-log")
@@ -33,38 +57,196 @@ class MessageLogResource {
             @PathVariable long customerId,
             @PathVariable long userId,
             @RequestBody @Valid CreateMessageLogEntryRequest request,
+            @RequestParam(required = false)
+                    @Pattern(regexp = FINGERPRINT_PATTERN)
+                    String fingerprint,
+            @RequestHeader(name = IdempotencyKeys.HEADER, required = false) String idempotencyKey,
             @AuthenticationPrincipal Jwt jwt,
             UriComponentsBuilder uriBuilder) {
+        // Scoped to the client, which was authorised for the path when the key was first used
+        return idempotencyKeys.execute(
+                "message-log:" + customerId + ":" + userId + ":" + jwt.getSubject(),
+                idempotencyKey,
+                request,
+                MessageLogEntry.class,
+                () ->
+                        createMessageLogEntry(
+                                customerId, userId, request, fingerprint, jwt, uriBuilder));
+    }
+
+    private ResponseEntity<MessageLogEntry> createMessageLogEntry(
+            long customerId,
+            long userId,
+            CreateMessageLogEntryRequest request,
+            String fingerprint,
+            Jwt jwt,
+            UriComponentsBuilder uriBuilder) {
+        if (messageLogService.isWriteBehindEnabled()) {
+            MessageLogEntry acceptedMessageLogEntry =
+                    messageLogService.enqueueMessageLogEntry(
+                            customerId, userId, request, fingerprint, jwt);
+
+            if (acceptedMessageLogEntry == null) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(
+                                HttpHeaders.RETRY_AFTER,
+                                String.valueOf(
+                                        messageLogService.getWriteBehindRetryAfter().toSeconds()))
+                        .build();
+            }
+
+            return ResponseEntity.accepted()
+                    .location(buildLocation(acceptedMessageLogEntry, uriBuilder))
+                    .body(acceptedMessageLogEntry);
+        }
 
         MessageLogEntry createdMessageLogEntry =
-                messageLogService.createMessageLogEntry(customerId, userId, request, jwt);
+                messageLogService.createMessageLogEntry(
+                        customerId, userId, request, fingerprint, jwt);
 
-        URI location =
-                uriBuilder
-                        .path("/customers/{customerId}/users/{userId}/message-log/{id}")
-                        .buildAndExpand(
-                                createdMessageLogEntry.getCustomerId(),
-                                createdMessageLogEntry.getUserId(),
-                                createdMessageLogEntry.getId())
-                        .toUri();
+        return ResponseEntity.created(buildLocation(createdMessageLogEntry, uriBuilder))
+                .body(createdMessageLogEntry);
+    }
 
-        return ResponseEntity.created(location).body(createdMessageLogEntry);
+    @PostMapping("/{customerId}/message-log/batch")
+    ResponseEntity<CreateMessageLogEntriesResponse> createMessageLogEntries(
+            @PathVariable long customerId,
+            @RequestBody @NotEmpty @Size(max = MessageLogService.MAX_BATCH_SIZE)
+                    List<CreateMessageLogEntryBatchItem> items,
+            @AuthenticationPrincipal Jwt jwt) {
+        // Items are validated one by one, so that an invalid item only fails itself
+        List<CreateMessageLogEntryRequest> requests =
+                items.stream().map(item -> item == null ? null : item.request()).toList();
+        List<String> fingerprints =
+                items.stream().map(item -> item == null ? null : item.fingerprint()).toList();
+        return ResponseEntity.ok(
+                messageLogService.createMessageLogEntries(
+                        customerId, requests, fingerprints, jwt));
+    }
+
+    /** Tells mailbox-service which messages it has already processed, e.g. before a restart. */
+    @PostMapping("/{customerId}/users/{userId}/message-log/processed-fingerprints")
+    ResponseEntity<ProcessedFingerprintsResponse> getProcessedFingerprints(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestBody @Valid ProcessedFingerprintsRequest request,
+            @AuthenticationPrincipal Jwt jwt) {
+        return ResponseEntity.ok(
+                messageLogService.getProcessedFingerprints(
+                        customerId, userId, request.fingerprints(), jwt));
     }
 
     @GetMapping("/{customerId}/message-log")
     ResponseEntity<List<MessageLogEntry>> listMessageLogEntries(
-            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(
-                messageLogService.listMessageLogEntriesByCustomer(customerId, jwt));
+            @PathVariable long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        return PaginationUtil.toResponse(
+                messageLogService.listMessageLogEntriesByCustomer(
+                        customerId,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
     }
 
     @GetMapping("/{customerId}/users/{userId}/message-log")
     ResponseEntity<List<MessageLogEntry>> listMessageLogEntries(
             @PathVariable long customerId,
             @PathVariable long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
             @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(
-                messageLogService.listMessageLogEntriesByUser(customerId, userId, jwt));
+        return PaginationUtil.toResponse(
+                messageLogService.listMessageLogEntriesByUser(
+                        customerId,
+                        userId,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
+    }
+
+    @GetMapping("/{customerId}/message-log/search")
+    ResponseEntity<List<MessageLogEntry>> searchMessageLogEntries(
+            @PathVariable long customerId,
+            @RequestParam @NotBlank @Size(max = MAX_QUERY_LENGTH) String q,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        return PaginationUtil.toResponse(
+                messageLogService.searchMessageLogEntries(
+                        customerId,
+                        q,
+                        from,
+                        to,
+                        category,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
+    }
+
+    @GetMapping("/{customerId}/users/{userId}/message-log/search")
+    ResponseEntity<List<MessageLogEntry>> searchMessageLogEntries(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestParam @NotBlank String sender,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        return PaginationUtil.toResponse(
+                messageLogService.searchMessageLogEntriesBySender(
+                        customerId,
+                        userId,
+                        sender,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
+    }
+
+    @GetMapping("/{customerId}/message-log/export")
+    ResponseEntity<StreamingResponseBody> exportMessageLogEntries(
+            @PathVariable long customerId,
+            @RequestParam(defaultValue = "NDJSON") MessageLogExportFormat format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "false") boolean decrypt,
+            @AuthenticationPrincipal Jwt jwt) {
+        StreamingResponseBody body =
+                messageLogService.exportMessageLogEntries(
+                        customerId, format, from, to, category, decrypt, jwt);
+
+        String fileName = "message-log-" + customerId + "." + format.getFileExtension();
+
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(
+                        HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+
+    @GetMapping("/{customerId}/message-log/archive")
+    ResponseEntity<List<MessageLogEntry>> listArchivedMessageLogEntries(
+            @PathVariable long customerId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        return PaginationUtil.toResponse(
+                messageLogService.listArchivedMessageLogEntries(
+                        customerId,
+                        from,
+                        to,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
     }
 
     @GetMapping("/{customerId}/users/{userId}/message-log/{id}")
@@ -115,9 +297,389 @@ class MessageLogResource {
         }
     }
 
+    @GetMapping("/{customerId}/message-log/costs")
+    ResponseEntity<MessageLogCostResponse> getMessageLogCostsForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @AuthenticationPrincipal Jwt jwt) {
+        MessageLogCostResponse costResponse =
+                messageLogService.getMessageLogCostsForCustomer(
+                        customerId, from, to, timeframe, jwt);
+
+        if (costResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(costResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/users/{userId}/message-log/costs")
+    ResponseEntity<MessageLogCostResponse> getMessageLogCostsForUser(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @AuthenticationPrincipal Jwt jwt) {
+        MessageLogCostResponse costResponse =
+                messageLogService.getMessageLogCostsForUser(
+                        customerId, userId, from, to, timeframe, jwt);
+
+        if (costResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(costResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/message-log/processing-times")
+    ResponseEntity<ProcessingTimeAnalyticsResponse> getProcessingTimeAnalyticsForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @RequestParam(required = false) String category,
+            @AuthenticationPrincipal Jwt jwt) {
+        ProcessingTimeAnalyticsResponse analyticsResponse =
+                messageLogService.getProcessingTimeAnalyticsForCustomer(
+                        customerId, from, to, timeframe, category, jwt);
+
+        if (analyticsResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(analyticsResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/users/{userId}/message-log/processing-times")
+    ResponseEntity<ProcessingTimeAnalyticsResponse> getProcessingTimeAnalyticsForUser(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @RequestParam(required = false) String category,
+            @AuthenticationPrincipal Jwt jwt) {
+        ProcessingTimeAnalyticsResponse analyticsResponse =
+                messageLogService.getProcessingTimeAnalyticsForUser(
+                        customerId, userId, from, to, timeframe, category, jwt);
+
+        if (analyticsResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(analyticsResponse);
+        }
+    }
+
+    /** Reports how long mailbox-service spent in each stage of its pipeline for an entry. */
+    @PutMapping("/{customerId}/users/{userId}/message-log/{id}/stage-durations")
+    ResponseEntity<Void> recordStageDurations(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @PathVariable long id,
+            @RequestBody @Valid StageDurationsRequest request,
+            @AuthenticationPrincipal Jwt jwt) {
+        // The first report wins, a repeated one must not be counted twice
+        messageLogService.recordStageDurations(customerId, userId, id, request, jwt);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{customerId}/message-log/stage-latencies")
+    ResponseEntity<StageLatencyAnalyticsResponse> getStageLatencyAnalyticsForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @AuthenticationPrincipal Jwt jwt) {
+        StageLatencyAnalyticsResponse analyticsResponse =
+                messageLogService.getStageLatencyAnalyticsForCustomer(
+                        customerId, from, to, timeframe, jwt);
+
+        if (analyticsResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(analyticsResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/users/{userId}/message-log/stage-latencies")
+    ResponseEntity<StageLatencyAnalyticsResponse> getStageLatencyAnalyticsForUser(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @AuthenticationPrincipal Jwt jwt) {
+        StageLatencyAnalyticsResponse analyticsResponse =
+                messageLogService.getStageLatencyAnalyticsForUser(
+                        customerId, userId, from, to, timeframe, jwt);
+
+        if (analyticsResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(analyticsResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/message-log/query")
+    ResponseEntity<AnalyticsQueryResponse> queryMessageLogAnalyticsForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) List<AnalyticsDimension> dimensions,
+            @RequestParam List<AnalyticsMeasure> measures,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @AuthenticationPrincipal Jwt jwt) {
+        AnalyticsQueryResponse queryResponse =
+                messageLogService.queryMessageLogAnalyticsForCustomer(
+                        customerId,
+                        dimensions == null ? List.of() : dimensions,
+                        measures,
+                        from,
+                        to,
+                        timeframe,
+                        jwt);
+
+        if (queryResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(queryResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/users/{userId}/message-log/query")
+    ResponseEntity<AnalyticsQueryResponse> queryMessageLogAnalyticsForUser(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestParam(required = false) List<AnalyticsDimension> dimensions,
+            @RequestParam List<AnalyticsMeasure> measures,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(required = false) Timeframe timeframe,
+            @AuthenticationPrincipal Jwt jwt) {
+        AnalyticsQueryResponse queryResponse =
+                messageLogService.queryMessageLogAnalyticsForUser(
+                        customerId,
+                        userId,
+                        dimensions == null ? List.of() : dimensions,
+                        measures,
+                        from,
+                        to,
+                        timeframe,
+                        jwt);
+
+        if (queryResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(queryResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/message-log/senders")
+    ResponseEntity<SenderAnalyticsResponse> getSenderAnalyticsForCustomer(
+            @PathVariable long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(defaultValue = "10") int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        SenderAnalyticsResponse analyticsResponse =
+                messageLogService.getSenderAnalyticsForCustomer(customerId, from, to, limit, jwt);
+
+        if (analyticsResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(analyticsResponse);
+        }
+    }
+
+    @GetMapping("/{customerId}/users/{userId}/message-log/senders")
+    ResponseEntity<SenderAnalyticsResponse> getSenderAnalyticsForUser(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+                    Date from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+            @RequestParam(defaultValue = "10") int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        SenderAnalyticsResponse analyticsResponse =
+                messageLogService.getSenderAnalyticsForUser(
+                        customerId, userId, from, to, limit, jwt);
+
+        if (analyticsResponse == null) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.ok(analyticsResponse);
+        }
+    }
+
+    @GetMapping(
+            value = "/{customerId}/message-log/feed",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    ResponseEntity<SseEmitter> subscribeToMessageLogFeedForCustomer(
+            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt) {
+        return toFeedResponse(
+                messageLogService.subscribeToMessageLogFeedForCustomer(customerId, jwt));
+    }
+
+    @GetMapping(
+            value = "/{customerId}/users/{userId}/message-log/feed",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    ResponseEntity<SseEmitter> subscribeToMessageLogFeedForUser(
+            @PathVariable long customerId,
+            @PathVariable long userId,
+            @AuthenticationPrincipal Jwt jwt) {
+        return toFeedResponse(
+                messageLogService.subscribeToMessageLogFeedForUser(customerId, userId, jwt));
+    }
+
+    private static ResponseEntity<SseEmitter> toFeedResponse(SseEmitter emitter) {
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        // Keeps reverse proxies from buffering the event stream
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    private static URI buildLocation(
+            MessageLogEntry messageLogEntry, UriComponentsBuilder uriBuilder) {
+        return uriBuilder
+                .path("/customers/{customerId}/users/{userId}/message-log/{id}")
+                .buildAndExpand(
+                        messageLogEntry.getCustomerId(),
+                        messageLogEntry.getUserId(),
+                        messageLogEntry.getId())
+                .toUri();
+    }
+
+    record ProcessedFingerprintsRequest(
+            @NotNull @Size(max = MessageLogService.MAX_FINGERPRINT_LOOKUP_SIZE)
+                    List<@NotNull @Pattern(regexp = FINGERPRINT_PATTERN) String> fingerprints) {}
+
+    record ProcessedFingerprintsResponse(List<String> processedFingerprints) {}
+
+    /**
+     * An entry of a batch, with the fields of a {@link CreateMessageLogEntryRequest} next to the
+     * optional fingerprint of its message. Not a record, since Jackson cannot unwrap into record
+     * components.
+     */
+    static final class CreateMessageLogEntryBatchItem {
+
+        @JsonUnwrapped private CreateMessageLogEntryRequest request;
+
+        @JsonProperty private String fingerprint;
+
+        CreateMessageLogEntryRequest request() {
+            return request;
+        }
+
+        String fingerprint() {
+            return fingerprint;
+        }
+    }
+
+    record CreateMessageLogEntriesResponse(
+            int createdCount, int failedCount, List<CreateMessageLogEntryResult> results) {}
+
+    record CreateMessageLogEntryResult(
+            int index, int status, MessageLogEntry messageLogEntry, String error) {}
+
     record MessageLogAnalyticsResponse(
             double avgProcessingTimeInSeconds,
             double responseRate,
             int processedMessagesToday,
             Map<String, Map<String, Long>> messageLogAnalytics) {}
+
+    /**
+     * @param costsByPeriod token usage per period and model
+     */
+    record MessageLogCostResponse(
+            String currency,
+            BigDecimal totalCost,
+            long totalInputTokens,
+            long totalOutputTokens,
+            Map<String, Map<String, ModelCost>> costsByPeriod) {}
+
+    /**
+     * @param cost {@code null} if there is no price configured for the model
+     */
+    record ModelCost(long requestCount, long inputTokens, long outputTokens, BigDecimal cost) {}
+
+    /**
+     * @param percentilesByPeriod percentiles per period and category
+     */
+    record ProcessingTimeAnalyticsResponse(
+            ProcessingTimePercentiles overall,
+            Map<String, Map<String, ProcessingTimePercentiles>> percentilesByPeriod) {}
+
+    record ProcessingTimePercentiles(long count, double p50, double p90, double p95, double p99) {}
+
+    record StageDurationsRequest(
+            @Min(0) Integer imapFetchMillis,
+            @Min(0) Integer categorisationMillis,
+            @Min(0) Integer ragRetrievalMillis,
+            @Min(0) Integer generationMillis,
+            @Min(0) Integer smtpSendMillis) {}
+
+    /** Percentiles are in milliseconds. */
+    record StageLatencyAnalyticsResponse(
+            PipelineStage slowestStage,
+            Map<PipelineStage, ProcessingTimePercentiles> overall,
+            Map<String, Map<PipelineStage, ProcessingTimePercentiles>> percentilesByPeriod) {}
+
+    /**
+     * @param dimensions the group's value per dimension; periods are Berlin timestamps
+     * @param measures the group's value per measure, {@code null} if it has no data, e.g. no
+     *     ratings
+     */
+    record AnalyticsQueryRow(
+            Map<AnalyticsDimension, Object> dimensions, Map<AnalyticsMeasure, Number> measures) {}
+
+    /**
+     * @param source where the query was answered from
+     * @param cutFrom set if the range reached back to archived or dropped entries, which only the
+     *     rollups still count; the rows then only cover the range from this time on
+     */
+    record AnalyticsQueryResponse(
+            AnalyticsQuerySource source, List<AnalyticsQueryRow> rows, ZonedDateTime cutFrom) {}
+
+    /**
+     * @param distinctSenders estimated number of distinct sender addresses, about 3% error
+     * @param topSenders senders with the most messages, at most 64
+     */
+    record SenderAnalyticsResponse(long distinctSenders, List<TopSender> topSenders) {}
+
+    /**
+     * @param emailAddress the sender's address, {@code null} unless requested by an admin
+     * @param emailAddressHash HMAC of the address, as used for blacklist entries, {@code null}
+     *     unless requested by an admin
+     * @param maxOverestimate how much {@code messageCount} may exceed the true count
+     */
+    record TopSender(
+            String emailAddress,
+            String emailAddressHash,
+            long messageCount,
+            long maxOverestimate) {}
+
+    /** Summary of a new entry pushed by the message log feed, without sender or subject. */
+    record MessageLogFeedEntry(
+            long id,
+            long userId,
+            String category,
+            boolean replied,
+            ZonedDateTime receivedAt,
+            int processingTimeInSeconds) {}
+
+    record MessageLogFeedCounters(long processedMessagesToday) {}
 }
@@ -0,0 +1,97 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * Hourly aggregate of the message log per user and category. Rows are only written through
+ * {@link MessageLogRollupUpdater}, JPA is used for reading them.
+ */
+@Entity
+@Immutable
+@IdClass(MessageLogRollup.Key.class)
+@Table(name = "message_log_rollups")
+class MessageLogRollup {
+
+    @Id private Long customerId;
+    @Id private Long userId;
+    @Id private ZonedDateTime bucketStart;
+    @Id private String category;
+
+    private long messageCount;
+    private long repliedCount;
+    private long processingTimeSum;
+    private long categorisationInputTokensSum;
+    private long categorisationOutputTokensSum;
+    private long categorisationTotalTokensSum;
+    private long inputTokensSum;
+    private long outputTokensSum;
+    private long totalTokensSum;
+
+    protected MessageLogRollup() {}
+
+    Long getCustomerId() {
+        return customerId;
+    }
+
+    Long getUserId() {
+        return userId;
+    }
+
+    ZonedDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    String getCategory() {
+        return category;
+    }
+
+    long getMessageCount() {
+        return messageCount;
+    }
+
+    long getRepliedCount() {
+        return repliedCount;
+    }
+
+    long getProcessingTimeSum() {
+        return processingTimeSum;
+    }
+
+    static class Key implements Serializable {
+
+        private Long customerId;
+        private Long userId;
+        private ZonedDateTime bucketStart;
+        private String category;
+
+        protected Key() {}
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(customerId, key.customerId)
+                    && Objects.equals(userId, key.userId)
+                    && Objects.equals(bucketStart, key.bucketStart)
+                    && Objects.equals(category, key.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(customerId, userId, bucketStart, category);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Periods are truncated in Berlin time, like {@link AnalyticsDimension#PERIOD}. {@code
+ * TIMEZONE(zone, t)} is the function form of {@code t AT TIME ZONE zone}, which HQL lacks.
+ */
+@Repository
+interface MessageLogRollupRepository
+        extends org.springframework.data.repository.Repository<
+                MessageLogRollup, MessageLogRollup.Key> {
+
+    /** Returns customer id, user id and message count of every user with messages since then. */
+    @Query(
+            """
+            SELECT r.customerId, r.userId, SUM(r.messageCount)
+            FROM MessageLogRollup r
+            WHERE r.bucketStart >= :since
+            GROUP BY r.customerId, r.userId
+            """)
+    List<Object[]> sumMessageCountsSince(@Param("since") ZonedDateTime since);
+
+    /**
+     * Aggregates everything the analytics endpoints need in one round trip. Each row holds a
+     * period and category with its message count, processing time sum and replied count between
+     * {@code from} and {@code to}. Today's count is kept by {@link MessageLogDailyCounters}.
+     */
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.category AS category,
+                SUM(r.messageCount) AS count,
+                SUM(r.processingTimeSum) AS processingTimeSum,
+                SUM(r.repliedCount) AS repliedCount
+            FROM MessageLogRollup r
+            WHERE r.customerId = :customerId AND r.bucketStart BETWEEN :from AND :to
+            GROUP BY period, r.category
+            """)
+    List<Object[]> aggregateAnalyticsByCustomer(
+            @Param("truncUnit") String truncUnit,
+            @Param("customerId") long customerId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.category AS category,
+                SUM(r.messageCount) AS count,
+                SUM(r.processingTimeSum) AS processingTimeSum,
+                SUM(r.repliedCount) AS repliedCount
+            FROM MessageLogRollup r
+            WHERE r.userId = :userId AND r.bucketStart BETWEEN :from AND :to
+            GROUP BY period, r.category
+            """)
+    List<Object[]> aggregateAnalyticsByUser(
+            @Param("truncUnit") String truncUnit,
+            @Param("userId") long userId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.model AS model,
+                SUM(r.requestCount) AS requestCount,
+                SUM(r.inputTokensSum) AS inputTokens,
+                SUM(r.outputTokensSum) AS outputTokens
+            FROM MessageLogTokenRollup r
+            WHERE r.customerId = :customerId
+                AND r.bucketStart BETWEEN :from AND :to
+            GROUP BY period, r.model
+            """)
+    List<Object[]> aggregateTokenUsageByCustomer(
+            @Param("truncUnit") String truncUnit,
+            @Param("customerId") long customerId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.model AS model,
+                SUM(r.requestCount) AS requestCount,
+                SUM(r.inputTokensSum) AS inputTokens,
+                SUM(r.outputTokensSum) AS outputTokens
+            FROM MessageLogTokenRollup r
+            WHERE r.userId = :userId
+                AND r.bucketStart BETWEEN :from AND :to
+            GROUP BY period, r.model
+            """)
+    List<Object[]> aggregateTokenUsageByUser(
+            @Param("truncUnit") String truncUnit,
+            @Param("userId") long userId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.category AS category,
+                r.bin AS bin,
+                SUM(r.messageCount) AS count
+            FROM MessageLogProcessingTimeRollup r
+            WHERE r.customerId = :customerId
+                AND r.bucketStart BETWEEN :from AND :to
+                AND (:category IS NULL OR r.category = :category)
+            GROUP BY period, r.category, r.bin
+            """)
+    List<Object[]> aggregateProcessingTimeHistogramsByCustomer(
+            @Param("truncUnit") String truncUnit,
+            @Param("customerId") long customerId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to,
+            @Param("category") String category);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.category AS category,
+                r.bin AS bin,
+                SUM(r.messageCount) AS count
+            FROM MessageLogProcessingTimeRollup r
+            WHERE r.userId = :userId
+                AND r.bucketStart BETWEEN :from AND :to
+                AND (:category IS NULL OR r.category = :category)
+            GROUP BY period, r.category, r.bin
+            """)
+    List<Object[]> aggregateProcessingTimeHistogramsByUser(
+            @Param("truncUnit") String truncUnit,
+            @Param("userId") long userId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to,
+            @Param("category") String category);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.stage AS stage,
+                r.bin AS bin,
+                SUM(r.messageCount) AS count
+            FROM MessageLogStageLatencyRollup r
+            WHERE r.customerId = :customerId
+                AND r.bucketStart BETWEEN :from AND :to
+            GROUP BY period, r.stage, r.bin
+            """)
+    List<Object[]> aggregateStageLatencyHistogramsByCustomer(
+            @Param("truncUnit") String truncUnit,
+            @Param("customerId") long customerId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+
+    @Query(
+            """
+            SELECT
+                DATE_TRUNC(:truncUnit, TIMEZONE('Europe/Berlin', r.bucketStart)) AS period,
+                r.stage AS stage,
+                r.bin AS bin,
+                SUM(r.messageCount) AS count
+            FROM MessageLogStageLatencyRollup r
+            WHERE r.userId = :userId
+                AND r.bucketStart BETWEEN :from AND :to
+            GROUP BY period, r.stage, r.bin
+            """)
+    List<Object[]> aggregateStageLatencyHistogramsByUser(
+            @Param("truncUnit") String truncUnit,
+            @Param("userId") long userId,
+            @Param("from") ZonedDateTime from,
+            @Param("to") ZonedDateTime to);
+}
@@ -0,0 +1,393 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps {@code message_log_rollups}, {@code message_log_token_rollups} and {@code
+ * message_log_processing_time_rollups} up to date. New entries are added to their hourly rollup
+ * rows within the inserting transaction; on startup {@link #backfill()} builds empty tables from
+ * existing rows.
+ */
+@Component
+class MessageLogRollupUpdater {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogRollupUpdater.class);
+
+    private static final String UPSERT_SQL =
+            """
+            INSERT INTO message_log_rollups (
+                customer_id, user_id, bucket_start, category, message_count, replied_count,
+                processing_time_sum, categorisation_input_tokens_sum,
+                categorisation_output_tokens_sum, categorisation_total_tokens_sum,
+                input_tokens_sum, output_tokens_sum, total_tokens_sum)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (customer_id, user_id, bucket_start, category) DO UPDATE SET
+                message_count = message_log_rollups.message_count + EXCLUDED.message_count,
+                replied_count = message_log_rollups.replied_count + EXCLUDED.replied_count,
+                processing_time_sum =
+                    message_log_rollups.processing_time_sum + EXCLUDED.processing_time_sum,
+                categorisation_input_tokens_sum =
+                    message_log_rollups.categorisation_input_tokens_sum
+                        + EXCLUDED.categorisation_input_tokens_sum,
+                categorisation_output_tokens_sum =
+                    message_log_rollups.categorisation_output_tokens_sum
+                        + EXCLUDED.categorisation_output_tokens_sum,
+                categorisation_total_tokens_sum =
+                    message_log_rollups.categorisation_total_tokens_sum
+                        + EXCLUDED.categorisation_total_tokens_sum,
+                input_tokens_sum = message_log_rollups.input_tokens_sum + EXCLUDED.input_tokens_sum,
+                output_tokens_sum =
+                    message_log_rollups.output_tokens_sum + EXCLUDED.output_tokens_sum,
+                total_tokens_sum = message_log_rollups.total_tokens_sum + EXCLUDED.total_tokens_sum
+            """;
+
+    private static final String BACKFILL_SQL =
+            """
+            INSERT INTO message_log_rollups (
+                customer_id, user_id, bucket_start, category, message_count, replied_count,
+                processing_time_sum, categorisation_input_tokens_sum,
+                categorisation_output_tokens_sum, categorisation_total_tokens_sum,
+                input_tokens_sum, output_tokens_sum, total_tokens_sum)
+            SELECT
+                customer_id,
+                user_id,
+                DATE_TRUNC('hour', received_at),
+                category,
+                COUNT(*),
+                COUNT(*) FILTER (WHERE replied),
+                SUM(processing_time_in_seconds),
+                COALESCE(SUM(categorisation_input_tokens), 0),
+                COALESCE(SUM(categorisation_output_tokens), 0),
+                COALESCE(SUM(categorisation_total_tokens), 0),
+                COALESCE(SUM(input_tokens), 0),
+                COALESCE(SUM(output_tokens), 0),
+                COALESCE(SUM(total_tokens), 0)
+            FROM message_log
+            GROUP BY customer_id, user_id, DATE_TRUNC('hour', received_at), category
+            """;
+
+    private static final String UPSERT_TOKENS_SQL =
+            """
+            INSERT INTO message_log_token_rollups (
+                customer_id, user_id, bucket_start, model, request_count,
+                input_tokens_sum, output_tokens_sum)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (customer_id, user_id, bucket_start, model) DO UPDATE SET
+                request_count = message_log_token_rollups.request_count + EXCLUDED.request_count,
+                input_tokens_sum =
+                    message_log_token_rollups.input_tokens_sum + EXCLUDED.input_tokens_sum,
+                output_tokens_sum =
+                    message_log_token_rollups.output_tokens_sum + EXCLUDED.output_tokens_sum
+            """;
+
+    private static final String BACKFILL_TOKENS_SQL =
+            """
+            INSERT INTO message_log_token_rollups (
+                customer_id, user_id, bucket_start, model, request_count,
+                input_tokens_sum, output_tokens_sum)
+            SELECT
+                customer_id,
+                user_id,
+                DATE_TRUNC('hour', received_at),
+                model,
+                COUNT(*),
+                COALESCE(SUM(input_tokens), 0),
+                COALESCE(SUM(output_tokens), 0)
+            FROM (
+                SELECT customer_id, user_id, received_at, categorisation_llm_used AS model,
+                    categorisation_input_tokens AS input_tokens,
+                    categorisation_output_tokens AS output_tokens
+                FROM message_log
+                WHERE categorisation_llm_used IS NOT NULL
+                UNION ALL
+                SELECT customer_id, user_id, received_at, llm_used, input_tokens, output_tokens
+                FROM message_log
+                WHERE llm_used IS NOT NULL
+            ) usage
+            GROUP BY customer_id, user_id, DATE_TRUNC('hour', received_at), model
+            """;
+
+    private static final String UPSERT_PROCESSING_TIMES_SQL =
+            """
+            INSERT INTO message_log_processing_time_rollups (
+                customer_id, user_id, bucket_start, category, bin, message_count)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (customer_id, user_id, bucket_start, category, bin) DO UPDATE SET
+                message_count =
+                    message_log_processing_time_rollups.message_count + EXCLUDED.message_count
+            """;
+
+    // Bins are computed in Java, so the backfill only groups by distinct processing time
+    private static final String PROCESSING_TIMES_SQL =
+            """
+            SELECT customer_id, user_id, DATE_TRUNC('hour', received_at) AS bucket_start,
+                category, processing_time_in_seconds, COUNT(*) AS message_count
+            FROM message_log
+            GROUP BY customer_id, user_id, DATE_TRUNC('hour', received_at), category,
+                processing_time_in_seconds
+            """;
+
+    // Lock order for concurrent upserts into the same rows
+    private static final Comparator<Bucket> BUCKET_ORDER =
+            Comparator.comparingLong(Bucket::customerId)
+                    .thenComparingLong(Bucket::userId)
+                    .thenComparing(Bucket::bucketStart)
+                    .thenComparing(Bucket::category);
+    private static final Comparator<HistogramBin> HISTOGRAM_BIN_ORDER =
+            Comparator.comparing(HistogramBin::bucket, BUCKET_ORDER)
+                    .thenComparingInt(HistogramBin::bin);
+    private static final Comparator<TokenBucket> TOKEN_BUCKET_ORDER =
+            Comparator.comparingLong(TokenBucket::customerId)
+                    .thenComparingLong(TokenBucket::userId)
+                    .thenComparing(TokenBucket::bucketStart)
+                    .thenComparing(TokenBucket::model);
+
+    private final boolean backfillOnStartup;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    MessageLogRollupUpdater(
+            @Value("${mailflow.message-log.rollup.backfill-on-startup}") boolean backfillOnStartup,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.backfillOnStartup = backfillOnStartup;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        Map<Bucket, long[]> sumsByBucket = new TreeMap<>(BUCKET_ORDER);
+        for (MessageLogEntry messageLogEntry : event.messageLogEntries()) {
+            long[] sums =
+                    sumsByBucket.computeIfAbsent(Bucket.of(messageLogEntry), k -> new long[9]);
+            sums[0]++;
+            sums[1] += messageLogEntry.isReplied() ? 1 : 0;
+            sums[2] += messageLogEntry.getProcessingTimeInSeconds();
+            sums[3] += valueOf(messageLogEntry.getCategorisationInputTokens());
+            sums[4] += valueOf(messageLogEntry.getCategorisationOutputTokens());
+            sums[5] += valueOf(messageLogEntry.getCategorisationTotalTokens());
+            sums[6] += valueOf(messageLogEntry.getInputTokens());
+            sums[7] += valueOf(messageLogEntry.getOutputTokens());
+            sums[8] += valueOf(messageLogEntry.getTotalTokens());
+        }
+
+        List<Object[]> rows = new ArrayList<>(sumsByBucket.size());
+        sumsByBucket.forEach(
+                (bucket, sums) -> {
+                    Object[] row = new Object[13];
+                    row[0] = bucket.customerId();
+                    row[1] = bucket.userId();
+                    row[2] = bucket.bucketStart().toOffsetDateTime();
+                    row[3] = bucket.category();
+                    for (int i = 0; i < sums.length; i++) {
+                        row[4 + i] = sums[i];
+                    }
+                    rows.add(row);
+                });
+
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        updateTokenRollups(event.messageLogEntries());
+        updateProcessingTimeRollups(event.messageLogEntries());
+    }
+
+    private void updateProcessingTimeRollups(List<MessageLogEntry> messageLogEntries) {
+        Map<HistogramBin, Long> countsByBin = new TreeMap<>(HISTOGRAM_BIN_ORDER);
+        for (MessageLogEntry messageLogEntry : messageLogEntries) {
+            HistogramBin bin =
+                    new HistogramBin(
+                            Bucket.of(messageLogEntry),
+                            ProcessingTimeHistogram.binOf(
+                                    messageLogEntry.getProcessingTimeInSeconds()));
+            countsByBin.merge(bin, 1L, Long::sum);
+        }
+        upsertProcessingTimeRollups(countsByBin);
+    }
+
+    private void upsertProcessingTimeRollups(Map<HistogramBin, Long> countsByBin) {
+        List<Object[]> rows = new ArrayList<>(countsByBin.size());
+        countsByBin.forEach(
+                (bin, count) ->
+                        rows.add(
+                                new Object[] {
+                                    bin.bucket().customerId(),
+                                    bin.bucket().userId(),
+                                    bin.bucket().bucketStart().toOffsetDateTime(),
+                                    bin.bucket().category(),
+                                    bin.bin(),
+                                    count
+                                }));
+
+        jdbcTemplate.batchUpdate(UPSERT_PROCESSING_TIMES_SQL, rows);
+    }
+
+    private void updateTokenRollups(List<MessageLogEntry> messageLogEntries) {
+        Map<TokenBucket, long[]> sumsByBucket = new TreeMap<>(TOKEN_BUCKET_ORDER);
+        for (MessageLogEntry messageLogEntry : messageLogEntries) {
+            addTokens(
+                    sumsByBucket,
+                    messageLogEntry,
+                    messageLogEntry.getCategorisationLlmUsed(),
+                    messageLogEntry.getCategorisationInputTokens(),
+                    messageLogEntry.getCategorisationOutputTokens());
+            addTokens(
+                    sumsByBucket,
+                    messageLogEntry,
+                    messageLogEntry.getLlmUsed(),
+                    messageLogEntry.getInputTokens(),
+                    messageLogEntry.getOutputTokens());
+        }
+
+        if (sumsByBucket.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(sumsByBucket.size());
+        sumsByBucket.forEach(
+                (bucket, sums) ->
+                        rows.add(
+                                new Object[] {
+                                    bucket.customerId(),
+                                    bucket.userId(),
+                                    bucket.bucketStart().toOffsetDateTime(),
+                                    bucket.model(),
+                                    sums[0],
+                                    sums[1],
+                                    sums[2]
+                                }));
+
+        jdbcTemplate.batchUpdate(UPSERT_TOKENS_SQL, rows);
+    }
+
+    private static void addTokens(
+            Map<TokenBucket, long[]> sumsByBucket,
+            MessageLogEntry messageLogEntry,
+            String model,
+            Integer inputTokens,
+            Integer outputTokens) {
+        if (model == null) {
+            return;
+        }
+
+        Bucket bucket = Bucket.of(messageLogEntry);
+        long[] sums =
+                sumsByBucket.computeIfAbsent(
+                        new TokenBucket(
+                                bucket.customerId(), bucket.userId(), bucket.bucketStart(), model),
+                        k -> new long[3]);
+        sums[0]++;
+        sums[1] += valueOf(inputTokens);
+        sums[2] += valueOf(outputTokens);
+    }
+
+    /**
+     * Builds the rollups from the raw message log for each rollup table that is still empty. The
+     * message log is locked against inserts meanwhile, so no entry is counted twice.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void backfill() {
+        if (!backfillOnStartup) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(
+                status -> {
+                    jdbcTemplate.execute("LOCK TABLE message_log IN SHARE MODE");
+                    backfillIfEmpty("message_log_rollups", BACKFILL_SQL);
+                    backfillIfEmpty("message_log_token_rollups", BACKFILL_TOKENS_SQL);
+                    backfillProcessingTimesIfEmpty();
+                });
+    }
+
+    private void backfillProcessingTimesIfEmpty() {
+        Boolean hasRollups =
+                jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM message_log_processing_time_rollups)",
+                        Boolean.class);
+        if (Boolean.TRUE.equals(hasRollups)) {
+            return;
+        }
+
+        Map<HistogramBin, Long> countsByBin = new TreeMap<>(HISTOGRAM_BIN_ORDER);
+        jdbcTemplate.query(
+                PROCESSING_TIMES_SQL,
+                (RowCallbackHandler)
+                        resultSet -> {
+                            Bucket bucket =
+                                    new Bucket(
+                                            resultSet.getLong("customer_id"),
+                                            resultSet.getLong("user_id"),
+                                            resultSet
+                                                    .getObject("bucket_start", OffsetDateTime.class)
+                                                    .atZoneSameInstant(ZoneOffset.UTC),
+                                            resultSet.getString("category"));
+                            int bin =
+                                    ProcessingTimeHistogram.binOf(
+                                            resultSet.getInt("processing_time_in_seconds"));
+                            countsByBin.merge(
+                                    new HistogramBin(bucket, bin),
+                                    resultSet.getLong("message_count"),
+                                    Long::sum);
+                        });
+
+        upsertProcessingTimeRollups(countsByBin);
+        LOG.info("Backfilled {} rows of message_log_processing_time_rollups", countsByBin.size());
+    }
+
+    private void backfillIfEmpty(String table, String backfillSql) {
+        Boolean hasRollups =
+                jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class);
+        if (Boolean.TRUE.equals(hasRollups)) {
+            return;
+        }
+
+        int rows = jdbcTemplate.update(backfillSql);
+        LOG.info("Backfilled {} rows of {}", rows, table);
+    }
+
+    private static long valueOf(Integer tokens) {
+        return tokens == null ? 0 : tokens;
+    }
+
+    private record Bucket(
+            long customerId, long userId, ZonedDateTime bucketStart, String category) {
+
+        static Bucket of(MessageLogEntry messageLogEntry) {
+            return new Bucket(
+                    messageLogEntry.getCustomerId(),
+                    messageLogEntry.getUserId(),
+                    messageLogEntry
+                            .getReceivedAt()
+                            .withZoneSameInstant(ZoneOffset.UTC)
+                            .truncatedTo(ChronoUnit.HOURS),
+                    messageLogEntry.getCategory());
+        }
+    }
+
+    private record HistogramBin(Bucket bucket, int bin) {}
+
+    private record TokenBucket(
+            long customerId, long userId, ZonedDateTime bucketStart, String model) {}
+}
@@ -0,0 +1,179 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full-text search over the subjects of a customer's message log. {@code message_log.subject_tsv}
+ * is generated from the subject with the {@code simple} configuration, which neither stems nor
+ * drops stop words, as subjects are written in any language. Queries use the web search syntax
+ * ({@code "exact phrase"}, {@code or}, {@code -excluded}) and are answered from the GIN index on
+ * {@code (customer_id, subject_tsv)}.
+ *
+ * <p>Matches are ordered by {@code ts_rank}, then newest first. Pages are scrolled by the keyset
+ * {@code (rank, receivedAt, id)} of the last match, so later pages cost the same as the first.
+ */
+@Component
+class MessageLogSearch {
+
+    static final int MAX_QUERY_LENGTH = 256;
+
+    private static final String COLUMNS =
+            "id, user_id, customer_id, replied, function_call, category, language,"
+                    + " from_email_address_encrypted, subject, received_at, processed_at,"
+                    + " processing_time_in_seconds, categorisation_llm_used,"
+                    + " categorisation_input_tokens, categorisation_output_tokens,"
+                    + " categorisation_total_tokens, llm_used, input_tokens, output_tokens,"
+                    + " total_tokens, token, token_expires_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogSearch(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param from start of the time range (inclusive)
+     * @param to end of the time range (exclusive)
+     * @param category only matches of this category, or {@code null} for all
+     * @param after the keyset of the last match of the previous page, or {@code null} for the
+     *     first page
+     */
+    Window<MessageLogEntry> search(
+            long customerId,
+            String query,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String category,
+            Keyset after,
+            Limit limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql =
+                new StringBuilder("SELECT * FROM (SELECT ")
+                        .append(COLUMNS)
+                        .append(", ts_rank(subject_tsv, q.query)::float8 AS rank")
+                        .append(" FROM message_log, websearch_to_tsquery('simple', ?) AS q(query)")
+                        .append(" WHERE customer_id = ? AND subject_tsv @@ q.query")
+                        // Bounds on received_at let Postgres skip partitions outside the range
+                        .append(" AND received_at >= ? AND received_at < ?");
+        args.add(query);
+        args.add(customerId);
+        args.add(from.toOffsetDateTime());
+        args.add(to.toOffsetDateTime());
+
+        if (category != null) {
+            sql.append(" AND category = ?");
+            args.add(category);
+        }
+        sql.append(") ranked");
+
+        if (after != null) {
+            sql.append(" WHERE (rank, received_at, id) < (?, ?, ?)");
+            args.add(after.rank());
+            args.add(after.receivedAt().toOffsetDateTime());
+            args.add(after.id());
+        }
+
+        // One more than requested tells whether there is a next page
+        sql.append(" ORDER BY rank DESC, received_at DESC, id DESC LIMIT ?");
+        args.add(limit.max() + 1);
+
+        List<Keyset> keysets = new ArrayList<>();
+        List<MessageLogEntry> matches =
+                jdbcTemplate.query(
+                        sql.toString(),
+                        (rs, rowNum) -> {
+                            MessageLogEntry messageLogEntry = mapMessageLogEntry(rs);
+                            keysets.add(
+                                    new Keyset(
+                                            rs.getDouble("rank"),
+                                            messageLogEntry.getReceivedAt(),
+                                            messageLogEntry.getId()));
+                            return messageLogEntry;
+                        },
+                        args.toArray());
+
+        boolean hasNext = matches.size() > limit.max();
+        List<MessageLogEntry> page = hasNext ? matches.subList(0, limit.max()) : matches;
+        return Window.from(page, index -> keysets.get(index).toScrollPosition(), hasNext);
+    }
+
+    private static MessageLogEntry mapMessageLogEntry(ResultSet rs) throws SQLException {
+        MessageLogEntry messageLogEntry =
+                MessageLogEntry.builder()
+                        .id(rs.getLong("id"))
+                        .userId(rs.getLong("user_id"))
+                        .customerId(rs.getLong("customer_id"))
+                        .replied(rs.getBoolean("replied"))
+                        .functionCall(rs.getBoolean("function_call"))
+                        .category(rs.getString("category"))
+                        .language(rs.getString("language"))
+                        .subject(rs.getString("subject"))
+                        .receivedAt(toZonedDateTime(rs, "received_at"))
+                        .processedAt(toZonedDateTime(rs, "processed_at"))
+                        .processingTimeInSeconds(rs.getInt("processing_time_in_seconds"))
+                        .categorisationLlmUsed(rs.getString("categorisation_llm_used"))
+                        .categorisationInputTokens(getInteger(rs, "categorisation_input_tokens"))
+                        .categorisationOutputTokens(
+                                getInteger(rs, "categorisation_output_tokens"))
+                        .categorisationTotalTokens(getInteger(rs, "categorisation_total_tokens"))
+                        .llmUsed(rs.getString("llm_used"))
+                        .inputTokens(getInteger(rs, "input_tokens"))
+                        .outputTokens(getInteger(rs, "output_tokens"))
+                        .totalTokens(getInteger(rs, "total_tokens"))
+                        .token(rs.getString("token"))
+                        .tokenExpiresAt(toZonedDateTime(rs, "token_expires_at"))
+                        .build();
+        messageLogEntry.setFromEmailAddress(rs.getString("from_email_address_encrypted"));
+        return messageLogEntry;
+    }
+
+    private static ZonedDateTime toZonedDateTime(ResultSet rs, String column)
+            throws SQLException {
+        OffsetDateTime offsetDateTime = rs.getObject(column, OffsetDateTime.class);
+        return offsetDateTime == null ? null : offsetDateTime.atZoneSameInstant(BERLIN_ZONE);
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        // getInt would return 0 for NULL
+        return rs.getObject(column, Integer.class);
+    }
+
+    /** Sort keys of a match, encoded in the cursor of the next page. */
+    record Keyset(double rank, ZonedDateTime receivedAt, long id) {
+
+        ScrollPosition toScrollPosition() {
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("rank", rank);
+            keys.put("receivedAt", receivedAt);
+            keys.put("id", id);
+            return ScrollPosition.forward(keys);
+        }
+
+        /** Returns the keyset of a cursor, or {@code null} if it has different keys. */
+        static Keyset of(Map<String, Object> keys) {
+            if (keys.get("rank") instanceof Double rank
+                    && keys.get("receivedAt") instanceof ZonedDateTime receivedAt
+                    && keys.get("id") instanceof Long id) {
+                return new Keyset(rank, receivedAt, id);
+            }
+            return null;
+        }
+    }
+}
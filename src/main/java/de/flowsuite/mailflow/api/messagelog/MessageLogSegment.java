@@ -0,0 +1,293 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable, column-oriented file holding archived message log entries of one customer. Every
+ * column is stored as its own deflate-compressed block, so similar values compress well; ids and
+ * receive times are delta-encoded as entries are written in receive order. Segments are read
+ * through a memory-mapped buffer.
+ *
+ * <p>Layout: magic, version, customer id, row count, column count, the uncompressed and
+ * compressed length of every column, followed by the column blocks. Rating tokens are not
+ * archived, they expire long before entries are.
+ */
+final class MessageLogSegment {
+
+    private static final int MAGIC = 0x4D4C5347; // "MLSG"
+    private static final byte VERSION = 1;
+
+    // spotless:off
+    private static final int ID = 0, USER_ID = 1, REPLIED = 2, FUNCTION_CALL = 3, CATEGORY = 4,
+            LANGUAGE = 5, FROM_EMAIL_ADDRESS = 6, SUBJECT = 7, RECEIVED_AT = 8, PROCESSED_AT = 9,
+            PROCESSING_TIME = 10, CATEGORISATION_LLM_USED = 11, CATEGORISATION_INPUT_TOKENS = 12,
+            CATEGORISATION_OUTPUT_TOKENS = 13, CATEGORISATION_TOTAL_TOKENS = 14, LLM_USED = 15,
+            INPUT_TOKENS = 16, OUTPUT_TOKENS = 17, TOTAL_TOKENS = 18;
+    // spotless:on
+    private static final int COLUMN_COUNT = 19;
+
+    private MessageLogSegment() {}
+
+    /**
+     * Writes the entries to {@code path}. The file is written next to its target and moved into
+     * place once complete, so readers never see a partial segment.
+     *
+     * @param messageLogEntries entries of {@code customerId}, ordered by receive time and id
+     * @return the number of written entries
+     */
+    static int write(Path path, long customerId, Iterator<MessageLogEntry> messageLogEntries)
+            throws IOException {
+        ByteArrayOutputStream[] compressed = new ByteArrayOutputStream[COLUMN_COUNT];
+        Deflater[] deflaters = new Deflater[COLUMN_COUNT];
+        DataOutputStream[] columns = new DataOutputStream[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            compressed[i] = new ByteArrayOutputStream();
+            deflaters[i] = new Deflater(Deflater.BEST_COMPRESSION);
+            columns[i] =
+                    new DataOutputStream(new DeflaterOutputStream(compressed[i], deflaters[i]));
+        }
+
+        int rowCount = 0;
+        long previousId = 0;
+        long previousReceivedAt = 0;
+        try {
+            while (messageLogEntries.hasNext()) {
+                MessageLogEntry messageLogEntry = messageLogEntries.next();
+                long receivedAt = toEpochMicros(messageLogEntry.getReceivedAt());
+
+                columns[ID].writeLong(messageLogEntry.getId() - previousId);
+                columns[USER_ID].writeLong(messageLogEntry.getUserId());
+                columns[REPLIED].writeBoolean(messageLogEntry.isReplied());
+                columns[FUNCTION_CALL].writeBoolean(messageLogEntry.isFunctionCall());
+                writeString(columns[CATEGORY], messageLogEntry.getCategory());
+                writeString(columns[LANGUAGE], messageLogEntry.getLanguage());
+                writeString(columns[FROM_EMAIL_ADDRESS], messageLogEntry.getFromEmailAddress());
+                writeString(columns[SUBJECT], messageLogEntry.getSubject());
+                columns[RECEIVED_AT].writeLong(receivedAt - previousReceivedAt);
+                columns[PROCESSED_AT].writeLong(toEpochMicros(messageLogEntry.getProcessedAt()));
+                columns[PROCESSING_TIME].writeInt(messageLogEntry.getProcessingTimeInSeconds());
+                writeString(
+                        columns[CATEGORISATION_LLM_USED],
+                        messageLogEntry.getCategorisationLlmUsed());
+                writeInteger(
+                        columns[CATEGORISATION_INPUT_TOKENS],
+                        messageLogEntry.getCategorisationInputTokens());
+                writeInteger(
+                        columns[CATEGORISATION_OUTPUT_TOKENS],
+                        messageLogEntry.getCategorisationOutputTokens());
+                writeInteger(
+                        columns[CATEGORISATION_TOTAL_TOKENS],
+                        messageLogEntry.getCategorisationTotalTokens());
+                writeString(columns[LLM_USED], messageLogEntry.getLlmUsed());
+                writeInteger(columns[INPUT_TOKENS], messageLogEntry.getInputTokens());
+                writeInteger(columns[OUTPUT_TOKENS], messageLogEntry.getOutputTokens());
+                writeInteger(columns[TOTAL_TOKENS], messageLogEntry.getTotalTokens());
+
+                previousId = messageLogEntry.getId();
+                previousReceivedAt = receivedAt;
+                rowCount++;
+            }
+
+            int[] uncompressedLengths = new int[COLUMN_COUNT];
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                uncompressedLengths[i] = columns[i].size();
+                columns[i].close();
+            }
+
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(tempPath);
+                    DataOutputStream out = new DataOutputStream(fileOut)) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(customerId);
+                out.writeInt(rowCount);
+                out.writeInt(COLUMN_COUNT);
+                for (int i = 0; i < COLUMN_COUNT; i++) {
+                    out.writeInt(uncompressedLengths[i]);
+                    out.writeInt(compressed[i].size());
+                }
+                for (ByteArrayOutputStream column : compressed) {
+                    column.writeTo(out);
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            for (Deflater deflater : deflaters) {
+                deflater.end();
+            }
+        }
+
+        return rowCount;
+    }
+
+    /** Reads all entries of the segment at {@code path}, in the order they were written. */
+    static List<MessageLogEntry> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                throw new IOException("Not a message log segment: " + path);
+            }
+            long customerId = buffer.getLong();
+            int rowCount = buffer.getInt();
+            int columnCount = buffer.getInt();
+            if (columnCount != COLUMN_COUNT) {
+                throw new IOException("Unexpected column count in " + path);
+            }
+
+            int[] uncompressedLengths = new int[columnCount];
+            int[] compressedLengths = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                uncompressedLengths[i] = buffer.getInt();
+                compressedLengths[i] = buffer.getInt();
+            }
+
+            DataInputStream[] columns = new DataInputStream[columnCount];
+            int position = buffer.position();
+            for (int i = 0; i < columnCount; i++) {
+                ByteBuffer block = buffer.slice(position, compressedLengths[i]);
+                columns[i] = new DataInputStream(inflate(block, uncompressedLengths[i]));
+                position += compressedLengths[i];
+            }
+
+            List<MessageLogEntry> messageLogEntries = new ArrayList<>(rowCount);
+            long id = 0;
+            long receivedAt = 0;
+            for (int row = 0; row < rowCount; row++) {
+                id += columns[ID].readLong();
+                long userId = columns[USER_ID].readLong();
+                boolean replied = columns[REPLIED].readBoolean();
+                boolean functionCall = columns[FUNCTION_CALL].readBoolean();
+                String category = readString(columns[CATEGORY]);
+                String language = readString(columns[LANGUAGE]);
+                String fromEmailAddress = readString(columns[FROM_EMAIL_ADDRESS]);
+                String subject = readString(columns[SUBJECT]);
+                receivedAt += columns[RECEIVED_AT].readLong();
+
+                MessageLogEntry messageLogEntry =
+                        MessageLogEntry.builder()
+                                .id(id)
+                                .userId(userId)
+                                .customerId(customerId)
+                                .replied(replied)
+                                .functionCall(functionCall)
+                                .category(category)
+                                .language(language)
+                                .subject(subject)
+                                .receivedAt(fromEpochMicros(receivedAt))
+                                .processedAt(fromEpochMicros(columns[PROCESSED_AT].readLong()))
+                                .processingTimeInSeconds(columns[PROCESSING_TIME].readInt())
+                                .categorisationLlmUsed(
+                                        readString(columns[CATEGORISATION_LLM_USED]))
+                                .categorisationInputTokens(
+                                        readInteger(columns[CATEGORISATION_INPUT_TOKENS]))
+                                .categorisationOutputTokens(
+                                        readInteger(columns[CATEGORISATION_OUTPUT_TOKENS]))
+                                .categorisationTotalTokens(
+                                        readInteger(columns[CATEGORISATION_TOTAL_TOKENS]))
+                                .llmUsed(readString(columns[LLM_USED]))
+                                .inputTokens(readInteger(columns[INPUT_TOKENS]))
+                                .outputTokens(readInteger(columns[OUTPUT_TOKENS]))
+                                .totalTokens(readInteger(columns[TOTAL_TOKENS]))
+                                .build();
+                messageLogEntry.setFromEmailAddress(fromEmailAddress);
+                messageLogEntries.add(messageLogEntry);
+            }
+
+            return messageLogEntries;
+        }
+    }
+
+    private static ByteArrayInputStream inflate(ByteBuffer block, int uncompressedLength)
+            throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block);
+            byte[] column = new byte[uncompressedLength];
+            int length = 0;
+            while (length < uncompressedLength && !inflater.finished()) {
+                int inflated = inflater.inflate(column, length, uncompressedLength - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != uncompressedLength) {
+                throw new IOException("Truncated message log segment column");
+            }
+            return new ByteArrayInputStream(column);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt message log segment column", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long toEpochMicros(ZonedDateTime dateTime) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, dateTime.toInstant());
+    }
+
+    private static ZonedDateTime fromEpochMicros(long epochMicros) {
+        return Instant.EPOCH.plus(epochMicros, ChronoUnit.MICROS).atZone(BERLIN_ZONE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+}
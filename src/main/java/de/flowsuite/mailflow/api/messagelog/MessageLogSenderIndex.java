@@ -0,0 +1,95 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.util.AesUtil;
+import de.flowsuite.mailflow.common.util.HmacUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills in the sender blind index of message log entries written before it existed. New entries
+ * get it from {@link MessageLogWriter}; on startup the remaining rows are hashed in batches of
+ * {@link #BATCH_SIZE}, in id order so that each batch continues where the last one stopped.
+ */
+@Component
+class MessageLogSenderIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogSenderIndex.class);
+    static final int BATCH_SIZE = 1000;
+
+    private static final String SELECT_UNINDEXED_SQL =
+            """
+            SELECT id, received_at, from_email_address_encrypted FROM message_log
+            WHERE id > ? AND from_email_address_hash IS NULL
+              AND from_email_address_encrypted IS NOT NULL
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    private static final String UPDATE_SQL =
+            """
+            UPDATE message_log SET from_email_address_hash = ?
+            WHERE id = ? AND received_at = ?
+            """;
+
+    private final boolean backfillOnStartup;
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogSenderIndex(
+            @Value("${mailflow.message-log.sender-index.backfill-on-startup}")
+                    boolean backfillOnStartup,
+            JdbcTemplate jdbcTemplate) {
+        this.backfillOnStartup = backfillOnStartup;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void backfill() {
+        if (!backfillOnStartup) {
+            return;
+        }
+
+        long lastId = 0;
+        long indexed = 0;
+        while (true) {
+            List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+            jdbcTemplate.query(
+                    SELECT_UNINDEXED_SQL,
+                    rs -> {
+                        String encryptedAddress = rs.getString("from_email_address_encrypted");
+                        rows.add(
+                                new Object[] {
+                                    senderHashOf(encryptedAddress),
+                                    rs.getLong("id"),
+                                    rs.getTimestamp("received_at")
+                                });
+                    },
+                    lastId,
+                    BATCH_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+            lastId = (long) rows.get(rows.size() - 1)[1];
+            indexed += rows.size();
+        }
+
+        if (indexed > 0) {
+            LOG.info("Indexed the sender of {} message log entries", indexed);
+        }
+    }
+
+    private static String senderHashOf(String encryptedAddress) {
+        // Addresses are lowercased before they are encrypted
+        return HmacUtil.hash(AesUtil.decrypt(encryptedAddress));
+    }
+}
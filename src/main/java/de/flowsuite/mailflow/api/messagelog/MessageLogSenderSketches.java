@@ -0,0 +1,184 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Daily sender sketches per user in {@code message_log_sender_sketches}. Sender addresses are
+ * stored encrypted, so distinct senders and top senders cannot be computed in SQL. Instead each
+ * new entry is added to a {@link HyperLogLog} and a {@link TopSenders} sketch of its user and day
+ * within the inserting transaction. A row takes a few kilobytes no matter how many messages or
+ * senders a mailbox sees, and sketches of several days or users are merged on read.
+ */
+@Component
+class MessageLogSenderSketches {
+
+    private static final String INSERT_SQL =
+            """
+            INSERT INTO message_log_sender_sketches (customer_id, user_id, day, hll, top_senders)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (customer_id, user_id, day) DO NOTHING
+            """;
+
+    private static final String SELECT_FOR_UPDATE_SQL =
+            """
+            SELECT hll, top_senders FROM message_log_sender_sketches
+            WHERE customer_id = ? AND user_id = ? AND day = ?
+            FOR UPDATE
+            """;
+
+    private static final String UPDATE_SQL =
+            """
+            UPDATE message_log_sender_sketches SET hll = ?, top_senders = ?
+            WHERE customer_id = ? AND user_id = ? AND day = ?
+            """;
+
+    private static final String SELECT_BY_CUSTOMER_SQL =
+            """
+            SELECT hll, top_senders FROM message_log_sender_sketches
+            WHERE customer_id = ? AND day BETWEEN ? AND ?
+            """;
+
+    private static final String SELECT_BY_USER_SQL =
+            """
+            SELECT hll, top_senders FROM message_log_sender_sketches
+            WHERE customer_id = ? AND user_id = ? AND day BETWEEN ? AND ?
+            """;
+
+    // Lock order for concurrent updates of the same rows
+    private static final Comparator<Day> DAY_ORDER =
+            Comparator.comparingLong(Day::customerId)
+                    .thenComparingLong(Day::userId)
+                    .thenComparing(Day::day);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogSenderSketches(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        Map<Day, Sketch> sketchesByDay = new TreeMap<>(DAY_ORDER);
+        for (int i = 0; i < event.messageLogEntries().size(); i++) {
+            MessageLogEntry messageLogEntry = event.messageLogEntries().get(i);
+            String encryptedAddress = messageLogEntry.getFromEmailAddress();
+            // Same hash as blacklist entries, so top senders can be matched against the blacklist
+            String hash = event.senderHashes().get(i);
+            if (encryptedAddress == null || hash == null) {
+                continue;
+            }
+
+            Sketch sketch =
+                    sketchesByDay.computeIfAbsent(Day.of(messageLogEntry), k -> new Sketch());
+            sketch.distinctSenders().add(toLong(hash));
+            sketch.topSenders().add(hash, encryptedAddress, 1);
+        }
+
+        sketchesByDay.forEach(this::mergeInto);
+    }
+
+    private void mergeInto(Day day, Sketch sketch) {
+        jdbcTemplate.update(
+                INSERT_SQL,
+                day.customerId(),
+                day.userId(),
+                day.day(),
+                new HyperLogLog().toBytes(),
+                new TopSenders().toBytes());
+
+        Sketch stored =
+                jdbcTemplate.queryForObject(
+                        SELECT_FOR_UPDATE_SQL,
+                        (resultSet, rowNum) -> Sketch.fromRow(resultSet),
+                        day.customerId(),
+                        day.userId(),
+                        day.day());
+        stored.distinctSenders().merge(sketch.distinctSenders());
+        stored.topSenders().merge(sketch.topSenders());
+
+        jdbcTemplate.update(
+                UPDATE_SQL,
+                stored.distinctSenders().toBytes(),
+                stored.topSenders().toBytes(),
+                day.customerId(),
+                day.userId(),
+                day.day());
+    }
+
+    /**
+     * Merges the sketches of a customer, or of one user if {@code userId} is set, between both
+     * days inclusive. Returns {@code null} if there are none.
+     */
+    Sketch read(long customerId, Long userId, LocalDate from, LocalDate to) {
+        Sketch merged = new Sketch();
+        List<Object> args = new ArrayList<>(List.of(customerId));
+        if (userId != null) {
+            args.add(userId);
+        }
+        args.add(from);
+        args.add(to);
+
+        int[] rows = {0};
+        jdbcTemplate.query(
+                userId == null ? SELECT_BY_CUSTOMER_SQL : SELECT_BY_USER_SQL,
+                (RowCallbackHandler)
+                        resultSet -> {
+                            Sketch sketch = Sketch.fromRow(resultSet);
+                            merged.distinctSenders().merge(sketch.distinctSenders());
+                            merged.topSenders().merge(sketch.topSenders());
+                            rows[0]++;
+                        },
+                args.toArray());
+
+        return rows[0] == 0 ? null : merged;
+    }
+
+    // HMAC output is uniformly distributed, so its first bytes serve as the HyperLogLog hash
+    private static long toLong(String hash) {
+        return ByteBuffer.wrap(Base64.getDecoder().decode(hash)).getLong();
+    }
+
+    record Sketch(HyperLogLog distinctSenders, TopSenders topSenders) {
+
+        Sketch() {
+            this(new HyperLogLog(), new TopSenders());
+        }
+
+        static Sketch fromRow(ResultSet resultSet) throws SQLException {
+            return new Sketch(
+                    HyperLogLog.fromBytes(resultSet.getBytes("hll")),
+                    TopSenders.fromBytes(resultSet.getBytes("top_senders")));
+        }
+    }
+
+    private record Day(long customerId, long userId, LocalDate day) {
+
+        static Day of(MessageLogEntry messageLogEntry) {
+            return new Day(
+                    messageLogEntry.getCustomerId(),
+                    messageLogEntry.getUserId(),
+                    messageLogEntry
+                            .getReceivedAt()
+                            .withZoneSameInstant(BERLIN_ZONE)
+                            .toLocalDate());
+        }
+    }
+}
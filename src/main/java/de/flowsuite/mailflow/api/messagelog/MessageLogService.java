@@ -2,6 +2,8 @@ package de.flowsuite.mailflow.api.messagelog;
 
 import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
 
+import de.flowsuite.mailflow.api.util.AnalyticsCache;
+import de.flowsuite.mailflow.common.constant.Authorities;
 import de.flowsuite.mailflow.common.constant.Timeframe;
 import de.flowsuite.mailflow.common.dto.CreateMessageLogEntryRequest;
 import de.flowsuite.mailflow.common.entity.MessageLogEntry;
@@ -11,25 +13,97 @@ import de.flowsuite.mailflow.common.exception.IdorException;
 import de.flowsuite.mailflow.common.util.AesUtil;
 import de.flowsuite.mailflow.common.util.AnalyticsUtil;
 import de.flowsuite.mailflow.common.util.AuthorisationUtil;
-import de.flowsuite.mailflow.common.util.Util;
+import de.flowsuite.mailflow.common.util.HmacUtil;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class MessageLogService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageLogService.class);
     public static final int TOKEN_TTL_DAYS = 7;
+    static final int MAX_BATCH_SIZE = 500;
+    static final int MAX_FINGERPRINT_LOOKUP_SIZE = 1000;
+    private static final ZonedDateTime EXPORT_START = Instant.EPOCH.atZone(BERLIN_ZONE);
     private final MessageLogRepository messageLogRepository;
+    private final MessageLogRollupRepository messageLogRollupRepository;
+    private final MessageLogWriter messageLogWriter;
+    private final MessageLogWriteBehindBuffer messageLogWriteBehindBuffer;
+    private final MessageLogExporter messageLogExporter;
+    private final MessageLogArchive messageLogArchive;
+    private final MessageLogSenderSketches messageLogSenderSketches;
+    private final MessageLogFeed messageLogFeed;
+    private final MessageLogFingerprints messageLogFingerprints;
+    private final MessageLogStageDurations messageLogStageDurations;
+    private final MessageLogSearch messageLogSearch;
+    private final MessageLogDailyCounters messageLogDailyCounters;
+    private final MessageLogQueryEngine messageLogQueryEngine;
+    private final ResponseRatingTokens responseRatingTokens;
+    private final AnalyticsCache analyticsCache;
+    private final LlmPricing llmPricing;
+    private final Validator validator;
 
-    MessageLogService(MessageLogRepository messageLogRepository) {
+    MessageLogService(
+            MessageLogRepository messageLogRepository,
+            MessageLogRollupRepository messageLogRollupRepository,
+            MessageLogWriter messageLogWriter,
+            MessageLogWriteBehindBuffer messageLogWriteBehindBuffer,
+            MessageLogExporter messageLogExporter,
+            MessageLogArchive messageLogArchive,
+            MessageLogSenderSketches messageLogSenderSketches,
+            MessageLogFeed messageLogFeed,
+            MessageLogFingerprints messageLogFingerprints,
+            MessageLogStageDurations messageLogStageDurations,
+            MessageLogSearch messageLogSearch,
+            MessageLogDailyCounters messageLogDailyCounters,
+            MessageLogQueryEngine messageLogQueryEngine,
+            ResponseRatingTokens responseRatingTokens,
+            AnalyticsCache analyticsCache,
+            LlmPricing llmPricing,
+            Validator validator) {
         this.messageLogRepository = messageLogRepository;
+        this.messageLogRollupRepository = messageLogRollupRepository;
+        this.messageLogWriter = messageLogWriter;
+        this.messageLogWriteBehindBuffer = messageLogWriteBehindBuffer;
+        this.messageLogExporter = messageLogExporter;
+        this.messageLogArchive = messageLogArchive;
+        this.messageLogSenderSketches = messageLogSenderSketches;
+        this.messageLogFeed = messageLogFeed;
+        this.messageLogFingerprints = messageLogFingerprints;
+        this.messageLogStageDurations = messageLogStageDurations;
+        this.messageLogSearch = messageLogSearch;
+        this.messageLogDailyCounters = messageLogDailyCounters;
+        this.messageLogQueryEngine = messageLogQueryEngine;
+        this.responseRatingTokens = responseRatingTokens;
+        this.analyticsCache = analyticsCache;
+        this.llmPricing = llmPricing;
+        this.validator = validator;
     }
 
     public MessageLogEntry getByToken(String token) {
@@ -39,6 +113,8 @@ public class MessageLogService {
                         () -> new EntityNotFoundException(MessageLogEntry.class.getSimpleName()));
     }
 
+    // Counts live entries rather than rollups, which keep archived and dropped ones. Their
+    // response ratings are deleted along with them.
     public int countByCustomerId(long customerId) {
         return messageLogRepository.countByCustomerId(customerId);
     }
@@ -47,37 +123,11 @@ public class MessageLogService {
         return messageLogRepository.countByUserId(userId);
     }
 
-    private String generateToken() {
-        String token;
-        do {
-            token = Util.generateRandomUrlSafeToken();
-        } while (messageLogRepository.existsByToken(token));
-        return token;
-    }
-
-    private static Map<String, Map<String, Long>> groupCategoryCountsByPeriod(
-            List<Object[]> categoryCountRows) {
-        Map<String, Map<String, Long>> categoryCountsByPeriod = new LinkedHashMap<>();
-        for (Object[] row : categoryCountRows) {
-            String period = row[0].toString();
-            String category = row[1].toString();
-            Long count = (Long) row[2];
-            categoryCountsByPeriod
-                    .computeIfAbsent(period, k -> new HashMap<>())
-                    .put(category, count);
-        }
-        return categoryCountsByPeriod;
+    private void issueToken(MessageLogEntry messageLogEntry) {
+        messageLogEntry.setToken(responseRatingTokens.issue(messageLogEntry));
     }
 
-    MessageLogEntry createMessageLogEntry(
-            long customerId, long userId, CreateMessageLogEntryRequest request, Jwt jwt) {
-        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
-        AuthorisationUtil.validateAccessToUser(userId, jwt);
-
-        if (!request.customerId().equals(customerId) || !request.userId().equals(userId)) {
-            throw new IdConflictException();
-        }
-
+    private static NewMessageLogEntry buildMessageLogEntry(CreateMessageLogEntryRequest request) {
         MessageLogEntry messageLogEntry =
                 MessageLogEntry.builder()
                         .userId(request.userId())
@@ -97,31 +147,437 @@ public class MessageLogService {
                         .inputTokens(request.inputTokens())
                         .outputTokens(request.outputTokens())
                         .totalTokens(request.totalTokens())
+                        .tokenExpiresAt(
+                                ZonedDateTime.now(BERLIN_ZONE).plusDays(TOKEN_TTL_DAYS))
                         .build();
 
         String emailAddress = request.fromEmailAddress();
-        if (emailAddress != null) {
-            messageLogEntry.setFromEmailAddress(AesUtil.encrypt(emailAddress.toLowerCase()));
+        if (emailAddress == null) {
+            return new NewMessageLogEntry(messageLogEntry, null);
         }
 
-        String token = generateToken();
-        ZonedDateTime tokenExpiresAt = ZonedDateTime.now(BERLIN_ZONE).plusDays(TOKEN_TTL_DAYS);
+        String normalisedEmailAddress = emailAddress.toLowerCase();
+        messageLogEntry.setFromEmailAddress(AesUtil.encrypt(normalisedEmailAddress));
+        return new NewMessageLogEntry(messageLogEntry, HmacUtil.hash(normalisedEmailAddress));
+    }
 
-        messageLogEntry.setToken(token);
-        messageLogEntry.setTokenExpiresAt(tokenExpiresAt);
+    boolean isWriteBehindEnabled() {
+        return messageLogWriteBehindBuffer.isEnabled();
+    }
 
-        return messageLogRepository.save(messageLogEntry);
+    Duration getWriteBehindRetryAfter() {
+        return messageLogWriteBehindBuffer.getRetryAfter();
     }
 
-    List<MessageLogEntry> listMessageLogEntriesByCustomer(long customerId, Jwt jwt) {
+    private static void validateCreateMessageLogEntryRequest(
+            long customerId, long userId, CreateMessageLogEntryRequest request, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
-        return messageLogRepository.findByCustomerId(customerId);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+
+        if (!request.customerId().equals(customerId) || !request.userId().equals(userId)) {
+            throw new IdConflictException();
+        }
+    }
+
+    // Covers single, batch and write-behind inserts, once they are committed
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    void onMessageLogEntriesCreated(MessageLogEntriesCreatedEvent event) {
+        event.messageLogEntries().stream()
+                .map(MessageLogEntry::getCustomerId)
+                .distinct()
+                .forEach(analyticsCache::invalidate);
     }
 
-    List<MessageLogEntry> listMessageLogEntriesByUser(long customerId, long userId, Jwt jwt) {
+    /**
+     * @param fingerprint the SHA-256 of the message's {@code Message-ID}, or {@code null}
+     */
+    MessageLogEntry createMessageLogEntry(
+            long customerId,
+            long userId,
+            CreateMessageLogEntryRequest request,
+            String fingerprint,
+            Jwt jwt) {
+        validateCreateMessageLogEntryRequest(customerId, userId, request, jwt);
+
+        NewMessageLogEntry newMessageLogEntry = buildMessageLogEntry(request);
+        MessageLogEntry createdMessageLogEntry = newMessageLogEntry.messageLogEntry();
+        recordFingerprintOnCommit(createdMessageLogEntry, fingerprint);
+        try {
+            messageLogWriter.insertAll(List.of(newMessageLogEntry));
+        } catch (RuntimeException e) {
+            messageLogFingerprints.discard(createdMessageLogEntry);
+            throw e;
+        }
+        issueToken(createdMessageLogEntry);
+
+        return createdMessageLogEntry;
+    }
+
+    /**
+     * Accepts an entry in write-behind mode. The entry gets a reserved id and its rating token
+     * right away but is only written with the next group commit.
+     *
+     * @return the accepted entry, or {@code null} if the write-behind buffer is full
+     */
+    MessageLogEntry enqueueMessageLogEntry(
+            long customerId,
+            long userId,
+            CreateMessageLogEntryRequest request,
+            String fingerprint,
+            Jwt jwt) {
+        validateCreateMessageLogEntryRequest(customerId, userId, request, jwt);
+
+        NewMessageLogEntry newMessageLogEntry = buildMessageLogEntry(request);
+        MessageLogEntry messageLogEntry = newMessageLogEntry.messageLogEntry();
+        messageLogEntry.setId(messageLogWriter.reserveId());
+        issueToken(messageLogEntry);
+
+        recordFingerprintOnCommit(messageLogEntry, fingerprint);
+        if (!messageLogWriteBehindBuffer.offer(newMessageLogEntry)) {
+            messageLogFingerprints.discard(messageLogEntry);
+            LOG.warn("Write-behind buffer full, rejecting message log entry");
+            return null;
+        }
+
+        return messageLogEntry;
+    }
+
+    // Before the insert, whose commit records it
+    private void recordFingerprintOnCommit(MessageLogEntry messageLogEntry, String fingerprint) {
+        if (fingerprint != null) {
+            messageLogFingerprints.recordOnCommit(messageLogEntry, fingerprint);
+        }
+    }
+
+    MessageLogResource.ProcessedFingerprintsResponse getProcessedFingerprints(
+            long customerId, long userId, List<String> fingerprints, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
         AuthorisationUtil.validateAccessToUser(userId, jwt);
-        return messageLogRepository.findByUserId(userId);
+
+        return new MessageLogResource.ProcessedFingerprintsResponse(
+                messageLogFingerprints.findProcessed(userId, fingerprints));
+    }
+
+    /**
+     * @param fingerprints the fingerprint of each request's message, or {@code null} for none
+     */
+    MessageLogResource.CreateMessageLogEntriesResponse createMessageLogEntries(
+            long customerId,
+            List<CreateMessageLogEntryRequest> requests,
+            List<String> fingerprints,
+            Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+
+        MessageLogResource.CreateMessageLogEntryResult[] results =
+                new MessageLogResource.CreateMessageLogEntryResult[requests.size()];
+        List<NewMessageLogEntry> newMessageLogEntries = new ArrayList<>();
+        List<Integer> messageLogEntryIndices = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            CreateMessageLogEntryRequest request = requests.get(i);
+            String fingerprint = fingerprints.get(i);
+            MessageLogResource.CreateMessageLogEntryResult rejection =
+                    validateBatchItem(i, customerId, request, fingerprint, jwt);
+
+            if (rejection != null) {
+                results[i] = rejection;
+            } else {
+                NewMessageLogEntry newMessageLogEntry = buildMessageLogEntry(request);
+                recordFingerprintOnCommit(newMessageLogEntry.messageLogEntry(), fingerprint);
+                newMessageLogEntries.add(newMessageLogEntry);
+                messageLogEntryIndices.add(i);
+            }
+        }
+
+        int createdCount = 0;
+        if (!newMessageLogEntries.isEmpty()) {
+            try {
+                createdCount =
+                        insertBatchItems(newMessageLogEntries, messageLogEntryIndices, results);
+            } catch (RuntimeException e) {
+                newMessageLogEntries.stream()
+                        .map(NewMessageLogEntry::messageLogEntry)
+                        .forEach(messageLogFingerprints::discard);
+                throw e;
+            }
+        }
+
+        LOG.debug(
+                "Created {} of {} message log entries for customer {}",
+                createdCount,
+                requests.size(),
+                customerId);
+
+        return new MessageLogResource.CreateMessageLogEntriesResponse(
+                createdCount, requests.size() - createdCount, Arrays.asList(results));
+    }
+
+    /**
+     * Inserts the entries in one transaction. If the database rejects it, the entries are inserted
+     * one by one, so that only the entries it rejects fail.
+     *
+     * @return the number of entries created
+     */
+    private int insertBatchItems(
+            List<NewMessageLogEntry> newMessageLogEntries,
+            List<Integer> messageLogEntryIndices,
+            MessageLogResource.CreateMessageLogEntryResult[] results) {
+        try {
+            messageLogWriter.insertAll(newMessageLogEntries);
+            for (int i = 0; i < newMessageLogEntries.size(); i++) {
+                results[messageLogEntryIndices.get(i)] =
+                        createBatchItem(
+                                messageLogEntryIndices.get(i),
+                                newMessageLogEntries.get(i).messageLogEntry());
+            }
+            return newMessageLogEntries.size();
+        } catch (DataAccessException e) {
+            LOG.warn(
+                    "Failed to insert {} message log entries, retrying one by one",
+                    newMessageLogEntries.size(),
+                    e);
+        }
+
+        int createdCount = 0;
+        for (int i = 0; i < newMessageLogEntries.size(); i++) {
+            int index = messageLogEntryIndices.get(i);
+            NewMessageLogEntry newMessageLogEntry = newMessageLogEntries.get(i);
+            MessageLogEntry messageLogEntry = newMessageLogEntry.messageLogEntry();
+            // Ids generated before the rollback were never committed
+            messageLogEntry.setId(null);
+            try {
+                messageLogWriter.insertAll(List.of(newMessageLogEntry));
+                results[index] = createBatchItem(index, messageLogEntry);
+                createdCount++;
+            } catch (DataIntegrityViolationException e) {
+                messageLogFingerprints.discard(messageLogEntry);
+                results[index] =
+                        rejectBatchItem(
+                                index,
+                                HttpStatus.UNPROCESSABLE_ENTITY,
+                                "Entry violates a database constraint.");
+            } catch (DataAccessException e) {
+                messageLogFingerprints.discard(messageLogEntry);
+                LOG.error("Failed to insert message log entry at index {}", index, e);
+                results[index] =
+                        rejectBatchItem(
+                                index,
+                                HttpStatus.INTERNAL_SERVER_ERROR,
+                                "Entry could not be stored.");
+            }
+        }
+        return createdCount;
+    }
+
+    private MessageLogResource.CreateMessageLogEntryResult createBatchItem(
+            int index, MessageLogEntry messageLogEntry) {
+        issueToken(messageLogEntry);
+        return new MessageLogResource.CreateMessageLogEntryResult(
+                index, HttpStatus.CREATED.value(), messageLogEntry, null);
+    }
+
+    private MessageLogResource.CreateMessageLogEntryResult validateBatchItem(
+            int index,
+            long customerId,
+            CreateMessageLogEntryRequest request,
+            String fingerprint,
+            Jwt jwt) {
+        if (request == null) {
+            return rejectBatchItem(index, HttpStatus.BAD_REQUEST, "Entry must not be null.");
+        }
+
+        Set<ConstraintViolation<CreateMessageLogEntryRequest>> violations =
+                validator.validate(request);
+        if (!violations.isEmpty()) {
+            String error =
+                    violations.stream()
+                            .map(
+                                    violation ->
+                                            violation.getPropertyPath()
+                                                    + " "
+                                                    + violation.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining(", "));
+            return rejectBatchItem(index, HttpStatus.BAD_REQUEST, error);
+        }
+
+        if (fingerprint != null
+                && !fingerprint.matches(MessageLogFingerprints.FINGERPRINT_PATTERN)) {
+            return rejectBatchItem(
+                    index, HttpStatus.BAD_REQUEST, "Fingerprint must be a lowercase hex SHA-256.");
+        }
+
+        try {
+            if (!request.customerId().equals(customerId)) {
+                throw new IdConflictException();
+            }
+            AuthorisationUtil.validateAccessToUser(request.userId(), jwt);
+        } catch (IdConflictException e) {
+            return rejectBatchItem(index, HttpStatus.CONFLICT, e.getMessage());
+        } catch (IdorException e) {
+            return rejectBatchItem(index, HttpStatus.FORBIDDEN, e.getMessage());
+        }
+
+        return null;
+    }
+
+    private static MessageLogResource.CreateMessageLogEntryResult rejectBatchItem(
+            int index, HttpStatus status, String error) {
+        return new MessageLogResource.CreateMessageLogEntryResult(
+                index, status.value(), null, error);
+    }
+
+    Window<MessageLogEntry> listMessageLogEntriesByCustomer(
+            long customerId, ScrollPosition position, Limit limit, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        return messageLogRepository.findByCustomerIdOrderByReceivedAtDescIdDesc(
+                customerId, position, limit);
+    }
+
+    Window<MessageLogEntry> listMessageLogEntriesByUser(
+            long customerId, long userId, ScrollPosition position, Limit limit, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+        return messageLogRepository.findByUserIdOrderByReceivedAtDescIdDesc(
+                userId, position, limit);
+    }
+
+    /**
+     * Lists the user's entries from the given sender, newest first. The address is matched by its
+     * blind index, so no entry is decrypted.
+     */
+    Window<MessageLogEntry> searchMessageLogEntriesBySender(
+            long customerId,
+            long userId,
+            String emailAddress,
+            ScrollPosition position,
+            Limit limit,
+            Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+
+        String senderHash = HmacUtil.hash(emailAddress.toLowerCase());
+        // One more than requested tells whether there is a next page
+        int maxResults = limit.max() + 1;
+        List<MessageLogEntry> messageLogEntries;
+        if (position.isInitial()) {
+            messageLogEntries =
+                    messageLogRepository.findFirstBySender(userId, senderHash, maxResults);
+        } else {
+            Map<String, Object> keys = ((KeysetScrollPosition) position).getKeys();
+            if (!(keys.get("receivedAt") instanceof ZonedDateTime receivedAt)
+                    || !(keys.get("id") instanceof Long id)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor.");
+            }
+            messageLogEntries =
+                    messageLogRepository.findNextBySender(
+                            userId, senderHash, receivedAt, id, maxResults);
+        }
+
+        boolean hasNext = messageLogEntries.size() > limit.max();
+        List<MessageLogEntry> page =
+                hasNext ? messageLogEntries.subList(0, limit.max()) : messageLogEntries;
+        return Window.from(
+                page,
+                index -> {
+                    Map<String, Object> keys = new LinkedHashMap<>();
+                    keys.put("receivedAt", page.get(index).getReceivedAt());
+                    keys.put("id", page.get(index).getId());
+                    return ScrollPosition.forward(keys);
+                },
+                hasNext);
+    }
+
+    /**
+     * Searches the subjects of the customer's entries, best matches first.
+     *
+     * @param from first day to search (inclusive), or {@code null} for no lower bound
+     * @param to last day to search (inclusive), or {@code null} for up to now
+     * @param category only entries of this category, or {@code null} for all
+     */
+    Window<MessageLogEntry> searchMessageLogEntries(
+            long customerId,
+            String query,
+            Date from,
+            Date to,
+            String category,
+            ScrollPosition position,
+            Limit limit,
+            Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+
+        MessageLogSearch.Keyset after = null;
+        if (!position.isInitial()) {
+            after = MessageLogSearch.Keyset.of(((KeysetScrollPosition) position).getKeys());
+            if (after == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor.");
+            }
+        }
+
+        ZonedDateTime startDate =
+                from == null ? EXPORT_START : from.toInstant().atZone(BERLIN_ZONE);
+        ZonedDateTime endDate =
+                to == null
+                        ? ZonedDateTime.now(BERLIN_ZONE)
+                        : to.toInstant().atZone(BERLIN_ZONE).plusDays(1);
+
+        return messageLogSearch.search(
+                customerId, query, startDate, endDate, category, after, limit);
+    }
+
+    /**
+     * Checks access right away and returns a body that streams the matching entries, oldest
+     * first, once the response is written.
+     *
+     * @param from first day to export (inclusive), or {@code null} for no lower bound
+     * @param to last day to export (inclusive), or {@code null} for everything up to now
+     */
+    StreamingResponseBody exportMessageLogEntries(
+            long customerId,
+            MessageLogExportFormat format,
+            Date from,
+            Date to,
+            String category,
+            boolean decrypt,
+            Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+
+        ZonedDateTime startDate =
+                from == null ? EXPORT_START : from.toInstant().atZone(BERLIN_ZONE);
+        ZonedDateTime endDate =
+                to == null
+                        ? ZonedDateTime.now(BERLIN_ZONE)
+                        : to.toInstant().atZone(BERLIN_ZONE).plusDays(1);
+
+        LOG.info("Exporting message log of customer {} as {}", customerId, format);
+
+        return outputStream ->
+                messageLogExporter.export(
+                        customerId, startDate, endDate, category, format, decrypt, outputStream);
+    }
+
+    /**
+     * Lists entries that were moved to the archive, oldest first.
+     *
+     * @param from first day to list (inclusive)
+     * @param to last day to list (inclusive)
+     */
+    Window<MessageLogEntry> listArchivedMessageLogEntries(
+            long customerId, Date from, Date to, ScrollPosition position, Limit limit, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+
+        MessageLogArchive.Keyset after = null;
+        if (!position.isInitial()) {
+            after = MessageLogArchive.Keyset.of(((KeysetScrollPosition) position).getKeys());
+            if (after == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor.");
+            }
+        }
+
+        ZonedDateTime startDate = from.toInstant().atZone(BERLIN_ZONE);
+        ZonedDateTime endDate = to.toInstant().atZone(BERLIN_ZONE).plusDays(1);
+
+        return messageLogArchive.read(customerId, startDate, endDate, after, limit);
     }
 
     MessageLogEntry getMessageLogEntry(long customerId, long userId, long id, Jwt jwt) {
@@ -172,6 +628,37 @@ public class MessageLogService {
             timeframe = Timeframe.DAILY;
         }
 
+        Timeframe resolvedTimeframe = timeframe;
+        MessageLogResource.MessageLogAnalyticsResponse response =
+                analyticsCache.get(
+                        new AnalyticsCache.Key(
+                                "message-log", customerId, userId, from, to, timeframe),
+                        () ->
+                                computeMessageLogAnalytics(
+                                        customerId, userId, from, to, resolvedTimeframe, isUser));
+        if (response == null) {
+            return null;
+        }
+
+        // Read on every call, so a cached response does not carry yesterday's count past midnight
+        long processedMessagesToday =
+                isUser
+                        ? messageLogDailyCounters.getCountForUser(userId)
+                        : messageLogDailyCounters.getCountForCustomer(customerId);
+        return new MessageLogResource.MessageLogAnalyticsResponse(
+                response.avgProcessingTimeInSeconds(),
+                response.responseRate(),
+                (int) processedMessagesToday,
+                response.messageLogAnalytics());
+    }
+
+    private MessageLogResource.MessageLogAnalyticsResponse computeMessageLogAnalytics(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            boolean isUser) {
         ZonedDateTime startDate = AnalyticsUtil.resolveStartDate(from, timeframe);
         ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
 
@@ -179,50 +666,577 @@ public class MessageLogService {
 
         String truncUnit = AnalyticsUtil.getTruncUnitForTimeframe(timeframe);
 
-        List<Object[]> categoryCountRows =
+        List<Object[]> analyticsRows =
                 isUser
-                        ? messageLogRepository.aggregateCategoryCountsByUser(
+                        ? messageLogRollupRepository.aggregateAnalyticsByUser(
                                 truncUnit, userId, startDate, endDate)
-                        : messageLogRepository.aggregateCategoryCountsByCustomer(
+                        : messageLogRollupRepository.aggregateAnalyticsByCustomer(
                                 truncUnit, customerId, startDate, endDate);
 
-        Map<String, Map<String, Long>> categoryCountsByPeriod =
-                groupCategoryCountsByPeriod(categoryCountRows);
+        // Rows hold period, category, count, processing time sum and replied count
+        Map<String, Map<String, Long>> categoryCountsByPeriod = new LinkedHashMap<>();
+        long messageCount = 0;
+        long processingTimeSum = 0;
+        long repliedCount = 0;
+        for (Object[] row : analyticsRows) {
+            long count = ((Number) row[2]).longValue();
+            if (count > 0) {
+                categoryCountsByPeriod
+                        .computeIfAbsent(row[0].toString(), k -> new HashMap<>())
+                        .put(row[1].toString(), count);
+            }
+            messageCount += count;
+            processingTimeSum += ((Number) row[3]).longValue();
+            repliedCount += ((Number) row[4]).longValue();
+        }
 
-        Object[] analyticsRow =
-                isUser
-                        ? messageLogRepository
-                                .aggregateAvgProcessingTimeAndResponseRateByUser(
-                                        userId, startDate, endDate)
-                                .get(0)
-                        : messageLogRepository
-                                .aggregateAvgProcessingTimeAndResponseRateByCustomer(
-                                        customerId, startDate, endDate)
-                                .get(0);
-
-        if (analyticsRow[0] == null) {
+        if (messageCount == 0) {
             return null;
         }
 
         double averageProcessingTimeInSeconds =
-                (double) Math.round((double) analyticsRow[0] * 100) / 100;
-        double responseRate = (double) Math.round((double) analyticsRow[1] * 100) / 100;
+                (double) Math.round((double) processingTimeSum / messageCount * 100) / 100;
+        double responseRate = (double) Math.round((double) repliedCount / messageCount * 100) / 100;
+
+        // Today's count is filled in on every call, see getMessageLogAnalytics
+        return new MessageLogResource.MessageLogAnalyticsResponse(
+                averageProcessingTimeInSeconds, responseRate, 0, categoryCountsByPeriod);
+    }
+
+    MessageLogResource.MessageLogCostResponse getMessageLogCostsForCustomer(
+            long customerId, Date from, Date to, Timeframe timeframe, Jwt jwt) {
+        return getMessageLogCosts(customerId, null, from, to, timeframe, jwt, false);
+    }
 
-        ZonedDateTime startOfDay =
-                ZonedDateTime.now(BERLIN_ZONE).withHour(0).withMinute(0).withSecond(0).withNano(0);
-        ZonedDateTime endOfDay = startOfDay.plusDays(1).minusNanos(1);
+    MessageLogResource.MessageLogCostResponse getMessageLogCostsForUser(
+            long customerId, long userId, Date from, Date to, Timeframe timeframe, Jwt jwt) {
+        return getMessageLogCosts(customerId, userId, from, to, timeframe, jwt, true);
+    }
+
+    private MessageLogResource.MessageLogCostResponse getMessageLogCosts(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            Jwt jwt,
+            boolean isUser) {
+
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        if (isUser) {
+            AuthorisationUtil.validateAccessToUser(userId, jwt);
+        }
+
+        if (timeframe == null) {
+            timeframe = Timeframe.DAILY;
+        }
+
+        Timeframe resolvedTimeframe = timeframe;
+        return analyticsCache.get(
+                new AnalyticsCache.Key(
+                        "message-log-costs", customerId, userId, from, to, timeframe),
+                () ->
+                        computeMessageLogCosts(
+                                customerId, userId, from, to, resolvedTimeframe, isUser));
+    }
+
+    private MessageLogResource.MessageLogCostResponse computeMessageLogCosts(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            boolean isUser) {
+        ZonedDateTime startDate = AnalyticsUtil.resolveStartDate(from, timeframe);
+        ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
+
+        AnalyticsUtil.validateDateRange(startDate, endDate);
 
-        int processedMessagesToday =
+        String truncUnit = AnalyticsUtil.getTruncUnitForTimeframe(timeframe);
+
+        List<Object[]> tokenUsageRows =
                 isUser
-                        ? messageLogRepository.countByUserIdAndReceivedAtBetween(
-                                userId, startOfDay, endOfDay)
-                        : messageLogRepository.countByCustomerIdAndReceivedAtBetween(
-                                customerId, startOfDay, endOfDay);
+                        ? messageLogRollupRepository.aggregateTokenUsageByUser(
+                                truncUnit, userId, startDate, endDate)
+                        : messageLogRollupRepository.aggregateTokenUsageByCustomer(
+                                truncUnit, customerId, startDate, endDate);
 
-        return new MessageLogResource.MessageLogAnalyticsResponse(
-                averageProcessingTimeInSeconds,
-                responseRate,
-                processedMessagesToday,
-                categoryCountsByPeriod);
+        if (tokenUsageRows.isEmpty()) {
+            return null;
+        }
+
+        // Rows hold period, model, request count, input tokens and output tokens
+        Map<String, Map<String, MessageLogResource.ModelCost>> costsByPeriod =
+                new LinkedHashMap<>();
+        BigDecimal totalCost = BigDecimal.ZERO;
+        long totalInputTokens = 0;
+        long totalOutputTokens = 0;
+        for (Object[] row : tokenUsageRows) {
+            String model = row[1].toString();
+            long inputTokens = ((Number) row[3]).longValue();
+            long outputTokens = ((Number) row[4]).longValue();
+            BigDecimal cost = calculateCost(model, inputTokens, outputTokens);
+
+            costsByPeriod
+                    .computeIfAbsent(row[0].toString(), k -> new HashMap<>())
+                    .put(
+                            model,
+                            new MessageLogResource.ModelCost(
+                                    ((Number) row[2]).longValue(),
+                                    inputTokens,
+                                    outputTokens,
+                                    cost));
+
+            if (cost != null) {
+                totalCost = totalCost.add(cost);
+            }
+            totalInputTokens += inputTokens;
+            totalOutputTokens += outputTokens;
+        }
+
+        return new MessageLogResource.MessageLogCostResponse(
+                llmPricing.currency(),
+                totalCost,
+                totalInputTokens,
+                totalOutputTokens,
+                costsByPeriod);
+    }
+
+    private BigDecimal calculateCost(String model, long inputTokens, long outputTokens) {
+        LlmPricing.ModelPrice price = llmPricing.models().get(model);
+        if (price == null) {
+            return null;
+        }
+
+        return price.inputPerMillionTokens()
+                .multiply(BigDecimal.valueOf(inputTokens))
+                .add(price.outputPerMillionTokens().multiply(BigDecimal.valueOf(outputTokens)))
+                .divide(BigDecimal.valueOf(1_000_000), 4, RoundingMode.HALF_UP);
+    }
+
+    MessageLogResource.ProcessingTimeAnalyticsResponse getProcessingTimeAnalyticsForCustomer(
+            long customerId, Date from, Date to, Timeframe timeframe, String category, Jwt jwt) {
+        return getProcessingTimeAnalytics(
+                customerId, null, from, to, timeframe, category, jwt, false);
+    }
+
+    MessageLogResource.ProcessingTimeAnalyticsResponse getProcessingTimeAnalyticsForUser(
+            long customerId,
+            long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            String category,
+            Jwt jwt) {
+        return getProcessingTimeAnalytics(
+                customerId, userId, from, to, timeframe, category, jwt, true);
+    }
+
+    private MessageLogResource.ProcessingTimeAnalyticsResponse getProcessingTimeAnalytics(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            String category,
+            Jwt jwt,
+            boolean isUser) {
+
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        if (isUser) {
+            AuthorisationUtil.validateAccessToUser(userId, jwt);
+        }
+
+        if (timeframe == null) {
+            timeframe = Timeframe.DAILY;
+        }
+
+        Timeframe resolvedTimeframe = timeframe;
+        String analytics = category == null ? "processing-times" : "processing-times:" + category;
+        return analyticsCache.get(
+                new AnalyticsCache.Key(analytics, customerId, userId, from, to, timeframe),
+                () ->
+                        computeProcessingTimeAnalytics(
+                                customerId,
+                                userId,
+                                from,
+                                to,
+                                resolvedTimeframe,
+                                category,
+                                isUser));
+    }
+
+    private MessageLogResource.ProcessingTimeAnalyticsResponse computeProcessingTimeAnalytics(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            String category,
+            boolean isUser) {
+        ZonedDateTime startDate = AnalyticsUtil.resolveStartDate(from, timeframe);
+        ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
+
+        AnalyticsUtil.validateDateRange(startDate, endDate);
+
+        String truncUnit = AnalyticsUtil.getTruncUnitForTimeframe(timeframe);
+
+        List<Object[]> histogramRows =
+                isUser
+                        ? messageLogRollupRepository.aggregateProcessingTimeHistogramsByUser(
+                                truncUnit, userId, startDate, endDate, category)
+                        : messageLogRollupRepository.aggregateProcessingTimeHistogramsByCustomer(
+                                truncUnit, customerId, startDate, endDate, category);
+
+        if (histogramRows.isEmpty()) {
+            return null;
+        }
+
+        // Rows hold period, category, bin and count
+        Map<String, Map<String, ProcessingTimeHistogram>> histogramsByPeriod =
+                new LinkedHashMap<>();
+        ProcessingTimeHistogram overall = new ProcessingTimeHistogram();
+        for (Object[] row : histogramRows) {
+            int bin = ((Number) row[2]).intValue();
+            long count = ((Number) row[3]).longValue();
+            histogramsByPeriod
+                    .computeIfAbsent(row[0].toString(), k -> new HashMap<>())
+                    .computeIfAbsent(row[1].toString(), k -> new ProcessingTimeHistogram())
+                    .add(bin, count);
+            overall.add(bin, count);
+        }
+
+        Map<String, Map<String, MessageLogResource.ProcessingTimePercentiles>>
+                percentilesByPeriod = new LinkedHashMap<>();
+        histogramsByPeriod.forEach(
+                (period, histogramsByCategory) -> {
+                    Map<String, MessageLogResource.ProcessingTimePercentiles> percentiles =
+                            new HashMap<>();
+                    histogramsByCategory.forEach(
+                            (histogramCategory, histogram) ->
+                                    percentiles.put(histogramCategory, toPercentiles(histogram)));
+                    percentilesByPeriod.put(period, percentiles);
+                });
+
+        return new MessageLogResource.ProcessingTimeAnalyticsResponse(
+                toPercentiles(overall), percentilesByPeriod);
+    }
+
+    private static MessageLogResource.ProcessingTimePercentiles toPercentiles(
+            ProcessingTimeHistogram histogram) {
+        return new MessageLogResource.ProcessingTimePercentiles(
+                histogram.getTotalCount(),
+                histogram.percentile(0.5),
+                histogram.percentile(0.9),
+                histogram.percentile(0.95),
+                histogram.percentile(0.99));
+    }
+
+    /**
+     * @return {@code false} if durations were already recorded for the entry
+     */
+    boolean recordStageDurations(
+            long customerId,
+            long userId,
+            long id,
+            MessageLogResource.StageDurationsRequest request,
+            Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+
+        Map<PipelineStage, Integer> durationsInMillis = new EnumMap<>(PipelineStage.class);
+        putIfNotNull(durationsInMillis, PipelineStage.IMAP_FETCH, request.imapFetchMillis());
+        putIfNotNull(
+                durationsInMillis, PipelineStage.CATEGORISATION, request.categorisationMillis());
+        putIfNotNull(durationsInMillis, PipelineStage.RAG_RETRIEVAL, request.ragRetrievalMillis());
+        putIfNotNull(durationsInMillis, PipelineStage.GENERATION, request.generationMillis());
+        putIfNotNull(durationsInMillis, PipelineStage.SMTP_SEND, request.smtpSendMillis());
+
+        boolean recorded =
+                messageLogStageDurations.record(customerId, userId, id, durationsInMillis);
+        if (recorded) {
+            analyticsCache.invalidate(customerId);
+        }
+        return recorded;
+    }
+
+    private static void putIfNotNull(
+            Map<PipelineStage, Integer> durationsInMillis, PipelineStage stage, Integer duration) {
+        if (duration != null) {
+            durationsInMillis.put(stage, duration);
+        }
+    }
+
+    MessageLogResource.AnalyticsQueryResponse queryMessageLogAnalyticsForCustomer(
+            long customerId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            Jwt jwt) {
+        return queryMessageLogAnalytics(
+                customerId, null, dimensions, measures, from, to, timeframe, jwt, false);
+    }
+
+    MessageLogResource.AnalyticsQueryResponse queryMessageLogAnalyticsForUser(
+            long customerId,
+            long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            Jwt jwt) {
+        return queryMessageLogAnalytics(
+                customerId, userId, dimensions, measures, from, to, timeframe, jwt, true);
+    }
+
+    private MessageLogResource.AnalyticsQueryResponse queryMessageLogAnalytics(
+            long customerId,
+            Long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            Jwt jwt,
+            boolean isUser) {
+
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        if (isUser) {
+            AuthorisationUtil.validateAccessToUser(userId, jwt);
+        }
+
+        if (timeframe == null) {
+            timeframe = Timeframe.DAILY;
+        }
+
+        Timeframe resolvedTimeframe = timeframe;
+        return analyticsCache.get(
+                new AnalyticsCache.Key(
+                        "query:" + dimensions + ":" + measures,
+                        customerId,
+                        userId,
+                        from,
+                        to,
+                        timeframe),
+                () -> {
+                    ZonedDateTime startDate =
+                            AnalyticsUtil.resolveStartDate(from, resolvedTimeframe);
+                    ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
+
+                    AnalyticsUtil.validateDateRange(startDate, endDate);
+
+                    return messageLogQueryEngine.query(
+                            customerId,
+                            userId,
+                            dimensions,
+                            measures,
+                            startDate,
+                            endDate,
+                            AnalyticsUtil.getTruncUnitForTimeframe(resolvedTimeframe));
+                });
+    }
+
+    MessageLogResource.StageLatencyAnalyticsResponse getStageLatencyAnalyticsForCustomer(
+            long customerId, Date from, Date to, Timeframe timeframe, Jwt jwt) {
+        return getStageLatencyAnalytics(customerId, null, from, to, timeframe, jwt, false);
+    }
+
+    MessageLogResource.StageLatencyAnalyticsResponse getStageLatencyAnalyticsForUser(
+            long customerId, long userId, Date from, Date to, Timeframe timeframe, Jwt jwt) {
+        return getStageLatencyAnalytics(customerId, userId, from, to, timeframe, jwt, true);
+    }
+
+    private MessageLogResource.StageLatencyAnalyticsResponse getStageLatencyAnalytics(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            Jwt jwt,
+            boolean isUser) {
+
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        if (isUser) {
+            AuthorisationUtil.validateAccessToUser(userId, jwt);
+        }
+
+        if (timeframe == null) {
+            timeframe = Timeframe.DAILY;
+        }
+
+        Timeframe resolvedTimeframe = timeframe;
+        return analyticsCache.get(
+                new AnalyticsCache.Key(
+                        "stage-latencies", customerId, userId, from, to, timeframe),
+                () ->
+                        computeStageLatencyAnalytics(
+                                customerId, userId, from, to, resolvedTimeframe, isUser));
+    }
+
+    private MessageLogResource.StageLatencyAnalyticsResponse computeStageLatencyAnalytics(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            boolean isUser) {
+        ZonedDateTime startDate = AnalyticsUtil.resolveStartDate(from, timeframe);
+        ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
+
+        AnalyticsUtil.validateDateRange(startDate, endDate);
+
+        String truncUnit = AnalyticsUtil.getTruncUnitForTimeframe(timeframe);
+
+        List<Object[]> histogramRows =
+                isUser
+                        ? messageLogRollupRepository.aggregateStageLatencyHistogramsByUser(
+                                truncUnit, userId, startDate, endDate)
+                        : messageLogRollupRepository.aggregateStageLatencyHistogramsByCustomer(
+                                truncUnit, customerId, startDate, endDate);
+
+        if (histogramRows.isEmpty()) {
+            return null;
+        }
+
+        // Rows hold period, stage, bin and count
+        Map<String, Map<PipelineStage, ProcessingTimeHistogram>> histogramsByPeriod =
+                new LinkedHashMap<>();
+        Map<PipelineStage, ProcessingTimeHistogram> overallHistograms =
+                new EnumMap<>(PipelineStage.class);
+        for (Object[] row : histogramRows) {
+            PipelineStage stage = PipelineStage.valueOf(row[1].toString());
+            int bin = ((Number) row[2]).intValue();
+            long count = ((Number) row[3]).longValue();
+            histogramsByPeriod
+                    .computeIfAbsent(row[0].toString(), k -> new EnumMap<>(PipelineStage.class))
+                    .computeIfAbsent(stage, k -> new ProcessingTimeHistogram())
+                    .add(bin, count);
+            overallHistograms
+                    .computeIfAbsent(stage, k -> new ProcessingTimeHistogram())
+                    .add(bin, count);
+        }
+
+        Map<String, Map<PipelineStage, MessageLogResource.ProcessingTimePercentiles>>
+                percentilesByPeriod = new LinkedHashMap<>();
+        histogramsByPeriod.forEach(
+                (period, histogramsByStage) ->
+                        percentilesByPeriod.put(period, toPercentilesByStage(histogramsByStage)));
+        Map<PipelineStage, MessageLogResource.ProcessingTimePercentiles> overall =
+                toPercentilesByStage(overallHistograms);
+
+        // The bottleneck is the stage a typical message spends the most time in
+        PipelineStage slowestStage =
+                Collections.max(
+                                overall.entrySet(),
+                                Comparator.comparingDouble(entry -> entry.getValue().p50()))
+                        .getKey();
+
+        return new MessageLogResource.StageLatencyAnalyticsResponse(
+                slowestStage, overall, percentilesByPeriod);
+    }
+
+    private static Map<PipelineStage, MessageLogResource.ProcessingTimePercentiles>
+            toPercentilesByStage(Map<PipelineStage, ProcessingTimeHistogram> histogramsByStage) {
+        Map<PipelineStage, MessageLogResource.ProcessingTimePercentiles> percentiles =
+                new EnumMap<>(PipelineStage.class);
+        histogramsByStage.forEach(
+                (stage, histogram) -> percentiles.put(stage, toPercentiles(histogram)));
+        return percentiles;
+    }
+
+    MessageLogResource.SenderAnalyticsResponse getSenderAnalyticsForCustomer(
+            long customerId, Date from, Date to, int limit, Jwt jwt) {
+        return getSenderAnalytics(customerId, null, from, to, limit, jwt, false);
+    }
+
+    MessageLogResource.SenderAnalyticsResponse getSenderAnalyticsForUser(
+            long customerId, long userId, Date from, Date to, int limit, Jwt jwt) {
+        return getSenderAnalytics(customerId, userId, from, to, limit, jwt, true);
+    }
+
+    private MessageLogResource.SenderAnalyticsResponse getSenderAnalytics(
+            long customerId, Long userId, Date from, Date to, int limit, Jwt jwt, boolean isUser) {
+
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        if (isUser) {
+            AuthorisationUtil.validateAccessToUser(userId, jwt);
+        }
+
+        int resolvedLimit = Math.min(Math.max(limit, 1), TopSenders.CAPACITY);
+        boolean identifySenders = isAdmin(jwt);
+        String analyticsType =
+                (identifySenders ? "senders-identified:" : "senders:") + resolvedLimit;
+        return analyticsCache.get(
+                new AnalyticsCache.Key(analyticsType, customerId, userId, from, to, null),
+                () ->
+                        computeSenderAnalytics(
+                                customerId, userId, from, to, resolvedLimit, identifySenders));
+    }
+
+    /**
+     * @param identifySenders whether to include the decrypted address and blind index of the top
+     *     senders, only admins may see them
+     */
+    private MessageLogResource.SenderAnalyticsResponse computeSenderAnalytics(
+            long customerId, Long userId, Date from, Date to, int limit, boolean identifySenders) {
+        ZonedDateTime startDate = AnalyticsUtil.resolveStartDate(from, Timeframe.DAILY);
+        ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
+
+        AnalyticsUtil.validateDateRange(startDate, endDate);
+
+        // Sketches are kept per Berlin day, so the range is widened to whole days
+        MessageLogSenderSketches.Sketch sketch =
+                messageLogSenderSketches.read(
+                        customerId,
+                        userId,
+                        startDate.withZoneSameInstant(BERLIN_ZONE).toLocalDate(),
+                        endDate.withZoneSameInstant(BERLIN_ZONE).toLocalDate());
+
+        if (sketch == null) {
+            return null;
+        }
+
+        List<MessageLogResource.TopSender> topSenders =
+                sketch.topSenders().top(limit).stream()
+                        .map(
+                                counter ->
+                                        new MessageLogResource.TopSender(
+                                                identifySenders
+                                                        ? AesUtil.decrypt(
+                                                                counter.encryptedAddress())
+                                                        : null,
+                                                identifySenders ? counter.hash() : null,
+                                                counter.count(),
+                                                counter.error()))
+                        .toList();
+
+        return new MessageLogResource.SenderAnalyticsResponse(
+                sketch.distinctSenders().estimate(), topSenders);
+    }
+
+    private static boolean isAdmin(Jwt jwt) {
+        String scope = jwt.getClaim(AuthorisationUtil.CLAIM_SCOPE);
+        return scope != null
+                && Arrays.asList(scope.split(" ")).contains(Authorities.ADMIN.getAuthority());
+    }
+
+    /**
+     * @return {@code null} if the feed has no capacity for another subscriber
+     */
+    SseEmitter subscribeToMessageLogFeedForCustomer(long customerId, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        return messageLogFeed.subscribe(customerId, null);
+    }
+
+    /**
+     * @return {@code null} if the feed has no capacity for another subscriber
+     */
+    SseEmitter subscribeToMessageLogFeedForUser(long customerId, long userId, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+        return messageLogFeed.subscribe(customerId, userId);
     }
 }
@@ -0,0 +1,117 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Per-stage pipeline durations of message log entries in {@code message_log_stage_durations},
+ * reported by mailbox-service once a message has been handled. Each reported duration is also
+ * added to the hourly {@link ProcessingTimeHistogram} of its stage in {@code
+ * message_log_stage_latency_rollups}, bucketed by the time it was reported, so that latency
+ * percentiles per stage can be read without touching the individual rows. Durations are only
+ * stored for an entry of the reporting user, which is checked by the insert itself.
+ */
+@Component
+class MessageLogStageDurations {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO message_log_stage_durations (message_log_id, customer_id, user_id,"
+                    + " recorded_at, "
+                    + Arrays.stream(PipelineStage.values())
+                            .map(PipelineStage::getColumn)
+                            .collect(Collectors.joining(", "))
+                    + ") SELECT id, customer_id, user_id, CAST(? AS TIMESTAMPTZ), "
+                    + String.join(
+                            ", ",
+                            Collections.nCopies(
+                                    PipelineStage.values().length, "CAST(? AS INTEGER)"))
+                    + " FROM message_log WHERE id = ? AND customer_id = ? AND user_id = ?"
+                    + " ON CONFLICT (message_log_id) DO NOTHING";
+
+    private static final String EXISTS_SQL =
+            """
+            SELECT EXISTS (
+                SELECT 1 FROM message_log WHERE id = ? AND customer_id = ? AND user_id = ?)
+            """;
+
+    private static final String UPSERT_ROLLUP_SQL =
+            """
+            INSERT INTO message_log_stage_latency_rollups (
+                customer_id, user_id, bucket_start, stage, bin, message_count)
+            VALUES (?, ?, ?, ?, ?, 1)
+            ON CONFLICT (customer_id, user_id, bucket_start, stage, bin) DO UPDATE SET
+                message_count = message_log_stage_latency_rollups.message_count + 1
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    MessageLogStageDurations(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Stores the durations of an entry's stages. Stages that were skipped, e.g. generation for a
+     * message that is not answered, are left out.
+     *
+     * @return {@code false} if durations were already recorded for the entry
+     * @throws EntityNotFoundException if the user has no entry with the id, which in write-behind
+     *     mode includes entries that have not been flushed yet
+     */
+    @Transactional
+    boolean record(
+            long customerId,
+            long userId,
+            long messageLogId,
+            Map<PipelineStage, Integer> durationsInMillis) {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+
+        List<Object> values = new ArrayList<>();
+        values.add(now.toOffsetDateTime());
+        for (PipelineStage stage : PipelineStage.values()) {
+            values.add(durationsInMillis.get(stage));
+        }
+        values.add(messageLogId);
+        values.add(customerId);
+        values.add(userId);
+        if (jdbcTemplate.update(INSERT_SQL, values.toArray()) == 0) {
+            Boolean exists =
+                    jdbcTemplate.queryForObject(
+                            EXISTS_SQL, Boolean.class, messageLogId, customerId, userId);
+            if (!Boolean.TRUE.equals(exists)) {
+                throw new EntityNotFoundException(MessageLogEntry.class.getSimpleName());
+            }
+            return false;
+        }
+
+        // Stage order keeps the lock order of concurrent upserts consistent
+        Map<PipelineStage, Integer> durations = new TreeMap<>(durationsInMillis);
+        List<Object[]> rows = new ArrayList<>(durations.size());
+        durations.forEach(
+                (stage, durationInMillis) ->
+                        rows.add(
+                                new Object[] {
+                                    customerId,
+                                    userId,
+                                    now.truncatedTo(ChronoUnit.HOURS).toOffsetDateTime(),
+                                    stage.name(),
+                                    ProcessingTimeHistogram.binOf(durationInMillis)
+                                }));
+        jdbcTemplate.batchUpdate(UPSERT_ROLLUP_SQL, rows);
+        return true;
+    }
+}
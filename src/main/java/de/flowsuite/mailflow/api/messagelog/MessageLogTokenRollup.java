@@ -0,0 +1,63 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * Hourly LLM token usage per user and model. Categorisation and response generation are counted
+ * as separate requests of their respective model. Maintained by {@link MessageLogRollupUpdater}.
+ */
+@Entity
+@Immutable
+@IdClass(MessageLogTokenRollup.Key.class)
+@Table(name = "message_log_token_rollups")
+class MessageLogTokenRollup {
+
+    @Id private Long customerId;
+    @Id private Long userId;
+    @Id private ZonedDateTime bucketStart;
+    @Id private String model;
+
+    private long requestCount;
+    private long inputTokensSum;
+    private long outputTokensSum;
+
+    protected MessageLogTokenRollup() {}
+
+    static class Key implements Serializable {
+
+        private Long customerId;
+        private Long userId;
+        private ZonedDateTime bucketStart;
+        private String model;
+
+        protected Key() {}
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(customerId, key.customerId)
+                    && Objects.equals(userId, key.userId)
+                    && Objects.equals(bucketStart, key.bucketStart)
+                    && Objects.equals(model, key.model);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(customerId, userId, bucketStart, model);
+        }
+    }
+}
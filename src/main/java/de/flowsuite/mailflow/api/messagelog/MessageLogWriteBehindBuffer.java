@@ -0,0 +1,255 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory queue for the optional write-behind ingestion mode. Accepted entries are
+ * flushed by a single background thread in group commits of up to {@code batchSize} entries or
+ * whenever {@code flushInterval} has passed since the first queued entry. On shutdown the queue
+ * is drained after the web server has stopped accepting requests.
+ *
+ * <p>Entries have already been accepted when they are flushed, so a failed group commit is retried
+ * up to {@code maxAttempts} times with exponential backoff. Entries that still cannot be written,
+ * or are left over on shutdown, are appended to {@code deadLetterFile} as NDJSON for replay
+ * instead of being dropped.
+ */
+@Component
+class MessageLogWriteBehindBuffer implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogWriteBehindBuffer.class);
+    // Stop after the web server has finished its graceful shutdown
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration retryAfter;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Path deadLetterFile;
+    private final BlockingQueue<NewMessageLogEntry> queue;
+    private final MessageLogWriter messageLogWriter;
+    private final ObjectMapper objectMapper;
+
+    private volatile boolean running;
+    private Thread flushThread;
+    private long lostCount; // guarded by this
+
+    MessageLogWriteBehindBuffer(
+            @Value("${mailflow.message-log.write-behind.enabled}") boolean enabled,
+            @Value("${mailflow.message-log.write-behind.capacity}") int capacity,
+            @Value("${mailflow.message-log.write-behind.batch-size}") int batchSize,
+            @Value("${mailflow.message-log.write-behind.flush-interval}") Duration flushInterval,
+            @Value("${mailflow.message-log.write-behind.retry-after}") Duration retryAfter,
+            @Value("${mailflow.message-log.write-behind.max-attempts}") int maxAttempts,
+            @Value("${mailflow.message-log.write-behind.initial-backoff}") Duration initialBackoff,
+            @Value("${mailflow.message-log.write-behind.max-backoff}") Duration maxBackoff,
+            @Value("${mailflow.message-log.write-behind.dead-letter-file}") Path deadLetterFile,
+            MessageLogWriter messageLogWriter,
+            ObjectMapper objectMapper) {
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.retryAfter = retryAfter;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.deadLetterFile = deadLetterFile;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.messageLogWriter = messageLogWriter;
+        this.objectMapper = objectMapper;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Queues an entry for the next group commit without blocking.
+     *
+     * @return {@code false} if the buffer is full or shutting down
+     */
+    boolean offer(NewMessageLogEntry newMessageLogEntry) {
+        return running && queue.offer(newMessageLogEntry);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flushThread = new Thread(this::runFlushLoop, "message-log-write-behind");
+        flushThread.start();
+        LOG.info("Message log write-behind enabled (capacity: {})", queue.remainingCapacity());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LOG.info("Draining {} buffered message log entries", queue.size());
+        try {
+            flushThread.join(SHUTDOWN_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            List<NewMessageLogEntry> unflushed = new ArrayList<>();
+            queue.drainTo(unflushed);
+            LOG.error("Shut down with {} unflushed message log entries", unflushed.size());
+            unflushed.stream()
+                    .map(NewMessageLogEntry::messageLogEntry)
+                    .forEach(this::deadLetter);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void runFlushLoop() {
+        List<NewMessageLogEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                NewMessageLogEntry first =
+                        queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void collectBatch(List<NewMessageLogEntry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            NewMessageLogEntry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    void flush(List<NewMessageLogEntry> batch) {
+        Duration backoff = initialBackoff;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                messageLogWriter.insertAll(batch);
+                LOG.debug("Flushed {} buffered message log entries", batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    LOG.warn(
+                            "Group commit of {} message log entries failed {} times",
+                            batch.size(),
+                            attempt,
+                            e);
+                    break;
+                }
+                LOG.warn(
+                        "Group commit of {} message log entries failed, retrying in {}",
+                        batch.size(),
+                        backoff,
+                        e);
+            }
+
+            try {
+                Thread.sleep(backoff.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoff = backoff.multipliedBy(2);
+            if (backoff.compareTo(maxBackoff) > 0) {
+                backoff = maxBackoff;
+            }
+        }
+
+        // Retry row by row so that one bad entry does not hold back the whole group
+        for (NewMessageLogEntry newMessageLogEntry : batch) {
+            try {
+                messageLogWriter.insertAll(List.of(newMessageLogEntry));
+            } catch (RuntimeException e) {
+                LOG.error(
+                        "Failed to write buffered message log entry {}",
+                        newMessageLogEntry.messageLogEntry().getId(),
+                        e);
+                deadLetter(newMessageLogEntry.messageLogEntry());
+            }
+        }
+    }
+
+    private synchronized void deadLetter(MessageLogEntry messageLogEntry) {
+        try {
+            if (deadLetterFile.getParent() != null) {
+                Files.createDirectories(deadLetterFile.getParent());
+            }
+            try (OutputStream out =
+                    Files.newOutputStream(
+                            deadLetterFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(objectMapper.writeValueAsBytes(messageLogEntry));
+                out.write('\n');
+            }
+            LOG.warn(
+                    "Dead-lettered message log entry {} to {}",
+                    messageLogEntry.getId(),
+                    deadLetterFile);
+        } catch (IOException e) {
+            // The entry itself holds customer data and must not end up in the logs
+            LOG.error(
+                    "Lost buffered message log entry {} ({} lost since startup)",
+                    messageLogEntry.getId(),
+                    ++lostCount,
+                    e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists message log entries with multi-row INSERT statements. JPA cannot batch inserts into
+ * {@code message_log} because its ids are generated by the database, so bulk ingestion goes
+ * through plain JDBC instead. Ids can also be reserved up front from the table's sequence, which
+ * the write-behind mode uses to answer before the entry is written. Every insert publishes a
+ * {@link MessageLogEntriesCreatedEvent} within its transaction. The rating token is not
+ * stored, it is signed from the entry's id (see {@link ResponseRatingToken}). The sender's blind
+ * index is not part of the entity either, it is handed in next to it (see {@link
+ * NewMessageLogEntry}).
+ */
+@Component
+class MessageLogWriter {
+
+    static final int ROWS_PER_STATEMENT = 100;
+    private static final int RESERVED_ID_BLOCK_SIZE = 100;
+    private static final String RESERVE_IDS_SQL =
+            "SELECT nextval('message_log_id_seq') FROM generate_series(1, ?)";
+
+    // spotless:off
+    private static final String[] COLUMNS = {
+        "user_id", "customer_id", "replied", "function_call", "category", "language",
+        "from_email_address_encrypted", "from_email_address_hash", "subject", "received_at",
+        "processed_at", "processing_time_in_seconds", "categorisation_llm_used",
+        "categorisation_input_tokens", "categorisation_output_tokens",
+        "categorisation_total_tokens", "llm_used", "input_tokens", "output_tokens", "total_tokens",
+        "token_expires_at"
+    };
+    // spotless:on
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Deque<Long> reservedIds = new ArrayDeque<>();
+
+    MessageLogWriter(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /** Returns an id from the sequence, fetching a new block of ids once the last one is used. */
+    synchronized long reserveId() {
+        if (reservedIds.isEmpty()) {
+            reservedIds.addAll(
+                    jdbcTemplate.queryForList(
+                            RESERVE_IDS_SQL, Long.class, RESERVED_ID_BLOCK_SIZE));
+        }
+        return reservedIds.removeFirst();
+    }
+
+    /**
+     * Inserts all entries in a single transaction. Entries without an id get their generated id
+     * set; entries with a reserved id are inserted with it.
+     *
+     * @param newMessageLogEntries the entries to insert, either all with or all without an id
+     */
+    @Transactional
+    void insertAll(List<NewMessageLogEntry> newMessageLogEntries) {
+        for (int from = 0; from < newMessageLogEntries.size(); from += ROWS_PER_STATEMENT) {
+            int to = Math.min(from + ROWS_PER_STATEMENT, newMessageLogEntries.size());
+            insertChunk(newMessageLogEntries.subList(from, to));
+        }
+        List<MessageLogEntry> messageLogEntries =
+                newMessageLogEntries.stream().map(NewMessageLogEntry::messageLogEntry).toList();
+        List<String> senderHashes =
+                newMessageLogEntries.stream().map(NewMessageLogEntry::senderHash).toList();
+        eventPublisher.publishEvent(
+                new MessageLogEntriesCreatedEvent(messageLogEntries, senderHashes));
+    }
+
+    private void insertChunk(List<NewMessageLogEntry> chunk) {
+        if (chunk.get(0).messageLogEntry().getId() != null) {
+            insertChunkWithReservedIds(chunk);
+            return;
+        }
+
+        String sql = buildInsertStatement(chunk.size(), false);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbcTemplate.update(
+                connection -> {
+                    PreparedStatement statement =
+                            connection.prepareStatement(sql, new String[] {"id"});
+                    int index = 1;
+                    for (NewMessageLogEntry newMessageLogEntry : chunk) {
+                        index = bindMessageLogEntry(statement, index, newMessageLogEntry);
+                    }
+                    return statement;
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < chunk.size(); i++) {
+            chunk.get(i).messageLogEntry().setId(((Number) keys.get(i).get("id")).longValue());
+        }
+    }
+
+    private void insertChunkWithReservedIds(List<NewMessageLogEntry> chunk) {
+        String sql = buildInsertStatement(chunk.size(), true);
+
+        jdbcTemplate.update(
+                sql,
+                statement -> {
+                    int index = 1;
+                    for (NewMessageLogEntry newMessageLogEntry : chunk) {
+                        statement.setLong(index++, newMessageLogEntry.messageLogEntry().getId());
+                        index = bindMessageLogEntry(statement, index, newMessageLogEntry);
+                    }
+                });
+    }
+
+    private static String buildInsertStatement(int rows, boolean withId) {
+        int columns = withId ? COLUMNS.length + 1 : COLUMNS.length;
+        String placeholders = "(" + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+        return "INSERT INTO message_log ("
+                + (withId ? "id, " : "")
+                + String.join(", ", COLUMNS)
+                + ") VALUES "
+                + String.join(", ", Collections.nCopies(rows, placeholders));
+    }
+
+    private static int bindMessageLogEntry(
+            PreparedStatement statement, int index, NewMessageLogEntry newMessageLogEntry)
+            throws SQLException {
+        MessageLogEntry messageLogEntry = newMessageLogEntry.messageLogEntry();
+        statement.setLong(index++, messageLogEntry.getUserId());
+        statement.setLong(index++, messageLogEntry.getCustomerId());
+        statement.setBoolean(index++, messageLogEntry.isReplied());
+        statement.setBoolean(index++, messageLogEntry.isFunctionCall());
+        statement.setString(index++, messageLogEntry.getCategory());
+        statement.setString(index++, messageLogEntry.getLanguage());
+        statement.setString(index++, messageLogEntry.getFromEmailAddress());
+        statement.setString(index++, newMessageLogEntry.senderHash());
+        statement.setString(index++, messageLogEntry.getSubject());
+        statement.setObject(index++, toTimestamp(messageLogEntry.getReceivedAt()));
+        statement.setObject(index++, toTimestamp(messageLogEntry.getProcessedAt()));
+        statement.setInt(index++, messageLogEntry.getProcessingTimeInSeconds());
+        statement.setString(index++, messageLogEntry.getCategorisationLlmUsed());
+        statement.setObject(
+                index++, messageLogEntry.getCategorisationInputTokens(), Types.INTEGER);
+        statement.setObject(
+                index++, messageLogEntry.getCategorisationOutputTokens(), Types.INTEGER);
+        statement.setObject(
+                index++, messageLogEntry.getCategorisationTotalTokens(), Types.INTEGER);
+        statement.setString(index++, messageLogEntry.getLlmUsed());
+        statement.setObject(index++, messageLogEntry.getInputTokens(), Types.INTEGER);
+        statement.setObject(index++, messageLogEntry.getOutputTokens(), Types.INTEGER);
+        statement.setObject(index++, messageLogEntry.getTotalTokens(), Types.INTEGER);
+        statement.setObject(index++, toTimestamp(messageLogEntry.getTokenExpiresAt()));
+        return index;
+    }
+
+    private static Object toTimestamp(ZonedDateTime zonedDateTime) {
+        return zonedDateTime == null ? null : zonedDateTime.toOffsetDateTime();
+    }
+}
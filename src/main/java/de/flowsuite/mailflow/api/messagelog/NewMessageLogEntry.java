@@ -0,0 +1,13 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+/**
+ * An entry on its way to {@link MessageLogWriter}, along with the blind index of its sender. The
+ * entry only holds the encrypted address, so the hash is taken from the plaintext address while
+ * it is at hand rather than decrypting it again on insert.
+ *
+ * @param senderHash HMAC of the lowercased sender address, the same hash users and blacklist
+ *     entries are looked up by, or {@code null} if there is no address
+ */
+record NewMessageLogEntry(MessageLogEntry messageLogEntry, String senderHash) {}
@@ -0,0 +1,17 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import java.util.Locale;
+
+/** Stages of mailbox-service's pipeline whose durations are reported per message. */
+enum PipelineStage {
+    IMAP_FETCH,
+    CATEGORISATION,
+    RAG_RETRIEVAL,
+    GENERATION,
+    SMTP_SEND;
+
+    /** Column of the stage in {@code message_log_stage_durations}. */
+    String getColumn() {
+        return name().toLowerCase(Locale.ROOT) + "_millis";
+    }
+}
@@ -0,0 +1,68 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable histogram of processing times in seconds. Times below {@value #LINEAR_LIMIT} seconds
+ * get a bin each, larger times share log-linear bins of 16 per power of two, which keeps the
+ * relative error of percentiles below about 3%. Histograms of different time buckets are merged
+ * by adding up the counts of equal bins, which is how rollup rows are combined in SQL. Pipeline
+ * stage durations use the same bins for milliseconds.
+ */
+final class ProcessingTimeHistogram {
+
+    private static final int LINEAR_LIMIT = 64;
+    private static final int LINEAR_LIMIT_EXPONENT = 6;
+    private static final int SUB_BINS_BITS = 4;
+    private static final int SUB_BINS_MASK = (1 << SUB_BINS_BITS) - 1;
+
+    private final TreeMap<Integer, Long> countsByBin = new TreeMap<>();
+    private long totalCount;
+
+    static int binOf(int processingTimeInSeconds) {
+        if (processingTimeInSeconds < LINEAR_LIMIT) {
+            return Math.max(processingTimeInSeconds, 0);
+        }
+        int exponent = 31 - Integer.numberOfLeadingZeros(processingTimeInSeconds);
+        int subBin = (processingTimeInSeconds >>> (exponent - SUB_BINS_BITS)) & SUB_BINS_MASK;
+        return LINEAR_LIMIT + ((exponent - LINEAR_LIMIT_EXPONENT) << SUB_BINS_BITS) + subBin;
+    }
+
+    /** Returns the value reported for times in the bin, the middle of its range. */
+    static double valueOf(int bin) {
+        if (bin < LINEAR_LIMIT) {
+            return bin;
+        }
+        int exponent = LINEAR_LIMIT_EXPONENT + ((bin - LINEAR_LIMIT) >>> SUB_BINS_BITS);
+        int subBin = (bin - LINEAR_LIMIT) & SUB_BINS_MASK;
+        int width = 1 << (exponent - SUB_BINS_BITS);
+        return (1 << exponent) + (long) subBin * width + (width - 1) / 2.0;
+    }
+
+    void add(int bin, long count) {
+        countsByBin.merge(bin, count, Long::sum);
+        totalCount += count;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the processing time at the given quantile, or {@code 0} for an empty histogram.
+     *
+     * @param quantile between 0 and 1, e.g. 0.95 for p95
+     */
+    double percentile(double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * totalCount));
+        long seen = 0;
+        for (Map.Entry<Integer, Long> entry : countsByBin.entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                return valueOf(entry.getKey());
+            }
+        }
+        return 0;
+    }
+}
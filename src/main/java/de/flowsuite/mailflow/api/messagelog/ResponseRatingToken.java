@@ -0,0 +1,25 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Data of a self-validating token that allows the recipient of a reply to rate it. The token
+ * carries the message log id, tenant and expiry and is signed by {@link ResponseRatingTokens}, so
+ * it can be issued and verified without a database lookup.
+ *
+ * <p>Format: {@code r2.<messageLogId>.<customerId>.<userId>.<expiresAtEpochSeconds>.<signature>}
+ */
+public record ResponseRatingToken(
+        long messageLogId, long customerId, long userId, ZonedDateTime expiresAt) {
+
+    /** Builds the token data from an entry that was issued a legacy, database-backed token. */
+    public static ResponseRatingToken of(MessageLogEntry messageLogEntry) {
+        return new ResponseRatingToken(
+                messageLogEntry.getId(),
+                messageLogEntry.getCustomerId(),
+                messageLogEntry.getUserId(),
+                messageLogEntry.getTokenExpiresAt());
+    }
+}
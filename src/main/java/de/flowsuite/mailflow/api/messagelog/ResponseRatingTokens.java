@@ -0,0 +1,119 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
+import de.flowsuite.mailflow.common.util.HmacUtil;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies {@link ResponseRatingToken}s. Tokens are signed with HMAC-SHA256 under a key
+ * of their own rather than the blind index key of {@link HmacUtil}, so that neither key can be
+ * used to attack the other.
+ */
+@Component
+public class ResponseRatingTokens {
+
+    private static final String VERSION = "r2";
+    // Signed with HmacUtil, accepted until the last of them has expired after TOKEN_TTL_DAYS
+    private static final String LEGACY_VERSION = "r1";
+    private static final String LEGACY_SIGNATURE_CONTEXT = "response-rating:";
+    private static final String SEPARATOR = ".";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PARTS = 6;
+
+    private final SecretKeySpec secretKey;
+
+    public ResponseRatingTokens(
+            @Value("${mailflow.response-rating.token-secret}") String tokenSecret) {
+        this.secretKey = new SecretKeySpec(Base64.getDecoder().decode(tokenSecret), ALGORITHM);
+    }
+
+    String issue(MessageLogEntry messageLogEntry) {
+        return encode(ResponseRatingToken.of(messageLogEntry));
+    }
+
+    public String encode(ResponseRatingToken token) {
+        String payload =
+                String.join(
+                        SEPARATOR,
+                        VERSION,
+                        String.valueOf(token.messageLogId()),
+                        String.valueOf(token.customerId()),
+                        String.valueOf(token.userId()),
+                        String.valueOf(token.expiresAt().toEpochSecond()));
+        return payload + SEPARATOR + sign(payload);
+    }
+
+    /**
+     * Decodes and verifies a signed token.
+     *
+     * @return the token data, or an empty optional if the token is a legacy random token
+     * @throws EntityNotFoundException if the token is malformed or its signature does not match
+     */
+    public Optional<ResponseRatingToken> decode(String token) {
+        boolean legacy = token.startsWith(LEGACY_VERSION + SEPARATOR);
+        if (!legacy && !token.startsWith(VERSION + SEPARATOR)) {
+            return Optional.empty();
+        }
+
+        String[] parts = token.split("\\.");
+        if (parts.length != PARTS) {
+            throw new EntityNotFoundException(MessageLogEntry.class.getSimpleName());
+        }
+
+        String payload = token.substring(0, token.lastIndexOf(SEPARATOR));
+        String signature = legacy ? signLegacy(payload) : sign(payload);
+        byte[] expectedSignature = signature.getBytes(StandardCharsets.UTF_8);
+        byte[] actualSignature = parts[5].getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expectedSignature, actualSignature)) {
+            throw new EntityNotFoundException(MessageLogEntry.class.getSimpleName());
+        }
+
+        try {
+            return Optional.of(
+                    new ResponseRatingToken(
+                            Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3]),
+                            Instant.ofEpochSecond(Long.parseLong(parts[4]))
+                                    .atZone(BERLIN_ZONE)));
+        } catch (NumberFormatException e) {
+            throw new EntityNotFoundException(MessageLogEntry.class.getSimpleName());
+        }
+    }
+
+    private String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            // The token is used as a query parameter
+            return Base64.getUrlEncoder()
+                    .withoutPadding()
+                    .encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign response rating token", e);
+        }
+    }
+
+    private static String signLegacy(String payload) {
+        // HmacUtil returns standard Base64, the token is used as a query parameter
+        return HmacUtil.hash(LEGACY_SIGNATURE_CONTEXT + payload)
+                .replace('+', '-')
+                .replace('/', '_')
+                .replace("=", "");
+    }
+}
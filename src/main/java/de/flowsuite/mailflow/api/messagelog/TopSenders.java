@@ -0,0 +1,165 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving top-K sketch over sender address hashes, holding at most {@value #CAPACITY}
+ * counters. When a new sender arrives while all counters are taken, it replaces the sender with
+ * the lowest count and inherits that count as its possible overestimate. Any sender with a true
+ * share above 1/{@value #CAPACITY} of the volume is guaranteed to be tracked.
+ *
+ * <p>Each counter keeps the latest encrypted address of its sender, so the top senders can be
+ * shown without storing plain addresses.
+ */
+final class TopSenders {
+
+    static final int CAPACITY = 64;
+
+    // Highest count first, ties broken by hash so merges are deterministic
+    private static final Comparator<Counter> COUNT_ORDER =
+            Comparator.comparingLong(Counter::count).reversed().thenComparing(Counter::hash);
+
+    private final Map<String, Counter> countersByHash = new HashMap<>();
+
+    static TopSenders fromBytes(byte[] bytes) {
+        TopSenders topSenders = new TopSenders();
+        if (bytes == null || bytes.length == 0) {
+            return topSenders;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String hash = in.readUTF();
+                String encryptedAddress = in.readUTF();
+                long count = in.readLong();
+                long error = in.readLong();
+                topSenders.countersByHash.put(
+                        hash, new Counter(hash, encryptedAddress, count, error));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return topSenders;
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(countersByHash.size());
+            for (Counter counter : countersByHash.values()) {
+                out.writeUTF(counter.hash());
+                out.writeUTF(counter.encryptedAddress());
+                out.writeLong(counter.count());
+                out.writeLong(counter.error());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    void add(String hash, String encryptedAddress, long count) {
+        add(hash, encryptedAddress, count, 0);
+    }
+
+    private void add(String hash, String encryptedAddress, long count, long error) {
+        Counter counter = countersByHash.get(hash);
+        if (counter != null) {
+            countersByHash.put(
+                    hash,
+                    new Counter(
+                            hash,
+                            encryptedAddress,
+                            counter.count() + count,
+                            counter.error() + error));
+            return;
+        }
+
+        if (countersByHash.size() < CAPACITY) {
+            countersByHash.put(hash, new Counter(hash, encryptedAddress, count, error));
+            return;
+        }
+
+        Counter min =
+                countersByHash.values().stream()
+                        .min(Comparator.comparingLong(Counter::count))
+                        .orElseThrow();
+        countersByHash.remove(min.hash());
+        countersByHash.put(
+                hash,
+                new Counter(hash, encryptedAddress, min.count() + count, min.count() + error));
+    }
+
+    /**
+     * Adds the counters of another sketch, e.g. of another day. A sender missing from a full
+     * sketch may have been counted up to that sketch's lowest count before it was evicted, so
+     * that count is added to both its count and its error. Of the combined counters, the
+     * {@value #CAPACITY} highest are kept.
+     */
+    void merge(TopSenders other) {
+        long minCount = minCount();
+        long otherMinCount = other.minCount();
+
+        Map<String, Counter> merged = new HashMap<>();
+        for (Counter counter : countersByHash.values()) {
+            Counter otherCounter = other.countersByHash.get(counter.hash());
+            merged.put(
+                    counter.hash(),
+                    otherCounter == null
+                            ? new Counter(
+                                    counter.hash(),
+                                    counter.encryptedAddress(),
+                                    counter.count() + otherMinCount,
+                                    counter.error() + otherMinCount)
+                            : new Counter(
+                                    counter.hash(),
+                                    otherCounter.encryptedAddress(),
+                                    counter.count() + otherCounter.count(),
+                                    counter.error() + otherCounter.error()));
+        }
+        for (Counter otherCounter : other.countersByHash.values()) {
+            if (!countersByHash.containsKey(otherCounter.hash())) {
+                merged.put(
+                        otherCounter.hash(),
+                        new Counter(
+                                otherCounter.hash(),
+                                otherCounter.encryptedAddress(),
+                                otherCounter.count() + minCount,
+                                otherCounter.error() + minCount));
+            }
+        }
+
+        countersByHash.clear();
+        merged.values().stream()
+                .sorted(COUNT_ORDER)
+                .limit(CAPACITY)
+                .forEach(counter -> countersByHash.put(counter.hash(), counter));
+    }
+
+    /** Lowest count a sender missing from this sketch may have, 0 unless the sketch is full. */
+    private long minCount() {
+        if (countersByHash.size() < CAPACITY) {
+            return 0;
+        }
+        return countersByHash.values().stream().mapToLong(Counter::count).min().orElse(0);
+    }
+
+    List<Counter> top(int limit) {
+        return countersByHash.values().stream().sorted(COUNT_ORDER).limit(limit).toList();
+    }
+
+    /**
+     * @param error upper bound of how much {@code count} may overestimate the true count
+     */
+    record Counter(String hash, String encryptedAddress, long count, long error) {}
+}
@@ -13,6 +13,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
@@ -60,14 +61,23 @@ class RagUrlResource {
     ResponseEntity<RagUrl> getRagUrl(
             @PathVariable long customerId,
             @PathVariable long id,
-            @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(ragUrlService.getRagUrl(customerId, id, jwt));
+            @AuthenticationPrincipal Jwt jwt,
+            WebRequest request) {
+        String eTag = ragUrlService.getRagUrlsETag(customerId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(ragUrlService.getRagUrl(customerId, id, jwt));
     }
 
     @GetMapping("/{customerId}/rag-urls")
     ResponseEntity<List<RagUrl>> listRagUrls(
-            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(ragUrlService.listRagUrls(customerId, jwt));
+            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt, WebRequest request) {
+        String eTag = ragUrlService.getRagUrlsETag(customerId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(ragUrlService.listRagUrls(customerId, jwt));
     }
 
     @PutMapping("/{customerId}/rag-urls/{id}")
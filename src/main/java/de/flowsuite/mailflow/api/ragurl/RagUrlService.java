@@ -1,5 +1,6 @@
 package de.flowsuite.mailflow.api.ragurl;
 
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.RagUrl;
 import de.flowsuite.mailflow.common.exception.EntityAlreadyExistsException;
 import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
@@ -17,9 +18,11 @@ import java.util.List;
 class RagUrlService {
 
     private final RagUrlRepository ragUrlRepository;
+    private final EntityVersions entityVersions;
 
-    RagUrlService(RagUrlRepository ragUrlRepository) {
+    RagUrlService(RagUrlRepository ragUrlRepository, EntityVersions entityVersions) {
         this.ragUrlRepository = ragUrlRepository;
+        this.entityVersions = entityVersions;
     }
 
     RagUrl createRagUrl(long customerId, RagUrl ragUrl, Jwt jwt) {
@@ -36,7 +39,9 @@ class RagUrlService {
             throw new EntityAlreadyExistsException(RagUrl.class.getSimpleName());
         }
 
-        return ragUrlRepository.save(ragUrl);
+        RagUrl createdRagUrl = ragUrlRepository.save(ragUrl);
+        entityVersions.increment(EntityVersions.RAG_URLS, customerId);
+        return createdRagUrl;
     }
 
     RagUrl getRagUrl(long customerId, long id, Jwt jwt) {
@@ -55,6 +60,12 @@ class RagUrlService {
         return ragUrl;
     }
 
+    /** Returns the ETag shared by the RAG URLs of a customer and the list of them. */
+    String getRagUrlsETag(long customerId, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        return entityVersions.getETag(EntityVersions.RAG_URLS, customerId);
+    }
+
     List<RagUrl> listRagUrls(long customerId, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
 
@@ -79,7 +90,9 @@ class RagUrlService {
             throw new IdorException();
         }
 
-        return ragUrlRepository.save(updatedRagUrl);
+        RagUrl savedRagUrl = ragUrlRepository.save(updatedRagUrl);
+        entityVersions.increment(EntityVersions.RAG_URLS, customerId);
+        return savedRagUrl;
     }
 
     RagUrl updateRagUrlCrawlStatus(long customerId, long id, boolean lastCrawlSuccessful, Jwt jwt) {
@@ -97,7 +110,9 @@ class RagUrlService {
 
         ragUrl.setLastCrawlSuccessful(lastCrawlSuccessful);
 
-        return ragUrlRepository.save(ragUrl);
+        RagUrl savedRagUrl = ragUrlRepository.save(ragUrl);
+        entityVersions.increment(EntityVersions.RAG_URLS, customerId);
+        return savedRagUrl;
     }
 
     RagUrl deleteRagUrl(long customerId, long id, Jwt jwt) {
@@ -114,6 +129,7 @@ class RagUrlService {
         }
 
         ragUrlRepository.delete(ragUrl);
+        entityVersions.increment(EntityVersions.RAG_URLS, customerId);
 
         return ragUrl;
     }
@@ -2,6 +2,9 @@ package de.flowsuite.mailflow.api.responserating;
 
 import de.flowsuite.mailflow.common.entity.ResponseRating;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -13,9 +16,11 @@ import java.util.List;
 @Repository
 interface ResponseRatingRepository extends CrudRepository<ResponseRating, Long> {
 
-    List<ResponseRating> findByCustomerId(long userId);
+    Window<ResponseRating> findByCustomerIdOrderByMessageLogIdDesc(
+            long customerId, ScrollPosition position, Limit limit);
 
-    List<ResponseRating> findByUserId(long userId);
+    Window<ResponseRating> findByUserIdOrderByMessageLogIdDesc(
+            long userId, ScrollPosition position, Limit limit);
 
     boolean existsByMessageLogId(long messageLogId);
 
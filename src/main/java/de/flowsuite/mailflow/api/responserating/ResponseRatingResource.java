@@ -1,5 +1,7 @@
 package de.flowsuite.mailflow.api.responserating;
 
+import de.flowsuite.mailflow.api.util.IdempotencyKeys;
+import de.flowsuite.mailflow.api.util.PaginationUtil;
 import de.flowsuite.mailflow.common.constant.Timeframe;
 import de.flowsuite.mailflow.common.entity.ResponseRating;
 
@@ -23,16 +25,31 @@ import java.util.List;
 class ResponseRatingResource {
 
     private final ResponseRatingService responseRatingService;
+    private final IdempotencyKeys idempotencyKeys;
 
-    ResponseRatingResource(ResponseRatingService responseRatingService) {
+    ResponseRatingResource(
+            ResponseRatingService responseRatingService, IdempotencyKeys idempotencyKeys) {
         this.responseRatingService = responseRatingService;
+        this.idempotencyKeys = idempotencyKeys;
     }
 
     @PostMapping("/users/response-ratings")
     ResponseEntity<ResponseRating> createResponseRating(
             @RequestParam String token,
             @RequestBody @Valid CreateResponseRatingRequest request,
+            @RequestHeader(name = IdempotencyKeys.HEADER, required = false) String idempotencyKey,
             UriComponentsBuilder uriBuilder) {
+        // The token is the only credential of this endpoint
+        return idempotencyKeys.execute(
+                "response-ratings:" + token,
+                idempotencyKey,
+                request,
+                ResponseRating.class,
+                () -> createResponseRating(token, request, uriBuilder));
+    }
+
+    private ResponseEntity<ResponseRating> createResponseRating(
+            String token, CreateResponseRatingRequest request, UriComponentsBuilder uriBuilder) {
         ResponseRating createdResponseRating =
                 responseRatingService.createResponseRating(token, request);
 
@@ -60,18 +77,32 @@ class ResponseRatingResource {
 
     @GetMapping("/{customerId}/response-ratings")
     ResponseEntity<List<ResponseRating>> listResponseRatings(
-            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(
-                responseRatingService.listResponseRatingsByCustomer(customerId, jwt));
+            @PathVariable long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        return PaginationUtil.toResponse(
+                responseRatingService.listResponseRatingsByCustomer(
+                        customerId,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
     }
 
     @GetMapping("/{customerId}/users/{userId}/response-ratings")
     ResponseEntity<List<ResponseRating>> listResponseRatings(
             @PathVariable long customerId,
             @PathVariable long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
             @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(
-                responseRatingService.listResponseRatingsByUser(customerId, userId, jwt));
+        return PaginationUtil.toResponse(
+                responseRatingService.listResponseRatingsByUser(
+                        customerId,
+                        userId,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
     }
 
     @GetMapping("/{customerId}/response-ratings/analytics")
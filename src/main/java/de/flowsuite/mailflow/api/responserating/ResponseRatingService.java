@@ -5,8 +5,10 @@ import static de.flowsuite.mailflow.common.constant.Message.RESPONSE_RATING_EXPI
 import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
 
 import de.flowsuite.mailflow.api.messagelog.MessageLogService;
+import de.flowsuite.mailflow.api.messagelog.ResponseRatingToken;
+import de.flowsuite.mailflow.api.messagelog.ResponseRatingTokens;
+import de.flowsuite.mailflow.api.util.AnalyticsCache;
 import de.flowsuite.mailflow.common.constant.Timeframe;
-import de.flowsuite.mailflow.common.entity.MessageLogEntry;
 import de.flowsuite.mailflow.common.entity.ResponseRating;
 import de.flowsuite.mailflow.common.exception.EntityAlreadyExistsException;
 import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
@@ -15,50 +17,68 @@ import de.flowsuite.mailflow.common.exception.TokenExpiredException;
 import de.flowsuite.mailflow.common.util.AnalyticsUtil;
 import de.flowsuite.mailflow.common.util.AuthorisationUtil;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 
 import java.time.ZonedDateTime;
 import java.util.Date;
-import java.util.List;
 
 @Service
 class ResponseRatingService {
 
     private final ResponseRatingRepository responseRatingRepository;
     private final MessageLogService messageLogService;
+    private final ResponseRatingTokens responseRatingTokens;
+    private final AnalyticsCache analyticsCache;
 
     ResponseRatingService(
             ResponseRatingRepository responseRatingRepository,
-            MessageLogService messageLogService) {
+            MessageLogService messageLogService,
+            ResponseRatingTokens responseRatingTokens,
+            AnalyticsCache analyticsCache) {
         this.responseRatingRepository = responseRatingRepository;
         this.messageLogService = messageLogService;
+        this.responseRatingTokens = responseRatingTokens;
+        this.analyticsCache = analyticsCache;
     }
 
     ResponseRating createResponseRating(
             String token, ResponseRatingResource.CreateResponseRatingRequest request) {
-        MessageLogEntry messageLogEntry = messageLogService.getByToken(token);
+        // Tokens issued before signed tokens were introduced still need a lookup
+        ResponseRatingToken ratingToken =
+                responseRatingTokens
+                        .decode(token)
+                        .orElseGet(
+                                () ->
+                                        ResponseRatingToken.of(
+                                                messageLogService.getByToken(token)));
 
-        if (messageLogEntry.getTokenExpiresAt().isBefore(ZonedDateTime.now(BERLIN_ZONE))) {
+        if (ratingToken.expiresAt().isBefore(ZonedDateTime.now(BERLIN_ZONE))) {
             throw new TokenExpiredException(
                     String.format(RESPONSE_RATING_EXPIRED_MSG, TOKEN_TTL_DAYS));
         }
 
-        if (responseRatingRepository.existsByMessageLogId(messageLogEntry.getId())) {
+        if (responseRatingRepository.existsByMessageLogId(ratingToken.messageLogId())) {
             throw new EntityAlreadyExistsException(ResponseRating.class.getSimpleName());
         }
 
         ResponseRating responseRating =
                 ResponseRating.builder()
-                        .messageLogId(messageLogEntry.getId())
-                        .customerId(messageLogEntry.getCustomerId())
-                        .userId(messageLogEntry.getUserId())
+                        .messageLogId(ratingToken.messageLogId())
+                        .customerId(ratingToken.customerId())
+                        .userId(ratingToken.userId())
                         .satisfied(request.satisfied())
                         .rating(request.rating())
                         .feedback(request.feedback())
                         .build();
 
-        return responseRatingRepository.save(responseRating);
+        ResponseRating createdResponseRating = responseRatingRepository.save(responseRating);
+        analyticsCache.invalidate(ratingToken.customerId());
+
+        return createdResponseRating;
     }
 
     ResponseRating getResponseRating(long customerId, long userId, long id, Jwt jwt) {
@@ -81,15 +101,19 @@ class ResponseRatingService {
         return responseRating;
     }
 
-    List<ResponseRating> listResponseRatingsByCustomer(long customerId, Jwt jwt) {
+    Window<ResponseRating> listResponseRatingsByCustomer(
+            long customerId, ScrollPosition position, Limit limit, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
-        return responseRatingRepository.findByCustomerId(customerId);
+        return responseRatingRepository.findByCustomerIdOrderByMessageLogIdDesc(
+                customerId, position, limit);
     }
 
-    List<ResponseRating> listResponseRatingsByUser(long customerId, long userId, Jwt jwt) {
+    Window<ResponseRating> listResponseRatingsByUser(
+            long customerId, long userId, ScrollPosition position, Limit limit, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
         AuthorisationUtil.validateAccessToUser(userId, jwt);
-        return responseRatingRepository.findByUserId(userId);
+        return responseRatingRepository.findByUserIdOrderByMessageLogIdDesc(
+                userId, position, limit);
     }
 
     ResponseRatingResource.ResponseRatingAnalyticsResponse getResponseRatingAnalyticsForCustomer(
@@ -119,6 +143,21 @@ class ResponseRatingService {
             timeframe = Timeframe.DAILY;
         }
 
+        Timeframe resolvedTimeframe = timeframe;
+        return analyticsCache.get(
+                new AnalyticsCache.Key("response-rating", customerId, userId, from, to, timeframe),
+                () ->
+                        computeResponseRatingAnalytics(
+                                customerId, userId, from, to, resolvedTimeframe, isUser));
+    }
+
+    private ResponseRatingResource.ResponseRatingAnalyticsResponse computeResponseRatingAnalytics(
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe,
+            boolean isUser) {
         ZonedDateTime startDate = AnalyticsUtil.resolveStartDate(from, timeframe);
         ZonedDateTime endDate = AnalyticsUtil.resolveEndDate(to);
 
@@ -103,6 +103,8 @@ class SecurityConfig {
                         // Customer Resource
                         .requestMatchers(HttpMethod.POST, "/customers").access(hasScope(Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers").access(hasAnyScope(Authorities.CUSTOMERS_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/token-quota").access(hasAnyScope(Authorities.CUSTOMERS_READ.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.PUT, "/customers/*/token-quota").access(hasScope(Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers/*").access(hasAnyScope(Authorities.CUSTOMERS_READ.getAuthority(), Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.PUT, "/customers/*").access(hasAnyScope(Authorities.CUSTOMERS_WRITE.getAuthority(), Authorities.MANAGER.getAuthority(), Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.PUT, "/customers/*/test-version").access(hasScope(Authorities.ADMIN.getAuthority()))
@@ -129,11 +131,31 @@ class SecurityConfig {
                         .requestMatchers(HttpMethod.DELETE, "/customers/*/message-categories").access(hasAnyScope(Authorities.MANAGER.getAuthority(), Authorities.ADMIN.getAuthority()))
                         // MessageLog Resource
                         .requestMatchers(HttpMethod.POST, "/customers/*/users/*/message-log").access(hasAnyScope(Authorities.MESSAGE_LOG_WRITE.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.POST, "/customers/*/message-log/batch").access(hasAnyScope(Authorities.MESSAGE_LOG_WRITE.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.POST, "/customers/*/users/*/message-log/processed-fingerprints").access(hasAnyScope(Authorities.MESSAGE_LOG_WRITE.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.PUT, "/customers/*/users/*/message-log/*/stage-durations").access(hasAnyScope(Authorities.MESSAGE_LOG_WRITE.getAuthority(), Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log").access(hasScope(Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/search").access(hasScope(Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/query").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        // Before the wildcard below, which would match them first
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/processing-times").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/costs").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/stage-latencies").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/senders").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/feed").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/*").access(hasAnyScope(Authorities.MESSAGE_LOG_READ.getAuthority(), Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers/*/message-log/analytics").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers/*/message-log").access(hasScope(Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/search").access(hasScope(Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/export").access(hasScope(Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/archive").access(hasScope(Authorities.ADMIN.getAuthority()))
                         .requestMatchers(HttpMethod.GET, "/customers/*/users/*/message-log/analytics").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/processing-times").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/costs").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/stage-latencies").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/query").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/senders").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
+                        .requestMatchers(HttpMethod.GET, "/customers/*/message-log/feed").access(hasAnyScope(Authorities.MESSAGE_LOG_LIST.getAuthority(), Authorities.ADMIN.getAuthority()))
                         // ResponseRatings Resource
                         .requestMatchers(HttpMethod.POST, "/customers/users/response-ratings").permitAll()
                         .requestMatchers(HttpMethod.GET, "/customers/*/response-ratings/*").access(hasAnyScope(Authorities.RESPONSE_RATINGS_READ.getAuthority(), Authorities.ADMIN.getAuthority()))
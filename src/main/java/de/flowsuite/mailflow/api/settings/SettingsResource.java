@@ -17,6 +17,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
@@ -67,8 +68,15 @@ class SettingsResource {
     ResponseEntity<Settings> getSettings(
             @PathVariable long customerId,
             @PathVariable long userId,
-            @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(settingsService.getSettings(customerId, userId, jwt));
+            @AuthenticationPrincipal Jwt jwt,
+            WebRequest request) {
+        String eTag = settingsService.getSettingsETag(customerId, userId, jwt);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(settingsService.getSettings(customerId, userId, jwt));
     }
 
     @PutMapping("/{customerId}/users/{userId}/settings")
@@ -1,6 +1,7 @@
 package de.flowsuite.mailflow.api.settings;
 
 import de.flowsuite.mailflow.api.customer.CustomerService;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.Customer;
 import de.flowsuite.mailflow.common.entity.Settings;
 import de.flowsuite.mailflow.common.exception.*;
@@ -17,10 +18,15 @@ class SettingsService {
 
     private final SettingsRepository settingsRepository;
     private final CustomerService customerService;
+    private final EntityVersions entityVersions;
 
-    SettingsService(SettingsRepository settingsRepository, CustomerService customerService) {
+    SettingsService(
+            SettingsRepository settingsRepository,
+            CustomerService customerService,
+            EntityVersions entityVersions) {
         this.settingsRepository = settingsRepository;
         this.customerService = customerService;
+        this.entityVersions = entityVersions;
     }
 
     Settings createSettings(
@@ -52,7 +58,15 @@ class SettingsService {
         settings.setImapPort(customer.getDefaultImapPort());
         settings.setSmtpPort(customer.getDefaultSmtpPort());
 
-        return settingsRepository.save(settings);
+        Settings savedSettings = settingsRepository.save(settings);
+        entityVersions.increment(EntityVersions.SETTINGS, userId);
+        return savedSettings;
+    }
+
+    String getSettingsETag(long customerId, long userId, Jwt jwt) {
+        AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
+        AuthorisationUtil.validateAccessToUser(userId, jwt);
+        return entityVersions.getETag(EntityVersions.SETTINGS, userId);
     }
 
     Settings getSettings(long customerId, long userId, Jwt jwt) {
@@ -96,7 +110,9 @@ class SettingsService {
         Util.validateMailboxSettings(
                 request.imapHost(), request.smtpHost(), request.imapPort(), request.smtpPort());
 
-        return settingsRepository.save(settings);
+        Settings savedSettings = settingsRepository.save(settings);
+        entityVersions.increment(EntityVersions.SETTINGS, userId);
+        return savedSettings;
     }
 
     Settings updateMailboxPassword(
@@ -124,6 +140,8 @@ class SettingsService {
         settings.setMailboxPasswordHash(HmacUtil.hash(request.updatedPassword()));
         settings.setMailboxPassword(AesUtil.encrypt(request.updatedPassword()));
 
-        return settingsRepository.save(settings);
+        Settings savedSettings = settingsRepository.save(settings);
+        entityVersions.increment(EntityVersions.SETTINGS, userId);
+        return savedSettings;
     }
 }
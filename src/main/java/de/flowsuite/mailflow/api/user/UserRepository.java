@@ -2,10 +2,12 @@ package de.flowsuite.mailflow.api.user;
 
 import de.flowsuite.mailflow.common.entity.User;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -22,5 +24,8 @@ interface UserRepository extends CrudRepository<User, Long> {
 
     boolean existsByVerificationToken(String verificationToken);
 
-    List<User> findAllByCustomerId(long customerId);
+    Window<User> findByOrderByIdAsc(ScrollPosition position, Limit limit);
+
+    Window<User> findByCustomerIdOrderByIdAsc(
+            long customerId, ScrollPosition position, Limit limit);
 }
@@ -1,5 +1,6 @@
 package de.flowsuite.mailflow.api.user;
 
+import de.flowsuite.mailflow.api.util.PaginationUtil;
 import de.flowsuite.mailflow.common.constant.Message;
 import de.flowsuite.mailflow.common.entity.User;
 
@@ -60,14 +61,26 @@ class UserResource {
     }
 
     @GetMapping("/users")
-    ResponseEntity<List<User>> listUsers() {
-        return ResponseEntity.ok(userService.listUsers());
+    ResponseEntity<List<User>> listUsers(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit) {
+        return PaginationUtil.toResponse(
+                userService.listUsers(
+                        PaginationUtil.decodeCursor(cursor), PaginationUtil.limit(limit)));
     }
 
     @GetMapping("/{customerId}/users")
     ResponseEntity<List<User>> listUsersByCustomer(
-            @PathVariable long customerId, @AuthenticationPrincipal Jwt jwt) {
-        return ResponseEntity.ok(userService.listUsersByCustomer(customerId, jwt));
+            @PathVariable long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = PaginationUtil.DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal Jwt jwt) {
+        return PaginationUtil.toResponse(
+                userService.listUsersByCustomer(
+                        customerId,
+                        PaginationUtil.decodeCursor(cursor),
+                        PaginationUtil.limit(limit),
+                        jwt));
     }
 
     @GetMapping("/{customerId}/users/{id}")
@@ -17,6 +17,9 @@ import de.flowsuite.mailflow.common.util.Util;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -25,7 +28,6 @@ import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 
 import java.time.ZonedDateTime;
-import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -216,13 +218,14 @@ public class UserService implements UserDetailsService {
         return new Message(COMPLETE_PASSWORD_RESET_MSG);
     }
 
-    List<User> listUsers() {
-        return (List<User>) userRepository.findAll();
+    Window<User> listUsers(ScrollPosition position, Limit limit) {
+        return userRepository.findByOrderByIdAsc(position, limit);
     }
 
-    List<User> listUsersByCustomer(long customerId, Jwt jwt) {
+    Window<User> listUsersByCustomer(
+            long customerId, ScrollPosition position, Limit limit, Jwt jwt) {
         AuthorisationUtil.validateAccessToCustomer(customerId, jwt);
-        return userRepository.findAllByCustomerId(customerId);
+        return userRepository.findByCustomerIdOrderByIdAsc(customerId, position, limit);
     }
 
     User getUser(long customerId, long id, Jwt jwt) {
@@ -0,0 +1,87 @@
+package de.flowsuite.mailflow.api.util;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import de.flowsuite.mailflow.common.constant.Timeframe;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache for analytics results. Every customer has a data version that is part of the
+ * cache key; {@link #invalidate(long)} bumps it whenever the customer's message log or ratings
+ * change, so outdated results are never returned and simply age out of the cache.
+ *
+ * <p>Results are also keyed by the current day, as open date ranges and "today" counts resolve
+ * against the current date.
+ */
+@Component
+public class AnalyticsCache {
+
+    private final Map<VersionedKey, Optional<Object>> results;
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    AnalyticsCache(@Value("${mailflow.analytics.cache.max-entries}") int maxEntries) {
+        this.results =
+                Collections.synchronizedMap(
+                        new LinkedHashMap<>(16, 0.75f, true) {
+                            @Override
+                            protected boolean removeEldestEntry(
+                                    Map.Entry<VersionedKey, Optional<Object>> eldest) {
+                                return size() > maxEntries;
+                            }
+                        });
+    }
+
+    /**
+     * Returns the cached result for the key, or loads and caches it. {@code null} results are
+     * cached as well.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Supplier<T> loader) {
+        // Read the version before loading, a concurrent change then leaves the result unreachable
+        VersionedKey versionedKey =
+                new VersionedKey(key, versionOf(key.customerId()), LocalDate.now(BERLIN_ZONE));
+
+        Optional<Object> result = results.get(versionedKey);
+        if (result == null) {
+            result = Optional.ofNullable(loader.get());
+            results.put(versionedKey, result);
+        }
+
+        return (T) result.orElse(null);
+    }
+
+    public void invalidate(long customerId) {
+        versions.computeIfAbsent(customerId, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private long versionOf(long customerId) {
+        AtomicLong version = versions.get(customerId);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Request parameters of an analytics endpoint. {@code analytics} names the endpoint so results
+     * of different endpoints don't collide.
+     */
+    public record Key(
+            String analytics,
+            long customerId,
+            Long userId,
+            Date from,
+            Date to,
+            Timeframe timeframe) {}
+
+    private record VersionedKey(Key key, long version, LocalDate day) {}
+}
@@ -0,0 +1,116 @@
+package de.flowsuite.mailflow.api.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Change counters of entity collections, stored in {@code entity_versions} so that all instances
+ * agree on them. Services increment a collection's counter after every write to it, and GET
+ * endpoints derive their ETag from it. {@code If-None-Match} can then be answered with a primary
+ * key lookup instead of loading and serialising the collection.
+ *
+ * <p>Single entities share the ETag of the collection they belong to. The counter is incremented
+ * after the write has committed, so a response never carries an ETag newer than its content.
+ *
+ * <p>ETags are weak: Tomcat does not compress responses with a strong ETag, as compression changes
+ * the bytes a strong ETag identifies. Weak ETags are enough for {@code If-None-Match}, which
+ * compares weakly. The CBOR and Smile representations still get ETags of their own, so a cache
+ * never answers one format with another.
+ */
+@Component
+public class EntityVersions {
+
+    public static final String CUSTOMERS = "customers";
+    public static final String MESSAGE_CATEGORIES = "message-categories";
+    public static final String RAG_URLS = "rag-urls";
+    public static final String SETTINGS = "settings";
+    public static final String BLACKLIST = "blacklist";
+
+    /** Scope of collections that are not partitioned by customer or user, e.g. all customers. */
+    public static final long GLOBAL_SCOPE = 0;
+
+    private static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+    private static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
+    private static final String SELECT_SQL =
+            "SELECT version FROM entity_versions WHERE collection = ? AND scope_id = ?";
+
+    private static final String INCREMENT_SQL =
+            """
+            INSERT INTO entity_versions (collection, scope_id, version)
+            VALUES (?, ?, 1)
+            ON CONFLICT (collection, scope_id) DO UPDATE SET
+                version = entity_versions.version + 1
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    EntityVersions(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns the weak ETag of a collection, e.g. the message categories of a customer.
+     *
+     * @param scopeId the customer or user the collection belongs to, or {@link #GLOBAL_SCOPE}
+     */
+    public String getETag(String collection, long scopeId) {
+        List<Long> versions =
+                jdbcTemplate.queryForList(SELECT_SQL, Long.class, collection, scopeId);
+        long version = versions.isEmpty() ? 0 : versions.get(0);
+        return "W/\""
+                + collection
+                + "-"
+                + scopeId
+                + "-"
+                + version
+                + representationSuffix()
+                + "\"";
+    }
+
+    // Follows content negotiation, which picks the acceptable format with the highest quality
+    private static String representationSuffix() {
+        if (!(RequestContextHolder.getRequestAttributes()
+                instanceof ServletRequestAttributes attributes)) {
+            return "";
+        }
+
+        String accept = attributes.getRequest().getHeader(HttpHeaders.ACCEPT);
+        if (accept == null) {
+            return "";
+        }
+
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return "";
+        }
+
+        mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return "";
+            }
+            if (mediaType.isCompatibleWith(CBOR)) {
+                return "-cbor";
+            }
+            if (mediaType.isCompatibleWith(SMILE)) {
+                return "-smile";
+            }
+        }
+        return "";
+    }
+
+    public void increment(String collection, long scopeId) {
+        jdbcTemplate.update(INCREMENT_SQL, collection, scopeId);
+    }
+}
@@ -0,0 +1,348 @@
+package de.flowsuite.mailflow.api.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates retried POST requests that carry an {@code Idempotency-Key} header. The first
+ * successful response for a key is stored for {@code ttl}; a retry with the same key gets that
+ * response again, marked with {@code Idempotent-Replayed}, without the request being executed.
+ * A retry that arrives while the first request is still running gets {@code 409 Conflict}.
+ * Failed requests are not stored, so they can be retried with the same key. A key is bound to a
+ * hash of its request body, reusing it for a different body gets {@code 422 Unprocessable
+ * Entity}.
+ *
+ * <p>A running request holds its key for {@code lease} only, so a key whose request crashed the
+ * instance can be retried long before {@code ttl} is over. The lease must exceed the longest
+ * request; a request that outlives it does not store its response.
+ *
+ * <p>Keys are scoped by the caller, e.g. to the authenticated client and path, so one caller's
+ * key never returns another caller's response. Responses are kept in a bounded in-memory store,
+ * which is enough for a single instance. With {@code table-enabled} the {@code idempotency_keys}
+ * table is the source of truth, so that a retry routed to another instance is deduplicated too.
+ */
+@Component
+public class IdempotencyKeys {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final int MAX_KEY_LENGTH = 255;
+    private static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String RESERVE_SQL =
+            """
+            INSERT INTO idempotency_keys (key_hash, request_hash, created_at)
+            VALUES (?, ?, ?)
+            ON CONFLICT (key_hash) DO UPDATE SET
+                request_hash = EXCLUDED.request_hash,
+                status = NULL,
+                location = NULL,
+                body = NULL,
+                created_at = EXCLUDED.created_at
+            WHERE idempotency_keys.created_at < ?
+               OR (idempotency_keys.status IS NULL AND idempotency_keys.created_at < ?)
+            """;
+
+    private static final String SELECT_SQL =
+            """
+            SELECT request_hash, status, location, body, created_at
+            FROM idempotency_keys
+            WHERE key_hash = ?
+            """;
+
+    // Only the reservation that is still held stores its response or releases the key
+    private static final String STORE_SQL =
+            """
+            UPDATE idempotency_keys SET status = ?, location = ?, body = ?
+            WHERE key_hash = ? AND created_at = ? AND status IS NULL
+            """;
+
+    private static final String RELEASE_SQL =
+            """
+            DELETE FROM idempotency_keys
+            WHERE key_hash = ? AND created_at = ? AND status IS NULL
+            """;
+
+    private final Duration ttl;
+    private final Duration lease;
+    private final boolean tableEnabled;
+    private final Map<String, Entry> entries;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    IdempotencyKeys(
+            @Value("${mailflow.idempotency.ttl}") Duration ttl,
+            @Value("${mailflow.idempotency.lease}") Duration lease,
+            @Value("${mailflow.idempotency.max-entries}") int maxEntries,
+            @Value("${mailflow.idempotency.table-enabled}") boolean tableEnabled,
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper) {
+        this.ttl = ttl;
+        this.lease = lease;
+        this.tableEnabled = tableEnabled;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        // Insertion order, so the eldest entry is usually also the first to expire
+        this.entries =
+                Collections.synchronizedMap(
+                        new LinkedHashMap<>() {
+                            @Override
+                            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                                return size() > maxEntries
+                                        || eldest.getValue().isExpired(Instant.now(), ttl, lease);
+                            }
+                        });
+    }
+
+    /**
+     * Executes the request once per key and scope and returns its response, or the stored response
+     * of an earlier execution.
+     *
+     * @param scope identifies the caller and endpoint, e.g. {@code message-log:1:2:mailbox-service}
+     * @param key the {@code Idempotency-Key} header, or {@code null} to execute the request
+     *     unconditionally
+     * @param requestBody the request body the key is bound to
+     * @param bodyType the type of the response body, needed to read it back from the table
+     */
+    public <T> ResponseEntity<T> execute(
+            String scope,
+            String key,
+            Object requestBody,
+            Class<T> bodyType,
+            Supplier<ResponseEntity<T>> request) {
+        if (key == null) {
+            return request.get();
+        }
+
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid idempotency key.");
+        }
+
+        String keyHash = hash(scope, key);
+        String requestHash = hash(toJson(requestBody));
+        // Truncated to the precision of the table, whose created_at identifies the reservation
+        Instant reservedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Entry existing = reserve(keyHash, requestHash, reservedAt);
+        if (existing != null) {
+            if (!existing.requestHash().equals(requestHash)) {
+                throw new ResponseStatusException(
+                        HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Idempotency key was already used for a different request.");
+            }
+            if (existing.response() == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            return replay(existing.response(), bodyType);
+        }
+
+        ResponseEntity<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            release(keyHash, reservedAt);
+            throw e;
+        }
+
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            release(keyHash, reservedAt);
+            return response;
+        }
+
+        store(
+                keyHash,
+                new Entry(
+                        reservedAt,
+                        requestHash,
+                        new StoredResponse(
+                                response.getStatusCode().value(),
+                                response.getHeaders().getLocation(),
+                                response.getBody())));
+        return response;
+    }
+
+    /** Removes keys of the table that have expired, expired in-memory keys are evicted on write. */
+    @Scheduled(fixedDelayString = "${mailflow.idempotency.cleanup-interval}")
+    void deleteExpiredKeys() {
+        if (tableEnabled) {
+            jdbcTemplate.update(
+                    "DELETE FROM idempotency_keys WHERE created_at < ?",
+                    Timestamp.from(Instant.now().minus(ttl)));
+        }
+    }
+
+    /**
+     * Reserves the key for the caller, unless another request holds it or stored its response.
+     *
+     * @return {@code null} if the caller now holds the key, otherwise the entry of the other
+     *     request, whose response is {@code null} while that request is running
+     */
+    private Entry reserve(String keyHash, String requestHash, Instant now) {
+        synchronized (entries) {
+            Entry entry = entries.get(keyHash);
+            if (entry != null && entry.response() != null && !entry.isExpired(now, ttl, lease)) {
+                return entry;
+            }
+            if (!tableEnabled) {
+                if (entry != null && !entry.isExpired(now, ttl, lease)) {
+                    return entry;
+                }
+                entries.remove(keyHash);
+                entries.put(keyHash, new Entry(now, requestHash, null));
+                return null;
+            }
+        }
+
+        int reserved =
+                jdbcTemplate.update(
+                        RESERVE_SQL,
+                        keyHash,
+                        requestHash,
+                        Timestamp.from(now),
+                        Timestamp.from(now.minus(ttl)),
+                        Timestamp.from(now.minus(lease)));
+        if (reserved > 0) {
+            return null;
+        }
+
+        List<Entry> storedEntries =
+                jdbcTemplate.query(
+                        SELECT_SQL,
+                        (rs, rowNum) ->
+                                new Entry(
+                                        rs.getTimestamp("created_at").toInstant(),
+                                        rs.getString("request_hash"),
+                                        rs.getObject("status") == null
+                                                ? null
+                                                : new StoredResponse(
+                                                        rs.getInt("status"),
+                                                        rs.getString("location") == null
+                                                                ? null
+                                                                : URI.create(
+                                                                        rs.getString("location")),
+                                                        rs.getString("body"))),
+                        keyHash);
+        // An empty result means the first request failed just now and released the key
+        if (storedEntries.isEmpty()) {
+            return new Entry(now, requestHash, null);
+        }
+        return storedEntries.get(0);
+    }
+
+    private void store(String keyHash, Entry entry) {
+        StoredResponse response = entry.response();
+        if (tableEnabled) {
+            int stored =
+                    jdbcTemplate.update(
+                            STORE_SQL,
+                            response.status(),
+                            response.location() == null ? null : response.location().toString(),
+                            toJson(response.body()),
+                            keyHash,
+                            Timestamp.from(entry.createdAt()));
+            if (stored > 0) {
+                entries.put(keyHash, entry);
+            }
+            return;
+        }
+
+        synchronized (entries) {
+            if (isHeld(entries.get(keyHash), entry.createdAt())) {
+                entries.put(keyHash, entry);
+            }
+        }
+    }
+
+    private void release(String keyHash, Instant reservedAt) {
+        if (tableEnabled) {
+            jdbcTemplate.update(RELEASE_SQL, keyHash, Timestamp.from(reservedAt));
+            return;
+        }
+
+        synchronized (entries) {
+            if (isHeld(entries.get(keyHash), reservedAt)) {
+                entries.remove(keyHash);
+            }
+        }
+    }
+
+    // False if the lease expired and another request took the key over
+    private static boolean isHeld(Entry entry, Instant reservedAt) {
+        return entry != null && entry.response() == null && entry.createdAt().equals(reservedAt);
+    }
+
+    private <T> ResponseEntity<T> replay(StoredResponse response, Class<T> bodyType) {
+        T body;
+        if (response.body() instanceof String json && bodyType != String.class) {
+            try {
+                body = objectMapper.readValue(json, bodyType);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Stored idempotent response is unreadable", e);
+            }
+        } else {
+            body = bodyType.cast(response.body());
+        }
+
+        return ResponseEntity.status(HttpStatusCode.valueOf(response.status()))
+                .location(response.location())
+                .header(REPLAYED_HEADER, "true")
+                .body(body);
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialise idempotent request", e);
+        }
+    }
+
+    // Fixed length regardless of the key, and scopes like rating tokens are not stored in clear
+    private static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    digest.update((byte) 0);
+                }
+                digest.update(parts[i].getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** {@code body} is the response object, or its JSON if it was read from the table. */
+    private record StoredResponse(int status, URI location, Object body) {}
+
+    /** {@code response} is {@code null} while the request holding the key is running. */
+    private record Entry(Instant createdAt, String requestHash, StoredResponse response) {
+
+        boolean isExpired(Instant now, Duration ttl, Duration lease) {
+            return createdAt.plus(response == null ? lease : ttl).isBefore(now);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.flowsuite.mailflow.api.util;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Keyset pagination for list endpoints. Pages are requested with an optional {@code cursor} and
+ * {@code limit} query parameter; the cursor for the next page is returned in a {@code Link} header
+ * with {@code rel="next"} and is absent on the last page. Without a {@code limit}, a page has
+ * {@value #DEFAULT_PAGE_SIZE} rows, so clients that read a whole list must follow the links.
+ *
+ * <p>Cursors are opaque to clients. They encode the sort keys of the last returned row, which
+ * may be {@link Long}, {@link Double} or {@link ZonedDateTime} values.
+ */
+public final class PaginationUtil {
+
+    private static final String CURSOR_PARAM = "cursor";
+    public static final String DEFAULT_PAGE_SIZE = "100";
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final String KEY_SEPARATOR = ";";
+    private static final String LONG_TYPE = "l";
+    private static final String DOUBLE_TYPE = "d";
+    private static final String DATE_TIME_TYPE = "t";
+
+    private PaginationUtil() {}
+
+    public static Limit limit(int limit) {
+        return Limit.of(Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    public static ScrollPosition decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+
+        try {
+            String decoded =
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            Map<String, Object> keys = new LinkedHashMap<>();
+            for (String key : decoded.split(KEY_SEPARATOR)) {
+                String[] parts = key.split("=", 3);
+                Object value =
+                        switch (parts[1]) {
+                            case LONG_TYPE -> Long.parseLong(parts[2]);
+                            case DOUBLE_TYPE -> Double.parseDouble(parts[2]);
+                            case DATE_TIME_TYPE -> ZonedDateTime.parse(parts[2]);
+                            default -> throw new IllegalArgumentException(parts[1]);
+                        };
+                keys.put(parts[0], value);
+            }
+            return ScrollPosition.forward(keys);
+        } catch (IllegalArgumentException
+                | ArrayIndexOutOfBoundsException
+                | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor.");
+        }
+    }
+
+    public static String encodeCursor(Window<?> window) {
+        if (!window.hasNext() || window.isEmpty()) {
+            return null;
+        }
+
+        KeysetScrollPosition position =
+                (KeysetScrollPosition) window.positionAt(window.size() - 1);
+        StringJoiner joiner = new StringJoiner(KEY_SEPARATOR);
+        position.getKeys()
+                .forEach(
+                        (name, value) -> {
+                            String type =
+                                    value instanceof ZonedDateTime
+                                            ? DATE_TIME_TYPE
+                                            : value instanceof Double ? DOUBLE_TYPE : LONG_TYPE;
+                            joiner.add(name + "=" + type + "=" + value);
+                        });
+
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Builds a 200 response with the window's content and a link to the next page, if any. */
+    public static <T> ResponseEntity<List<T>> toResponse(Window<T> window) {
+        return toResponse(window, null);
+    }
+
+    /** Like {@link #toResponse(Window)}, with the given ETag unless it is {@code null}. */
+    public static <T> ResponseEntity<List<T>> toResponse(Window<T> window, String eTag) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+
+        String nextCursor = encodeCursor(window);
+        if (nextCursor != null) {
+            String nextUri =
+                    ServletUriComponentsBuilder.fromCurrentRequest()
+                            .replaceQueryParam(CURSOR_PARAM, nextCursor)
+                            .toUriString();
+            response.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"");
+        }
+
+        return response.body(window.getContent());
+    }
+}
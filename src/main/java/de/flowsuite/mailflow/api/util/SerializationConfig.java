@@ -0,0 +1,44 @@
+package de.flowsuite.mailflow.api.util;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Adds CBOR ({@code application/cbor}) and Smile ({@code application/x-jackson-smile}) as
+ * alternatives to JSON for the other services, selected by the {@code Accept} and {@code
+ * Content-Type} headers. JSON stays the default.
+ *
+ * <p>All formats share the application's Jackson configuration, including Blackbird, which
+ * replaces reflective property access with generated lambdas.
+ */
+@Configuration
+class SerializationConfig {
+
+    // Module beans are registered with every mapper built by Jackson2ObjectMapperBuilder
+    @Bean
+    Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+            Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2CborHttpMessageConverter(
+                objectMapperBuilder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+            Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2SmileHttpMessageConverter(
+                objectMapperBuilder.factory(new SmileFactory()).build());
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.BlacklistEntry;
 import de.flowsuite.mailflow.common.entity.User;
 import de.flowsuite.mailflow.common.exception.EntityAlreadyExistsException;
@@ -18,6 +19,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 
 import java.util.List;
 import java.util.Optional;
@@ -27,6 +31,8 @@ class BlacklistServiceTest extends BaseServiceTest {
 
     @Mock private BlacklistRepository blacklistRepository;
 
+    @Mock private EntityVersions entityVersions;
+
     @InjectMocks private BlacklistService blacklistService;
 
     private final User testUser = buildTestUser();
@@ -205,11 +211,33 @@ class BlacklistServiceTest extends BaseServiceTest {
 
     @Test
     void testListBlacklistEntries_success() {
+        ScrollPosition position = ScrollPosition.keyset();
+        Limit limit = Limit.of(10);
+        when(blacklistRepository.findByUserIdOrderByIdAsc(testUser.getId(), position, limit))
+                .thenReturn(Window.from(List.of(testBlacklistEntry), ScrollPosition::offset));
+
+        List<BlacklistEntry> blacklistEntries =
+                blacklistService
+                        .listBlacklistEntries(
+                                testUser.getCustomerId(),
+                                testUser.getId(),
+                                position,
+                                limit,
+                                jwtMock)
+                        .getContent();
+
+        assertEquals(1, blacklistEntries.size());
+        assertEquals(testBlacklistEntry, blacklistEntries.get(0));
+        assertEquals(DECRYPTED_VALUE, blacklistEntries.get(0).getBlacklistedEmailAddress());
+    }
+
+    @Test
+    void testListAllBlacklistEntries_success() {
         when(blacklistRepository.findByUserId(testUser.getId()))
                 .thenReturn(List.of(testBlacklistEntry));
 
         List<BlacklistEntry> blacklistEntries =
-                blacklistService.listBlacklistEntries(
+                blacklistService.listAllBlacklistEntries(
                         testUser.getCustomerId(), testUser.getId(), jwtMock);
 
         assertEquals(1, blacklistEntries.size());
@@ -223,14 +251,22 @@ class BlacklistServiceTest extends BaseServiceTest {
                 IdorException.class,
                 () ->
                         blacklistService.listBlacklistEntries(
-                                testUser.getCustomerId() + 1, testUser.getId(), jwtMock));
+                                testUser.getCustomerId() + 1,
+                                testUser.getId(),
+                                ScrollPosition.keyset(),
+                                Limit.of(10),
+                                jwtMock));
         assertThrows(
                 IdorException.class,
                 () ->
                         blacklistService.listBlacklistEntries(
-                                testUser.getCustomerId(), testUser.getId() + 1, jwtMock));
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                ScrollPosition.keyset(),
+                                Limit.of(10),
+                                jwtMock));
 
-        verify(blacklistRepository, never()).findByUserId(anyLong());
+        verify(blacklistRepository, never()).findByUserIdOrderByIdAsc(anyLong(), any(), any());
     }
 
     @Test
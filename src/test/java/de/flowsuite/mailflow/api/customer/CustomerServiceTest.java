@@ -7,6 +7,7 @@ import static org.mockito.Mockito.*;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
 import de.flowsuite.mailflow.api.messagecategory.MessageCategoryService;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.Customer;
 import de.flowsuite.mailflow.common.entity.User;
 import de.flowsuite.mailflow.common.exception.*;
@@ -18,6 +19,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -37,6 +41,10 @@ class CustomerServiceTest extends BaseServiceTest {
 
     @Mock private MessageCategoryService messageCategoryService;
 
+    @Mock private EntityVersions entityVersions;
+
+    @Mock private TokenQuotas tokenQuotas;
+
     @InjectMocks private CustomerService customerService;
 
     private final User testUser = buildTestUser();
@@ -140,6 +148,8 @@ class CustomerServiceTest extends BaseServiceTest {
         assertNull(savedCustomer.getLastCrawlAt());
         assertNull(savedCustomer.getNextCrawlAt());
         // spotless:on
+
+        verify(entityVersions).increment(EntityVersions.CUSTOMERS, testCustomer.getId());
     }
 
     @Test
@@ -157,14 +167,17 @@ class CustomerServiceTest extends BaseServiceTest {
 
     @Test
     void testListCustomers_success() {
-        when(customerRepository.findAll()).thenReturn(List.of(testCustomer));
+        ScrollPosition position = ScrollPosition.keyset();
+        Limit limit = Limit.of(10);
+        when(customerRepository.findByOrderByIdAsc(position, limit))
+                .thenReturn(Window.from(List.of(testCustomer), ScrollPosition::offset));
 
-        List<Customer> customers = customerService.listCustomers();
+        Window<Customer> customers = customerService.listCustomers(position, limit);
 
-        verify(customerRepository).findAll();
+        verify(customerRepository).findByOrderByIdAsc(position, limit);
 
         assertEquals(1, customers.size());
-        assertEquals(testCustomer, customers.get(0));
+        assertEquals(testCustomer, customers.getContent().get(0));
     }
 
     @Test
@@ -423,4 +436,69 @@ class CustomerServiceTest extends BaseServiceTest {
         assertNull(savedCustomer.getIonosUsername());
         assertNull(savedCustomer.getIonosPassword());
     }
+
+    @Test
+    void testCheckTokenQuota_allowed() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(tokenQuotas.getUsedTokens(testCustomer.getId())).thenReturn(900_000L);
+        when(tokenQuotas.getMonthlyLimit(testCustomer.getId())).thenReturn(1_000_000L);
+
+        CustomerResource.TokenQuotaResponse response =
+                customerService.checkTokenQuota(testCustomer.getId(), 100_000, jwtMock);
+
+        assertEquals(
+                new CustomerResource.TokenQuotaResponse(true, 900_000, 1_000_000L, 100_000L),
+                response);
+    }
+
+    @Test
+    void testCheckTokenQuota_exceeded() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(tokenQuotas.getUsedTokens(testCustomer.getId())).thenReturn(1_200_000L);
+        when(tokenQuotas.getMonthlyLimit(testCustomer.getId())).thenReturn(1_000_000L);
+
+        CustomerResource.TokenQuotaResponse response =
+                customerService.checkTokenQuota(testCustomer.getId(), 1, jwtMock);
+
+        assertFalse(response.allowed());
+        assertEquals(0L, response.remainingTokens());
+    }
+
+    @Test
+    void testCheckTokenQuota_unlimited() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(tokenQuotas.getUsedTokens(testCustomer.getId())).thenReturn(5_000_000L);
+        when(tokenQuotas.getMonthlyLimit(testCustomer.getId())).thenReturn(null);
+
+        CustomerResource.TokenQuotaResponse response =
+                customerService.checkTokenQuota(testCustomer.getId(), 100_000, jwtMock);
+
+        assertTrue(response.allowed());
+        assertNull(response.monthlyTokenLimit());
+    }
+
+    @Test
+    void testCheckTokenQuota_idor() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () -> customerService.checkTokenQuota(testCustomer.getId() + 1, 1, jwtMock));
+
+        verify(tokenQuotas, never()).getUsedTokens(anyLong());
+    }
+
+    @Test
+    void testUpdateTokenQuota_notFound() {
+        when(customerRepository.existsById(testCustomer.getId())).thenReturn(false);
+
+        assertThrows(
+                EntityNotFoundException.class,
+                () ->
+                        customerService.updateTokenQuota(
+                                testCustomer.getId(),
+                                new CustomerResource.UpdateTokenQuotaRequest(1_000_000L)));
+
+        verify(tokenQuotas, never()).setMonthlyLimit(anyLong(), any());
+    }
 }
@@ -0,0 +1,139 @@
+package de.flowsuite.mailflow.api.customer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import de.flowsuite.mailflow.api.messagelog.MessageLogEntriesCreatedEvent;
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.util.Collections;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class TokenQuotasTest {
+
+    private static final long CUSTOMER_ID = 1L;
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testFlush_addsUnflushedTokens() {
+        TokenQuotas tokenQuotas = new TokenQuotas(0, jdbcTemplate);
+        whenPersistedTokensRead().thenReturn(List.of(100L));
+        // Another instance has added 1000 tokens since they were read
+        when(jdbcTemplate.queryForObject(
+                        contains("INSERT INTO customer_token_usage"),
+                        eq(Long.class),
+                        eq(CUSTOMER_ID),
+                        any(Date.class),
+                        eq(50L)))
+                .thenReturn(1150L);
+
+        tokenQuotas.onMessageLogEntriesCreated(createdEvent(20, 30));
+        assertEquals(150, tokenQuotas.getUsedTokens(CUSTOMER_ID));
+        tokenQuotas.flush();
+
+        assertEquals(1150, tokenQuotas.getUsedTokens(CUSTOMER_ID));
+    }
+
+    @Test
+    void testFlush_skipsZeroDeltas() {
+        TokenQuotas tokenQuotas = new TokenQuotas(0, jdbcTemplate);
+        whenPersistedTokensRead().thenReturn(List.of(100L), List.of(400L));
+
+        assertEquals(100, tokenQuotas.getUsedTokens(CUSTOMER_ID));
+        tokenQuotas.onMessageLogEntriesCreated(createdEvent(null, 0));
+        tokenQuotas.flush();
+
+        // Only read, which picks up the tokens of other instances
+        assertEquals(400, tokenQuotas.getUsedTokens(CUSTOMER_ID));
+        verify(jdbcTemplate, never())
+                .queryForObject(
+                        contains("INSERT INTO customer_token_usage"),
+                        eq(Long.class),
+                        anyLong(),
+                        any(Date.class),
+                        anyLong());
+    }
+
+    @Test
+    void testFlush_keepsTokensOfFailedFlush() {
+        TokenQuotas tokenQuotas = new TokenQuotas(0, jdbcTemplate);
+        whenPersistedTokensRead().thenReturn(List.of(100L));
+        when(jdbcTemplate.queryForObject(
+                        contains("INSERT INTO customer_token_usage"),
+                        eq(Long.class),
+                        eq(CUSTOMER_ID),
+                        any(Date.class),
+                        eq(50L)))
+                .thenThrow(new IllegalStateException());
+
+        tokenQuotas.onMessageLogEntriesCreated(createdEvent(20, 30));
+        tokenQuotas.flush();
+
+        assertEquals(150, tokenQuotas.getUsedTokens(CUSTOMER_ID));
+    }
+
+    @Test
+    void testGetUsedTokens_exceedsLimitBeforeFlush() {
+        TokenQuotas tokenQuotas = new TokenQuotas(1000, jdbcTemplate);
+        whenPersistedTokensRead().thenReturn(List.of(900L));
+        when(jdbcTemplate.queryForList(
+                        contains("customer_token_quotas"), eq(Long.class), eq(CUSTOMER_ID)))
+                .thenReturn(List.of());
+
+        tokenQuotas.onMessageLogEntriesCreated(createdEvent(50, 150));
+
+        assertEquals(Long.valueOf(1000), tokenQuotas.getMonthlyLimit(CUSTOMER_ID));
+        assertEquals(1100, tokenQuotas.getUsedTokens(CUSTOMER_ID));
+    }
+
+    @Test
+    void testGetMonthlyLimit_reloadedAfterFlush() {
+        TokenQuotas tokenQuotas = new TokenQuotas(0, jdbcTemplate);
+        // Changed through another instance, then removed
+        when(jdbcTemplate.queryForList(
+                        contains("customer_token_quotas"), eq(Long.class), eq(CUSTOMER_ID)))
+                .thenReturn(List.of(1000L), List.of(2000L), List.of());
+
+        assertEquals(Long.valueOf(1000), tokenQuotas.getMonthlyLimit(CUSTOMER_ID));
+        assertEquals(Long.valueOf(1000), tokenQuotas.getMonthlyLimit(CUSTOMER_ID));
+        tokenQuotas.flush();
+        assertEquals(Long.valueOf(2000), tokenQuotas.getMonthlyLimit(CUSTOMER_ID));
+        tokenQuotas.flush();
+        assertNull(tokenQuotas.getMonthlyLimit(CUSTOMER_ID));
+    }
+
+    private OngoingStubbing<List<Long>> whenPersistedTokensRead() {
+        return when(
+                jdbcTemplate.queryForList(
+                        contains("FROM customer_token_usage"),
+                        eq(Long.class),
+                        eq(CUSTOMER_ID),
+                        any(Date.class)));
+    }
+
+    private static MessageLogEntriesCreatedEvent createdEvent(
+            Integer categorisationTotalTokens, Integer totalTokens) {
+        return new MessageLogEntriesCreatedEvent(
+                List.of(
+                        MessageLogEntry.builder()
+                                .customerId(CUSTOMER_ID)
+                                .categorisationTotalTokens(categorisationTotalTokens)
+                                .totalTokens(totalTokens)
+                                .build()),
+                Collections.singletonList(null));
+    }
+}
@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.never;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.MessageCategory;
 import de.flowsuite.mailflow.common.entity.User;
 import de.flowsuite.mailflow.common.exception.*;
@@ -26,6 +27,8 @@ class MessageCategoryTest extends BaseServiceTest {
 
     @Mock private MessageCategoryRepository messageCategoryRepository;
 
+    @Mock private EntityVersions entityVersions;
+
     @InjectMocks private MessageCategoryService messageCategoryService;
 
     private final User testUser = buildTestUser();
@@ -73,6 +76,8 @@ class MessageCategoryTest extends BaseServiceTest {
         assertEquals(testMessageCategory.getReply(), savedMessageCategory.getReply());
         assertEquals(testMessageCategory.getFunctionCall(), savedMessageCategory.getFunctionCall());
         assertEquals(testMessageCategory.getDescription(), savedMessageCategory.getDescription());
+        verify(entityVersions)
+                .increment(EntityVersions.MESSAGE_CATEGORIES, testUser.getCustomerId());
     }
 
     @Test
@@ -232,6 +237,29 @@ class MessageCategoryTest extends BaseServiceTest {
         verify(messageCategoryRepository, never()).findByCustomerId(anyLong());
     }
 
+    @Test
+    void testGetMessageCategoriesETag_success() {
+        when(entityVersions.getETag(
+                        EntityVersions.MESSAGE_CATEGORIES, testUser.getCustomerId()))
+                .thenReturn("\"message-categories-1-3\"");
+
+        String eTag =
+                messageCategoryService.getMessageCategoriesETag(testUser.getCustomerId(), jwtMock);
+
+        assertEquals("\"message-categories-1-3\"", eTag);
+    }
+
+    @Test
+    void testGetMessageCategoriesETag_idor() {
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageCategoryService.getMessageCategoriesETag(
+                                testUser.getCustomerId() + 1, jwtMock));
+
+        verify(entityVersions, never()).getETag(anyString(), anyLong());
+    }
+
     @Test
     void testUpdateMessageCategory_success() {
         when(messageCategoryRepository.findById(testMessageCategory.getId()))
@@ -324,6 +352,8 @@ class MessageCategoryTest extends BaseServiceTest {
         MessageCategory deletedMessageCategory = messageCategoryCaptor.getValue();
 
         assertEquals(testMessageCategory, deletedMessageCategory);
+        verify(entityVersions)
+                .increment(EntityVersions.MESSAGE_CATEGORIES, testUser.getCustomerId());
     }
 
     @Test
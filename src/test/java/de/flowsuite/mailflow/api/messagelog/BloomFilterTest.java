@@ -0,0 +1,94 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class BloomFilterTest {
+
+    private static final int CAPACITY = 10_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void testMightContain_addedValues() {
+        BloomFilter bloomFilter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+        SplittableRandom random = new SplittableRandom(1);
+        long[] hashes = new long[2 * CAPACITY];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong();
+        }
+
+        for (int i = 0; i < hashes.length; i += 2) {
+            bloomFilter.add(hashes[i], hashes[i + 1]);
+        }
+
+        for (int i = 0; i < hashes.length; i += 2) {
+            assertTrue(bloomFilter.mightContain(hashes[i], hashes[i + 1]));
+        }
+    }
+
+    @Test
+    void testMightContain_falsePositiveRate() {
+        BloomFilter bloomFilter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+        SplittableRandom random = new SplittableRandom(2);
+        for (int i = 0; i < CAPACITY; i++) {
+            bloomFilter.add(random.nextLong(), random.nextLong());
+        }
+
+        int lookups = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < lookups; i++) {
+            if (bloomFilter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+
+        assertEquals(FALSE_POSITIVE_RATE, (double) falsePositives / lookups, 0.005);
+    }
+
+    @Test
+    void testMightContain_empty() {
+        BloomFilter bloomFilter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+
+        assertFalse(bloomFilter.mightContain(0, 0));
+        assertFalse(bloomFilter.mightContain(-1, Long.MIN_VALUE));
+        assertEquals(CAPACITY, bloomFilter.capacity());
+    }
+
+    @Test
+    void testAdd_concurrently() throws Exception {
+        BloomFilter bloomFilter = new BloomFilter(CAPACITY, FALSE_POSITIVE_RATE);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                // Neighbouring values share words of the filter, so their bits race
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (long i = 0; i < CAPACITY / threads; i++) {
+                                        bloomFilter.add(seed + threads * i, 1);
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (long i = 0; i < CAPACITY / threads * threads; i++) {
+            assertTrue(bloomFilter.mightContain(i, 1));
+        }
+    }
+}
@@ -0,0 +1,752 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogColumnStoreTest {
+
+    private static final long CUSTOMER_ID = 1L;
+    private static final long OTHER_CUSTOMER_ID = 2L;
+    private static final long USER_ID = 3L;
+    private static final long OTHER_USER_ID = 4L;
+    private static final ZonedDateTime WINDOW_START =
+            ZonedDateTime.of(2025, 1, 1, 0, 0, 0, 0, BERLIN_ZONE);
+    // Spans the start and the end of daylight saving time
+    private static final ZonedDateTime FROM = ZonedDateTime.of(2025, 3, 1, 0, 0, 0, 0, BERLIN_ZONE);
+    private static final ZonedDateTime TO =
+            ZonedDateTime.of(2025, 11, 30, 23, 59, 59, 0, BERLIN_ZONE);
+    private static final List<String> TRUNC_UNITS = List.of("hour", "day", "week", "month", "year");
+    private static final List<AnalyticsMeasure> MEASURES =
+            Arrays.stream(AnalyticsMeasure.values())
+                    .filter(measure -> measure != AnalyticsMeasure.AVG_RATING)
+                    .toList();
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private final List<MessageLogEntry> entries = buildMessageLogEntries(CUSTOMER_ID, 300);
+    private MessageLogColumnStore messageLogColumnStore;
+
+    @BeforeEach
+    void setup() {
+        messageLogColumnStore = buildMessageLogColumnStore(1_000_000, 1_000_000);
+    }
+
+    @Test
+    void testQuery_matchesSqlForEachDimension() {
+        mockLoad(CUSTOMER_ID, entries);
+
+        assertMatchesSql(List.of(), MEASURES, FROM, TO, "day");
+        for (AnalyticsDimension dimension : AnalyticsDimension.values()) {
+            for (String truncUnit : TRUNC_UNITS) {
+                assertMatchesSql(List.of(dimension), MEASURES, FROM, TO, truncUnit);
+            }
+        }
+    }
+
+    @Test
+    void testQuery_matchesSqlForEachMeasure() {
+        mockLoad(CUSTOMER_ID, entries);
+
+        for (AnalyticsMeasure measure : MEASURES) {
+            assertMatchesSql(
+                    List.of(AnalyticsDimension.CATEGORY, AnalyticsDimension.PERIOD),
+                    List.of(measure),
+                    FROM,
+                    TO,
+                    "month");
+        }
+    }
+
+    @Test
+    void testQuery_matchesSqlForCombinedDimensions() {
+        mockLoad(CUSTOMER_ID, entries);
+
+        // Each combination is numbered in mixed radix, with null as digit 0
+        AnalyticsDimension[] dimensions = AnalyticsDimension.values();
+        for (int i = 0; i < dimensions.length; i++) {
+            for (int j = 0; j < dimensions.length; j++) {
+                if (i != j) {
+                    assertMatchesSql(
+                            List.of(dimensions[i], dimensions[j]), MEASURES, FROM, TO, "week");
+                }
+            }
+        }
+        assertMatchesSql(
+                List.of(
+                        AnalyticsDimension.LANGUAGE,
+                        AnalyticsDimension.REPLIED,
+                        AnalyticsDimension.PERIOD),
+                MEASURES,
+                FROM,
+                TO,
+                "day");
+    }
+
+    @Test
+    void testQuery_matchesSqlForUser() {
+        mockLoad(CUSTOMER_ID, entries);
+
+        assertMatchesSql(
+                USER_ID,
+                List.of(AnalyticsDimension.CATEGORY, AnalyticsDimension.PERIOD),
+                MEASURES,
+                FROM,
+                TO,
+                "month");
+        assertTrue(
+                messageLogColumnStore
+                        .query(
+                                CUSTOMER_ID,
+                                99L,
+                                List.of(AnalyticsDimension.CATEGORY),
+                                MEASURES,
+                                FROM,
+                                TO,
+                                "day")
+                        .isEmpty());
+    }
+
+    @Test
+    void testQuery_matchesSqlForPartOfTheRange() {
+        mockLoad(CUSTOMER_ID, entries);
+
+        // Rows at the start and the end of the range count, the first period starts before it
+        assertMatchesSql(
+                List.of(AnalyticsDimension.PERIOD),
+                MEASURES,
+                at(2025, 6, 2, 0, 0).plusHours(5),
+                at(2025, 7, 1, 0, 0),
+                "week");
+    }
+
+    @Test
+    void testQuery_periodsAtEndOfDaylightSavingTime() {
+        mockLoad(
+                CUSTOMER_ID,
+                buildMessageLogEntries(
+                        "2025-10-26T00:00:00Z", "2025-10-26T00:30:00Z", "2025-10-26T01:30:00Z"));
+
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(AnalyticsDimension.PERIOD),
+                        List.of(AnalyticsMeasure.COUNT),
+                        at(2025, 10, 26, 0, 0),
+                        at(2025, 10, 27, 0, 0),
+                        "hour");
+
+        // 02:00 to 03:00 happens twice, both hours are one period like in the database
+        ZonedDateTime repeatedHour = at(2025, 10, 26, 2, 0);
+        assertEquals(ZoneOffset.ofHours(2), repeatedHour.getOffset());
+        assertEquals(1, rows.size());
+        assertEquals(3L, countOf(rows, repeatedHour));
+    }
+
+    @Test
+    void testQuery_periodsAtStartOfDaylightSavingTime() {
+        mockLoad(
+                CUSTOMER_ID,
+                buildMessageLogEntries(
+                        "2025-03-30T00:59:59Z", "2025-03-30T01:00:00Z", "2025-03-30T01:30:00Z"));
+
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(AnalyticsDimension.PERIOD),
+                        List.of(AnalyticsMeasure.COUNT),
+                        at(2025, 3, 30, 0, 0),
+                        at(2025, 3, 31, 0, 0),
+                        "hour");
+
+        // 02:00 to 03:00 is skipped, 01:59:59 is followed by 03:00:00
+        assertEquals(2, rows.size());
+        assertEquals(1L, countOf(rows, at(2025, 3, 30, 1, 0)));
+        assertEquals(2L, countOf(rows, at(2025, 3, 30, 3, 0)));
+    }
+
+    @Test
+    void testQuery_periodsAtBoundaries() {
+        // Midnight in Berlin, one millisecond before, the end of the range and after it
+        mockLoad(
+                CUSTOMER_ID,
+                buildMessageLogEntries(
+                        "2025-05-31T22:00:00Z",
+                        "2025-06-01T21:59:59.999Z",
+                        "2025-06-01T22:00:00Z",
+                        "2025-06-02T21:59:59.999Z",
+                        "2025-06-02T22:00:00Z"));
+
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(AnalyticsDimension.PERIOD),
+                        List.of(AnalyticsMeasure.COUNT),
+                        at(2025, 6, 1, 0, 0),
+                        at(2025, 6, 3, 0, 0).minusNanos(1_000_000),
+                        "day");
+
+        assertEquals(2, rows.size());
+        assertEquals(2L, countOf(rows, at(2025, 6, 1, 0, 0)));
+        assertEquals(2L, countOf(rows, at(2025, 6, 2, 0, 0)));
+    }
+
+    @Test
+    void testQuery_percentiles() {
+        List<MessageLogEntry> processingTimes = new ArrayList<>();
+        int[] seconds = {10, 2, 1, 3};
+        for (int i = 0; i < seconds.length; i++) {
+            processingTimes.add(
+                    MessageLogEntry.builder()
+                            .id(i + 1L)
+                            .customerId(CUSTOMER_ID)
+                            .userId(USER_ID)
+                            .category("Support")
+                            .receivedAt(FROM.plusHours(i))
+                            .processingTimeInSeconds(seconds[i])
+                            .build());
+        }
+        mockLoad(CUSTOMER_ID, processingTimes);
+
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(),
+                        List.of(
+                                AnalyticsMeasure.P50_PROCESSING_TIME,
+                                AnalyticsMeasure.P95_PROCESSING_TIME),
+                        FROM,
+                        TO,
+                        "day");
+
+        // Interpolated between the closest values like PERCENTILE_CONT
+        assertEquals(2.5, rows.get(0).measures().get(AnalyticsMeasure.P50_PROCESSING_TIME));
+        assertEquals(8.95, rows.get(0).measures().get(AnalyticsMeasure.P95_PROCESSING_TIME));
+    }
+
+    @Test
+    void testQuery_leavesUnsupportedQueriesToDatabase() {
+        assertNull(
+                messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(AnalyticsDimension.CATEGORY),
+                        List.of(AnalyticsMeasure.AVG_RATING),
+                        FROM,
+                        TO,
+                        "day"));
+        assertNull(query(List.of(AnalyticsDimension.CATEGORY), WINDOW_START.minusDays(1), TO));
+        verifyNoInteractions(jdbcTemplate);
+
+        mockLoad(CUSTOMER_ID, entries);
+        // More hours than groups the columns sum up in one query
+        assertNull(
+                messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(
+                                AnalyticsDimension.CATEGORY,
+                                AnalyticsDimension.LANGUAGE,
+                                AnalyticsDimension.PERIOD),
+                        List.of(AnalyticsMeasure.COUNT),
+                        FROM,
+                        TO,
+                        "hour"));
+    }
+
+    @Test
+    void testQuery_tooManyRowsToLoad() {
+        messageLogColumnStore = buildMessageLogColumnStore(1_000_000, entries.size() - 1);
+        mockLoad(CUSTOMER_ID, entries);
+
+        assertNull(query(List.of(AnalyticsDimension.CATEGORY), FROM, TO));
+        assertNull(query(List.of(AnalyticsDimension.CATEGORY), FROM, TO));
+        // Not loaded again until the refresh interval has passed
+        verifyLoads(CUSTOMER_ID, 1);
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_appendsToLoadedColumns() {
+        mockLoad(CUSTOMER_ID, entries);
+        query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+        List<MessageLogEntry> created = buildMessageLogEntries(CUSTOMER_ID, 310).subList(300, 310);
+        List<MessageLogEntry> otherCustomer = buildMessageLogEntries(OTHER_CUSTOMER_ID, 5);
+
+        messageLogColumnStore.onMessageLogEntriesCreated(createdEvent(created));
+        messageLogColumnStore.onMessageLogEntriesCreated(createdEvent(otherCustomer));
+
+        List<MessageLogEntry> all = new ArrayList<>(entries);
+        all.addAll(created);
+        assertEquals(
+                sqlResult(all, null, List.of(AnalyticsDimension.CATEGORY), MEASURES),
+                new HashSet<>(query(List.of(AnalyticsDimension.CATEGORY), FROM, TO)));
+        verifyLoads(CUSTOMER_ID, 1);
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_mergesEntriesCommittedWhileLoading() {
+        List<MessageLogEntry> created = buildMessageLogEntries(CUSTOMER_ID, 302).subList(299, 302);
+        // The first entry was committed before the load read it, the others after
+        mockLoad(
+                CUSTOMER_ID,
+                entries,
+                () ->
+                        messageLogColumnStore.onMessageLogEntriesCreated(createdEvent(created)));
+
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+
+        List<MessageLogEntry> all = new ArrayList<>(entries);
+        all.addAll(created.subList(1, created.size()));
+        assertEquals(
+                sqlResult(all, null, List.of(AnalyticsDimension.CATEGORY), MEASURES),
+                new HashSet<>(rows));
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_leavesCustomerOverMaxRowsToDatabase() {
+        messageLogColumnStore = buildMessageLogColumnStore(1_000_000, entries.size() + 1);
+        mockLoad(CUSTOMER_ID, entries);
+        query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+
+        messageLogColumnStore.onMessageLogEntriesCreated(
+                createdEvent(buildMessageLogEntries(CUSTOMER_ID, 302).subList(300, 302)));
+
+        assertNull(query(List.of(AnalyticsDimension.CATEGORY), FROM, TO));
+        verifyLoads(CUSTOMER_ID, 1);
+    }
+
+    @Test
+    void testQuery_dropsLeastRecentlyQueriedCustomersOverMaxRows() {
+        List<MessageLogEntry> otherEntries = buildMessageLogEntries(OTHER_CUSTOMER_ID, 100);
+        messageLogColumnStore =
+                buildMessageLogColumnStore(entries.size() + otherEntries.size() - 1, 1_000_000);
+        mockLoad(CUSTOMER_ID, entries);
+        mockLoad(OTHER_CUSTOMER_ID, otherEntries);
+
+        query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+        messageLogColumnStore.query(
+                OTHER_CUSTOMER_ID,
+                null,
+                List.of(AnalyticsDimension.CATEGORY),
+                MEASURES,
+                FROM,
+                TO,
+                "day");
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+
+        assertEquals(
+                sqlResult(entries, null, List.of(AnalyticsDimension.CATEGORY), MEASURES),
+                new HashSet<>(rows));
+        verifyLoads(CUSTOMER_ID, 2);
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_doesNotCountAsQuery() {
+        List<MessageLogEntry> otherEntries = buildMessageLogEntries(OTHER_CUSTOMER_ID, 100);
+        messageLogColumnStore =
+                buildMessageLogColumnStore(entries.size() + otherEntries.size() + 1, 1_000_000);
+        mockLoad(CUSTOMER_ID, entries);
+        mockLoad(OTHER_CUSTOMER_ID, otherEntries);
+        query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+        messageLogColumnStore.query(
+                OTHER_CUSTOMER_ID,
+                null,
+                List.of(AnalyticsDimension.CATEGORY),
+                MEASURES,
+                FROM,
+                TO,
+                "day");
+
+        // Over the limit, the customer queried least recently is dropped although it ingested last
+        messageLogColumnStore.onMessageLogEntriesCreated(
+                createdEvent(buildMessageLogEntries(CUSTOMER_ID, 302).subList(300, 302)));
+        messageLogColumnStore.query(
+                OTHER_CUSTOMER_ID,
+                null,
+                List.of(AnalyticsDimension.CATEGORY),
+                MEASURES,
+                FROM,
+                TO,
+                "day");
+        query(List.of(AnalyticsDimension.CATEGORY), FROM, TO);
+
+        verifyLoads(OTHER_CUSTOMER_ID, 1);
+        verifyLoads(CUSTOMER_ID, 2);
+    }
+
+    @Test
+    void testCompact_dropsRowsOutOfWindow() {
+        List<MessageLogEntry> otherEntries = buildMessageLogEntries(OTHER_CUSTOMER_ID, 100);
+        // Rows before the window interleaved with rows in it
+        List<MessageLogEntry> mixed = new ArrayList<>();
+        for (MessageLogEntry entry : entries) {
+            mixed.add(entry);
+            if (entry.getId() % 3 == 0) {
+                mixed.add(
+                        MessageLogEntry.builder()
+                                .id(-entry.getId())
+                                .customerId(CUSTOMER_ID)
+                                .userId(entry.getUserId())
+                                .category(entry.getCategory())
+                                .replied(!entry.isReplied())
+                                .receivedAt(WINDOW_START.minusDays(entry.getId()))
+                                .processingTimeInSeconds(entry.getProcessingTimeInSeconds() + 7)
+                                .build());
+            }
+        }
+        messageLogColumnStore =
+                buildMessageLogColumnStore(entries.size() + otherEntries.size(), 1_000_000);
+        mockLoad(CUSTOMER_ID, mixed);
+        mockLoad(OTHER_CUSTOMER_ID, otherEntries);
+        List<AnalyticsDimension> dimensions =
+                List.of(AnalyticsDimension.REPLIED, AnalyticsDimension.CATEGORY);
+        Set<MessageLogResource.AnalyticsQueryRow> expected =
+                sqlResult(entries, null, dimensions, MEASURES);
+        assertEquals(expected, new HashSet<>(query(dimensions, FROM, TO)));
+
+        messageLogColumnStore.compact();
+
+        // The replied bits moved along with the rows that were kept
+        assertEquals(expected, new HashSet<>(query(dimensions, FROM, TO)));
+        // The rows dropped made room for another customer
+        messageLogColumnStore.query(
+                OTHER_CUSTOMER_ID, null, dimensions, MEASURES, FROM, TO, "day");
+        assertEquals(expected, new HashSet<>(query(dimensions, FROM, TO)));
+        verifyLoads(CUSTOMER_ID, 1);
+    }
+
+    private MessageLogColumnStore buildMessageLogColumnStore(long maxRows, int maxRowsPerCustomer) {
+        return new MessageLogColumnStore(
+                true,
+                Duration.between(WINDOW_START.toInstant(), Instant.now()),
+                10,
+                maxRows,
+                maxRowsPerCustomer,
+                Duration.ofHours(1),
+                jdbcTemplate);
+    }
+
+    private List<MessageLogResource.AnalyticsQueryRow> query(
+            List<AnalyticsDimension> dimensions, ZonedDateTime from, ZonedDateTime to) {
+        return messageLogColumnStore.query(
+                CUSTOMER_ID, null, dimensions, MEASURES, from, to, "day");
+    }
+
+    private List<MessageLogResource.AnalyticsQueryRow> assertMatchesSql(
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String truncUnit) {
+        return assertMatchesSql(null, dimensions, measures, from, to, truncUnit);
+    }
+
+    private List<MessageLogResource.AnalyticsQueryRow> assertMatchesSql(
+            Long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String truncUnit) {
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                messageLogColumnStore.query(
+                        CUSTOMER_ID, userId, dimensions, measures, from, to, truncUnit);
+
+        assertNotNull(rows, dimensions + " by " + truncUnit);
+        assertEquals(
+                sqlResult(entries, userId, dimensions, measures, from, to, truncUnit),
+                new HashSet<>(rows),
+                dimensions + " by " + truncUnit);
+        assertEquals(rows.size(), new HashSet<>(rows).size());
+        return rows;
+    }
+
+    private static Set<MessageLogResource.AnalyticsQueryRow> sqlResult(
+            List<MessageLogEntry> entries,
+            Long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures) {
+        return sqlResult(entries, userId, dimensions, measures, FROM, TO, "day");
+    }
+
+    /**
+     * What the SQL of {@link AnalyticsDimension} and {@link AnalyticsMeasure} returns for the
+     * entries, truncating periods in Berlin time.
+     */
+    private static Set<MessageLogResource.AnalyticsQueryRow> sqlResult(
+            List<MessageLogEntry> entries,
+            Long userId,
+            List<AnalyticsDimension> dimensions,
+            List<AnalyticsMeasure> measures,
+            ZonedDateTime from,
+            ZonedDateTime to,
+            String truncUnit) {
+        Map<Map<AnalyticsDimension, Object>, List<MessageLogEntry>> groups = new LinkedHashMap<>();
+        for (MessageLogEntry entry : entries) {
+            if (entry.getCustomerId() != CUSTOMER_ID
+                    || (userId != null && !entry.getUserId().equals(userId))
+                    || entry.getReceivedAt().isBefore(from)
+                    || entry.getReceivedAt().isAfter(to)) {
+                continue;
+            }
+            Map<AnalyticsDimension, Object> dimensionValues =
+                    new EnumMap<>(AnalyticsDimension.class);
+            for (AnalyticsDimension dimension : dimensions) {
+                dimensionValues.put(
+                        dimension,
+                        switch (dimension) {
+                            case CATEGORY -> entry.getCategory();
+                            case LANGUAGE -> entry.getLanguage();
+                            case LLM_USED -> entry.getLlmUsed();
+                            case REPLIED -> entry.isReplied();
+                            case USER -> entry.getUserId();
+                            case PERIOD -> dateTrunc(truncUnit, entry.getReceivedAt());
+                        });
+            }
+            groups.computeIfAbsent(dimensionValues, k -> new ArrayList<>()).add(entry);
+        }
+
+        Set<MessageLogResource.AnalyticsQueryRow> rows = new HashSet<>();
+        for (Map.Entry<Map<AnalyticsDimension, Object>, List<MessageLogEntry>> group :
+                groups.entrySet()) {
+            Map<AnalyticsMeasure, Number> measureValues = new EnumMap<>(AnalyticsMeasure.class);
+            for (AnalyticsMeasure measure : measures) {
+                measureValues.put(
+                        measure,
+                        MessageLogQueryEngine.toMeasureValue(
+                                measure, measureOf(measure, group.getValue())));
+            }
+            rows.add(new MessageLogResource.AnalyticsQueryRow(group.getKey(), measureValues));
+        }
+        return rows;
+    }
+
+    private static Number measureOf(AnalyticsMeasure measure, List<MessageLogEntry> group) {
+        long tokens = 0;
+        long processingTime = 0;
+        long replied = 0;
+        for (MessageLogEntry entry : group) {
+            tokens +=
+                    valueOf(entry.getCategorisationTotalTokens()) + valueOf(entry.getTotalTokens());
+            processingTime += entry.getProcessingTimeInSeconds();
+            replied += entry.isReplied() ? 1 : 0;
+        }
+        return switch (measure) {
+            case COUNT -> group.size();
+            case TOTAL_TOKENS -> tokens;
+            case AVG_PROCESSING_TIME -> (double) processingTime / group.size();
+            case P50_PROCESSING_TIME -> percentileCont(group, 0.5);
+            case P95_PROCESSING_TIME -> percentileCont(group, 0.95);
+            case REPLY_RATE -> (double) replied / group.size();
+            case AVG_RATING -> null;
+        };
+    }
+
+    // DATE_TRUNC(unit, received_at AT TIME ZONE 'Europe/Berlin'), read back as Berlin time
+    private static ZonedDateTime dateTrunc(String truncUnit, ZonedDateTime receivedAt) {
+        LocalDateTime local = receivedAt.withZoneSameInstant(BERLIN_ZONE).toLocalDateTime();
+        LocalDateTime truncated =
+                switch (truncUnit) {
+                    case "hour" -> local.truncatedTo(ChronoUnit.HOURS);
+                    case "day" -> local.truncatedTo(ChronoUnit.DAYS);
+                    case "week" ->
+                            local.truncatedTo(ChronoUnit.DAYS)
+                                    .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                    case "month" -> local.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+                    case "year" -> local.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+                    default -> throw new IllegalArgumentException(truncUnit);
+                };
+        return truncated.atZone(BERLIN_ZONE);
+    }
+
+    private static double percentileCont(List<MessageLogEntry> group, double fraction) {
+        int[] sorted =
+                group.stream()
+                        .mapToInt(MessageLogEntry::getProcessingTimeInSeconds)
+                        .sorted()
+                        .toArray();
+        double position = fraction * (sorted.length - 1);
+        int lower = (int) position;
+        return lower + 1 < sorted.length
+                ? sorted[lower] + (sorted[lower + 1] - sorted[lower]) * (position - lower)
+                : sorted[lower];
+    }
+
+    private static Number countOf(
+            List<MessageLogResource.AnalyticsQueryRow> rows, ZonedDateTime period) {
+        return rows.stream()
+                .filter(row -> period.equals(row.dimensions().get(AnalyticsDimension.PERIOD)))
+                .map(row -> row.measures().get(AnalyticsMeasure.COUNT))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void mockLoad(long customerId, List<MessageLogEntry> messageLogEntries) {
+        mockLoad(customerId, messageLogEntries, () -> {});
+    }
+
+    /** Answers the load of the customer's columns, running {@code whileLoading} half way. */
+    private void mockLoad(
+            long customerId, List<MessageLogEntry> messageLogEntries, Runnable whileLoading) {
+        List<ResultSet> resultSets = new ArrayList<>();
+        for (MessageLogEntry messageLogEntry : messageLogEntries) {
+            resultSets.add(resultSetOf(messageLogEntry));
+        }
+        doAnswer(
+                        invocation -> {
+                            RowCallbackHandler handler =
+                                    (RowCallbackHandler) invocation.getArgument(1);
+                            for (int i = 0; i < resultSets.size(); i++) {
+                                if (i == resultSets.size() / 2) {
+                                    whileLoading.run();
+                                }
+                                handler.processRow(resultSets.get(i));
+                            }
+                            return null;
+                        })
+                .when(jdbcTemplate)
+                .query(anyString(), any(RowCallbackHandler.class), eq(customerId), any(), any());
+    }
+
+    private void verifyLoads(long customerId, int times) {
+        verify(jdbcTemplate, times(times))
+                .query(anyString(), any(RowCallbackHandler.class), eq(customerId), any(), any());
+    }
+
+    private static ResultSet resultSetOf(MessageLogEntry messageLogEntry) {
+        try {
+            ResultSet resultSet = mock(ResultSet.class);
+            when(resultSet.getLong("id")).thenReturn(messageLogEntry.getId());
+            when(resultSet.getTimestamp("received_at"))
+                    .thenReturn(Timestamp.from(messageLogEntry.getReceivedAt().toInstant()));
+            when(resultSet.getLong("user_id")).thenReturn(messageLogEntry.getUserId());
+            when(resultSet.getString("category")).thenReturn(messageLogEntry.getCategory());
+            when(resultSet.getString("language")).thenReturn(messageLogEntry.getLanguage());
+            when(resultSet.getString("llm_used")).thenReturn(messageLogEntry.getLlmUsed());
+            when(resultSet.getBoolean("replied")).thenReturn(messageLogEntry.isReplied());
+            when(resultSet.getInt("processing_time_in_seconds"))
+                    .thenReturn(messageLogEntry.getProcessingTimeInSeconds());
+            // Like JDBC, null is read as 0
+            when(resultSet.getLong("categorisation_total_tokens"))
+                    .thenReturn(valueOf(messageLogEntry.getCategorisationTotalTokens()));
+            when(resultSet.getLong("total_tokens"))
+                    .thenReturn(valueOf(messageLogEntry.getTotalTokens()));
+            return resultSet;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Builds the customer's entries with ids from 1 to {@code count}, spread over the range, and
+     * a few at the boundaries of periods and around the changes of daylight saving time.
+     */
+    private static List<MessageLogEntry> buildMessageLogEntries(long customerId, int count) {
+        List<ZonedDateTime> receivedAts =
+                new ArrayList<>(
+                        List.of(
+                                FROM,
+                                TO,
+                                at(2025, 6, 2, 0, 0).minusNanos(1_000_000),
+                                at(2025, 6, 2, 0, 0),
+                                at(2025, 7, 1, 0, 0),
+                                Instant.parse("2025-03-30T00:30:00Z").atZone(BERLIN_ZONE),
+                                Instant.parse("2025-03-30T01:30:00Z").atZone(BERLIN_ZONE),
+                                Instant.parse("2025-10-26T00:30:00Z").atZone(BERLIN_ZONE),
+                                Instant.parse("2025-10-26T01:30:00Z").atZone(BERLIN_ZONE)));
+        String[] categories = {"Support", "Billing", "Sales", null};
+        String[] languages = {"de", "en", null};
+        List<MessageLogEntry> messageLogEntries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ZonedDateTime receivedAt =
+                    i < receivedAts.size()
+                            ? receivedAts.get(i)
+                            : FROM.plusMinutes(i * 1200L + 17);
+            messageLogEntries.add(
+                    MessageLogEntry.builder()
+                            .id(i + 1L)
+                            .customerId(customerId)
+                            .userId(i % 7 < 4 ? USER_ID : OTHER_USER_ID)
+                            .category(categories[i % categories.length])
+                            .language(languages[i % languages.length])
+                            .llmUsed(i % 5 == 0 ? null : (i % 2 == 0 ? "gpt-4o" : "gpt-4o-mini"))
+                            .replied(i % 3 != 1)
+                            .receivedAt(receivedAt)
+                            .processingTimeInSeconds(i * 37 % 50)
+                            .categorisationTotalTokens(i % 6 == 0 ? null : i * 10)
+                            .totalTokens(i % 4 == 0 ? null : 1000 + i)
+                            .build());
+        }
+        return messageLogEntries;
+    }
+
+    private static List<MessageLogEntry> buildMessageLogEntries(String... receivedAts) {
+        List<MessageLogEntry> messageLogEntries = new ArrayList<>();
+        for (String receivedAt : receivedAts) {
+            messageLogEntries.add(
+                    MessageLogEntry.builder()
+                            .id(messageLogEntries.size() + 1L)
+                            .customerId(CUSTOMER_ID)
+                            .userId(USER_ID)
+                            .receivedAt(Instant.parse(receivedAt).atZone(BERLIN_ZONE))
+                            .build());
+        }
+        return messageLogEntries;
+    }
+
+    private static ZonedDateTime at(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(BERLIN_ZONE);
+    }
+
+    private static long valueOf(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static MessageLogEntriesCreatedEvent createdEvent(
+            List<MessageLogEntry> messageLogEntries) {
+        return new MessageLogEntriesCreatedEvent(
+                messageLogEntries, Collections.nCopies(messageLogEntries.size(), null));
+    }
+}
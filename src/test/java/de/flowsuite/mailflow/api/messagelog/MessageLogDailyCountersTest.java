@@ -0,0 +1,107 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogDailyCountersTest {
+
+    private static final long CUSTOMER_ID = 1L;
+    private static final long USER_ID = 2L;
+    private static final long OTHER_USER_ID = 3L;
+
+    @Mock private MessageLogRollupRepository messageLogRollupRepository;
+
+    private MessageLogDailyCounters messageLogDailyCounters;
+
+    @BeforeEach
+    void setup() {
+        messageLogDailyCounters = new MessageLogDailyCounters(messageLogRollupRepository);
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_countsToday() {
+        messageLogDailyCounters.onMessageLogEntriesCreated(
+                createdEvent(ZonedDateTime.now(BERLIN_ZONE), ZonedDateTime.now(BERLIN_ZONE)));
+        // Reported late, so it does not count
+        messageLogDailyCounters.onMessageLogEntriesCreated(
+                createdEvent(ZonedDateTime.now(BERLIN_ZONE).minusDays(1)));
+
+        assertEquals(2, messageLogDailyCounters.getCountForCustomer(CUSTOMER_ID));
+        assertEquals(2, messageLogDailyCounters.getCountForUser(USER_ID));
+        assertEquals(0, messageLogDailyCounters.getCountForUser(OTHER_USER_ID));
+    }
+
+    @Test
+    void testRebuild_replacesCounters() {
+        when(messageLogRollupRepository.sumMessageCountsSince(any()))
+                .thenReturn(rollups(new Object[] {CUSTOMER_ID, USER_ID, 5L}));
+        messageLogDailyCounters.onMessageLogEntriesCreated(
+                createdEvent(ZonedDateTime.now(BERLIN_ZONE)));
+
+        messageLogDailyCounters.rebuild();
+
+        // The entry counted before the rebuild is part of the rollups
+        assertEquals(5, messageLogDailyCounters.getCountForCustomer(CUSTOMER_ID));
+        assertEquals(5, messageLogDailyCounters.getCountForUser(USER_ID));
+    }
+
+    @Test
+    void testRebuild_keepsEntriesCountedWhileReadingRollups() {
+        when(messageLogRollupRepository.sumMessageCountsSince(any()))
+                .thenAnswer(
+                        invocation -> {
+                            // Committed after the rollups were read
+                            messageLogDailyCounters.onMessageLogEntriesCreated(
+                                    createdEvent(ZonedDateTime.now(BERLIN_ZONE)));
+                            return rollups(
+                                    new Object[] {CUSTOMER_ID, USER_ID, 5L},
+                                    new Object[] {CUSTOMER_ID, OTHER_USER_ID, 1L});
+                        });
+
+        messageLogDailyCounters.rebuild();
+
+        assertEquals(7, messageLogDailyCounters.getCountForCustomer(CUSTOMER_ID));
+        assertEquals(6, messageLogDailyCounters.getCountForUser(USER_ID));
+        assertEquals(1, messageLogDailyCounters.getCountForUser(OTHER_USER_ID));
+
+        // The journal ends with the rebuild
+        messageLogDailyCounters.onMessageLogEntriesCreated(
+                createdEvent(ZonedDateTime.now(BERLIN_ZONE)));
+        assertEquals(7, messageLogDailyCounters.getCountForUser(USER_ID));
+    }
+
+    private static List<Object[]> rollups(Object[]... rows) {
+        return List.of(rows);
+    }
+
+    private static MessageLogEntriesCreatedEvent createdEvent(ZonedDateTime... receivedAt) {
+        return new MessageLogEntriesCreatedEvent(
+                Arrays.stream(receivedAt)
+                        .map(
+                                at ->
+                                        MessageLogEntry.builder()
+                                                .customerId(CUSTOMER_ID)
+                                                .userId(USER_ID)
+                                                .receivedAt(at)
+                                                .build())
+                        .toList(),
+                Collections.nCopies(receivedAt.length, null));
+    }
+}
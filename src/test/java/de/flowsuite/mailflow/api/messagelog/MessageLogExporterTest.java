@@ -0,0 +1,144 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogExporterTest {
+
+    private static final long CUSTOMER_ID = 3L;
+    private static final ZonedDateTime RECEIVED_AT =
+            ZonedDateTime.of(2025, 5, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    @Mock private MessageLogRepository messageLogRepository;
+
+    @Mock private EntityManager entityManager;
+
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private MessageLogExporter messageLogExporter;
+
+    @BeforeEach
+    void setup() {
+        messageLogExporter =
+                new MessageLogExporter(
+                        messageLogRepository, entityManager, objectMapper, transactionManager);
+    }
+
+    @Test
+    void testExportCsv_header() {
+        String csv = exportCsv("Subject");
+
+        assertTrue(
+                csv.startsWith(
+                        "id,user_id,customer_id,replied,function_call,category,language,"
+                                + "from_email_address,subject,received_at,processed_at,"
+                                + "processing_time_in_seconds,categorisation_llm_used,"
+                                + "categorisation_input_tokens,categorisation_output_tokens,"
+                                + "categorisation_total_tokens,llm_used,input_tokens,"
+                                + "output_tokens,total_tokens\n"));
+    }
+
+    @Test
+    void testExportCsv_plainRow() {
+        assertEquals(
+                "1,2,3,true,false,Support,de,,Subject,2025-05-01T10:00Z,,5,,,,,,,,\n",
+                csvRows(exportCsv("Subject")));
+    }
+
+    @Test
+    void testExportCsv_escapesFormulas() {
+        assertEquals(
+                "1,2,3,true,false,Support,de,,'=1+1,2025-05-01T10:00Z,,5,,,,,,,,\n",
+                csvRows(exportCsv("=1+1")));
+        assertTrue(csvRows(exportCsv("+49 170")).contains(",'+49 170,"));
+        assertTrue(csvRows(exportCsv("-2+3")).contains(",'-2+3,"));
+        assertTrue(csvRows(exportCsv("@SUM(A1:A2)")).contains(",'@SUM(A1:A2),"));
+        assertTrue(csvRows(exportCsv("\t=cmd")).contains(",'\t=cmd,"));
+        assertTrue(csvRows(exportCsv("Re: =1+1")).contains(",Re: =1+1,"));
+    }
+
+    @Test
+    void testExportCsv_quotesSeparatorsQuotesAndNewlines() {
+        assertTrue(
+                csvRows(exportCsv("=HYPERLINK(\"http://x\",\"y\")"))
+                        .contains(",\"'=HYPERLINK(\"\"http://x\"\",\"\"y\"\")\","));
+        assertTrue(csvRows(exportCsv("Hello, world")).contains(",\"Hello, world\","));
+        assertTrue(csvRows(exportCsv("Say \"hi\"")).contains(",\"Say \"\"hi\"\"\","));
+        assertTrue(csvRows(exportCsv("Line 1\nLine 2")).contains(",\"Line 1\nLine 2\","));
+        assertTrue(csvRows(exportCsv("Line 1\r\nLine 2")).contains(",\"Line 1\r\nLine 2\","));
+    }
+
+    @Test
+    void testExportNdjson() throws Exception {
+        String ndjson =
+                export(
+                        MessageLogExportFormat.NDJSON,
+                        List.of(
+                                buildMessageLogEntry(1L, "=1+1"),
+                                buildMessageLogEntry(2L, "A\nB")));
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(ndjson.endsWith("\n"));
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(1L, first.get("id").asLong());
+        assertEquals("=1+1", first.get("subject").asText());
+        assertEquals("A\nB", objectMapper.readTree(lines[1]).get("subject").asText());
+        verify(entityManager, times(2)).detach(any(MessageLogEntry.class));
+    }
+
+    private String exportCsv(String subject) {
+        return export(MessageLogExportFormat.CSV, List.of(buildMessageLogEntry(1L, subject)));
+    }
+
+    private String export(MessageLogExportFormat format, List<MessageLogEntry> messageLogEntries) {
+        when(messageLogRepository.streamForExport(CUSTOMER_ID, null, null, null))
+                .thenReturn(messageLogEntries.stream());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        messageLogExporter.export(CUSTOMER_ID, null, null, null, format, false, outputStream);
+
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String csvRows(String csv) {
+        return csv.substring(csv.indexOf('\n') + 1);
+    }
+
+    private static MessageLogEntry buildMessageLogEntry(long id, String subject) {
+        return MessageLogEntry.builder()
+                .id(id)
+                .userId(2L)
+                .customerId(CUSTOMER_ID)
+                .replied(true)
+                .functionCall(false)
+                .category("Support")
+                .language("de")
+                .subject(subject)
+                .receivedAt(RECEIVED_AT)
+                .processingTimeInSeconds(5)
+                .build();
+    }
+}
@@ -0,0 +1,155 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogFeedTest {
+
+    private static final int MAX_SUBSCRIBERS = 2;
+    private static final long CUSTOMER_ID = 1L;
+    private static final long USER_ID = 2L;
+
+    @Mock private MessageLogDailyCounters messageLogDailyCounters;
+
+    private MessageLogFeed messageLogFeed;
+
+    @BeforeEach
+    void setup() {
+        messageLogFeed =
+                new MessageLogFeed(
+                        10, MAX_SUBSCRIBERS, 2, Duration.ofMinutes(1), messageLogDailyCounters);
+        messageLogFeed.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageLogFeed.stop();
+    }
+
+    @Test
+    void testSubscribe_limitsSubscribers() {
+        assertNotNull(messageLogFeed.subscribe(CUSTOMER_ID, null));
+        assertNotNull(messageLogFeed.subscribe(CUSTOMER_ID, USER_ID));
+
+        assertNull(messageLogFeed.subscribe(CUSTOMER_ID, null));
+    }
+
+    @Test
+    void testSubscribe_limitsConcurrentSubscribers() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SseEmitter>> subscriptions = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                subscriptions.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    return messageLogFeed.subscribe(CUSTOMER_ID, null);
+                                }));
+            }
+            start.countDown();
+
+            int subscribed = 0;
+            for (Future<SseEmitter> subscription : subscriptions) {
+                if (subscription.get() != null) {
+                    subscribed++;
+                }
+            }
+            assertEquals(MAX_SUBSCRIBERS, subscribed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSubscribe_stopped() {
+        messageLogFeed.stop();
+
+        assertNull(messageLogFeed.subscribe(CUSTOMER_ID, null));
+    }
+
+    @Test
+    void testSendHeartbeats_removesDisconnectedSubscribers() throws InterruptedException {
+        SseEmitter disconnected = messageLogFeed.subscribe(CUSTOMER_ID, null);
+        assertNotNull(messageLogFeed.subscribe(CUSTOMER_ID, null));
+        disconnected.complete();
+
+        messageLogFeed.sendHeartbeats();
+
+        assertSubscriberSlotFreed();
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_removesDisconnectedSubscribers()
+            throws InterruptedException {
+        SseEmitter disconnected = messageLogFeed.subscribe(CUSTOMER_ID, USER_ID);
+        assertNotNull(messageLogFeed.subscribe(CUSTOMER_ID + 1, null));
+        disconnected.complete();
+
+        messageLogFeed.onMessageLogEntriesCreated(createdEvent(List.of(buildMessageLogEntry())));
+
+        assertSubscriberSlotFreed();
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_keepsSubscribersOfOtherCustomers()
+            throws InterruptedException {
+        SseEmitter otherCustomer = messageLogFeed.subscribe(CUSTOMER_ID + 1, null);
+        assertNotNull(messageLogFeed.subscribe(CUSTOMER_ID + 1, null));
+        otherCustomer.complete();
+
+        messageLogFeed.onMessageLogEntriesCreated(createdEvent(List.of(buildMessageLogEntry())));
+        Thread.sleep(200);
+
+        // Nothing was sent to the completed emitter, so its disconnect was not noticed yet
+        assertNull(messageLogFeed.subscribe(CUSTOMER_ID, null));
+    }
+
+    /** Waits until the fan-out and sender threads have removed one subscriber. */
+    private void assertSubscriberSlotFreed() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (messageLogFeed.subscribe(CUSTOMER_ID, null) == null) {
+            assertTrue(System.nanoTime() < deadline, "Disconnected subscriber was not removed");
+            Thread.sleep(10);
+        }
+        assertNull(messageLogFeed.subscribe(CUSTOMER_ID, null));
+    }
+
+    private static MessageLogEntry buildMessageLogEntry() {
+        return MessageLogEntry.builder()
+                .id(1L)
+                .userId(USER_ID)
+                .customerId(CUSTOMER_ID)
+                .category("Support")
+                .receivedAt(ZonedDateTime.now())
+                .build();
+    }
+
+    private static MessageLogEntriesCreatedEvent createdEvent(
+            List<MessageLogEntry> messageLogEntries) {
+        return new MessageLogEntriesCreatedEvent(
+                messageLogEntries, Collections.nCopies(messageLogEntries.size(), null));
+    }
+}
@@ -0,0 +1,138 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogFingerprintsTest {
+
+    private static final long CUSTOMER_ID = 1L;
+    private static final long USER_ID = 2L;
+    private static final String FINGERPRINT = "0123456789abcdef".repeat(4);
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private MessageLogFingerprints messageLogFingerprints;
+
+    @BeforeEach
+    void setup() {
+        messageLogFingerprints =
+                new MessageLogFingerprints(10, 0.01, Duration.ZERO, jdbcTemplate);
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_recordsFingerprintOnCommit() {
+        MessageLogEntry messageLogEntry = buildMessageLogEntry();
+        MessageLogEntry other = buildMessageLogEntry();
+
+        messageLogFingerprints.recordOnCommit(messageLogEntry, FINGERPRINT);
+        verifyNoInteractions(jdbcTemplate);
+        // The create path only gets its id with the insert
+        messageLogEntry.setId(5L);
+        other.setId(6L);
+        messageLogFingerprints.onMessageLogEntriesCreated(
+                createdEvent(List.of(messageLogEntry, other)));
+        messageLogFingerprints.onMessageLogEntriesCreated(createdEvent(List.of(messageLogEntry)));
+
+        verify(jdbcTemplate)
+                .update(
+                        contains("INSERT INTO message_log_fingerprints"),
+                        eq(CUSTOMER_ID),
+                        eq(USER_ID),
+                        eq(FINGERPRINT),
+                        eq(5L));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testDiscard() {
+        MessageLogEntry messageLogEntry = buildMessageLogEntry();
+        messageLogEntry.setId(5L);
+
+        messageLogFingerprints.recordOnCommit(messageLogEntry, FINGERPRINT);
+        messageLogFingerprints.discard(messageLogEntry);
+        messageLogFingerprints.onMessageLogEntriesCreated(createdEvent(List.of(messageLogEntry)));
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFindProcessed_refreshesWithOverlap() throws SQLException {
+        Instant createdAt = Instant.parse("2025-05-01T10:00:00Z");
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString("fingerprint")).thenReturn(FINGERPRINT);
+        when(resultSet.getTimestamp("created_at")).thenReturn(Timestamp.from(createdAt));
+        when(jdbcTemplate.queryForObject(contains("COUNT(*)"), eq(Integer.class), eq(USER_ID)))
+                .thenReturn(1);
+        doAnswer(
+                        invocation -> {
+                            ((RowCallbackHandler) invocation.getArgument(1)).processRow(resultSet);
+                            return null;
+                        })
+                .when(jdbcTemplate)
+                .query(
+                        contains("created_at >= ?"),
+                        any(RowCallbackHandler.class),
+                        eq(USER_ID),
+                        any(Timestamp.class));
+        when(jdbcTemplate.query(
+                        anyString(), any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenReturn(List.of(FINGERPRINT));
+        String unknown = "f".repeat(64);
+
+        assertEquals(
+                List.of(FINGERPRINT),
+                messageLogFingerprints.findProcessed(USER_ID, List.of(FINGERPRINT, unknown)));
+        messageLogFingerprints.findProcessed(USER_ID, List.of(FINGERPRINT));
+
+        ArgumentCaptor<Timestamp> from = ArgumentCaptor.forClass(Timestamp.class);
+        verify(jdbcTemplate, times(2))
+                .query(
+                        contains("created_at >= ?"),
+                        any(RowCallbackHandler.class),
+                        eq(USER_ID),
+                        from.capture());
+        // Rows committed after the newest row was read are read with the next refresh
+        assertEquals(
+                List.of(new Timestamp(0), Timestamp.from(createdAt.minus(Duration.ofMinutes(1)))),
+                from.getAllValues());
+        // The filter is only built once
+        verify(jdbcTemplate).queryForObject(anyString(), eq(Integer.class), eq(USER_ID));
+    }
+
+    private static MessageLogEntry buildMessageLogEntry() {
+        return MessageLogEntry.builder().userId(USER_ID).customerId(CUSTOMER_ID).build();
+    }
+
+    private static MessageLogEntriesCreatedEvent createdEvent(
+            List<MessageLogEntry> messageLogEntries) {
+        return new MessageLogEntriesCreatedEvent(
+                messageLogEntries, Collections.nCopies(messageLogEntries.size(), null));
+    }
+}
@@ -0,0 +1,116 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogPartitionManagerTest {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private final YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+
+    @Test
+    void testMaintainPartitions_disabled() {
+        new MessageLogPartitionManager(false, 3, 6, false, jdbcTemplate).maintainPartitions();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testMaintainPartitions_createsUpcomingPartitions() {
+        new MessageLogPartitionManager(true, 2, 0, false, jdbcTemplate).maintainPartitions();
+
+        for (int i = 0; i <= 2; i++) {
+            verify(jdbcTemplate)
+                    .queryForObject(
+                            "SELECT create_message_log_partition(?)",
+                            Object.class,
+                            Date.valueOf(currentMonth.plusMonths(i).atDay(1)));
+        }
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void testMaintainPartitions_dropsPartitionsBeforeRetention() {
+        YearMonth expiredMonth = currentMonth.minusMonths(7);
+        String expired = partition(expiredMonth);
+        String retained = partition(currentMonth.minusMonths(6));
+        mockPartitions(expired, retained, "message_log_default");
+
+        new MessageLogPartitionManager(true, 0, 6, false, jdbcTemplate).maintainPartitions();
+
+        OffsetDateTime monthStart = expiredMonth.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        verify(jdbcTemplate)
+                .update(
+                        contains("DELETE FROM response_ratings"),
+                        eq(monthStart),
+                        eq(monthStart.plusMonths(1)));
+        verify(jdbcTemplate)
+                .update(
+                        contains("DELETE FROM message_log_tokens"),
+                        eq(monthStart),
+                        eq(monthStart.plusMonths(1)));
+        verify(jdbcTemplate).execute("ALTER TABLE message_log DETACH PARTITION " + expired);
+        verify(jdbcTemplate).execute("DROP TABLE " + expired);
+        verify(jdbcTemplate, never()).execute(contains(retained));
+        verify(jdbcTemplate, never()).execute(contains("message_log_default"));
+    }
+
+    @Test
+    void testMaintainPartitions_keepsPartitionsUntilArchived() {
+        String archived = partition(currentMonth.minusMonths(8));
+        String unarchived = partition(currentMonth.minusMonths(7));
+        mockPartitions(archived, unarchived);
+        when(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM " + archived + ")", Boolean.class))
+                .thenReturn(false);
+        when(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM " + unarchived + ")", Boolean.class))
+                .thenReturn(true);
+
+        new MessageLogPartitionManager(true, 0, 6, true, jdbcTemplate).maintainPartitions();
+
+        verify(jdbcTemplate).execute("DROP TABLE " + archived);
+        verify(jdbcTemplate, never()).execute(contains(unarchived));
+        verify(jdbcTemplate, times(2))
+                .update(anyString(), any(OffsetDateTime.class), any(OffsetDateTime.class));
+    }
+
+    @Test
+    void testRetainedFrom() {
+        assertNull(new MessageLogPartitionManager(true, 0, 0, false, jdbcTemplate).retainedFrom());
+        assertEquals(
+                currentMonth.minusMonths(6).atDay(1).atStartOfDay(ZoneOffset.UTC),
+                new MessageLogPartitionManager(true, 0, 6, false, jdbcTemplate).retainedFrom());
+    }
+
+    private void mockPartitions(String... partitions) {
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class)))
+                .thenReturn(List.of(partitions));
+    }
+
+    private static String partition(YearMonth month) {
+        return "message_log_p" + PARTITION_SUFFIX.format(month);
+    }
+}
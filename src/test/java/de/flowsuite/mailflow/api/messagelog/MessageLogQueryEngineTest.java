@@ -0,0 +1,397 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogQueryEngineTest {
+
+    private static final long CUSTOMER_ID = 1L;
+    private static final long USER_ID = 2L;
+    private static final ZonedDateTime FROM = ZonedDateTime.of(2025, 5, 1, 0, 0, 0, 0, BERLIN_ZONE);
+    private static final ZonedDateTime TO = FROM.plusMonths(1);
+
+    @Mock private MessageLogColumnStore messageLogColumnStore;
+    @Mock private MessageLogArchive messageLogArchive;
+    @Mock private MessageLogPartitionManager messageLogPartitionManager;
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private MessageLogQueryEngine messageLogQueryEngine;
+    private String sql;
+    private List<Object> args;
+    private RowMapper<?> rowMapper;
+
+    @BeforeEach
+    void setup() {
+        messageLogQueryEngine =
+                new MessageLogQueryEngine(
+                        messageLogColumnStore,
+                        messageLogArchive,
+                        messageLogPartitionManager,
+                        jdbcTemplate);
+        // A mocked list would be an empty answer, the column store answers null if it cannot
+        lenient()
+                .when(
+                        messageLogColumnStore.query(
+                                anyLong(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(null);
+    }
+
+    @Test
+    void testQuery_tooManyDimensions() {
+        assertBadRequest(
+                List.of(
+                        AnalyticsDimension.CATEGORY,
+                        AnalyticsDimension.LANGUAGE,
+                        AnalyticsDimension.USER,
+                        AnalyticsDimension.PERIOD),
+                List.of(AnalyticsMeasure.COUNT));
+    }
+
+    @Test
+    void testQuery_noMeasures() {
+        assertBadRequest(List.of(AnalyticsDimension.CATEGORY), List.of());
+    }
+
+    @Test
+    void testQuery_repeatedDimensions() {
+        assertBadRequest(
+                List.of(AnalyticsDimension.CATEGORY, AnalyticsDimension.CATEGORY),
+                List.of(AnalyticsMeasure.COUNT));
+    }
+
+    @Test
+    void testQuery_repeatedMeasures() {
+        assertBadRequest(
+                List.of(AnalyticsDimension.CATEGORY),
+                List.of(AnalyticsMeasure.COUNT, AnalyticsMeasure.COUNT));
+    }
+
+    @Test
+    void testQuery_fromColumnStore() {
+        List<MessageLogResource.AnalyticsQueryRow> rows =
+                new ArrayList<>(
+                        List.of(
+                                row("Support", 2L),
+                                row(null, 1L),
+                                row("Billing", 3L),
+                                row("Support", 4L)));
+        when(messageLogColumnStore.query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(AnalyticsDimension.CATEGORY),
+                        List.of(AnalyticsMeasure.COUNT),
+                        FROM,
+                        TO,
+                        "day"))
+                .thenReturn(rows);
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(null, List.of(AnalyticsDimension.CATEGORY), List.of(AnalyticsMeasure.COUNT));
+
+        assertEquals(AnalyticsQuerySource.COLUMN_STORE, response.source());
+        // Ordered like the database would, nulls last
+        assertEquals(
+                Arrays.asList("Billing", "Support", "Support", null),
+                response.rows().stream()
+                        .map(row -> row.dimensions().get(AnalyticsDimension.CATEGORY))
+                        .toList());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testQuery_fromRollups() {
+        mockQuery(List.of(row("Support", 2L)));
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(
+                        null,
+                        List.of(AnalyticsDimension.CATEGORY, AnalyticsDimension.PERIOD),
+                        List.of(AnalyticsMeasure.COUNT, AnalyticsMeasure.REPLY_RATE));
+
+        assertEquals(AnalyticsQuerySource.ROLLUPS, response.source());
+        assertEquals(
+                "SELECT r.category,"
+                        + " DATE_TRUNC(?, r.bucket_start AT TIME ZONE 'Europe/Berlin'),"
+                        + " SUM(r.message_count),"
+                        + " SUM(r.replied_count)::float8 / SUM(r.message_count)"
+                        + " FROM message_log_rollups r"
+                        + " WHERE r.customer_id = ? AND r.bucket_start BETWEEN ? AND ?"
+                        + " GROUP BY 1, 2 HAVING COUNT(*) > 0 ORDER BY 1, 2 LIMIT ?",
+                sql);
+        // The unit of PERIOD is bound before the arguments of the WHERE clause
+        assertEquals(
+                List.of(
+                        "day",
+                        CUSTOMER_ID,
+                        FROM.toOffsetDateTime(),
+                        TO.toOffsetDateTime(),
+                        MessageLogQueryEngine.MAX_GROUPS + 1),
+                args);
+    }
+
+    @Test
+    void testQuery_fromMessageLog() {
+        mockQuery(List.of(row("Support", 2L)));
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(
+                        USER_ID,
+                        List.of(AnalyticsDimension.PERIOD, AnalyticsDimension.LANGUAGE),
+                        List.of(AnalyticsMeasure.COUNT));
+
+        // The rollups have no language
+        assertEquals(AnalyticsQuerySource.MESSAGE_LOG, response.source());
+        assertEquals(
+                "SELECT DATE_TRUNC(?, m.received_at AT TIME ZONE 'Europe/Berlin'),"
+                        + " m.language, COUNT(*)"
+                        + " FROM message_log m"
+                        + " WHERE m.user_id = ? AND m.received_at BETWEEN ? AND ?"
+                        + " GROUP BY 1, 2 HAVING COUNT(*) > 0 ORDER BY 1, 2 LIMIT ?",
+                sql);
+        assertEquals(
+                List.of(
+                        "day",
+                        USER_ID,
+                        FROM.toOffsetDateTime(),
+                        TO.toOffsetDateTime(),
+                        MessageLogQueryEngine.MAX_GROUPS + 1),
+                args);
+    }
+
+    @Test
+    void testQuery_fromMessageLogWithRatings() {
+        mockQuery(List.of(row("Support", 2L)));
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(
+                        null,
+                        List.of(AnalyticsDimension.CATEGORY),
+                        List.of(AnalyticsMeasure.COUNT, AnalyticsMeasure.AVG_RATING));
+
+        assertEquals(AnalyticsQuerySource.MESSAGE_LOG, response.source());
+        assertEquals(
+                "SELECT m.category, COUNT(*), AVG(rr.rating)::float8"
+                        + " FROM message_log m"
+                        + " LEFT JOIN response_ratings rr ON rr.message_log_id = m.id"
+                        + " WHERE m.customer_id = ? AND m.received_at BETWEEN ? AND ?"
+                        + " GROUP BY 1 HAVING COUNT(*) > 0 ORDER BY 1 LIMIT ?",
+                sql);
+    }
+
+    @Test
+    void testQuery_fromRollupsBeforeRetention() {
+        when(messageLogArchive.retainedFrom(CUSTOMER_ID)).thenReturn(FROM.plusDays(10));
+        mockQuery(List.of(row("Support", 2L)));
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(null, List.of(AnalyticsDimension.CATEGORY), List.of(AnalyticsMeasure.COUNT));
+
+        // The rollups still count archived entries, the column store does not
+        assertEquals(AnalyticsQuerySource.ROLLUPS, response.source());
+        assertNull(response.cutFrom());
+        assertEquals(FROM.toOffsetDateTime(), args.get(1));
+        verifyNoInteractions(messageLogColumnStore);
+    }
+
+    @Test
+    void testQuery_fromMessageLogCutToRetention() {
+        ZonedDateTime archivedBefore = FROM.plusDays(5);
+        when(messageLogArchive.retainedFrom(CUSTOMER_ID)).thenReturn(archivedBefore);
+        when(messageLogPartitionManager.retainedFrom()).thenReturn(FROM.plusDays(1));
+        mockQuery(List.of(row("Support", 2L)));
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(null, List.of(AnalyticsDimension.LANGUAGE), List.of(AnalyticsMeasure.COUNT));
+
+        assertEquals(AnalyticsQuerySource.MESSAGE_LOG, response.source());
+        assertEquals(archivedBefore, response.cutFrom());
+        assertEquals(
+                List.of(
+                        CUSTOMER_ID,
+                        archivedBefore.toOffsetDateTime(),
+                        TO.toOffsetDateTime(),
+                        MessageLogQueryEngine.MAX_GROUPS + 1),
+                args);
+        verify(messageLogColumnStore)
+                .query(
+                        CUSTOMER_ID,
+                        null,
+                        List.of(AnalyticsDimension.LANGUAGE),
+                        List.of(AnalyticsMeasure.COUNT),
+                        archivedBefore,
+                        TO,
+                        "day");
+    }
+
+    @Test
+    void testQuery_fromMessageLogBeforeRetention() {
+        when(messageLogPartitionManager.retainedFrom()).thenReturn(TO);
+
+        ResponseStatusException exception =
+                assertThrows(
+                        ResponseStatusException.class,
+                        () ->
+                                query(
+                                        null,
+                                        List.of(AnalyticsDimension.LANGUAGE),
+                                        List.of(AnalyticsMeasure.COUNT)));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verifyNoInteractions(messageLogColumnStore, jdbcTemplate);
+    }
+
+    @Test
+    void testQuery_withoutDimensions() {
+        mockQuery(List.of(row(null, 2L)));
+
+        query(null, List.of(), List.of(AnalyticsMeasure.COUNT));
+
+        assertEquals(
+                "SELECT SUM(r.message_count) FROM message_log_rollups r"
+                        + " WHERE r.customer_id = ? AND r.bucket_start BETWEEN ? AND ?"
+                        + " HAVING COUNT(*) > 0 LIMIT ?",
+                sql);
+        assertEquals(
+                List.of(
+                        CUSTOMER_ID,
+                        FROM.toOffsetDateTime(),
+                        TO.toOffsetDateTime(),
+                        MessageLogQueryEngine.MAX_GROUPS + 1),
+                args);
+    }
+
+    @Test
+    void testQuery_mapsRows() throws SQLException {
+        mockQuery(List.of(row("Support", 2L)));
+        query(
+                null,
+                List.of(AnalyticsDimension.PERIOD),
+                List.of(AnalyticsMeasure.COUNT, AnalyticsMeasure.REPLY_RATE));
+        ResultSet resultSet = mock(ResultSet.class);
+        // Periods are truncated in Berlin time and read back as local timestamps
+        when(resultSet.getObject(1)).thenReturn(Timestamp.valueOf(FROM.toLocalDateTime()));
+        when(resultSet.getObject(2)).thenReturn(7L);
+        when(resultSet.getObject(3)).thenReturn(0.6666);
+
+        MessageLogResource.AnalyticsQueryRow row =
+                (MessageLogResource.AnalyticsQueryRow) rowMapper.mapRow(resultSet, 0);
+
+        assertEquals(FROM, row.dimensions().get(AnalyticsDimension.PERIOD));
+        assertEquals(7L, row.measures().get(AnalyticsMeasure.COUNT));
+        assertEquals(0.67, row.measures().get(AnalyticsMeasure.REPLY_RATE));
+    }
+
+    @Test
+    void testQuery_tooManyGroups() {
+        mockQuery(
+                Collections.nCopies(MessageLogQueryEngine.MAX_GROUPS + 1, row("Support", 1L)));
+
+        ResponseStatusException exception =
+                assertThrows(
+                        ResponseStatusException.class,
+                        () ->
+                                query(
+                                        null,
+                                        List.of(AnalyticsDimension.CATEGORY),
+                                        List.of(AnalyticsMeasure.COUNT)));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    @Test
+    void testQuery_maxGroups() {
+        mockQuery(Collections.nCopies(MessageLogQueryEngine.MAX_GROUPS, row("Support", 1L)));
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                query(null, List.of(AnalyticsDimension.CATEGORY), List.of(AnalyticsMeasure.COUNT));
+
+        assertEquals(MessageLogQueryEngine.MAX_GROUPS, response.rows().size());
+    }
+
+    @Test
+    void testQuery_empty() {
+        mockQuery(List.of());
+
+        assertNull(
+                query(
+                        null,
+                        List.of(AnalyticsDimension.CATEGORY),
+                        List.of(AnalyticsMeasure.COUNT)));
+    }
+
+    @Test
+    void testToMeasureValue() {
+        assertEquals(3L, MessageLogQueryEngine.toMeasureValue(AnalyticsMeasure.COUNT, 3));
+        assertEquals(
+                1.23,
+                MessageLogQueryEngine.toMeasureValue(AnalyticsMeasure.AVG_RATING, 1.2345));
+        assertNull(MessageLogQueryEngine.toMeasureValue(AnalyticsMeasure.AVG_RATING, null));
+    }
+
+    private MessageLogResource.AnalyticsQueryResponse query(
+            Long userId, List<AnalyticsDimension> dimensions, List<AnalyticsMeasure> measures) {
+        return messageLogQueryEngine.query(
+                CUSTOMER_ID, userId, dimensions, measures, FROM, TO, "day");
+    }
+
+    private void assertBadRequest(
+            List<AnalyticsDimension> dimensions, List<AnalyticsMeasure> measures) {
+        ResponseStatusException exception =
+                assertThrows(
+                        ResponseStatusException.class, () -> query(null, dimensions, measures));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verifyNoInteractions(
+                messageLogColumnStore,
+                messageLogArchive,
+                messageLogPartitionManager,
+                jdbcTemplate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockQuery(List<MessageLogResource.AnalyticsQueryRow> rows) {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(
+                        invocation -> {
+                            Object[] arguments = invocation.getArguments();
+                            sql = (String) arguments[0];
+                            rowMapper = (RowMapper<?>) arguments[1];
+                            args = List.of(Arrays.copyOfRange(arguments, 2, arguments.length));
+                            return rows;
+                        });
+    }
+
+    private static MessageLogResource.AnalyticsQueryRow row(String category, long count) {
+        Map<AnalyticsDimension, Object> dimensions = new EnumMap<>(AnalyticsDimension.class);
+        dimensions.put(AnalyticsDimension.CATEGORY, category);
+        return new MessageLogResource.AnalyticsQueryRow(
+                dimensions, Map.of(AnalyticsMeasure.COUNT, count));
+    }
+}
@@ -0,0 +1,117 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+
+class MessageLogSegmentTest {
+
+    private static final long CUSTOMER_ID = 3L;
+    private static final ZonedDateTime RECEIVED_AT =
+            ZonedDateTime.of(2025, 3, 30, 1, 59, 59, 123456000, BERLIN_ZONE);
+
+    @TempDir private Path tempDir;
+
+    @Test
+    void testWriteRead_roundTrip() throws IOException {
+        MessageLogEntry complete =
+                MessageLogEntry.builder()
+                        .id(41L)
+                        .userId(2L)
+                        .customerId(CUSTOMER_ID)
+                        .replied(true)
+                        .functionCall(true)
+                        .category("Support")
+                        .language("de")
+                        .fromEmailAddress("encrypted-sender")
+                        .subject("Grüße ✉ \n und Zeilenumbruch")
+                        .receivedAt(RECEIVED_AT)
+                        .processedAt(RECEIVED_AT.plusSeconds(7))
+                        .processingTimeInSeconds(7)
+                        .categorisationLlmUsed("gpt-4o-mini")
+                        .categorisationInputTokens(1200)
+                        .categorisationOutputTokens(30)
+                        .categorisationTotalTokens(1230)
+                        .llmUsed("gpt-4o")
+                        .inputTokens(1600)
+                        .outputTokens(400)
+                        .totalTokens(2000)
+                        .build();
+        // Ids and receive times are delta-encoded, including a time switch to summer time
+        MessageLogEntry sparse =
+                MessageLogEntry.builder()
+                        .id(1_000_000_000_000L)
+                        .userId(5L)
+                        .customerId(CUSTOMER_ID)
+                        .category("")
+                        .receivedAt(RECEIVED_AT.plusSeconds(1))
+                        .processedAt(RECEIVED_AT.plusHours(1))
+                        .processingTimeInSeconds(0)
+                        .build();
+        Path path = tempDir.resolve("segment.seg");
+
+        int rowCount =
+                MessageLogSegment.write(path, CUSTOMER_ID, List.of(complete, sparse).iterator());
+        List<MessageLogEntry> messageLogEntries = MessageLogSegment.read(path);
+
+        assertEquals(2, rowCount);
+        assertEquals(2, messageLogEntries.size());
+        assertSameEntry(complete, messageLogEntries.get(0));
+        assertSameEntry(sparse, messageLogEntries.get(1));
+        assertFalse(Files.exists(tempDir.resolve("segment.seg.tmp")));
+    }
+
+    @Test
+    void testWriteRead_empty() throws IOException {
+        Path path = tempDir.resolve("empty.seg");
+
+        assertEquals(0, MessageLogSegment.write(path, CUSTOMER_ID, Collections.emptyIterator()));
+        assertTrue(MessageLogSegment.read(path).isEmpty());
+    }
+
+    @Test
+    void testRead_rejectsOtherFiles() throws IOException {
+        Path path = tempDir.resolve("other.seg");
+        Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+
+        assertThrows(IOException.class, () -> MessageLogSegment.read(path));
+    }
+
+    private static void assertSameEntry(MessageLogEntry expected, MessageLogEntry actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getCustomerId(), actual.getCustomerId());
+        assertEquals(expected.isReplied(), actual.isReplied());
+        assertEquals(expected.isFunctionCall(), actual.isFunctionCall());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getLanguage(), actual.getLanguage());
+        assertEquals(expected.getFromEmailAddress(), actual.getFromEmailAddress());
+        assertEquals(expected.getSubject(), actual.getSubject());
+        assertEquals(expected.getReceivedAt(), actual.getReceivedAt());
+        assertEquals(expected.getProcessedAt(), actual.getProcessedAt());
+        assertEquals(expected.getProcessingTimeInSeconds(), actual.getProcessingTimeInSeconds());
+        assertEquals(expected.getCategorisationLlmUsed(), actual.getCategorisationLlmUsed());
+        assertEquals(
+                expected.getCategorisationInputTokens(), actual.getCategorisationInputTokens());
+        assertEquals(
+                expected.getCategorisationOutputTokens(), actual.getCategorisationOutputTokens());
+        assertEquals(
+                expected.getCategorisationTotalTokens(), actual.getCategorisationTotalTokens());
+        assertEquals(expected.getLlmUsed(), actual.getLlmUsed());
+        assertEquals(expected.getInputTokens(), actual.getInputTokens());
+        assertEquals(expected.getOutputTokens(), actual.getOutputTokens());
+        assertEquals(expected.getTotalTokens(), actual.getTotalTokens());
+    }
+}
@@ -0,0 +1,105 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogStageDurationsTest {
+
+    private static final long CUSTOMER_ID = 1L;
+    private static final long USER_ID = 2L;
+    private static final long MESSAGE_LOG_ID = 3L;
+    private static final Map<PipelineStage, Integer> DURATIONS =
+            Map.of(PipelineStage.IMAP_FETCH, 120, PipelineStage.GENERATION, 4200);
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private MessageLogStageDurations messageLogStageDurations;
+
+    @BeforeEach
+    void setup() {
+        messageLogStageDurations = new MessageLogStageDurations(jdbcTemplate);
+    }
+
+    @Test
+    void testRecord_success() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+
+        assertTrue(record());
+
+        ArgumentCaptor<Object[]> values = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).update(contains("FROM message_log WHERE"), values.capture());
+        // Recorded at, the stages in declaration order, then the entry of the user
+        assertEquals(
+                Arrays.asList(120, null, null, 4200, null, MESSAGE_LOG_ID, CUSTOMER_ID, USER_ID),
+                Arrays.asList(values.getValue()).subList(1, 9));
+        verify(jdbcTemplate).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testRecord_alreadyRecorded() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(0);
+        when(jdbcTemplate.queryForObject(
+                        anyString(),
+                        eq(Boolean.class),
+                        eq(MESSAGE_LOG_ID),
+                        eq(CUSTOMER_ID),
+                        eq(USER_ID)))
+                .thenReturn(true);
+
+        assertFalse(record());
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testRecord_entryOfOtherUser() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(0);
+        when(jdbcTemplate.queryForObject(
+                        anyString(),
+                        eq(Boolean.class),
+                        eq(MESSAGE_LOG_ID),
+                        eq(CUSTOMER_ID),
+                        eq(USER_ID)))
+                .thenReturn(false);
+
+        assertThrows(EntityNotFoundException.class, this::record);
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testGetColumn() {
+        assertEquals(
+                List.of(
+                        "imap_fetch_millis",
+                        "categorisation_millis",
+                        "rag_retrieval_millis",
+                        "generation_millis",
+                        "smtp_send_millis"),
+                Arrays.stream(PipelineStage.values()).map(PipelineStage::getColumn).toList());
+    }
+
+    private boolean record() {
+        return messageLogStageDurations.record(CUSTOMER_ID, USER_ID, MESSAGE_LOG_ID, DURATIONS);
+    }
+}
@@ -5,40 +5,110 @@ import static de.flowsuite.mailflow.common.util.Util.BERLIN_ZONE;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
+import de.flowsuite.mailflow.api.util.AnalyticsCache;
+import de.flowsuite.mailflow.common.constant.Authorities;
+import de.flowsuite.mailflow.common.constant.Timeframe;
 import de.flowsuite.mailflow.common.dto.CreateMessageLogEntryRequest;
 import de.flowsuite.mailflow.common.entity.MessageLogEntry;
 import de.flowsuite.mailflow.common.entity.User;
 import de.flowsuite.mailflow.common.exception.EntityNotFoundException;
 import de.flowsuite.mailflow.common.exception.IdConflictException;
 import de.flowsuite.mailflow.common.exception.IdorException;
+import de.flowsuite.mailflow.common.util.AesUtil;
+import de.flowsuite.mailflow.common.util.AuthorisationUtil;
+import de.flowsuite.mailflow.common.util.HmacUtil;
+
+import jakarta.validation.Validator;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @ExtendWith(MockitoExtension.class)
 class MessageLogTest extends BaseServiceTest {
 
+    private static final String FINGERPRINT = "0123456789abcdef".repeat(4);
+
     @Mock private MessageLogRepository messageLogRepository;
 
+    @Mock private MessageLogRollupRepository messageLogRollupRepository;
+
+    @Mock private MessageLogWriter messageLogWriter;
+
+    @Mock private MessageLogWriteBehindBuffer messageLogWriteBehindBuffer;
+
+    @Mock private MessageLogExporter messageLogExporter;
+
+    @Mock private MessageLogArchive messageLogArchive;
+
+    @Mock private MessageLogSenderSketches messageLogSenderSketches;
+
+    @Mock private MessageLogFeed messageLogFeed;
+
+    @Mock private MessageLogFingerprints messageLogFingerprints;
+
+    @Mock private MessageLogStageDurations messageLogStageDurations;
+
+    @Mock private MessageLogSearch messageLogSearch;
+
+    @Mock private MessageLogDailyCounters messageLogDailyCounters;
+
+    @Mock private MessageLogQueryEngine messageLogQueryEngine;
+
+    @Mock private AnalyticsCache analyticsCache;
+
+    @Spy
+    private LlmPricing llmPricing =
+            new LlmPricing(
+                    "USD",
+                    Map.of(
+                            "gpt-4",
+                            new LlmPricing.ModelPrice(
+                                    new BigDecimal("30.00"), new BigDecimal("60.00"))));
+
+    @Spy private ResponseRatingTokens responseRatingTokens = new ResponseRatingTokens("bW9ja2Vk");
+
+    @Mock private Validator validator;
+
     @InjectMocks private MessageLogService messageLogService;
 
     private final User testUser = buildTestUser();
     private final CreateMessageLogEntryRequest createMessageLogEntryRequest =
             buildCreateCustomerRequest(testUser.getId(), testUser.getCustomerId());
     private MessageLogEntry testMessageLogEntry;
+    private final ScrollPosition position = ScrollPosition.keyset();
+    private final Limit limit = Limit.of(10);
 
     private CreateMessageLogEntryRequest buildCreateCustomerRequest(long userId, long customerId) {
         int processingTimeInSeconds = 30;
@@ -97,18 +167,41 @@ class MessageLogTest extends BaseServiceTest {
     @Test
     void testCreateMessageLogEntry_success() {
         mockJwtWithUserAndCustomerClaims(testUser);
-        when(messageLogRepository.existsByToken(anyString())).thenReturn(false);
+        doAnswer(
+                        invocation -> {
+                            List<NewMessageLogEntry> newMessageLogEntries =
+                                    invocation.getArgument(0);
+                            newMessageLogEntries
+                                    .get(0)
+                                    .messageLogEntry()
+                                    .setId(testMessageLogEntry.getId());
+                            return null;
+                        })
+                .when(messageLogWriter)
+                .insertAll(anyList());
 
-        messageLogService.createMessageLogEntry(
-                testUser.getCustomerId(), testUser.getId(), createMessageLogEntryRequest, jwtMock);
+        MessageLogEntry createdMessageLogEntry =
+                messageLogService.createMessageLogEntry(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        createMessageLogEntryRequest,
+                        null,
+                        jwtMock);
 
-        ArgumentCaptor<MessageLogEntry> messageLogEntryCaptor =
-                ArgumentCaptor.forClass(MessageLogEntry.class);
-        verify(messageLogRepository).save(messageLogEntryCaptor.capture());
-        MessageLogEntry savedMessageLogEntry = messageLogEntryCaptor.getValue();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NewMessageLogEntry>> newMessageLogEntriesCaptor =
+                ArgumentCaptor.forClass(List.class);
+        verify(messageLogWriter).insertAll(newMessageLogEntriesCaptor.capture());
+        NewMessageLogEntry newMessageLogEntry = newMessageLogEntriesCaptor.getValue().get(0);
+        MessageLogEntry savedMessageLogEntry = newMessageLogEntry.messageLogEntry();
 
         assertNotNull(savedMessageLogEntry);
-        assertNotNull(savedMessageLogEntry.getToken());
+        assertEquals(HASHED_VALUE, newMessageLogEntry.senderHash());
+        ResponseRatingToken ratingToken =
+                responseRatingTokens.decode(createdMessageLogEntry.getToken()).orElseThrow();
+        assertEquals(testMessageLogEntry.getId(), ratingToken.messageLogId());
+        assertEquals(createMessageLogEntryRequest.customerId(), ratingToken.customerId());
+        assertEquals(createMessageLogEntryRequest.userId(), ratingToken.userId());
         assertTrue(
                 savedMessageLogEntry
                         .getTokenExpiresAt()
@@ -167,15 +260,23 @@ class MessageLogTest extends BaseServiceTest {
                 IdConflictException.class,
                 () ->
                         messageLogService.createMessageLogEntry(
-                                testUser.getCustomerId(), testUser.getId(), request1, jwtMock));
+                                testUser.getCustomerId(),
+                                testUser.getId(),
+                                request1,
+                                null,
+                                jwtMock));
 
         assertThrows(
                 IdConflictException.class,
                 () ->
                         messageLogService.createMessageLogEntry(
-                                testUser.getCustomerId(), testUser.getId(), request2, jwtMock));
+                                testUser.getCustomerId(),
+                                testUser.getId(),
+                                request2,
+                                null,
+                                jwtMock));
 
-        verify(messageLogRepository, never()).save(any(MessageLogEntry.class));
+        verify(messageLogWriter, never()).insertAll(anyList());
     }
 
     @Test
@@ -189,6 +290,7 @@ class MessageLogTest extends BaseServiceTest {
                                 testUser.getCustomerId() + 1,
                                 testUser.getId(),
                                 createMessageLogEntryRequest,
+                                null,
                                 jwtMock));
 
         assertThrows(
@@ -198,23 +300,713 @@ class MessageLogTest extends BaseServiceTest {
                                 testUser.getCustomerId(),
                                 testUser.getId() + 1,
                                 createMessageLogEntryRequest,
+                                null,
+                                jwtMock));
+
+        verify(messageLogWriter, never()).insertAll(anyList());
+    }
+
+    @Test
+    void testEnqueueMessageLogEntry_success() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        when(messageLogWriter.reserveId()).thenReturn(42L);
+        when(messageLogWriteBehindBuffer.offer(any(NewMessageLogEntry.class))).thenReturn(true);
+
+        MessageLogEntry acceptedMessageLogEntry =
+                messageLogService.enqueueMessageLogEntry(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        createMessageLogEntryRequest,
+                        null,
+                        jwtMock);
+
+        assertNotNull(acceptedMessageLogEntry);
+        assertEquals(42L, acceptedMessageLogEntry.getId());
+        assertEquals(
+                42L,
+                responseRatingTokens.decode(acceptedMessageLogEntry.getToken())
+                        .orElseThrow()
+                        .messageLogId());
+        assertEquals(ENCRYPTED_VALUE, acceptedMessageLogEntry.getFromEmailAddress());
+        verify(messageLogWriteBehindBuffer)
+                .offer(new NewMessageLogEntry(acceptedMessageLogEntry, HASHED_VALUE));
+        verify(messageLogWriter, never()).insertAll(anyList());
+    }
+
+    @Test
+    void testEnqueueMessageLogEntry_bufferFull() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        when(messageLogWriteBehindBuffer.offer(any(NewMessageLogEntry.class))).thenReturn(false);
+
+        MessageLogEntry acceptedMessageLogEntry =
+                messageLogService.enqueueMessageLogEntry(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        createMessageLogEntryRequest,
+                        null,
+                        jwtMock);
+
+        assertNull(acceptedMessageLogEntry);
+    }
+
+    @Test
+    void testCreateMessageLogEntry_recordsFingerprintOnCommit() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        MessageLogEntry createdMessageLogEntry =
+                messageLogService.createMessageLogEntry(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        createMessageLogEntryRequest,
+                        FINGERPRINT,
+                        jwtMock);
+
+        // Recorded by the listener once the insert has committed
+        InOrder inOrder = inOrder(messageLogFingerprints, messageLogWriter);
+        inOrder.verify(messageLogFingerprints).recordOnCommit(createdMessageLogEntry, FINGERPRINT);
+        inOrder.verify(messageLogWriter)
+                .insertAll(List.of(new NewMessageLogEntry(createdMessageLogEntry, HASHED_VALUE)));
+        verify(messageLogFingerprints, never()).discard(any());
+    }
+
+    @Test
+    void testCreateMessageLogEntry_failedInsertDiscardsFingerprint() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        doThrow(new IllegalStateException()).when(messageLogWriter).insertAll(anyList());
+
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        messageLogService.createMessageLogEntry(
+                                testUser.getCustomerId(),
+                                testUser.getId(),
+                                createMessageLogEntryRequest,
+                                FINGERPRINT,
+                                jwtMock));
+
+        ArgumentCaptor<MessageLogEntry> messageLogEntryCaptor =
+                ArgumentCaptor.forClass(MessageLogEntry.class);
+        verify(messageLogFingerprints)
+                .recordOnCommit(messageLogEntryCaptor.capture(), eq(FINGERPRINT));
+        verify(messageLogFingerprints).discard(messageLogEntryCaptor.getValue());
+    }
+
+    @Test
+    void testEnqueueMessageLogEntry_bufferFullDiscardsFingerprint() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        when(messageLogWriteBehindBuffer.offer(any(NewMessageLogEntry.class))).thenReturn(false);
+
+        messageLogService.enqueueMessageLogEntry(
+                testUser.getCustomerId(),
+                testUser.getId(),
+                createMessageLogEntryRequest,
+                FINGERPRINT,
+                jwtMock);
+
+        ArgumentCaptor<MessageLogEntry> messageLogEntryCaptor =
+                ArgumentCaptor.forClass(MessageLogEntry.class);
+        verify(messageLogFingerprints)
+                .recordOnCommit(messageLogEntryCaptor.capture(), eq(FINGERPRINT));
+        verify(messageLogFingerprints).discard(messageLogEntryCaptor.getValue());
+    }
+
+    @Test
+    void testGetProcessedFingerprints_success() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        String unknownFingerprint = "f".repeat(64);
+        when(messageLogFingerprints.findProcessed(
+                        testUser.getId(), List.of(FINGERPRINT, unknownFingerprint)))
+                .thenReturn(List.of(FINGERPRINT));
+
+        MessageLogResource.ProcessedFingerprintsResponse response =
+                messageLogService.getProcessedFingerprints(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        List.of(FINGERPRINT, unknownFingerprint),
+                        jwtMock);
+
+        assertEquals(List.of(FINGERPRINT), response.processedFingerprints());
+    }
+
+    @Test
+    void testGetProcessedFingerprints_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.getProcessedFingerprints(
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                List.of(FINGERPRINT),
+                                jwtMock));
+
+        verify(messageLogFingerprints, never()).findProcessed(anyLong(), anyList());
+    }
+
+    @Test
+    void testCreateMessageLogEntries_partialSuccess() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        List<CreateMessageLogEntryRequest> requests =
+                List.of(
+                        createMessageLogEntryRequest,
+                        buildCreateCustomerRequest(testUser.getId(), testUser.getCustomerId() + 1),
+                        buildCreateCustomerRequest(testUser.getId() + 1, testUser.getCustomerId()));
+        doAnswer(
+                        invocation -> {
+                            List<NewMessageLogEntry> newMessageLogEntries =
+                                    invocation.getArgument(0);
+                            newMessageLogEntries.forEach(
+                                    entry -> entry.messageLogEntry().setId(1L));
+                            return null;
+                        })
+                .when(messageLogWriter)
+                .insertAll(anyList());
+
+        MessageLogResource.CreateMessageLogEntriesResponse response =
+                messageLogService.createMessageLogEntries(
+                        testUser.getCustomerId(),
+                        requests,
+                        Collections.nCopies(requests.size(), null),
+                        jwtMock);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NewMessageLogEntry>> newMessageLogEntriesCaptor =
+                ArgumentCaptor.forClass(List.class);
+        verify(messageLogWriter).insertAll(newMessageLogEntriesCaptor.capture());
+        List<MessageLogEntry> insertedMessageLogEntries =
+                newMessageLogEntriesCaptor.getValue().stream()
+                        .map(NewMessageLogEntry::messageLogEntry)
+                        .toList();
+
+        assertEquals(1, insertedMessageLogEntries.size());
+        assertTrue(
+                responseRatingTokens.decode(insertedMessageLogEntries.get(0).getToken())
+                        .isPresent());
+        assertEquals(ENCRYPTED_VALUE, insertedMessageLogEntries.get(0).getFromEmailAddress());
+
+        assertEquals(1, response.createdCount());
+        assertEquals(2, response.failedCount());
+        assertEquals(201, response.results().get(0).status());
+        assertEquals(insertedMessageLogEntries.get(0), response.results().get(0).messageLogEntry());
+        assertEquals(409, response.results().get(1).status());
+        assertNull(response.results().get(1).messageLogEntry());
+        assertEquals(403, response.results().get(2).status());
+        assertNull(response.results().get(2).messageLogEntry());
+    }
+
+    @Test
+    void testCreateMessageLogEntries_retriesRowByRow() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        List<CreateMessageLogEntryRequest> requests =
+                List.of(
+                        createMessageLogEntryRequest,
+                        buildCreateCustomerRequest(testUser.getId(), testUser.getCustomerId()));
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(
+                        invocation -> {
+                            List<NewMessageLogEntry> newMessageLogEntries =
+                                    invocation.getArgument(0);
+                            MessageLogEntry messageLogEntry =
+                                    newMessageLogEntries.get(0).messageLogEntry();
+                            switch (calls.incrementAndGet()) {
+                                case 1 -> {
+                                    messageLogEntry.setId(1L);
+                                    throw new DataIntegrityViolationException("constraint");
+                                }
+                                case 2 -> {
+                                    assertNull(messageLogEntry.getId());
+                                    messageLogEntry.setId(2L);
+                                }
+                                default ->
+                                        throw new DataIntegrityViolationException("constraint");
+                            }
+                            return null;
+                        })
+                .when(messageLogWriter)
+                .insertAll(anyList());
+
+        MessageLogResource.CreateMessageLogEntriesResponse response =
+                messageLogService.createMessageLogEntries(
+                        testUser.getCustomerId(),
+                        requests,
+                        List.of(FINGERPRINT, FINGERPRINT),
+                        jwtMock);
+
+        verify(messageLogWriter, times(3)).insertAll(anyList());
+        assertEquals(1, response.createdCount());
+        assertEquals(1, response.failedCount());
+        assertEquals(201, response.results().get(0).status());
+        assertEquals(2L, response.results().get(0).messageLogEntry().getId());
+        assertTrue(
+                responseRatingTokens.decode(response.results().get(0).messageLogEntry().getToken())
+                        .isPresent());
+        assertEquals(422, response.results().get(1).status());
+        assertNull(response.results().get(1).messageLogEntry());
+
+        ArgumentCaptor<MessageLogEntry> messageLogEntryCaptor =
+                ArgumentCaptor.forClass(MessageLogEntry.class);
+        verify(messageLogFingerprints, times(2))
+                .recordOnCommit(messageLogEntryCaptor.capture(), eq(FINGERPRINT));
+        verify(messageLogFingerprints).discard(messageLogEntryCaptor.getAllValues().get(1));
+        verify(messageLogFingerprints, never())
+                .discard(messageLogEntryCaptor.getAllValues().get(0));
+    }
+
+    @Test
+    void testCreateMessageLogEntries_recordsFingerprintsOnCommit() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        List<CreateMessageLogEntryRequest> requests =
+                List.of(
+                        createMessageLogEntryRequest,
+                        buildCreateCustomerRequest(testUser.getId(), testUser.getCustomerId()),
+                        buildCreateCustomerRequest(testUser.getId(), testUser.getCustomerId()));
+
+        MessageLogResource.CreateMessageLogEntriesResponse response =
+                messageLogService.createMessageLogEntries(
+                        testUser.getCustomerId(),
+                        requests,
+                        Arrays.asList(FINGERPRINT, null, "not-a-fingerprint"),
+                        jwtMock);
+
+        assertEquals(2, response.createdCount());
+        assertEquals(400, response.results().get(2).status());
+
+        // Recorded by the listener once the insert has committed
+        MessageLogEntry fingerprintedMessageLogEntry = response.results().get(0).messageLogEntry();
+        InOrder inOrder = inOrder(messageLogFingerprints, messageLogWriter);
+        inOrder.verify(messageLogFingerprints)
+                .recordOnCommit(fingerprintedMessageLogEntry, FINGERPRINT);
+        inOrder.verify(messageLogWriter).insertAll(anyList());
+        verify(messageLogFingerprints).recordOnCommit(any(), anyString());
+        verify(messageLogFingerprints, never()).discard(any());
+    }
+
+    @Test
+    void testCreateMessageLogEntries_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.createMessageLogEntries(
+                                testUser.getCustomerId() + 1,
+                                List.of(createMessageLogEntryRequest),
+                                List.of(FINGERPRINT),
+                                jwtMock));
+
+        verify(messageLogWriter, never()).insertAll(anyList());
+    }
+
+    @Test
+    void testOnMessageLogEntriesCreated_invalidatesAnalytics() {
+        MessageLogEntry otherMessageLogEntry = buildTestMessageLogEntry();
+        otherMessageLogEntry.setCustomerId(testUser.getCustomerId() + 1);
+
+        messageLogService.onMessageLogEntriesCreated(
+                new MessageLogEntriesCreatedEvent(
+                        List.of(testMessageLogEntry, testMessageLogEntry, otherMessageLogEntry),
+                        Collections.nCopies(3, null)));
+
+        verify(analyticsCache).invalidate(testUser.getCustomerId());
+        verify(analyticsCache).invalidate(testUser.getCustomerId() + 1);
+        verifyNoMoreInteractions(analyticsCache);
+    }
+
+    @Test
+    void testGetMessageLogAnalyticsForCustomer_cached() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        MessageLogResource.MessageLogAnalyticsResponse cachedResponse =
+                new MessageLogResource.MessageLogAnalyticsResponse(1.5, 0.5, 3, Map.of());
+        when(analyticsCache.get(
+                        eq(
+                                new AnalyticsCache.Key(
+                                        "message-log",
+                                        testUser.getCustomerId(),
+                                        null,
+                                        null,
+                                        null,
+                                        Timeframe.DAILY)),
+                        any()))
+                .thenReturn(cachedResponse);
+        when(messageLogDailyCounters.getCountForCustomer(testUser.getCustomerId())).thenReturn(3L);
+
+        MessageLogResource.MessageLogAnalyticsResponse response =
+                messageLogService.getMessageLogAnalyticsForCustomer(
+                        testUser.getCustomerId(), null, null, null, jwtMock);
+
+        assertEquals(cachedResponse, response);
+        verifyNoInteractions(messageLogRollupRepository);
+    }
+
+    @Test
+    void testGetMessageLogAnalyticsForUser_success() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        when(messageLogRollupRepository.aggregateAnalyticsByUser(
+                        anyString(), eq(testUser.getId()), any(), any()))
+                .thenReturn(
+                        List.of(
+                                new Object[] {"2025-05-01", "Support", 3L, 30L, 3L},
+                                new Object[] {"2025-05-02", "Sales", 1L, 2L, 0L},
+                                new Object[] {"2025-05-03", "Sales", 0L, 0L, 0L}));
+        when(messageLogDailyCounters.getCountForUser(testUser.getId())).thenReturn(3L);
+
+        MessageLogResource.MessageLogAnalyticsResponse response =
+                messageLogService.getMessageLogAnalyticsForUser(
+                        testUser.getCustomerId(), testUser.getId(), null, null, null, jwtMock);
+
+        assertEquals(8.0, response.avgProcessingTimeInSeconds());
+        assertEquals(0.75, response.responseRate());
+        assertEquals(3, response.processedMessagesToday());
+        assertEquals(
+                Map.of(
+                        "2025-05-01", Map.of("Support", 3L),
+                        "2025-05-02", Map.of("Sales", 1L)),
+                response.messageLogAnalytics());
+    }
+
+    @Test
+    void testGetMessageLogCostsForCustomer_success() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        when(messageLogRollupRepository.aggregateTokenUsageByCustomer(
+                        anyString(), eq(testUser.getCustomerId()), any(), any()))
+                .thenReturn(
+                        List.of(
+                                new Object[] {"2025-05-01", "gpt-4", 2L, 100_000L, 50_000L},
+                                new Object[] {"2025-05-01", "local-llm", 1L, 10_000L, 5_000L}));
+
+        MessageLogResource.MessageLogCostResponse response =
+                messageLogService.getMessageLogCostsForCustomer(
+                        testUser.getCustomerId(), null, null, null, jwtMock);
+
+        assertEquals("USD", response.currency());
+        assertEquals(new BigDecimal("6.0000"), response.totalCost());
+        assertEquals(110_000L, response.totalInputTokens());
+        assertEquals(55_000L, response.totalOutputTokens());
+
+        Map<String, MessageLogResource.ModelCost> costs =
+                response.costsByPeriod().get("2025-05-01");
+        assertEquals(
+                new MessageLogResource.ModelCost(2, 100_000, 50_000, new BigDecimal("6.0000")),
+                costs.get("gpt-4"));
+        assertNull(costs.get("local-llm").cost());
+    }
+
+    @Test
+    void testGetProcessingTimeAnalyticsForCustomer_success() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        // 90 messages took 10s, 9 took 40s and one took 200s, which falls into the 200-207s bin
+        when(messageLogRollupRepository.aggregateProcessingTimeHistogramsByCustomer(
+                        anyString(), eq(testUser.getCustomerId()), any(), any(), isNull()))
+                .thenReturn(
+                        List.of(
+                                new Object[] {"2025-05-01", "Support", 10, 60L},
+                                new Object[] {"2025-05-02", "Support", 10, 30L},
+                                new Object[] {"2025-05-02", "Support", 40, 9L},
+                                new Object[] {
+                                    "2025-05-02", "Sales", ProcessingTimeHistogram.binOf(200), 1L
+                                }));
+
+        MessageLogResource.ProcessingTimeAnalyticsResponse response =
+                messageLogService.getProcessingTimeAnalyticsForCustomer(
+                        testUser.getCustomerId(), null, null, null, null, jwtMock);
+
+        assertEquals(
+                new MessageLogResource.ProcessingTimePercentiles(100, 10, 10, 40, 40),
+                response.overall());
+        assertEquals(
+                new MessageLogResource.ProcessingTimePercentiles(60, 10, 10, 10, 10),
+                response.percentilesByPeriod().get("2025-05-01").get("Support"));
+        assertEquals(
+                new MessageLogResource.ProcessingTimePercentiles(1, 203.5, 203.5, 203.5, 203.5),
+                response.percentilesByPeriod().get("2025-05-02").get("Sales"));
+    }
+
+    @Test
+    void testRecordStageDurations_success() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        when(messageLogStageDurations.record(anyLong(), anyLong(), anyLong(), anyMap()))
+                .thenReturn(true);
+
+        boolean recorded =
+                messageLogService.recordStageDurations(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        testMessageLogEntry.getId(),
+                        new MessageLogResource.StageDurationsRequest(120, 800, null, 4200, 300),
+                        jwtMock);
+
+        assertTrue(recorded);
+        verify(messageLogStageDurations)
+                .record(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        testMessageLogEntry.getId(),
+                        Map.of(
+                                PipelineStage.IMAP_FETCH, 120,
+                                PipelineStage.CATEGORISATION, 800,
+                                PipelineStage.GENERATION, 4200,
+                                PipelineStage.SMTP_SEND, 300));
+        verify(analyticsCache).invalidate(testUser.getCustomerId());
+    }
+
+    @Test
+    void testRecordStageDurations_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.recordStageDurations(
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                testMessageLogEntry.getId(),
+                                new MessageLogResource.StageDurationsRequest(
+                                        120, 800, null, 4200, 300),
+                                jwtMock));
+
+        verify(messageLogStageDurations, never()).record(anyLong(), anyLong(), anyLong(), anyMap());
+    }
+
+    @Test
+    void testGetStageLatencyAnalyticsForCustomer_success() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        int fetchBin = ProcessingTimeHistogram.binOf(150);
+        int generationBin = ProcessingTimeHistogram.binOf(4000);
+        when(messageLogRollupRepository.aggregateStageLatencyHistogramsByCustomer(
+                        anyString(), eq(testUser.getCustomerId()), any(), any()))
+                .thenReturn(
+                        List.of(
+                                new Object[] {"2025-05-01", "IMAP_FETCH", fetchBin, 10L},
+                                new Object[] {"2025-05-01", "GENERATION", generationBin, 10L},
+                                new Object[] {"2025-05-02", "IMAP_FETCH", fetchBin, 5L}));
+
+        MessageLogResource.StageLatencyAnalyticsResponse response =
+                messageLogService.getStageLatencyAnalyticsForCustomer(
+                        testUser.getCustomerId(), null, null, null, jwtMock);
+
+        assertEquals(PipelineStage.GENERATION, response.slowestStage());
+        assertEquals(15, response.overall().get(PipelineStage.IMAP_FETCH).count());
+        assertEquals(
+                ProcessingTimeHistogram.valueOf(generationBin),
+                response.overall().get(PipelineStage.GENERATION).p50());
+        assertEquals(
+                5,
+                response.percentilesByPeriod()
+                        .get("2025-05-02")
+                        .get(PipelineStage.IMAP_FETCH)
+                        .count());
+    }
+
+    @Test
+    void testQueryMessageLogAnalyticsForCustomer_success() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        List<AnalyticsDimension> dimensions = List.of(AnalyticsDimension.LANGUAGE);
+        List<AnalyticsMeasure> measures = List.of(AnalyticsMeasure.REPLY_RATE);
+        MessageLogResource.AnalyticsQueryResponse queryResponse =
+                new MessageLogResource.AnalyticsQueryResponse(
+                        AnalyticsQuerySource.COLUMN_STORE,
+                        List.of(
+                                new MessageLogResource.AnalyticsQueryRow(
+                                        Map.of(AnalyticsDimension.LANGUAGE, "de"),
+                                        Map.of(AnalyticsMeasure.REPLY_RATE, 0.75))),
+                        null);
+        when(messageLogQueryEngine.query(
+                        eq(testUser.getCustomerId()),
+                        isNull(),
+                        eq(dimensions),
+                        eq(measures),
+                        any(),
+                        any(),
+                        anyString()))
+                .thenReturn(queryResponse);
+
+        MessageLogResource.AnalyticsQueryResponse response =
+                messageLogService.queryMessageLogAnalyticsForCustomer(
+                        testUser.getCustomerId(), dimensions, measures, null, null, null, jwtMock);
+
+        assertEquals(queryResponse, response);
+    }
+
+    @Test
+    void testQueryMessageLogAnalyticsForUser_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.queryMessageLogAnalyticsForUser(
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                List.of(),
+                                List.of(AnalyticsMeasure.COUNT),
+                                null,
+                                null,
+                                null,
+                                jwtMock));
+
+        verifyNoInteractions(messageLogQueryEngine);
+    }
+
+    @Test
+    void testGetSenderAnalyticsForUser_success() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+
+        MessageLogSenderSketches.Sketch sketch = new MessageLogSenderSketches.Sketch();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            sketch.distinctSenders().add(random.nextLong());
+        }
+        sketch.topSenders().add("hash-a", ENCRYPTED_VALUE, 7);
+        sketch.topSenders().add("hash-b", ENCRYPTED_VALUE, 12);
+        sketch.topSenders().add("hash-c", ENCRYPTED_VALUE, 3);
+        when(messageLogSenderSketches.read(
+                        eq(testUser.getCustomerId()), eq(testUser.getId()), any(), any()))
+                .thenReturn(sketch);
+
+        MessageLogResource.SenderAnalyticsResponse response =
+                messageLogService.getSenderAnalyticsForUser(
+                        testUser.getCustomerId(), testUser.getId(), null, null, 2, jwtMock);
+
+        assertEquals(5000, response.distinctSenders(), 5000 * 0.1);
+        assertEquals(
+                List.of(
+                        new MessageLogResource.TopSender(null, null, 12, 0),
+                        new MessageLogResource.TopSender(null, null, 7, 0)),
+                response.topSenders());
+        aesUtilMock.verify(() -> AesUtil.decrypt(anyString()), never());
+    }
+
+    @Test
+    void testGetSenderAnalyticsForUser_admin() {
+        lenient().when(jwtMock.getSubject()).thenReturn(String.valueOf(testUser.getId()));
+        lenient()
+                .when(jwtMock.getClaim(AuthorisationUtil.CLAIM_CUSTOMER_ID))
+                .thenReturn(testUser.getCustomerId());
+        when(jwtMock.getClaim(AuthorisationUtil.CLAIM_SCOPE))
+                .thenReturn(Authorities.ADMIN.getAuthority());
+        when(analyticsCache.get(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+
+        MessageLogSenderSketches.Sketch sketch = new MessageLogSenderSketches.Sketch();
+        sketch.topSenders().add("hash-a", ENCRYPTED_VALUE, 7);
+        when(messageLogSenderSketches.read(
+                        eq(testUser.getCustomerId()), eq(testUser.getId()), any(), any()))
+                .thenReturn(sketch);
+
+        MessageLogResource.SenderAnalyticsResponse response =
+                messageLogService.getSenderAnalyticsForUser(
+                        testUser.getCustomerId(), testUser.getId(), null, null, 10, jwtMock);
+
+        assertEquals(
+                List.of(new MessageLogResource.TopSender(DECRYPTED_VALUE, "hash-a", 7, 0)),
+                response.topSenders());
+    }
+
+    @Test
+    void testGetSenderAnalyticsForUser_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.getSenderAnalyticsForUser(
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                null,
+                                null,
+                                10,
                                 jwtMock));
 
-        verify(messageLogRepository, never()).save(any(MessageLogEntry.class));
+        verify(messageLogSenderSketches, never()).read(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void testSubscribeToMessageLogFeedForUser_success() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        SseEmitter emitter = new SseEmitter();
+        when(messageLogFeed.subscribe(testUser.getCustomerId(), testUser.getId()))
+                .thenReturn(emitter);
+
+        SseEmitter subscribedEmitter =
+                messageLogService.subscribeToMessageLogFeedForUser(
+                        testUser.getCustomerId(), testUser.getId(), jwtMock);
+
+        assertSame(emitter, subscribedEmitter);
+    }
+
+    @Test
+    void testSubscribeToMessageLogFeedForUser_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.subscribeToMessageLogFeedForUser(
+                                testUser.getCustomerId(), testUser.getId() + 1, jwtMock));
+
+        verify(messageLogFeed, never()).subscribe(anyLong(), any());
+    }
+
+    @Test
+    void testGetMessageLogCostsForUser_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.getMessageLogCostsForUser(
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                null,
+                                null,
+                                null,
+                                jwtMock));
+
+        verifyNoInteractions(messageLogRollupRepository);
+    }
+
+    @Test
+    void testGetMessageLogAnalyticsForCustomer_idor() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.getMessageLogAnalyticsForCustomer(
+                                testUser.getCustomerId() + 1, null, null, null, jwtMock));
+
+        verifyNoInteractions(analyticsCache);
     }
 
     @Test
     void testListMessageLogEntriesByCustomer() {
         mockJwtWithCustomerClaimsOnly(testUser);
-        when(messageLogRepository.findByCustomerId(testUser.getCustomerId()))
-                .thenReturn(List.of(testMessageLogEntry));
+        when(messageLogRepository.findByCustomerIdOrderByReceivedAtDescIdDesc(
+                        testUser.getCustomerId(), position, limit))
+                .thenReturn(Window.from(List.of(testMessageLogEntry), ScrollPosition::offset));
 
-        List<MessageLogEntry> messageLogEntries =
+        Window<MessageLogEntry> messageLogEntries =
                 messageLogService.listMessageLogEntriesByCustomer(
-                        testUser.getCustomerId(), jwtMock);
+                        testUser.getCustomerId(), position, limit, jwtMock);
 
         assertEquals(1, messageLogEntries.size());
-        assertEquals(testMessageLogEntry, messageLogEntries.get(0));
+        assertEquals(testMessageLogEntry, messageLogEntries.getContent().get(0));
     }
 
     @Test
@@ -225,23 +1017,25 @@ class MessageLogTest extends BaseServiceTest {
                 IdorException.class,
                 () ->
                         messageLogService.listMessageLogEntriesByCustomer(
-                                testUser.getCustomerId() + 1, jwtMock));
+                                testUser.getCustomerId() + 1, position, limit, jwtMock));
 
-        verify(messageLogRepository, never()).findByCustomerId(anyLong());
+        verify(messageLogRepository, never())
+                .findByCustomerIdOrderByReceivedAtDescIdDesc(anyLong(), any(), any());
     }
 
     @Test
     void testListMessageLogEntriesByUser() {
         mockJwtWithUserAndCustomerClaims(testUser);
-        when(messageLogRepository.findByUserId(testUser.getId()))
-                .thenReturn(List.of(testMessageLogEntry));
+        when(messageLogRepository.findByUserIdOrderByReceivedAtDescIdDesc(
+                        testUser.getId(), position, limit))
+                .thenReturn(Window.from(List.of(testMessageLogEntry), ScrollPosition::offset));
 
-        List<MessageLogEntry> messageLogEntries =
+        Window<MessageLogEntry> messageLogEntries =
                 messageLogService.listMessageLogEntriesByUser(
-                        testUser.getCustomerId(), testUser.getId(), jwtMock);
+                        testUser.getCustomerId(), testUser.getId(), position, limit, jwtMock);
 
         assertEquals(1, messageLogEntries.size());
-        assertEquals(testMessageLogEntry, messageLogEntries.get(0));
+        assertEquals(testMessageLogEntry, messageLogEntries.getContent().get(0));
     }
 
     @Test
@@ -252,15 +1046,237 @@ class MessageLogTest extends BaseServiceTest {
                 IdorException.class,
                 () ->
                         messageLogService.listMessageLogEntriesByUser(
-                                testUser.getCustomerId() + 1, testUser.getId(), jwtMock));
+                                testUser.getCustomerId() + 1,
+                                testUser.getId(),
+                                position,
+                                limit,
+                                jwtMock));
 
         assertThrows(
                 IdorException.class,
                 () ->
                         messageLogService.listMessageLogEntriesByUser(
-                                testUser.getCustomerId(), testUser.getId() + 1, jwtMock));
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                position,
+                                limit,
+                                jwtMock));
+
+        verify(messageLogRepository, never())
+                .findByUserIdOrderByReceivedAtDescIdDesc(anyLong(), any(), any());
+    }
+
+    @Test
+    void testSearchMessageLogEntries_nextPage() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        MessageLogSearch.Keyset after =
+                new MessageLogSearch.Keyset(0.5, ZonedDateTime.now(BERLIN_ZONE), 1L);
+        Window<MessageLogEntry> window =
+                Window.from(List.of(testMessageLogEntry), ScrollPosition::offset);
+        when(messageLogSearch.search(
+                        eq(testUser.getCustomerId()),
+                        eq("invoice"),
+                        any(),
+                        any(),
+                        eq("Support"),
+                        eq(after),
+                        eq(limit)))
+                .thenReturn(window);
+
+        Window<MessageLogEntry> messageLogEntries =
+                messageLogService.searchMessageLogEntries(
+                        testUser.getCustomerId(),
+                        "invoice",
+                        null,
+                        null,
+                        "Support",
+                        after.toScrollPosition(),
+                        limit,
+                        jwtMock);
+
+        assertEquals(window, messageLogEntries);
+    }
+
+    @Test
+    void testSearchMessageLogEntries_invalidCursor() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+
+        assertThrows(
+                ResponseStatusException.class,
+                () ->
+                        messageLogService.searchMessageLogEntries(
+                                testUser.getCustomerId(),
+                                "invoice",
+                                null,
+                                null,
+                                null,
+                                ScrollPosition.forward(Map.of("id", 1L)),
+                                limit,
+                                jwtMock));
+
+        verifyNoInteractions(messageLogSearch);
+    }
+
+    @Test
+    void testSearchMessageLogEntries_idor() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.searchMessageLogEntries(
+                                testUser.getCustomerId() + 1,
+                                "invoice",
+                                null,
+                                null,
+                                null,
+                                position,
+                                limit,
+                                jwtMock));
+
+        verifyNoInteractions(messageLogSearch);
+    }
+
+    @Test
+    void testSearchMessageLogEntriesBySender_firstPage() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        testMessageLogEntry.setId(1L);
+        MessageLogEntry olderMessageLogEntry = buildTestMessageLogEntry();
+        olderMessageLogEntry.setId(2L);
+        when(messageLogRepository.findFirstBySender(testUser.getId(), HASHED_VALUE, 2))
+                .thenReturn(List.of(testMessageLogEntry, olderMessageLogEntry));
+
+        Window<MessageLogEntry> messageLogEntries =
+                messageLogService.searchMessageLogEntriesBySender(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        "Sender@Example.com",
+                        position,
+                        Limit.of(1),
+                        jwtMock);
+
+        hmacUtilMock.verify(() -> HmacUtil.hash("sender@example.com"));
+        assertEquals(List.of(testMessageLogEntry), messageLogEntries.getContent());
+        assertTrue(messageLogEntries.hasNext());
+    }
+
+    @Test
+    void testSearchMessageLogEntriesBySender_nextPage() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+        ZonedDateTime receivedAt = ZonedDateTime.now(BERLIN_ZONE);
+        when(messageLogRepository.findNextBySender(
+                        testUser.getId(), HASHED_VALUE, receivedAt, 1L, limit.max() + 1))
+                .thenReturn(List.of(testMessageLogEntry));
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("receivedAt", receivedAt);
+        keys.put("id", 1L);
+        Window<MessageLogEntry> messageLogEntries =
+                messageLogService.searchMessageLogEntriesBySender(
+                        testUser.getCustomerId(),
+                        testUser.getId(),
+                        "sender@example.com",
+                        ScrollPosition.forward(keys),
+                        limit,
+                        jwtMock);
+
+        assertEquals(List.of(testMessageLogEntry), messageLogEntries.getContent());
+        assertFalse(messageLogEntries.hasNext());
+    }
+
+    @Test
+    void testSearchMessageLogEntriesBySender_idor() {
+        mockJwtWithUserAndCustomerClaims(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.searchMessageLogEntriesBySender(
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                "sender@example.com",
+                                position,
+                                limit,
+                                jwtMock));
+
+        verify(messageLogRepository, never()).findFirstBySender(anyLong(), any(), anyInt());
+    }
+
+    @Test
+    void testExportMessageLogEntries_success() throws IOException {
+        mockJwtWithCustomerClaimsOnly(testUser);
+
+        StreamingResponseBody body =
+                messageLogService.exportMessageLogEntries(
+                        testUser.getCustomerId(),
+                        MessageLogExportFormat.CSV,
+                        null,
+                        null,
+                        "Support",
+                        true,
+                        jwtMock);
+
+        verify(messageLogExporter, never())
+                .export(anyLong(), any(), any(), any(), any(), anyBoolean(), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+
+        verify(messageLogExporter)
+                .export(
+                        eq(testUser.getCustomerId()),
+                        any(ZonedDateTime.class),
+                        any(ZonedDateTime.class),
+                        eq("Support"),
+                        eq(MessageLogExportFormat.CSV),
+                        eq(true),
+                        eq(outputStream));
+    }
+
+    @Test
+    void testExportMessageLogEntries_idor() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.exportMessageLogEntries(
+                                testUser.getCustomerId() + 1,
+                                MessageLogExportFormat.NDJSON,
+                                null,
+                                null,
+                                null,
+                                false,
+                                jwtMock));
+    }
+
+    @Test
+    void testListArchivedMessageLogEntries_success() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        Date from = Date.from(ZonedDateTime.now(BERLIN_ZONE).minusYears(1).toInstant());
+        Date to = Date.from(ZonedDateTime.now(BERLIN_ZONE).minusMonths(11).toInstant());
+        when(messageLogArchive.read(eq(testUser.getCustomerId()), any(), any()))
+                .thenReturn(List.of(testMessageLogEntry));
+
+        List<MessageLogEntry> messageLogEntries =
+                messageLogService.listArchivedMessageLogEntries(
+                        testUser.getCustomerId(), from, to, jwtMock);
+
+        assertEquals(List.of(testMessageLogEntry), messageLogEntries);
+    }
+
+    @Test
+    void testListArchivedMessageLogEntries_idor() {
+        mockJwtWithCustomerClaimsOnly(testUser);
+        Date now = new Date();
+
+        assertThrows(
+                IdorException.class,
+                () ->
+                        messageLogService.listArchivedMessageLogEntries(
+                                testUser.getCustomerId() + 1, now, now, jwtMock));
 
-        verify(messageLogRepository, never()).findByUserId(anyLong());
+        verifyNoInteractions(messageLogArchive);
     }
 
     @Test
@@ -0,0 +1,92 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.flowsuite.mailflow.common.entity.MessageLogEntry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class MessageLogWriteBehindBufferTest {
+
+    @Mock private MessageLogWriter messageLogWriter;
+
+    @TempDir private Path tempDir;
+
+    private Path deadLetterFile;
+    private MessageLogWriteBehindBuffer messageLogWriteBehindBuffer;
+
+    @BeforeEach
+    void setup() {
+        deadLetterFile = tempDir.resolve("dead-letters.ndjson");
+        messageLogWriteBehindBuffer =
+                new MessageLogWriteBehindBuffer(
+                        true,
+                        10,
+                        10,
+                        Duration.ofMillis(10),
+                        Duration.ofSeconds(1),
+                        3,
+                        Duration.ofMillis(1),
+                        Duration.ofMillis(2),
+                        deadLetterFile,
+                        messageLogWriter,
+                        new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    void testFlush_retriesFailedGroupCommit() {
+        List<NewMessageLogEntry> batch =
+                List.of(buildNewMessageLogEntry(1L), buildNewMessageLogEntry(2L));
+        doThrow(new RuntimeException("Connection reset"))
+                .doNothing()
+                .when(messageLogWriter)
+                .insertAll(batch);
+
+        messageLogWriteBehindBuffer.flush(batch);
+
+        verify(messageLogWriter, times(2)).insertAll(batch);
+        assertFalse(Files.exists(deadLetterFile));
+    }
+
+    @Test
+    void testFlush_deadLettersEntriesThatCannotBeWritten() throws IOException {
+        NewMessageLogEntry writable = buildNewMessageLogEntry(1L);
+        NewMessageLogEntry unwritable = buildNewMessageLogEntry(2L);
+        List<NewMessageLogEntry> batch = List.of(writable, unwritable);
+        doThrow(new RuntimeException("Constraint violated"))
+                .when(messageLogWriter)
+                .insertAll(batch);
+        doThrow(new RuntimeException("Constraint violated"))
+                .when(messageLogWriter)
+                .insertAll(List.of(unwritable));
+
+        messageLogWriteBehindBuffer.flush(batch);
+
+        verify(messageLogWriter, times(3)).insertAll(batch);
+        verify(messageLogWriter).insertAll(List.of(writable));
+        List<String> deadLetters = Files.readAllLines(deadLetterFile);
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.get(0).contains("\"id\":2"));
+    }
+
+    private static NewMessageLogEntry buildNewMessageLogEntry(long id) {
+        return new NewMessageLogEntry(
+                MessageLogEntry.builder().id(id).userId(100L).customerId(100L).build(),
+                "sender-hash");
+    }
+}
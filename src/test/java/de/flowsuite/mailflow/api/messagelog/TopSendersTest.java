@@ -0,0 +1,158 @@
+package de.flowsuite.mailflow.api.messagelog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+class TopSendersTest {
+
+    @Test
+    void testAdd_countsTrackedSenders() {
+        TopSenders topSenders = new TopSenders();
+        topSenders.add("a", "encrypted-a-1", 2);
+        topSenders.add("b", "encrypted-b", 1);
+        topSenders.add("a", "encrypted-a-2", 3);
+
+        List<TopSenders.Counter> top = topSenders.top(10);
+
+        assertEquals(
+                List.of(
+                        new TopSenders.Counter("a", "encrypted-a-2", 5, 0),
+                        new TopSenders.Counter("b", "encrypted-b", 1, 0)),
+                top);
+    }
+
+    @Test
+    void testAdd_evictsLowestCount() {
+        TopSenders topSenders = new TopSenders();
+        for (int i = 0; i < TopSenders.CAPACITY; i++) {
+            topSenders.add("s" + i, "encrypted-s" + i, 10 + i);
+        }
+
+        topSenders.add("new", "encrypted-new", 2);
+
+        Map<String, TopSenders.Counter> counters = countersOf(topSenders);
+        assertEquals(TopSenders.CAPACITY, counters.size());
+        assertFalse(counters.containsKey("s0"));
+        // Inherits the count of the evicted sender as its possible overestimate
+        assertEquals(new TopSenders.Counter("new", "encrypted-new", 12, 10), counters.get("new"));
+        assertEquals(new TopSenders.Counter("s1", "encrypted-s1", 11, 0), counters.get("s1"));
+    }
+
+    @Test
+    void testAdd_keepsHeavyHitter() {
+        TopSenders topSenders = new TopSenders();
+        for (int i = 0; i < 10_000; i++) {
+            topSenders.add("sender-" + i, "encrypted", 1);
+            if (i % 10 == 0) {
+                topSenders.add("heavy", "encrypted-heavy", 1);
+            }
+        }
+
+        TopSenders.Counter heavy = topSenders.top(1).get(0);
+
+        assertEquals("heavy", heavy.hash());
+        // The true count is 1000, the estimate may only overestimate it by at most its error
+        assertTrue(heavy.count() >= 1000);
+        assertTrue(heavy.count() - heavy.error() <= 1000);
+    }
+
+    @Test
+    void testMerge_notFull() {
+        TopSenders topSenders = new TopSenders();
+        topSenders.add("a", "encrypted-a-1", 2);
+        topSenders.add("b", "encrypted-b", 1);
+        TopSenders other = new TopSenders();
+        other.add("a", "encrypted-a-2", 3);
+        other.add("c", "encrypted-c", 4);
+
+        topSenders.merge(other);
+
+        assertEquals(
+                List.of(
+                        new TopSenders.Counter("a", "encrypted-a-2", 5, 0),
+                        new TopSenders.Counter("c", "encrypted-c", 4, 0),
+                        new TopSenders.Counter("b", "encrypted-b", 1, 0)),
+                topSenders.top(10));
+    }
+
+    @Test
+    void testMerge_addsMinCountOfFullSketchForUntrackedSenders() {
+        TopSenders other = new TopSenders();
+        other.add("shared", "encrypted-shared", 50);
+        other.add("right", "encrypted-right", 10);
+
+        TopSenders topSenders = full("left", 3);
+        topSenders.merge(other);
+        TopSenders reversed = new TopSenders();
+        reversed.merge(other);
+        reversed.merge(full("left", 3));
+
+        Map<String, TopSenders.Counter> counters = countersOf(topSenders);
+        assertEquals(TopSenders.CAPACITY, counters.size());
+        // Both may have had up to 3 messages in the full sketch, which does not track them
+        assertEquals(
+                new TopSenders.Counter("shared", "encrypted-shared", 53, 3),
+                counters.get("shared"));
+        assertEquals(
+                new TopSenders.Counter("right", "encrypted-right", 13, 3), counters.get("right"));
+        // The other sketch is not full, so it holds no untracked counts
+        assertEquals(
+                new TopSenders.Counter("left0", "encrypted-left0", 3, 0), counters.get("left0"));
+        // Two of the tied lowest counters make room
+        assertFalse(counters.containsKey("left8"));
+        assertFalse(counters.containsKey("left9"));
+        assertEquals(topSenders.top(TopSenders.CAPACITY), reversed.top(TopSenders.CAPACITY));
+    }
+
+    @Test
+    void testMerge_keepsCapacityAndHeavyHitters() {
+        TopSenders topSenders = new TopSenders();
+        TopSenders other = new TopSenders();
+        for (int i = 0; i < 1_000; i++) {
+            topSenders.add("left-" + i, "encrypted", 1);
+            other.add("right-" + i, "encrypted", 1);
+            if (i % 5 == 0) {
+                topSenders.add("heavy", "encrypted-heavy", 1);
+                other.add("heavy", "encrypted-heavy", 1);
+            }
+        }
+
+        topSenders.merge(other);
+
+        assertEquals(TopSenders.CAPACITY, topSenders.top(Integer.MAX_VALUE).size());
+        TopSenders.Counter heavy = topSenders.top(1).get(0);
+        assertEquals("heavy", heavy.hash());
+        assertTrue(heavy.count() >= 400);
+        assertTrue(heavy.count() - heavy.error() <= 400);
+    }
+
+    @Test
+    void testBytes_roundTrip() {
+        TopSenders topSenders = full("s", 7);
+
+        TopSenders decoded = TopSenders.fromBytes(topSenders.toBytes());
+
+        assertEquals(topSenders.top(TopSenders.CAPACITY), decoded.top(TopSenders.CAPACITY));
+        assertTrue(TopSenders.fromBytes(null).top(1).isEmpty());
+    }
+
+    /** A full sketch whose senders {@code prefix0} to {@code prefix63} each have the count. */
+    private static TopSenders full(String prefix, long count) {
+        TopSenders topSenders = new TopSenders();
+        for (int i = 0; i < TopSenders.CAPACITY; i++) {
+            topSenders.add(prefix + i, "encrypted-" + prefix + i, count);
+        }
+        return topSenders;
+    }
+
+    private static Map<String, TopSenders.Counter> countersOf(TopSenders topSenders) {
+        return topSenders.top(Integer.MAX_VALUE).stream()
+                .collect(Collectors.toMap(TopSenders.Counter::hash, Function.identity()));
+    }
+}
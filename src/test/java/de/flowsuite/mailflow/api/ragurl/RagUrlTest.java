@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.RagUrl;
 import de.flowsuite.mailflow.common.entity.User;
 import de.flowsuite.mailflow.common.exception.EntityAlreadyExistsException;
@@ -28,6 +29,8 @@ class RagUrlTest extends BaseServiceTest {
 
     @Mock private RagUrlRepository ragUrlRepository;
 
+    @Mock private EntityVersions entityVersions;
+
     @InjectMocks private RagUrlService ragUrlService;
 
     private final User testUser = buildTestUser();
@@ -7,6 +7,9 @@ import static org.mockito.Mockito.*;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
 import de.flowsuite.mailflow.api.messagelog.MessageLogService;
+import de.flowsuite.mailflow.api.messagelog.ResponseRatingToken;
+import de.flowsuite.mailflow.api.messagelog.ResponseRatingTokens;
+import de.flowsuite.mailflow.api.util.AnalyticsCache;
 import de.flowsuite.mailflow.common.entity.MessageLogEntry;
 import de.flowsuite.mailflow.common.entity.ResponseRating;
 import de.flowsuite.mailflow.common.entity.User;
@@ -21,7 +24,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -31,17 +38,24 @@ import java.util.Optional;
 class ResponseRatingTest extends BaseServiceTest {
 
     private static final String TOKEN = "token";
+    private static final String TOKEN_SECRET = "bW9ja2Vk";
 
     @Mock ResponseRatingRepository responseRatingRepository;
 
     @Mock MessageLogService messageLogService;
 
+    @Spy ResponseRatingTokens responseRatingTokens = new ResponseRatingTokens(TOKEN_SECRET);
+
+    @Mock AnalyticsCache analyticsCache;
+
     @InjectMocks ResponseRatingService responseRatingService;
 
     private final User testUser = buildTestUser();
     private MessageLogEntry testMessageLogEntry = buildTestMessageLogEntry();
 
     private ResponseRating testResponseRating;
+    private final ScrollPosition position = ScrollPosition.keyset();
+    private final Limit limit = Limit.of(10);
 
     private MessageLogEntry buildTestMessageLogEntry() {
         return MessageLogEntry.builder()
@@ -88,6 +102,7 @@ class ResponseRatingTest extends BaseServiceTest {
 
         assertNotNull(savedResponseRating);
         assertEquals(testResponseRating, savedResponseRating);
+        verify(analyticsCache).invalidate(testMessageLogEntry.getCustomerId());
     }
 
     @Test
@@ -103,6 +118,7 @@ class ResponseRatingTest extends BaseServiceTest {
                                 TOKEN, createResponseRatingRequest));
 
         verify(responseRatingRepository, never()).save(any(ResponseRating.class));
+        verifyNoInteractions(analyticsCache);
     }
 
     @Test
@@ -120,6 +136,88 @@ class ResponseRatingTest extends BaseServiceTest {
         verify(responseRatingRepository, never()).save(any(ResponseRating.class));
     }
 
+    @Test
+    void createResponseRating_signedToken_success() {
+        String signedToken =
+                responseRatingTokens.encode(ResponseRatingToken.of(testMessageLogEntry));
+        when(responseRatingRepository.existsByMessageLogId(testMessageLogEntry.getId()))
+                .thenReturn(false);
+
+        responseRatingService.createResponseRating(signedToken, createResponseRatingRequest);
+
+        ArgumentCaptor<ResponseRating> responseRatingCaptor =
+                ArgumentCaptor.forClass(ResponseRating.class);
+        verify(responseRatingRepository).save(responseRatingCaptor.capture());
+        verify(messageLogService, never()).getByToken(anyString());
+
+        assertEquals(testResponseRating, responseRatingCaptor.getValue());
+    }
+
+    @Test
+    void createResponseRating_signedToken_invalidSignature() {
+        String signedToken =
+                responseRatingTokens.encode(ResponseRatingToken.of(testMessageLogEntry));
+        String tamperedToken = signedToken.substring(0, signedToken.lastIndexOf('.')) + ".forged";
+
+        assertThrows(
+                EntityNotFoundException.class,
+                () ->
+                        responseRatingService.createResponseRating(
+                                tamperedToken, createResponseRatingRequest));
+
+        verify(responseRatingRepository, never()).save(any(ResponseRating.class));
+    }
+
+    @Test
+    void createResponseRating_signedToken_otherKey() {
+        String signedToken =
+                new ResponseRatingTokens("b3RoZXI=")
+                        .encode(ResponseRatingToken.of(testMessageLogEntry));
+
+        assertThrows(
+                EntityNotFoundException.class,
+                () ->
+                        responseRatingService.createResponseRating(
+                                signedToken, createResponseRatingRequest));
+
+        verify(responseRatingRepository, never()).save(any(ResponseRating.class));
+    }
+
+    @Test
+    void createResponseRating_legacySignedToken_success() {
+        String legacyToken =
+                String.join(
+                        ".",
+                        "r1",
+                        String.valueOf(testMessageLogEntry.getId()),
+                        String.valueOf(testMessageLogEntry.getCustomerId()),
+                        String.valueOf(testMessageLogEntry.getUserId()),
+                        String.valueOf(testMessageLogEntry.getTokenExpiresAt().toEpochSecond()),
+                        HASHED_VALUE);
+        when(responseRatingRepository.existsByMessageLogId(testMessageLogEntry.getId()))
+                .thenReturn(false);
+
+        responseRatingService.createResponseRating(legacyToken, createResponseRatingRequest);
+
+        verify(responseRatingRepository).save(testResponseRating);
+        verify(messageLogService, never()).getByToken(anyString());
+    }
+
+    @Test
+    void createResponseRating_signedToken_expired() {
+        testMessageLogEntry.setTokenExpiresAt(ZonedDateTime.now(BERLIN_ZONE).minusMinutes(5));
+        String signedToken =
+                responseRatingTokens.encode(ResponseRatingToken.of(testMessageLogEntry));
+
+        assertThrows(
+                TokenExpiredException.class,
+                () ->
+                        responseRatingService.createResponseRating(
+                                signedToken, createResponseRatingRequest));
+
+        verify(responseRatingRepository, never()).save(any(ResponseRating.class));
+    }
+
     @Test
     void getResponseRating_success() {
         mockJwtWithUserAndCustomerClaims(testUser);
@@ -212,15 +310,16 @@ class ResponseRatingTest extends BaseServiceTest {
     @Test
     void testListMessageLogEntriesByCustomer() {
         mockJwtWithCustomerClaimsOnly(testUser);
-        when(responseRatingRepository.findByCustomerId(testUser.getCustomerId()))
-                .thenReturn(List.of(testResponseRating));
+        when(responseRatingRepository.findByCustomerIdOrderByMessageLogIdDesc(
+                        testUser.getCustomerId(), position, limit))
+                .thenReturn(Window.from(List.of(testResponseRating), ScrollPosition::offset));
 
-        List<ResponseRating> responseRatings =
+        Window<ResponseRating> responseRatings =
                 responseRatingService.listResponseRatingsByCustomer(
-                        testUser.getCustomerId(), jwtMock);
+                        testUser.getCustomerId(), position, limit, jwtMock);
 
         assertEquals(1, responseRatings.size());
-        assertEquals(testResponseRating, responseRatings.get(0));
+        assertEquals(testResponseRating, responseRatings.getContent().get(0));
     }
 
     @Test
@@ -231,23 +330,25 @@ class ResponseRatingTest extends BaseServiceTest {
                 IdorException.class,
                 () ->
                         responseRatingService.listResponseRatingsByCustomer(
-                                testUser.getCustomerId() + 1, jwtMock));
+                                testUser.getCustomerId() + 1, position, limit, jwtMock));
 
-        verify(responseRatingRepository, never()).findByCustomerId(anyLong());
+        verify(responseRatingRepository, never())
+                .findByCustomerIdOrderByMessageLogIdDesc(anyLong(), any(), any());
     }
 
     @Test
     void testListMessageLogEntriesByUser() {
         mockJwtWithUserAndCustomerClaims(testUser);
-        when(responseRatingRepository.findByUserId(testUser.getId()))
-                .thenReturn(List.of(testResponseRating));
+        when(responseRatingRepository.findByUserIdOrderByMessageLogIdDesc(
+                        testUser.getId(), position, limit))
+                .thenReturn(Window.from(List.of(testResponseRating), ScrollPosition::offset));
 
-        List<ResponseRating> responseRatings =
+        Window<ResponseRating> responseRatings =
                 responseRatingService.listResponseRatingsByUser(
-                        testUser.getCustomerId(), testUser.getId(), jwtMock);
+                        testUser.getCustomerId(), testUser.getId(), position, limit, jwtMock);
 
         assertEquals(1, responseRatings.size());
-        assertEquals(testResponseRating, responseRatings.get(0));
+        assertEquals(testResponseRating, responseRatings.getContent().get(0));
     }
 
     @Test
@@ -258,14 +359,23 @@ class ResponseRatingTest extends BaseServiceTest {
                 IdorException.class,
                 () ->
                         responseRatingService.listResponseRatingsByUser(
-                                testUser.getCustomerId() + 1, testUser.getId(), jwtMock));
+                                testUser.getCustomerId() + 1,
+                                testUser.getId(),
+                                position,
+                                limit,
+                                jwtMock));
 
         assertThrows(
                 IdorException.class,
                 () ->
                         responseRatingService.listResponseRatingsByUser(
-                                testUser.getCustomerId(), testUser.getId() + 1, jwtMock));
+                                testUser.getCustomerId(),
+                                testUser.getId() + 1,
+                                position,
+                                limit,
+                                jwtMock));
 
-        verify(responseRatingRepository, never()).findByUserId(anyLong());
+        verify(responseRatingRepository, never())
+                .findByUserIdOrderByMessageLogIdDesc(anyLong(), any(), any());
     }
 }
@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 
 import de.flowsuite.mailflow.api.BaseServiceTest;
 import de.flowsuite.mailflow.api.customer.CustomerService;
+import de.flowsuite.mailflow.api.util.EntityVersions;
 import de.flowsuite.mailflow.common.entity.Customer;
 import de.flowsuite.mailflow.common.entity.Settings;
 import de.flowsuite.mailflow.common.entity.User;
@@ -36,6 +37,8 @@ class SettingsTest extends BaseServiceTest {
 
     @Mock CustomerService customerService;
 
+    @Mock EntityVersions entityVersions;
+
     @InjectMocks SettingsService settingsService;
 
     private final User testUser = buildTestUser();
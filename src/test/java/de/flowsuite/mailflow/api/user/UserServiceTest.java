@@ -23,6 +23,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
@@ -302,10 +305,13 @@ class UserServiceTest extends BaseServiceTest {
 
     @Test
     void testListUsers_success() {
-        when(userRepository.findAll()).thenReturn(List.of(testUser));
-        List<User> users = userService.listUsers();
+        ScrollPosition position = ScrollPosition.keyset();
+        Limit limit = Limit.of(10);
+        when(userRepository.findByOrderByIdAsc(position, limit))
+                .thenReturn(Window.from(List.of(testUser), ScrollPosition::offset));
+        Window<User> users = userService.listUsers(position, limit);
         assertEquals(1, users.size());
-        assertEquals(testUser, users.get(0));
+        assertEquals(testUser, users.getContent().get(0));
     }
 
     @Test
@@ -0,0 +1,62 @@
+package de.flowsuite.mailflow.api.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+class EntityVersionsTest {
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private EntityVersions entityVersions;
+
+    @BeforeEach
+    void setup() {
+        entityVersions = new EntityVersions(jdbcTemplate);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(), any()))
+                .thenReturn(List.of(3L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testGetETag_weak() {
+        // Tomcat only compresses responses without a strong ETag
+        assertEquals(
+                "W/\"customers-0-3\"",
+                entityVersions.getETag(EntityVersions.CUSTOMERS, EntityVersions.GLOBAL_SCOPE));
+    }
+
+    @Test
+    void testGetETag_perRepresentation() {
+        assertEquals("W/\"settings-7-3\"", getETag("application/json"));
+        assertEquals("W/\"settings-7-3-cbor\"", getETag("application/cbor"));
+        assertEquals(
+                "W/\"settings-7-3-smile\"",
+                getETag("application/json;q=0.5, application/x-jackson-smile"));
+    }
+
+    private String getETag(String accept) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT, accept);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return entityVersions.getETag(EntityVersions.SETTINGS, 7);
+    }
+}
@@ -0,0 +1,259 @@
+package de.flowsuite.mailflow.api.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyKeysTest {
+
+    private static final String SCOPE = "message-log:1:2:mailbox-service";
+    private static final String KEY = "key-1";
+    private static final Duration TTL = Duration.ofHours(24);
+    private static final Duration LEASE = Duration.ofMinutes(1);
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private IdempotencyKeys idempotencyKeys;
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setup() {
+        idempotencyKeys =
+                new IdempotencyKeys(TTL, LEASE, 100, false, jdbcTemplate, new ObjectMapper());
+    }
+
+    @Test
+    void testExecute_replaysStoredResponse() {
+        ResponseEntity<String> first = execute("body", this::created);
+        ResponseEntity<String> retry = execute("body", this::created);
+
+        assertEquals(1, executions.get());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals("response-1", retry.getBody());
+        assertNull(first.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals("true", retry.getHeaders().getFirst("Idempotent-Replayed"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testExecute_withoutKey() {
+        idempotencyKeys.execute(SCOPE, null, "body", String.class, this::created);
+        idempotencyKeys.execute(SCOPE, null, "body", String.class, this::created);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testExecute_invalidKey() {
+        ResponseStatusException exception =
+                assertThrows(
+                        ResponseStatusException.class,
+                        () ->
+                                idempotencyKeys.execute(
+                                        SCOPE, " ", "body", String.class, this::created));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void testExecute_differentRequestBody() {
+        execute("body", this::created);
+
+        ResponseStatusException exception =
+                assertThrows(
+                        ResponseStatusException.class, () -> execute("other body", this::created));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, exception.getStatusCode());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void testExecute_otherScope() {
+        execute("body", this::created);
+
+        idempotencyKeys.execute("response-ratings:token", KEY, "body", String.class, this::created);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testExecute_inProgress() {
+        ResponseEntity<String> retry =
+                execute(
+                        "body",
+                        () -> {
+                            ResponseEntity<String> concurrent = execute("body", this::created);
+                            assertEquals(HttpStatus.CONFLICT, concurrent.getStatusCode());
+                            return created();
+                        });
+
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void testExecute_takesOverExpiredLease() {
+        idempotencyKeys =
+                new IdempotencyKeys(
+                        TTL, Duration.ofMillis(1), 100, false, jdbcTemplate, new ObjectMapper());
+
+        ResponseEntity<String> slow =
+                execute(
+                        "body",
+                        () -> {
+                            sleep(Duration.ofMillis(20));
+                            ResponseEntity<String> retry = execute("body", this::created);
+                            assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+                            return created();
+                        });
+
+        assertEquals("response-2", slow.getBody());
+        // The request that outlived its lease did not overwrite the response of the retry
+        assertEquals("response-1", execute("body", this::created).getBody());
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testExecute_releasesKeyOfFailedRequest() {
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        execute(
+                                "body",
+                                () -> {
+                                    throw new IllegalStateException();
+                                }));
+        ResponseEntity<String> badRequest =
+                execute("body", () -> ResponseEntity.badRequest().body("invalid"));
+        ResponseEntity<String> retry = execute("body", this::created);
+
+        assertEquals(HttpStatus.BAD_REQUEST, badRequest.getStatusCode());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertNull(retry.getHeaders().getFirst("Idempotent-Replayed"));
+    }
+
+    @Test
+    void testExecute_table_reservesWithLease() {
+        idempotencyKeys = tableIdempotencyKeys();
+        when(jdbcTemplate.update(
+                        contains("INSERT INTO idempotency_keys"),
+                        anyString(),
+                        anyString(),
+                        any(),
+                        any(),
+                        any()))
+                .thenReturn(1);
+        when(jdbcTemplate.update(
+                        contains("UPDATE idempotency_keys"),
+                        eq(201),
+                        any(),
+                        eq("\"response-1\""),
+                        anyString(),
+                        any()))
+                .thenReturn(1);
+
+        execute("body", this::created);
+
+        ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate)
+                .update(
+                        contains("INSERT INTO idempotency_keys"),
+                        args.capture(),
+                        args.capture(),
+                        args.capture(),
+                        args.capture(),
+                        args.capture());
+        Instant reservedAt = ((Timestamp) args.getAllValues().get(2)).toInstant();
+        assertEquals(reservedAt.minus(TTL), ((Timestamp) args.getAllValues().get(3)).toInstant());
+        assertEquals(reservedAt.minus(LEASE), ((Timestamp) args.getAllValues().get(4)).toInstant());
+        // The stored response is only written by the reservation that still holds the key
+        verify(jdbcTemplate)
+                .update(
+                        contains("AND created_at = ?"),
+                        eq(201),
+                        any(),
+                        eq("\"response-1\""),
+                        anyString(),
+                        eq(Timestamp.from(reservedAt)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExecute_table_differentRequestBody() throws SQLException {
+        idempotencyKeys = tableIdempotencyKeys();
+        when(jdbcTemplate.update(
+                        contains("INSERT INTO idempotency_keys"),
+                        anyString(),
+                        anyString(),
+                        any(),
+                        any(),
+                        any()))
+                .thenReturn(0);
+        // Stored by another instance for a different body
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getTimestamp("created_at")).thenReturn(Timestamp.from(Instant.now()));
+        when(resultSet.getString("request_hash")).thenReturn("other");
+        when(jdbcTemplate.query(contains("SELECT"), any(RowMapper.class), anyString()))
+                .thenAnswer(
+                        invocation ->
+                                List.of(
+                                        ((RowMapper<?>) invocation.getArgument(1))
+                                                .mapRow(resultSet, 0)));
+
+        ResponseStatusException exception =
+                assertThrows(ResponseStatusException.class, () -> execute("body", this::created));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, exception.getStatusCode());
+        assertEquals(0, executions.get());
+    }
+
+    private IdempotencyKeys tableIdempotencyKeys() {
+        return new IdempotencyKeys(TTL, LEASE, 100, true, jdbcTemplate, new ObjectMapper());
+    }
+
+    private ResponseEntity<String> execute(
+            String requestBody, Supplier<ResponseEntity<String>> request) {
+        return idempotencyKeys.execute(SCOPE, KEY, requestBody, String.class, request);
+    }
+
+    private ResponseEntity<String> created() {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body("response-" + executions.incrementAndGet());
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
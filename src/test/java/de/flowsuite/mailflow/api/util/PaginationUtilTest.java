@@ -0,0 +1,101 @@
+package de.flowsuite.mailflow.api.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class PaginationUtilTest {
+
+    @Test
+    void testCursor_roundTripsLongKeys() {
+        Map<String, Object> keys = Map.of("id", 42L);
+
+        assertEquals(keys, roundTrip(keys));
+    }
+
+    @Test
+    void testCursor_roundTripsDoubleAndDateTimeKeys() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("rank", 0.0607927106320858);
+        keys.put(
+                "receivedAt",
+                ZonedDateTime.of(2025, 5, 1, 12, 30, 15, 123456000, ZoneId.of("Europe/Berlin")));
+        keys.put("id", Long.MAX_VALUE);
+
+        assertEquals(keys, roundTrip(keys));
+    }
+
+    @Test
+    void testEncodeCursor_lastPage() {
+        Window<String> window =
+                Window.from(List.of("a"), index -> ScrollPosition.forward(Map.of("id", 1L)));
+
+        assertNull(PaginationUtil.encodeCursor(window));
+    }
+
+    @Test
+    void testEncodeCursor_emptyPage() {
+        assertNull(PaginationUtil.encodeCursor(Window.from(List.of(), ScrollPosition::offset)));
+    }
+
+    @Test
+    void testDecodeCursor_absent() {
+        assertEquals(ScrollPosition.keyset(), PaginationUtil.decodeCursor(null));
+        assertEquals(ScrollPosition.keyset(), PaginationUtil.decodeCursor(" "));
+    }
+
+    @Test
+    void testDecodeCursor_malformed() {
+        assertInvalidCursor("not base64!");
+        assertInvalidCursor(encode("id"));
+        assertInvalidCursor(encode("id=l"));
+        assertInvalidCursor(encode("id=x=1"));
+        assertInvalidCursor(encode("id=l=one"));
+        assertInvalidCursor(encode("rank=d=NaN-ish"));
+        assertInvalidCursor(encode("receivedAt=t=yesterday"));
+        assertInvalidCursor(encode("id=l=1;receivedAt"));
+    }
+
+    @Test
+    void testLimit_clamped() {
+        assertEquals(1, PaginationUtil.limit(0).max());
+        assertEquals(10, PaginationUtil.limit(10).max());
+        assertEquals(PaginationUtil.MAX_PAGE_SIZE, PaginationUtil.limit(10_000).max());
+    }
+
+    private static Map<String, Object> roundTrip(Map<String, Object> keys) {
+        Window<String> window =
+                Window.from(List.of("a", "b"), index -> ScrollPosition.forward(keys), true);
+
+        String cursor = PaginationUtil.encodeCursor(window);
+
+        assertNotNull(cursor);
+        return ((KeysetScrollPosition) PaginationUtil.decodeCursor(cursor)).getKeys();
+    }
+
+    private static String encode(String decodedCursor) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(decodedCursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertInvalidCursor(String cursor) {
+        ResponseStatusException exception =
+                assertThrows(
+                        ResponseStatusException.class, () -> PaginationUtil.decodeCursor(cursor));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+}